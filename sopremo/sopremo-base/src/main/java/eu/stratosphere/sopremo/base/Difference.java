@@ -2,6 +2,8 @@ package eu.stratosphere.sopremo.base;
 
 import java.util.List;
 
+import eu.stratosphere.sopremo.base.Unique.LocalDeduplication;
+import eu.stratosphere.sopremo.base.join.BloomFilterReduction;
 import eu.stratosphere.sopremo.io.Source;
 import eu.stratosphere.sopremo.operator.CompositeOperator;
 import eu.stratosphere.sopremo.operator.ElementaryOperator;
@@ -9,6 +11,7 @@ import eu.stratosphere.sopremo.operator.InputCardinality;
 import eu.stratosphere.sopremo.operator.JsonStream;
 import eu.stratosphere.sopremo.operator.Name;
 import eu.stratosphere.sopremo.operator.OutputCardinality;
+import eu.stratosphere.sopremo.operator.Property;
 import eu.stratosphere.sopremo.operator.SopremoModule;
 import eu.stratosphere.sopremo.pact.JsonCollector;
 import eu.stratosphere.sopremo.pact.SopremoCoGroup;
@@ -25,6 +28,8 @@ import eu.stratosphere.sopremo.type.IStreamNode;
 @InputCardinality(min = 1)
 @OutputCardinality(1)
 public class Difference extends CompositeOperator<Difference> {
+	private boolean bloomFilter;
+
 	/*
 	 * (non-Javadoc)
 	 * @see
@@ -38,11 +43,57 @@ public class Difference extends CompositeOperator<Difference> {
 		if (otherInputs.isEmpty())
 			module.embed(new Unique().withInputs(leftInput));
 		else {
-			final JsonStream unionOfOtherInputs = new UnionAll().withInputs(otherInputs);
-			module.embed(new TwoInputDifference().withInputs(leftInput, unionOfOtherInputs));
+			// only one representative of equal values is needed on either side of the co-group
+			final JsonStream uniqueLeftInput = new LocalDeduplication().withInputs(leftInput);
+			JsonStream unionOfOtherInputs = new LocalDeduplication().withInputs(new UnionAll().withInputs(otherInputs));
+			// values of the other inputs that do not occur in the first input do not affect the difference
+			if (this.bloomFilter)
+				unionOfOtherInputs = new BloomFilterReduction().withInputs(unionOfOtherInputs, uniqueLeftInput);
+			module.embed(new TwoInputDifference().withInputs(uniqueLeftInput, unionOfOtherInputs));
 		}
 	}
 
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		return this.bloomFilter == ((Difference) obj).bloomFilter;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + (this.bloomFilter ? 1231 : 1237);
+	}
+
+	/**
+	 * Returns whether the other inputs are filtered with a Bloom filter over the first input.
+	 * 
+	 * @return whether a Bloom filter is used
+	 */
+	public boolean isBloomFilter() {
+		return this.bloomFilter;
+	}
+
+	/**
+	 * Filters the other inputs with a Bloom filter over the values of the first input before they are repartitioned.
+	 * The filter pays off if the first input is considerably smaller than the other inputs.
+	 * 
+	 * @param bloomFilter
+	 *        whether a Bloom filter should be used
+	 */
+	@Property
+	@Name(noun = "bloom filter")
+	public void setBloomFilter(final boolean bloomFilter) {
+		this.bloomFilter = bloomFilter;
+	}
+
+	public Difference withBloomFilter(final boolean bloomFilter) {
+		this.setBloomFilter(bloomFilter);
+		return this;
+	}
+
 	@InputCardinality(min = 2, max = 2)
 	public static class TwoInputDifference extends ElementaryOperator<TwoInputDifference> {
 		public static class Implementation extends SopremoCoGroup {
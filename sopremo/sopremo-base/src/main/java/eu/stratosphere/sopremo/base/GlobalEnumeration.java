@@ -1,19 +1,34 @@
 package eu.stratosphere.sopremo.base;
 
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import eu.stratosphere.api.common.operators.Operator;
+import eu.stratosphere.api.common.operators.base.CrossOperatorBase.CrossWithSmall;
+import eu.stratosphere.api.common.operators.util.OperatorUtil;
+import eu.stratosphere.compiler.PactCompiler;
 import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.pact.common.plan.PactModule;
 import eu.stratosphere.sopremo.AbstractSopremoType;
+import eu.stratosphere.sopremo.expressions.ArrayAccess;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
 import eu.stratosphere.sopremo.expressions.EvaluationExpression;
 import eu.stratosphere.sopremo.expressions.ObjectAccess;
 import eu.stratosphere.sopremo.expressions.PathSegmentExpression;
+import eu.stratosphere.sopremo.operator.DegreeOfParallelism;
 import eu.stratosphere.sopremo.operator.ElementaryOperator;
 import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Internal;
 import eu.stratosphere.sopremo.operator.Name;
 import eu.stratosphere.sopremo.operator.Property;
 import eu.stratosphere.sopremo.pact.JsonCollector;
+import eu.stratosphere.sopremo.pact.SopremoCross;
 import eu.stratosphere.sopremo.pact.SopremoMap;
+import eu.stratosphere.sopremo.pact.SopremoReduce;
 import eu.stratosphere.sopremo.type.*;
 
 @Name(verb = "enumerate")
@@ -27,6 +42,46 @@ public class GlobalEnumeration extends ElementaryOperator<GlobalEnumeration> {
 
 	private String idFieldName = "_ID", valueFieldName = "value";
 
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#asPactModule()
+	 */
+	@Override
+	public PactModule asPactModule() {
+		if (!(this.idGenerator instanceof DenseLongGenerator))
+			return super.asPactModule();
+
+		// the input is read twice: first to count the values of each partition and then to enumerate them
+		final PactModule module = new PactModule(1, 1);
+		final Operator counts = this.toContract(new CountValues(), module.getInput(0));
+		counts.setParameter(PactCompiler.HINT_SHIP_STRATEGY, PactCompiler.HINT_SHIP_STRATEGY_FORWARD);
+		final Operator offsets = this.toContract(new ComputeOffsets(), this.toContract(new SumCounts(), counts));
+		final EnumerateDensely enumeration = new EnumerateDensely().withEnumerationExpression(
+			this.enumerationExpression == AUTO_ENUMERATION ?
+				new AutoProjection(this.idFieldName, this.valueFieldName) : this.enumerationExpression);
+		enumeration.setResultProjection(this.getResultProjection());
+		final Operator enumerated = this.toContract(enumeration, module.getInput(0), offsets);
+		// both passes need to see the same partitions under the same task indices
+		enumerated.setParameter(PactCompiler.HINT_SHIP_STRATEGY_FIRST_INPUT, PactCompiler.HINT_SHIP_STRATEGY_FORWARD);
+		module.getOutput(0).addInput(enumerated);
+		return module;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#getAllKeyExpressions()
+	 */
+	@Override
+	public Set<EvaluationExpression> getAllKeyExpressions() {
+		final Set<EvaluationExpression> allKeys = super.getAllKeyExpressions();
+		// the counts are summed per partition and the offsets are computed under a constant key
+		if (this.idGenerator instanceof DenseLongGenerator) {
+			allKeys.add(CountValues.PARTITION);
+			allKeys.add(ConstantExpression.NULL);
+		}
+		return allKeys;
+	}
+
 	public EvaluationExpression getEnumerationExpression() {
 		return this.enumerationExpression;
 	}
@@ -145,6 +200,20 @@ public class GlobalEnumeration extends ElementaryOperator<GlobalEnumeration> {
 			this.enumerationExpression = AUTO_ENUMERATION;
 	}
 
+	private Operator toContract(final ElementaryOperator<?> operator, final Operator... inputs) {
+		if (this.getDegreeOfParallelism() != STANDARD_DEGREE_OF_PARALLELISM)
+			operator.setDegreeOfParallelism(this.getDegreeOfParallelism());
+		final Operator contract = operator.asPactModule().getOutput(0).getInputs().get(0);
+		final List<List<Operator>> inputLists = new ArrayList<List<Operator>>();
+		for (final Operator input : inputs) {
+			final List<Operator> inputList = new ArrayList<Operator>();
+			inputList.add(input);
+			inputLists.add(inputList);
+		}
+		OperatorUtil.setInputs(contract, inputLists);
+		return contract;
+	}
+
 	public static abstract class AbstractIdGenerator extends AbstractSopremoType implements IdGenerator {
 		/*
 		 * (non-Javadoc)
@@ -175,7 +244,8 @@ public class GlobalEnumeration extends ElementaryOperator<GlobalEnumeration> {
 	}
 
 	public enum IdGeneration {
-		LONG(new LongGenerator()), STRING(new StringGenerator()), MAPPER(new MapperNumberGenerator());
+		LONG(new LongGenerator()), STRING(new StringGenerator()), MAPPER(new MapperNumberGenerator()),
+		DENSE(new DenseLongGenerator());
 
 		private final IdGenerator generator;
 
@@ -221,6 +291,213 @@ public class GlobalEnumeration extends ElementaryOperator<GlobalEnumeration> {
 		}
 	}
 
+	/**
+	 * Emits <code>[partition, 1]</code> for each value, where the partition is the index of the task. The input is
+	 * forwarded, such that the partition corresponds to the partition that {@link EnumerateDensely} enumerates under
+	 * the same index.
+	 */
+	@Internal
+	@InputCardinality(1)
+	public static class CountValues extends ElementaryOperator<CountValues> {
+		static final EvaluationExpression PARTITION = new ArrayAccess(0);
+
+		public static class Implementation extends SopremoMap {
+			private final transient IArrayNode<IJsonNode> count = new ArrayNode<IJsonNode>(2);
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoMap#open(eu.stratosphere.configuration.Configuration)
+			 */
+			@Override
+			public void open(final Configuration parameters) {
+				super.open(parameters);
+				this.count.set(0, new IntNode(this.getRuntimeContext().getIndexOfThisSubtask()));
+				this.count.set(1, new LongNode(1));
+			}
+
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				out.collect(this.count);
+			}
+		}
+	}
+
+	/**
+	 * Emits <code>[partition, count]</code> for each partition. The counts are already summed up before they are
+	 * shipped.
+	 */
+	@Internal
+	@InputCardinality(1)
+	public static class SumCounts extends ElementaryOperator<SumCounts> {
+		/**
+		 * Initializes SumCounts.
+		 */
+		public SumCounts() {
+			this.setKeyExpressions(0, CountValues.PARTITION);
+			this.setCombinable(true);
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private final transient LongNode sum = new LongNode();
+
+			private final transient IArrayNode<IJsonNode> count = new ArrayNode<IJsonNode>(2);
+
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				long sum = 0;
+				for (final IJsonNode value : values) {
+					final IArrayNode<?> partialCount = (IArrayNode<?>) value;
+					this.count.set(0, partialCount.get(0));
+					sum += ((LongNode) partialCount.get(1)).getLongValue();
+				}
+				this.sum.setValue(sum);
+				this.count.set(1, this.sum);
+				out.collect(this.count);
+			}
+		}
+	}
+
+	/**
+	 * Emits a single array that contains the first id of each partition, i.e., the number of values in all
+	 * partitions with a lower index.
+	 */
+	@Internal
+	@InputCardinality(1)
+	@DegreeOfParallelism(1)
+	public static class ComputeOffsets extends ElementaryOperator<ComputeOffsets> {
+		/**
+		 * Initializes ComputeOffsets.
+		 */
+		public ComputeOffsets() {
+			this.setKeyExpressions(0, ConstantExpression.NULL);
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private final transient LongArrayList counts = new LongArrayList();
+
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				this.counts.clear();
+				for (final IJsonNode value : values) {
+					final IArrayNode<?> count = (IArrayNode<?>) value;
+					final int partition = ((IntNode) count.get(0)).getIntValue();
+					if (partition >= this.counts.size())
+						this.counts.size(partition + 1);
+					this.counts.set(partition, ((LongNode) count.get(1)).getLongValue());
+				}
+
+				final IArrayNode<LongNode> offsets = new ArrayNode<LongNode>();
+				long offset = 0;
+				for (int partition = 0; partition < this.counts.size(); partition++) {
+					offsets.add(new LongNode(offset));
+					offset += this.counts.getLong(partition);
+				}
+				out.collect(offsets);
+			}
+		}
+	}
+
+	/**
+	 * Enumerates the values of each partition starting with the offset of the partition. The partitions are
+	 * forwarded from the common input, such that each task sees the same values that have been counted for its index.
+	 * <br>
+	 * This invariant requires that {@link CountValues} and this operator run with the same degree of parallelism as
+	 * the input and both receive it with a forward ship strategy. {@link GlobalEnumeration} sets the same degree of
+	 * parallelism for both and hints the forward strategy; a partition without a counted offset fails the task.
+	 */
+	@Internal
+	@InputCardinality(2)
+	public static class EnumerateDensely extends ElementaryOperator<EnumerateDensely> {
+		private EvaluationExpression enumerationExpression;
+
+		public EnumerateDensely withEnumerationExpression(final EvaluationExpression enumerationExpression) {
+			this.enumerationExpression = enumerationExpression;
+			return this;
+		}
+
+		public static class Implementation extends SopremoCross implements CrossWithSmall {
+			private PathSegmentExpression enumerationExpression;
+
+			private final transient DenseLongGenerator idGenerator = new DenseLongGenerator();
+
+			private transient long counter;
+
+			private transient boolean initialized;
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoCross#open(eu.stratosphere.configuration.Configuration)
+			 */
+			@Override
+			public void open(final Configuration parameters) {
+				super.open(parameters);
+				this.counter = 0;
+				this.initialized = false;
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoCross#cross(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.type.IJsonNode, eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void cross(final IJsonNode value, final IJsonNode offsets, final JsonCollector<IJsonNode> out) {
+				// there is exactly one array of offsets per task, so the offset is looked up on the first value
+				if (!this.initialized) {
+					final int partition = this.getRuntimeContext().getIndexOfThisSubtask();
+					final IArrayNode<?> partitionOffsets = (IArrayNode<?>) offsets;
+					if (partition >= partitionOffsets.size())
+						throw new IllegalStateException(String.format(
+							"No values have been counted for partition %d; the input has not been forwarded",
+							partition));
+					this.idGenerator.setOffset(((LongNode) partitionOffsets.get(partition)).getLongValue());
+					this.initialized = true;
+				}
+				final IJsonNode id = this.idGenerator.generate(this.counter++);
+				out.collect(this.enumerationExpression.set(value, id));
+			}
+		}
+	}
+
+	/**
+	 * Generates the ids 0 to n-1 for n values. The ids of a partition start at the number of values in the partitions
+	 * with a lower index, which is determined in a preceding pass over the input.
+	 */
+	public static class DenseLongGenerator extends AbstractIdGenerator {
+		private final LongNode result = new LongNode();
+
+		private long offset;
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.base.GlobalEnumeration.IdGenerator#generate(long)
+		 */
+		@Override
+		public IJsonNode generate(final long localId) {
+			this.result.setValue(this.offset + localId);
+			return this.result;
+		}
+
+		/**
+		 * Sets the first id of the partition.
+		 * 
+		 * @param offset
+		 *        the number of values in the partitions with a lower index
+		 */
+		public void setOffset(final long offset) {
+			this.offset = offset;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.base.GlobalEnumeration.IdGenerator#setup(int, int)
+		 */
+		@Override
+		public void setup(final int taskId, final int numTasks) {
+			this.offset = 0;
+		}
+	}
+
 	public static class LongGenerator extends AbstractIdGenerator {
 		private final LongNode result = new LongNode();
 
@@ -1,5 +1,10 @@
 package eu.stratosphere.sopremo.base;
 
+import static eu.stratosphere.sopremo.expressions.ExpressionUtil.makePath;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -9,6 +14,8 @@ import java.util.List;
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
 
+import eu.stratosphere.api.common.operators.Order;
+import eu.stratosphere.configuration.Configuration;
 import eu.stratosphere.sopremo.CoreFunctions;
 import eu.stratosphere.sopremo.aggregation.AssociativeAggregation;
 import eu.stratosphere.sopremo.expressions.AggregationExpression;
@@ -23,6 +30,7 @@ import eu.stratosphere.sopremo.expressions.OrderingExpression;
 import eu.stratosphere.sopremo.operator.CompositeOperator;
 import eu.stratosphere.sopremo.operator.ElementaryOperator;
 import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Internal;
 import eu.stratosphere.sopremo.operator.JsonStream;
 import eu.stratosphere.sopremo.operator.Name;
 import eu.stratosphere.sopremo.operator.OutputCardinality;
@@ -30,15 +38,19 @@ import eu.stratosphere.sopremo.operator.Property;
 import eu.stratosphere.sopremo.operator.SopremoModule;
 import eu.stratosphere.sopremo.pact.JsonCollector;
 import eu.stratosphere.sopremo.pact.SopremoCoGroup;
+import eu.stratosphere.sopremo.pact.SopremoMap;
 import eu.stratosphere.sopremo.pact.SopremoReduce;
 import eu.stratosphere.sopremo.type.ArrayNode;
 import eu.stratosphere.sopremo.type.IArrayNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.INumericNode;
 import eu.stratosphere.sopremo.type.IStreamNode;
+import eu.stratosphere.sopremo.type.IntNode;
 import eu.stratosphere.sopremo.type.NullNode;
+import eu.stratosphere.sopremo.type.SpillingStreamNode;
 import eu.stratosphere.util.CollectionUtil;
 
-@InputCardinality(min = 1, max = 2)
+@InputCardinality(min = 1, max = Integer.MAX_VALUE)
 @OutputCardinality(1)
 @Name(verb = "group")
 public class Grouping extends CompositeOperator<Grouping> {
@@ -53,6 +65,10 @@ public class Grouping extends CompositeOperator<Grouping> {
 
 	private EvaluationExpression resultProjection = EvaluationExpression.VALUE;
 
+	private int skewFactor = 0;
+
+	private double heavyHitterThreshold = 0.01;
+
 	{
 		for (int index = 0; index < this.getMinInputs(); index++)
 			this.innerGroupOrders.add(new ArrayList<OrderingExpression>());
@@ -78,20 +94,8 @@ public class Grouping extends CompositeOperator<Grouping> {
 					withInputs(module.getInputs());
 			break;
 		default:
-			throw new IllegalStateException("More than two sources are not supported");
-			// List<JsonStream> inputs = new ArrayList<JsonStream>();
-			// List<EvaluationExpression> keyExpressions = new ArrayList<EvaluationExpression>();
-			// for (int index = 0; index < numInputs; index++) {
-			// inputs.add(ContractUtil.positionEncode(module.getInput(index), index, numInputs));
-			// keyExpressions.add(new PathExpression(new InputSelection(index), getGroupingKey(index)));
-			// }
-			// final UnionAll union = new UnionAll().
-			// withInputs(inputs);
-			// final PathExpression projection =
-			// new PathExpression(new AggregationExpression(new ArrayUnion()), this.resultProjection);
-			// output = new GroupProjection(projection).
-			// withInputs(union);
-			// break;
+			output = this.createNaryGrouping(module);
+			break;
 		}
 
 		module.getOutput(0).setInput(0, output);
@@ -121,7 +125,8 @@ public class Grouping extends CompositeOperator<Grouping> {
 		if (!super.equals(obj))
 			return false;
 		final Grouping other = (Grouping) obj;
-		return this.resultProjection.equals(other.resultProjection);
+		return this.resultProjection.equals(other.resultProjection) && this.skewFactor == other.skewFactor &&
+			this.heavyHitterThreshold == other.heavyHitterThreshold;
 	}
 
 	public EvaluationExpression getDefaultGroupingKey() {
@@ -140,6 +145,15 @@ public class Grouping extends CompositeOperator<Grouping> {
 		return this.getGroupingKey(this.getSafeInputIndex(input));
 	}
 
+	/**
+	 * Returns the minimum fraction of records that a grouping key needs to have to be treated as a heavy hitter.
+	 * 
+	 * @return the heavyHitterThreshold
+	 */
+	public double getHeavyHitterThreshold() {
+		return this.heavyHitterThreshold;
+	}
+
 	/**
 	 * Returns the innerGroupOrder expressions of the given input.
 	 * 
@@ -161,11 +175,24 @@ public class Grouping extends CompositeOperator<Grouping> {
 		return this.resultProjection;
 	}
 
+	/**
+	 * Returns the number of partial groups that each heavy-hitter key is split into. Values below 2 disable the skew
+	 * handling.
+	 * 
+	 * @return the skewFactor
+	 */
+	public int getSkewFactor() {
+		return this.skewFactor;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = super.hashCode();
+		final long thresholdBits = Double.doubleToLongBits(this.heavyHitterThreshold);
+		result = prime * result + (int) (thresholdBits ^ thresholdBits >>> 32);
 		result = prime * result + this.resultProjection.hashCode();
+		result = prime * result + this.skewFactor;
 		return result;
 	}
 
@@ -177,6 +204,20 @@ public class Grouping extends CompositeOperator<Grouping> {
 		this.defaultGroupingKey = defaultGroupingKey;
 	}
 
+	/**
+	 * Sets the minimum fraction of records that a grouping key needs to have to be treated as a heavy hitter.
+	 * 
+	 * @param heavyHitterThreshold
+	 *        the heavyHitterThreshold to set
+	 */
+	@Property(hidden = true)
+	public void setHeavyHitterThreshold(final double heavyHitterThreshold) {
+		if (heavyHitterThreshold <= 0 || heavyHitterThreshold > 1)
+			throw new IllegalArgumentException("heavyHitterThreshold must be in (0, 1]");
+
+		this.heavyHitterThreshold = heavyHitterThreshold;
+	}
+
 	@Property(preferred = true, input = true)
 	@Name(preposition = "by")
 	public void setGroupingKey(final int inputIndex, final EvaluationExpression keyExpression) {
@@ -233,6 +274,26 @@ public class Grouping extends CompositeOperator<Grouping> {
 				ExpressionUtil.replaceIndexAccessWithAggregation(resultProjection));
 	}
 
+	/**
+	 * Sets the number of partial groups that each heavy-hitter key is split into.<br/>
+	 * If the result projection is fully associative, the grouping keys that occur frequently are salted, such that
+	 * their records are partially aggregated on several reducers before the partial aggregates are merged in a second
+	 * grouping. Values below 2 disable the skew handling.<br/>
+	 * The skew handling is disabled by default, because the salted keys require an additional grouping by the
+	 * original key, which only pays off if some keys actually dominate the input.
+	 * 
+	 * @param skewFactor
+	 *        the skewFactor to set
+	 */
+	@Property
+	@Name(noun = "skew factor")
+	public void setSkewFactor(final int skewFactor) {
+		if (skewFactor < 0)
+			throw new IllegalArgumentException("skewFactor must not be negative");
+
+		this.skewFactor = skewFactor;
+	}
+
 	public Grouping withGroupingKey(final EvaluationExpression groupingKey) {
 		this.setDefaultGroupingKey(groupingKey);
 		return this;
@@ -270,11 +331,21 @@ public class Grouping extends CompositeOperator<Grouping> {
 		return this.self();
 	}
 
+	public Grouping withHeavyHitterThreshold(final double heavyHitterThreshold) {
+		this.setHeavyHitterThreshold(heavyHitterThreshold);
+		return this;
+	}
+
 	public Grouping withResultProjection(final EvaluationExpression resultProjection) {
 		this.setResultProjection(resultProjection);
 		return this;
 	}
 
+	public Grouping withSkewFactor(final int skewFactor) {
+		this.setSkewFactor(skewFactor);
+		return this;
+	}
+
 	private JsonStream createGrouping(final SopremoModule module) {
 		final EvaluationExpression resultProjection = this.resultProjection.clone().remove(new InputSelection(0));
 		final List<AggregationExpression> aggregations = resultProjection.findAll(AggregationExpression.class);
@@ -292,22 +363,36 @@ public class Grouping extends CompositeOperator<Grouping> {
 		aggregatedValues.add(this.getGroupingKey(0).clone().remove(new InputSelection(0)));
 		for (final AggregationExpression aggregationExpression : aggregations)
 			aggregatedValues.add(aggregationExpression.getInputExpression());
-		final Projection initialValues = new Projection().withResultProjection(aggregatedValues).
+		JsonStream initialValues = new Projection().withResultProjection(aggregatedValues).
 			withInputs(module.getInputs());
 
+		// salting is only safe if the order of the aggregated values does not matter
+		final boolean skewAware = this.skewFactor > 1 && this.innerGroupOrders.get(0).isEmpty();
+		if (skewAware)
+			// replace the key of heavy hitters with [key, salt] to spread them over several reducers
+			initialValues = new SaltHeavyHitters().
+				withSkewFactor(this.skewFactor).
+				withHeavyHitterThreshold(this.heavyHitterThreshold).
+				withInputs(initialValues);
+
 		// now we can create a combinable aggregation, that associatively aggregates the elements in the array
-		final ArrayCreation combinableAggregation = new ArrayCreation();
-		final BatchAggregationExpression bae = new BatchAggregationExpression();
-		combinableAggregation.add(bae.add(CoreFunctions.FIRST, new ArrayAccess(0)));
-		for (int index = 0, size = aggregations.size(); index < size; index++)
-			combinableAggregation.add(bae.add(aggregations.get(index).getAggregation(), new ArrayAccess(index + 1)));
-		final JsonStream combinableGrouping = new GroupProjection().
+		JsonStream combinableGrouping = new GroupProjection().
 			withCombinable(true).
-			withResultProjection(combinableAggregation).
+			withResultProjection(this.createCombinableAggregation(aggregations, new ArrayAccess(0))).
 			withKeyExpression(0, new ArrayAccess(0)).
 			withInnerGroupOrdering(0, this.innerGroupOrders.get(0)).
 			withInputs(initialValues);
 
+		if (skewAware)
+			// the partial aggregates of the salted keys are merged by the original key, which is only correct because
+			// all aggregations are associative
+			combinableGrouping = new GroupProjection().
+				withCombinable(true).
+				withResultProjection(this.createCombinableAggregation(aggregations,
+					makePath(new ArrayAccess(0), new ArrayAccess(0)))).
+				withKeyExpression(0, makePath(new ArrayAccess(0), new ArrayAccess(0))).
+				withInputs(combinableGrouping);
+
 		// and finally, we need to perform the actual project from the array to the desired output
 		// replace the aggregation expression with the corresponding array access
 		final EvaluationExpression finalProjection =
@@ -324,6 +409,46 @@ public class Grouping extends CompositeOperator<Grouping> {
 			withInputs(combinableGrouping);
 	}
 
+	/**
+	 * Tags each record with the index of its input and its grouping key, such that all inputs can be grouped with a
+	 * single shuffle of their union. The groups of the individual inputs are buffered in {@link SpillingStreamNode}s,
+	 * which are emitted as arrays if the result projection retains them.<br/>
+	 * The secondary sort of the reduce only orders each group by the input index, so that the records within an input
+	 * arrive in an arbitrary order. Hence, inner group orders are not supported.
+	 */
+	private JsonStream createNaryGrouping(final SopremoModule module) {
+		final int numInputs = this.getNumInputs();
+		for (int index = 0; index < numInputs; index++)
+			if (!this.getInnerGroupOrder(index).isEmpty())
+				throw new IllegalStateException("Inner group orders are not supported for more than two inputs");
+		final JsonStream[] taggedInputs = new JsonStream[numInputs];
+		for (int index = 0; index < numInputs; index++)
+			// input2 -> [2, key2, input2]
+			taggedInputs[index] = new Projection().
+				withResultProjection(new ArrayCreation(new ConstantExpression(index),
+					this.getGroupingKey(index).clone().remove(new InputSelection(index)), EvaluationExpression.VALUE)).
+				withInputs(module.getInput(index));
+
+		return new NaryCoGroupProjection().
+			withNumInputs(numInputs).
+			withResultProjection(this.resultProjection).
+			withInputs(new UnionAll().withInputs(taggedInputs));
+	}
+
+	/**
+	 * Creates an array that contains the first key and the associative aggregates of the arrays in a group, which
+	 * consist of the key followed by one slot for each aggregation.
+	 */
+	private ArrayCreation createCombinableAggregation(final List<AggregationExpression> aggregations,
+			final EvaluationExpression keyExpression) {
+		final ArrayCreation combinableAggregation = new ArrayCreation();
+		final BatchAggregationExpression bae = new BatchAggregationExpression();
+		combinableAggregation.add(bae.add(CoreFunctions.FIRST, keyExpression));
+		for (int index = 0, size = aggregations.size(); index < size; index++)
+			combinableAggregation.add(bae.add(aggregations.get(index).getAggregation(), new ArrayAccess(index + 1)));
+		return combinableAggregation;
+	}
+
 	@InputCardinality(min = 2, max = 2)
 	public static class CoGroupProjection extends ElementaryOperator<CoGroupProjection> {
 		public static class Implementation extends SopremoCoGroup {
@@ -339,6 +464,109 @@ public class Grouping extends CompositeOperator<Grouping> {
 		}
 	}
 
+	/**
+	 * Groups the union of several tagged inputs, in which each record has the form [input index, key, value], and
+	 * exposes one stream per input to the result projection. The reducer appends each record to the stream of the
+	 * input index in its first slot. The inner group order on that index is a secondary sort that lets the records of
+	 * one input arrive contiguously; it does not order the records within an input. Inner group orders of the
+	 * individual inputs are therefore not supported.
+	 */
+	@InputCardinality(1)
+	public static class NaryCoGroupProjection extends ElementaryOperator<NaryCoGroupProjection> {
+		private int numInputs = 2;
+
+		/**
+		 * Initializes NaryCoGroupProjection.
+		 */
+		public NaryCoGroupProjection() {
+			this.setKeyExpressions(0, new ArrayAccess(1));
+			this.setInnerGroupOrder(0, new OrderingExpression(Order.ASCENDING, new ArrayAccess(0)));
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!super.equals(obj))
+				return false;
+			final NaryCoGroupProjection other = (NaryCoGroupProjection) obj;
+			return this.numInputs == other.numInputs;
+		}
+
+		/**
+		 * Returns the number of tagged inputs.
+		 * 
+		 * @return the numInputs
+		 */
+		public int getNumInputs() {
+			return this.numInputs;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = super.hashCode();
+			result = prime * result + this.numInputs;
+			return result;
+		}
+
+		/**
+		 * Sets the number of tagged inputs to the specified value.
+		 * 
+		 * @param numInputs
+		 *        the numInputs to set
+		 */
+		public void setNumInputs(final int numInputs) {
+			if (numInputs < 1)
+				throw new IllegalArgumentException("numInputs must be positive");
+
+			this.numInputs = numInputs;
+		}
+
+		public NaryCoGroupProjection withNumInputs(final int numInputs) {
+			this.setNumInputs(numInputs);
+			return this;
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private int numInputs;
+
+			private transient IArrayNode<IStreamNode<IJsonNode>> streams;
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#open(eu.stratosphere.configuration.Configuration)
+			 */
+			@Override
+			public void open(final Configuration parameters) {
+				super.open(parameters);
+
+				// the inputs share the memory that would otherwise be used for a single materialized group
+				final long memoryLimit = this.getContext().getMaterializationMemoryLimit() / this.numInputs;
+				this.streams = new ArrayNode<IStreamNode<IJsonNode>>(this.numInputs);
+				for (int index = 0; index < this.numInputs; index++)
+					this.streams.add(new SpillingStreamNode<IJsonNode>(memoryLimit));
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#reduce(eu.stratosphere.sopremo.type.IStreamNode,
+			 * eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				for (final IStreamNode<IJsonNode> stream : this.streams)
+					stream.clear();
+				for (final IJsonNode value : values) {
+					final IArrayNode<?> taggedValue = (IArrayNode<?>) value;
+					final int inputIndex = ((INumericNode) taggedValue.get(0)).getIntValue();
+					((SpillingStreamNode<IJsonNode>) this.streams.get(inputIndex)).add(taggedValue.get(2));
+				}
+				out.collect(this.streams);
+			}
+		}
+	}
+
 	@InputCardinality(1)
 	public static class GroupProjection extends ElementaryOperator<GroupProjection> {
 		/*
@@ -352,4 +580,179 @@ public class Grouping extends CompositeOperator<Grouping> {
 			}
 		}
 	}
+
+	/**
+	 * Replaces the key in the first slot of each array with a pair of key and salt. The salt of rare keys is always 0,
+	 * while the records of heavy hitters are distributed round-robin over {@link #getSkewFactor()} salts.<br/>
+	 * The heavy hitters are detected on the fly with a Misra-Gries summary over the records that the respective task
+	 * has seen so far. Since the salted groups are merged again by the original key, it does not matter that the tasks
+	 * may come to different conclusions.
+	 */
+	@Internal
+	@InputCardinality(1)
+	public static class SaltHeavyHitters extends ElementaryOperator<SaltHeavyHitters> {
+		private int skewFactor = 2;
+
+		private double heavyHitterThreshold = 0.01;
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!super.equals(obj))
+				return false;
+			final SaltHeavyHitters other = (SaltHeavyHitters) obj;
+			return this.skewFactor == other.skewFactor && this.heavyHitterThreshold == other.heavyHitterThreshold;
+		}
+
+		/**
+		 * Returns the heavyHitterThreshold.
+		 * 
+		 * @return the heavyHitterThreshold
+		 */
+		public double getHeavyHitterThreshold() {
+			return this.heavyHitterThreshold;
+		}
+
+		/**
+		 * Returns the skewFactor.
+		 * 
+		 * @return the skewFactor
+		 */
+		public int getSkewFactor() {
+			return this.skewFactor;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = super.hashCode();
+			final long thresholdBits = Double.doubleToLongBits(this.heavyHitterThreshold);
+			result = prime * result + (int) (thresholdBits ^ thresholdBits >>> 32);
+			result = prime * result + this.skewFactor;
+			return result;
+		}
+
+		/**
+		 * Sets the heavyHitterThreshold to the specified value.
+		 * 
+		 * @param heavyHitterThreshold
+		 *        the heavyHitterThreshold to set
+		 */
+		public void setHeavyHitterThreshold(final double heavyHitterThreshold) {
+			if (heavyHitterThreshold <= 0 || heavyHitterThreshold > 1)
+				throw new IllegalArgumentException("heavyHitterThreshold must be in (0, 1]");
+
+			this.heavyHitterThreshold = heavyHitterThreshold;
+		}
+
+		/**
+		 * Sets the skewFactor to the specified value.
+		 * 
+		 * @param skewFactor
+		 *        the skewFactor to set
+		 */
+		public void setSkewFactor(final int skewFactor) {
+			if (skewFactor < 1)
+				throw new IllegalArgumentException("skewFactor must be positive");
+
+			this.skewFactor = skewFactor;
+		}
+
+		public SaltHeavyHitters withHeavyHitterThreshold(final double heavyHitterThreshold) {
+			this.setHeavyHitterThreshold(heavyHitterThreshold);
+			return this;
+		}
+
+		public SaltHeavyHitters withSkewFactor(final int skewFactor) {
+			this.setSkewFactor(skewFactor);
+			return this;
+		}
+
+		public static class Implementation extends SopremoMap {
+			private int skewFactor;
+
+			private double heavyHitterThreshold;
+
+			private transient Object2IntOpenHashMap<IJsonNode> counters;
+
+			private transient int capacity;
+
+			private transient long numRecords;
+
+			private transient int nextSalt;
+
+			private final transient IArrayNode<IJsonNode> saltedKey = new ArrayNode<IJsonNode>();
+
+			private final transient IntNode salt = new IntNode();
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoMap#open(eu.stratosphere.configuration.Configuration)
+			 */
+			@Override
+			public void open(final Configuration parameters) {
+				super.open(parameters);
+
+				// with k counters, the count of each key is underestimated by at most n / (k + 1)
+				// thus, each key with a frequency of at least threshold * n retains a count of threshold * n / 2
+				this.capacity = (int) Math.ceil(2 / this.heavyHitterThreshold);
+				this.counters = new Object2IntOpenHashMap<IJsonNode>(this.capacity + 1);
+				this.numRecords = 0;
+				// start with different salts on each task to balance the first records of a heavy hitter
+				this.nextSalt = this.getRuntimeContext().getIndexOfThisSubtask();
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoMap#map(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				@SuppressWarnings("unchecked")
+				final IArrayNode<IJsonNode> array = (IArrayNode<IJsonNode>) value;
+				final IJsonNode key = array.get(0);
+				final int count = this.count(key);
+
+				if (this.numRecords >= this.capacity && count >= this.heavyHitterThreshold * this.numRecords / 2)
+					this.salt.setValue(this.nextSalt++ % this.skewFactor);
+				else
+					this.salt.setValue(0);
+				this.saltedKey.clear();
+				this.saltedKey.add(key);
+				this.saltedKey.add(this.salt);
+				array.set(0, this.saltedKey);
+				out.collect(array);
+			}
+
+			/**
+			 * Adds the key to the Misra-Gries summary and returns the estimated count of the key.
+			 */
+			private int count(final IJsonNode key) {
+				this.numRecords++;
+				final int count = this.counters.getInt(key);
+				if (count > 0) {
+					this.counters.put(key, count + 1);
+					return count + 1;
+				}
+				if (this.counters.size() < this.capacity) {
+					this.counters.put(key.clone(), 1);
+					return 1;
+				}
+
+				// no free counter; decrement all counters instead of counting the new key
+				final ObjectIterator<Object2IntMap.Entry<IJsonNode>> iterator =
+					this.counters.object2IntEntrySet().fastIterator();
+				while (iterator.hasNext()) {
+					final Object2IntMap.Entry<IJsonNode> entry = iterator.next();
+					if (entry.getIntValue() == 1)
+						iterator.remove();
+					else
+						entry.setValue(entry.getIntValue() - 1);
+				}
+				return 0;
+			}
+		}
+	}
 }
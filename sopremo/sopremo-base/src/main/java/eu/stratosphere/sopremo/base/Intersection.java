@@ -1,13 +1,19 @@
 package eu.stratosphere.sopremo.base;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
+import eu.stratosphere.sopremo.base.Unique.LocalDeduplication;
+import eu.stratosphere.sopremo.base.join.BloomFilterReduction;
 import eu.stratosphere.sopremo.expressions.EvaluationExpression;
 import eu.stratosphere.sopremo.operator.CompositeOperator;
 import eu.stratosphere.sopremo.operator.ElementaryOperator;
 import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.JsonStream;
 import eu.stratosphere.sopremo.operator.Name;
 import eu.stratosphere.sopremo.operator.OutputCardinality;
+import eu.stratosphere.sopremo.operator.Property;
 import eu.stratosphere.sopremo.operator.SopremoModule;
 import eu.stratosphere.sopremo.pact.JsonCollector;
 import eu.stratosphere.sopremo.pact.SopremoReduce;
@@ -23,6 +29,8 @@ import eu.stratosphere.sopremo.type.IStreamNode;
 @InputCardinality(min = 1)
 @OutputCardinality(1)
 public class Intersection extends CompositeOperator<Intersection> {
+	private boolean bloomFilter;
+
 	/*
 	 * (non-Javadoc)
 	 * @see
@@ -31,10 +39,60 @@ public class Intersection extends CompositeOperator<Intersection> {
 	 */
 	@Override
 	public void addImplementation(final SopremoModule module) {
-		final UnionAll merged = new UnionAll().withInputs(module.getInputs());
+		// most duplicates within an input are dropped before they are shipped and counted as further occurrences
+		final List<JsonStream> inputs = new ArrayList<JsonStream>();
+		for (int index = 0; index < module.getNumInputs(); index++)
+			inputs.add(new LocalDeduplication().withInputs(module.getInput(index)));
+		// a value of the intersection occurs in all inputs, so each input can be filtered with another input
+		if (this.bloomFilter && inputs.size() > 1)
+			for (int index = 0; index < inputs.size(); index++)
+				inputs.set(index, new BloomFilterReduction().
+					withInputs(inputs.get(index), module.getInput(index == 0 ? 1 : 0)));
+		final UnionAll merged = new UnionAll().withInputs(inputs);
 		module.embed(new FilterLess().withThreshold(module.getNumInputs()).withInputs(merged));
 	}
 
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		return this.bloomFilter == ((Intersection) obj).bloomFilter;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + (this.bloomFilter ? 1231 : 1237);
+	}
+
+	/**
+	 * Returns whether the inputs are filtered with Bloom filters over other inputs.
+	 * 
+	 * @return whether Bloom filters are used
+	 */
+	public boolean isBloomFilter() {
+		return this.bloomFilter;
+	}
+
+	/**
+	 * Filters each input with a Bloom filter over the values of another input before the inputs are repartitioned.
+	 * The filters pay off if the intersection is considerably smaller than the inputs.
+	 * 
+	 * @param bloomFilter
+	 *        whether Bloom filters should be used
+	 */
+	@Property
+	@Name(noun = "bloom filter")
+	public void setBloomFilter(final boolean bloomFilter) {
+		this.bloomFilter = bloomFilter;
+	}
+
+	public Intersection withBloomFilter(final boolean bloomFilter) {
+		this.setBloomFilter(bloomFilter);
+		return this;
+	}
+
 	@InputCardinality(min = 1, max = 1)
 	public static class FilterLess extends ElementaryOperator<FilterLess> {
 		private int threshold;
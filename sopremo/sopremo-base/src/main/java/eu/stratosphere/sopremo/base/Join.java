@@ -10,14 +10,19 @@ import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap.Entry;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.base.Predicates;
 
+import eu.stratosphere.sopremo.base.join.BandJoin;
+import eu.stratosphere.sopremo.base.join.StarJoin;
 import eu.stratosphere.sopremo.base.join.ThetaJoin;
 import eu.stratosphere.sopremo.expressions.AggregationExpression;
 import eu.stratosphere.sopremo.expressions.AndExpression;
@@ -52,12 +57,21 @@ import eu.stratosphere.sopremo.rewrite.ReplaceInputSelectionWithArray;
  * Originally, for each input, the input is translated to an array, e.g. [null, record, null, ... null] for the second
  * source.<br>
  * Then TwoSourceJoins are successively executed to merge the arrays and fill the null values. Finally, a projection is
- * executed on the result array.
+ * executed on the result array.<br>
+ * Small inputs are only broadcasted instead of repartitioning the other input if they are given with
+ * {@link #setBroadcastSources(EvaluationExpression)} or if a {@link #setBroadcastThreshold(long) broadcast threshold}
+ * is set. By default, the physical plan does not depend on the sizes of the inputs.
  */
 @InputCardinality(min = 2)
 @OutputCardinality(1)
 @Name(verb = "join")
 public class Join extends CompositeOperator<Join> {
+	/**
+	 * The default maximum estimated size in bytes of an input that is broadcasted without an explicit hint, which
+	 * disables broadcasting based on the estimated sizes.
+	 */
+	public static final long DEFAULT_BROADCAST_THRESHOLD = 0;
+
 	private BooleanExpression joinCondition = new AndExpression();
 
 	private List<BinaryBooleanExpression> binaryConditions = new ArrayList<BinaryBooleanExpression>();
@@ -66,6 +80,16 @@ public class Join extends CompositeOperator<Join> {
 
 	private final IntSet outerJoinSources = new IntOpenHashSet();
 
+	private double bandWidth;
+
+	private final IntSet bloomFilterSources = new IntOpenHashSet();
+
+	private final IntSet broadcastSources = new IntOpenHashSet();
+
+	private long broadcastThreshold = DEFAULT_BROADCAST_THRESHOLD;
+
+	private int skewFactor = 0;
+
 	/*
 	 * (non-Javadoc)
 	 * @see eu.stratosphere.sopremo.operator.CompositeOperator#asModule(eu.stratosphere.sopremo.EvaluationContext)
@@ -83,6 +107,9 @@ public class Join extends CompositeOperator<Join> {
 			// only two way join
 			final TwoSourceJoin join = new TwoSourceJoin().
 				withOuterJoinIndices(this.outerJoinSources.toIntArray()).
+				withBroadcastInput(this.chooseBroadcastInput(0, 1)).
+				withBloomFilterInput(this.chooseBloomFilterInput(0, 1)).
+				withSkewFactor(this.skewFactor).
 				withInputs(module.getInputs()).
 				withCondition(this.binaryConditions.get(0)).
 				withResultProjection(this.getResultProjection());
@@ -90,10 +117,22 @@ public class Join extends CompositeOperator<Join> {
 			break;
 
 		default:
+			final StarJoin starJoin = this.createStarJoin();
+			if (starJoin != null) {
+				final EvaluationExpression starProjection = this.getResultProjection();
+				starProjection.replace(Predicates.instanceOf(InputSelection.class),
+					new ReplaceInputSelectionWithArray());
+				module.getOutput(0).setInput(0,
+					starJoin.withInputs(module.getInputs()).withResultProjection(starProjection));
+				break;
+			}
+
+			// pairs of comparisons that bound a value from both sides are joined together as a band
+			final Map<BinaryBooleanExpression, ComparativeExpression> bands = this.findBands();
 			final List<BinaryBooleanExpression> minimalSpanningTree =
-				this.findMinimalSpanningTree(this.binaryConditions);
+				this.findMinimalSpanningTree(this.binaryConditions, bands);
 
-			final List<TwoSourceJoin> joins = this.getInitialJoinOrder(module, minimalSpanningTree);
+			final List<TwoSourceJoin> joins = this.getInitialJoinOrder(module, minimalSpanningTree, bands);
 
 			// wrap each input in an array that contains the element at the position of the input
 			// input2 -> [null, null, input2, ...]
@@ -101,6 +140,7 @@ public class Join extends CompositeOperator<Join> {
 			final JsonStream[] inputs = new JsonStream[numInputs];
 			for (int index = 0; index < numInputs; index++)
 				inputs[index] = SopremoOperatorUtil.positionEncode(module.getInput(index), index, numInputs);
+			final JsonStream[] encodedInputs = Arrays.copyOf(inputs, numInputs);
 
 			// rewire individual joins
 			// the input of each join is either the module input or the result of a previous join
@@ -112,6 +152,9 @@ public class Join extends CompositeOperator<Join> {
 				for (int index = 0; index < 2; index++) {
 					final int inputIndex = moduleInput.indexOf(operatorInputs.get(index).getSource().getOperator());
 					actualInputs[index] = inputs[inputIndex];
+					// only original inputs are known to be small enough for broadcasting
+					if (twoSourceJoin.getBroadcastInput() == index && actualInputs[index] != encodedInputs[inputIndex])
+						twoSourceJoin.setBroadcastInput(-1);
 
 					// we keep inputs up-to-date, so that it points either to the original input or the latest join that
 					// includes the source
@@ -125,12 +168,19 @@ public class Join extends CompositeOperator<Join> {
 
 			JsonStream lastOperator = inputs[0];
 
+			// the second bound of a band is already applied by the join of the first bound
+			final List<BinaryBooleanExpression> appliedConditions =
+				new ArrayList<BinaryBooleanExpression>(minimalSpanningTree);
+			for (final BinaryBooleanExpression edge : minimalSpanningTree)
+				if (bands.containsKey(edge))
+					appliedConditions.add(bands.get(edge));
+
 			// check if any cycles exist in the predicates, if so create post-selection with left predicates not in the
 			// MST
-			if (minimalSpanningTree.size() != this.binaryConditions.size()) {
+			if (appliedConditions.size() != this.binaryConditions.size()) {
 				final List<BinaryBooleanExpression> leftExpressions = new ArrayList<BinaryBooleanExpression>();
 				for (final BinaryBooleanExpression leftExpressionCandidate : this.binaryConditions)
-					if (!minimalSpanningTree.contains(leftExpressionCandidate)) {
+					if (!appliedConditions.contains(leftExpressionCandidate)) {
 						final BinaryBooleanExpression adjustedExpression =
 							(BinaryBooleanExpression) leftExpressionCandidate
 								.clone();
@@ -168,11 +218,43 @@ public class Join extends CompositeOperator<Join> {
 		if (this.getClass() != obj.getClass())
 			return false;
 		return super.equals(obj) && this.joinCondition.equals(((Join) obj).joinCondition)
+			&& Double.doubleToLongBits(this.bandWidth) == Double.doubleToLongBits(((Join) obj).bandWidth)
+			&& this.bloomFilterSources.equals(((Join) obj).bloomFilterSources)
+			&& this.broadcastSources.equals(((Join) obj).broadcastSources)
+			&& this.broadcastThreshold == ((Join) obj).broadcastThreshold
 			&& this.outerJoinSources.equals(((Join) obj).outerJoinSources)
+			&& this.skewFactor == ((Join) obj).skewFactor
 			&& this.binaryConditions.equals(((Join) obj).binaryConditions)
 			&& this.resultProjection.equals(((Join) obj).resultProjection);
 	}
 
+	/**
+	 * Returns the width of the buckets that are used to join bands or 0 if the width is derived from the join
+	 * condition.
+	 * 
+	 * @return the band width
+	 */
+	public double getBandWidth() {
+		return this.bandWidth;
+	}
+
+	public EvaluationExpression getBloomFilterSources() {
+		return this.toInputSelections(this.bloomFilterSources);
+	}
+
+	public EvaluationExpression getBroadcastSources() {
+		return this.toInputSelections(this.broadcastSources);
+	}
+
+	/**
+	 * Returns the maximum estimated size in bytes of an input that is broadcasted without an explicit hint.
+	 * 
+	 * @return the broadcast threshold
+	 */
+	public long getBroadcastThreshold() {
+		return this.broadcastThreshold;
+	}
+
 	public BooleanExpression getJoinCondition() {
 		return this.joinCondition;
 	}
@@ -182,30 +264,114 @@ public class Join extends CompositeOperator<Join> {
 	}
 
 	public EvaluationExpression getOuterJoinSources() {
-		final EvaluationExpression[] expressions = new EvaluationExpression[this.outerJoinSources.size()];
-		final IntIterator iterator = this.outerJoinSources.iterator();
-		for (int index = 0; iterator.hasNext(); index++) {
-			final int inputIndex = iterator.nextInt();
-			expressions[index] = new InputSelection(inputIndex);
-		}
-		return new ArrayCreation(expressions);
+		return this.toInputSelections(this.outerJoinSources);
 	}
 
 	public EvaluationExpression getResultProjection() {
 		return this.resultProjection;
 	}
 
+	/**
+	 * Returns the number of tasks that join the values of a frequent join key.
+	 * 
+	 * @return the skew factor
+	 */
+	public int getSkewFactor() {
+		return this.skewFactor;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 37;
 		int result = super.hashCode();
+		final long bandWidthBits = Double.doubleToLongBits(this.bandWidth);
+		result = prime * result + (int) (bandWidthBits ^ bandWidthBits >>> 32);
+		result = prime * result + this.bloomFilterSources.hashCode();
+		result = prime * result + this.broadcastSources.hashCode();
+		result = prime * result + (int) (this.broadcastThreshold ^ this.broadcastThreshold >>> 32);
 		result = prime * result + this.joinCondition.hashCode();
 		result = prime * result + this.outerJoinSources.hashCode();
 		result = prime * result + this.binaryConditions.hashCode();
 		result = prime * result + this.resultProjection.hashCode();
+		result = prime * result + this.skewFactor;
 		return result;
 	}
 
+	/**
+	 * Sets the width of the buckets that are used to join bands such as <code>$a.ts &gt;= $b.start and $a.ts &lt;=
+	 * $b.end</code>. The width should be in the order of the typical length of the intervals. If the width is 0, it is
+	 * derived from bounds with constant offsets such as <code>$a.x &gt; $b.x - 5 and $a.x &lt; $b.x + 5</code>; bands
+	 * without such offsets use the average length of their intervals, which is computed in an additional pass.
+	 * 
+	 * @param bandWidth
+	 *        the band width
+	 */
+	@Property
+	@Name(noun = "band width")
+	public void setBandWidth(final double bandWidth) {
+		if (bandWidth < 0)
+			throw new IllegalArgumentException("bandWidth must not be negative");
+
+		this.bandWidth = bandWidth;
+	}
+
+	/**
+	 * Builds Bloom filters over the join keys of the given inputs, which drop the values of the inputs that they are
+	 * joined with if the values definitely have no partner. Thus, selective joins with a small input do not repartition
+	 * the values of the large input that would be discarded by the join anyway.
+	 * 
+	 * @param bloomFilterSources
+	 *        an {@link InputSelection} or an {@link ArrayCreation} of InputSelections
+	 */
+	@Property
+	@Name(noun = "bloom filter")
+	public void setBloomFilterSources(final EvaluationExpression bloomFilterSources) {
+		if (bloomFilterSources == null)
+			throw new NullPointerException("bloomFilterSources must not be null");
+
+		this.bloomFilterSources.clear();
+		this.bloomFilterSources.addAll(this.toInputIndices(bloomFilterSources));
+	}
+
+	/**
+	 * Broadcasts the given small inputs, e.g., dimension tables, to all tasks of the inputs that they are joined with
+	 * instead of repartitioning both inputs. Without this hint, inputs are only broadcasted if a positive
+	 * {@link #setBroadcastThreshold(long) broadcast threshold} is set and their estimated size is below it.
+	 * 
+	 * @param broadcastSources
+	 *        an {@link InputSelection} or an {@link ArrayCreation} of InputSelections
+	 */
+	@Property
+	@Name(verb = "broadcast")
+	public void setBroadcastSources(final EvaluationExpression broadcastSources) {
+		if (broadcastSources == null)
+			throw new NullPointerException("broadcastSources must not be null");
+
+		this.broadcastSources.clear();
+		this.broadcastSources.addAll(this.toInputIndices(broadcastSources));
+	}
+
+	/**
+	 * Sets the maximum estimated size in bytes of an input that is broadcasted without an explicit hint. The default is
+	 * {@link #DEFAULT_BROADCAST_THRESHOLD}, i.e., 0, which disables broadcasting based on the estimated sizes.<br>
+	 * The sizes are only a heuristic of {@link SopremoOperatorUtil#estimateSize(JsonStream)}:
+	 * the size of an input that is directly read from files is the length of the files, the size of adhoc values is
+	 * the length of their textual representation, and all other inputs are never broadcasted. The deserialized records
+	 * may be considerably larger than their files.<br>
+	 * A broadcasted input is collected by a single task and held in the memory of every task of the other input, so
+	 * the threshold should stay well below the memory of a task.
+	 * 
+	 * @param broadcastThreshold
+	 *        the broadcast threshold
+	 */
+	@Property(hidden = true)
+	public void setBroadcastThreshold(final long broadcastThreshold) {
+		if (broadcastThreshold < 0)
+			throw new IllegalArgumentException("broadcastThreshold must not be negative");
+
+		this.broadcastThreshold = broadcastThreshold;
+	}
+
 	@Property
 	@Name(preposition = "where")
 	public void setJoinCondition(final BooleanExpression joinCondition) {
@@ -235,17 +401,8 @@ public class Join extends CompositeOperator<Join> {
 	public void setOuterJoinSources(final EvaluationExpression outerJoinSources) {
 		if (outerJoinSources == null)
 			throw new NullPointerException("outerJoinSources must not be null");
-		final Iterable<? extends EvaluationExpression> expressions;
-		if (outerJoinSources instanceof InputSelection)
-			expressions = Collections.singleton(outerJoinSources);
-		else if (outerJoinSources instanceof ArrayCreation)
-			expressions = outerJoinSources;
-		else
-			throw new IllegalArgumentException(String.format("Cannot interpret %s", outerJoinSources));
-
 		this.outerJoinSources.clear();
-		for (final EvaluationExpression expression : expressions)
-			this.outerJoinSources.add(((InputSelection) expression).getIndex());
+		this.outerJoinSources.addAll(this.toInputIndices(outerJoinSources));
 	}
 
 	@Property
@@ -257,6 +414,24 @@ public class Join extends CompositeOperator<Join> {
 		this.resultProjection = resultProjection;
 	}
 
+	/**
+	 * Sets the number of tasks that join the values of a frequent join key.<br/>
+	 * The keys of equi-joins are sampled, and the values of keys that occur in a large fraction of one input are
+	 * spread over several tasks, while their partners in the other input are replicated to each of these tasks. Values
+	 * below 2 disable the skew handling.
+	 * 
+	 * @param skewFactor
+	 *        the skew factor
+	 */
+	@Property
+	@Name(noun = "skew factor")
+	public void setSkewFactor(final int skewFactor) {
+		if (skewFactor < 0)
+			throw new IllegalArgumentException("skewFactor must not be negative");
+
+		this.skewFactor = skewFactor;
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder builder = new StringBuilder(this.getName());
@@ -266,6 +441,26 @@ public class Join extends CompositeOperator<Join> {
 		return builder.toString();
 	}
 
+	public Join withBandWidth(final double bandWidth) {
+		this.setBandWidth(bandWidth);
+		return this;
+	}
+
+	public Join withBloomFilterSources(final EvaluationExpression bloomFilterSources) {
+		this.setBloomFilterSources(bloomFilterSources);
+		return this;
+	}
+
+	public Join withBroadcastSources(final EvaluationExpression broadcastSources) {
+		this.setBroadcastSources(broadcastSources);
+		return this;
+	}
+
+	public Join withBroadcastThreshold(final long broadcastThreshold) {
+		this.setBroadcastThreshold(broadcastThreshold);
+		return this;
+	}
+
 	public Join withJoinCondition(final BooleanExpression joinCondition) {
 		this.setJoinCondition(joinCondition);
 		return this;
@@ -286,6 +481,11 @@ public class Join extends CompositeOperator<Join> {
 		return this;
 	}
 
+	public Join withSkewFactor(final int skewFactor) {
+		this.setSkewFactor(skewFactor);
+		return this;
+	}
+
 	private void addBinaryExpressions(final BooleanExpression joinCondition,
 			final List<BinaryBooleanExpression> expressions) {
 		if (joinCondition instanceof BinaryBooleanExpression)
@@ -297,6 +497,163 @@ public class Join extends CompositeOperator<Join> {
 			throw new IllegalArgumentException("Cannot handle expression " + joinCondition);
 	}
 
+	/**
+	 * Pairs the comparisons between the same two inputs that bound a value of one input from both sides.
+	 * 
+	 * @return the second bound of each band indexed by the first bound
+	 */
+	private Map<BinaryBooleanExpression, ComparativeExpression> findBands() {
+		final Map<BinaryBooleanExpression, ComparativeExpression> bands =
+			new HashMap<BinaryBooleanExpression, ComparativeExpression>();
+		for (int index1 = 0; index1 < this.binaryConditions.size(); index1++) {
+			final BinaryBooleanExpression condition1 = this.binaryConditions.get(index1);
+			if (!(condition1 instanceof ComparativeExpression) || bands.containsValue(condition1))
+				continue;
+
+			for (int index2 = index1 + 1; index2 < this.binaryConditions.size(); index2++) {
+				final BinaryBooleanExpression condition2 = this.binaryConditions.get(index2);
+				if (!(condition2 instanceof ComparativeExpression) || bands.containsValue(condition2) ||
+					!this.connectSameInputs(condition1, condition2))
+					continue;
+
+				if (BandJoin.asBand((ComparativeExpression) condition1, (ComparativeExpression) condition2) != null) {
+					bands.put(condition1, (ComparativeExpression) condition2);
+					break;
+				}
+			}
+		}
+		return bands;
+	}
+
+	/**
+	 * Creates a {@link StarJoin} if all conditions are equalities between one fact input and small dimension inputs
+	 * that each occur in exactly one condition. Dimensions can only be broadcasted if their records do not need to be
+	 * preserved. Since all dimensions are collected by a single task, the star join is only chosen if all dimensions
+	 * are given as broadcast sources or if a positive broadcast threshold is set and the summed estimated size of the
+	 * dimensions does not exceed it; otherwise, the dimensions are joined with pairwise joins.
+	 * 
+	 * @return the star join or null if the join is not a star join over small dimensions
+	 */
+	private StarJoin createStarJoin() {
+		final int numInputs = this.getNumInputs();
+		if (this.binaryConditions.size() != numInputs - 1)
+			return null;
+		// the star join is opt-in as the estimated sizes are only a heuristic
+		if (this.broadcastSources.isEmpty() && this.broadcastThreshold == 0)
+			return null;
+
+		final int[] occurrences = new int[numInputs];
+		for (final BinaryBooleanExpression condition : this.binaryConditions) {
+			if (!(condition instanceof ComparativeExpression) ||
+				!((ComparativeExpression) condition).getBinaryOperator().equals(BinaryOperator.EQUAL))
+				return null;
+			occurrences[condition.getExpr1().findFirst(InputSelection.class).getIndex()]++;
+			occurrences[condition.getExpr2().findFirst(InputSelection.class).getIndex()]++;
+		}
+
+		int factInput = -1;
+		long dimensionSize = 0;
+		for (int index = 0; index < numInputs; index++)
+			if (occurrences[index] == numInputs - 1)
+				factInput = index;
+			else if (occurrences[index] != 1 || this.outerJoinSources.contains(index) ||
+				!this.isBroadcastableDimension(index))
+				return null;
+			else if (this.broadcastSources.isEmpty())
+				dimensionSize += this.getBroadcastableSize(index);
+		// all dimensions are collected by a single task into one record, so they have to be small together
+		if (factInput == -1 || dimensionSize > this.broadcastThreshold)
+			return null;
+
+		final StarJoin starJoin = new StarJoin().withFactInput(factInput);
+		final boolean outer = this.outerJoinSources.contains(factInput);
+		for (final BinaryBooleanExpression condition : this.binaryConditions) {
+			EvaluationExpression factKey = condition.getExpr1(), dimensionKey = condition.getExpr2();
+			if (dimensionKey.findFirst(InputSelection.class).getIndex() == factInput) {
+				factKey = condition.getExpr2();
+				dimensionKey = condition.getExpr1();
+			}
+			starJoin.setDimension(dimensionKey.findFirst(InputSelection.class).getIndex(),
+				factKey.clone().remove(InputSelection.class), dimensionKey.clone().remove(InputSelection.class), outer);
+		}
+		return starJoin;
+	}
+
+	private boolean isBroadcastableDimension(final int inputIndex) {
+		if (!this.broadcastSources.isEmpty())
+			return this.broadcastSources.contains(inputIndex);
+		return this.getBroadcastableSize(inputIndex) != -1;
+	}
+
+	/**
+	 * Chooses which of the two given inputs should build a Bloom filter for the other input.
+	 * 
+	 * @return 0 for the first input, 1 for the second input, or -1 if no input should be filtered
+	 */
+	private int chooseBloomFilterInput(final int firstIndex, final int secondIndex) {
+		if (this.bloomFilterSources.contains(secondIndex))
+			return 1;
+		return this.bloomFilterSources.contains(firstIndex) ? 0 : -1;
+	}
+
+	/**
+	 * Chooses which of the two given inputs should be broadcasted, preferring explicit hints over estimated sizes.
+	 * 
+	 * @return 0 for the first input, 1 for the second input, or -1 if no input should be broadcasted
+	 */
+	private int chooseBroadcastInput(final int firstIndex, final int secondIndex) {
+		if (!this.broadcastSources.isEmpty()) {
+			if (this.broadcastSources.contains(secondIndex))
+				return 1;
+			return this.broadcastSources.contains(firstIndex) ? 0 : -1;
+		}
+
+		final long firstSize = this.getBroadcastableSize(firstIndex);
+		final long secondSize = this.getBroadcastableSize(secondIndex);
+		if (secondSize != -1 && (firstSize == -1 || secondSize <= firstSize))
+			return 1;
+		return firstSize != -1 ? 0 : -1;
+	}
+
+	private long getBroadcastableSize(final int inputIndex) {
+		if (this.broadcastThreshold == 0)
+			return -1;
+		final long size = SopremoOperatorUtil.estimateSize(this.getInput(inputIndex));
+		return size <= this.broadcastThreshold ? size : -1;
+	}
+
+	private IntList toInputIndices(final EvaluationExpression inputSelections) {
+		final Iterable<? extends EvaluationExpression> expressions;
+		if (inputSelections instanceof InputSelection)
+			expressions = Collections.singleton(inputSelections);
+		else if (inputSelections instanceof ArrayCreation)
+			expressions = inputSelections;
+		else
+			throw new IllegalArgumentException(String.format("Cannot interpret %s", inputSelections));
+
+		final IntList indices = new IntArrayList();
+		for (final EvaluationExpression expression : expressions)
+			indices.add(((InputSelection) expression).getIndex());
+		return indices;
+	}
+
+	private EvaluationExpression toInputSelections(final IntSet inputIndices) {
+		final EvaluationExpression[] expressions = new EvaluationExpression[inputIndices.size()];
+		final IntIterator iterator = inputIndices.iterator();
+		for (int index = 0; iterator.hasNext(); index++)
+			expressions[index] = new InputSelection(iterator.nextInt());
+		return new ArrayCreation(expressions);
+	}
+
+	private boolean connectSameInputs(final BinaryBooleanExpression condition1,
+			final BinaryBooleanExpression condition2) {
+		final int vertex11 = condition1.getExpr1().findFirst(InputSelection.class).getIndex();
+		final int vertex12 = condition1.getExpr2().findFirst(InputSelection.class).getIndex();
+		final int vertex21 = condition2.getExpr1().findFirst(InputSelection.class).getIndex();
+		final int vertex22 = condition2.getExpr2().findFirst(InputSelection.class).getIndex();
+		return vertex11 == vertex21 && vertex12 == vertex22 || vertex11 == vertex22 && vertex12 == vertex21;
+	}
+
 	private boolean currentEdgeProducesCycleInMST(final BinaryBooleanExpression currentEdge,
 			final BitSet remainingVertices) {
 		final int vertex1 = currentEdge.getExpr1().findFirst(InputSelection.class).getIndex();
@@ -321,17 +678,20 @@ public class Join extends CompositeOperator<Join> {
 	 * Finds the minimal spanning tree over a graph of Join predicates based on the Kruskal's algorithm.
 	 * 
 	 * @param someBinaryConditions
+	 * @param bands
+	 *        the second bound of each band indexed by the first bound
 	 * @return the minimal spanning tree over the input graph of expressions
 	 */
 	private List<BinaryBooleanExpression> findMinimalSpanningTree(
-			final List<BinaryBooleanExpression> someBinaryConditions) {
+			final List<BinaryBooleanExpression> someBinaryConditions,
+			final Map<BinaryBooleanExpression, ComparativeExpression> bands) {
 
 		final List<BinaryBooleanExpression> minimalSpanningTree = new ArrayList<BinaryBooleanExpression>();
 
 		final BitSet remainingVertices = new BitSet();
 		remainingVertices.set(0, this.getNumInputs());
 		final LinkedList<Object2IntMap.Entry<BinaryBooleanExpression>> edgesWithWeight =
-			this.weightEdges(someBinaryConditions);
+			this.weightEdges(someBinaryConditions, bands);
 		this.sortEdgesByWeight(edgesWithWeight);
 
 		while (!edgesWithWeight.isEmpty()) {
@@ -342,28 +702,81 @@ public class Join extends CompositeOperator<Join> {
 		return minimalSpanningTree;
 	}
 
+	/**
+	 * Creates the TwoSourceJoins for the edges of the minimal spanning tree in the order of minimal estimated costs.
+	 */
 	private List<TwoSourceJoin> getInitialJoinOrder(final SopremoModule module,
-			final List<BinaryBooleanExpression> minimalSpanningTree) {
+			final List<BinaryBooleanExpression> minimalSpanningTree,
+			final Map<BinaryBooleanExpression, ComparativeExpression> bands) {
+		final double[] cardinalities = this.estimateCardinalities();
+		final JoinOrdering<BinaryBooleanExpression> ordering =
+			new JoinOrdering<BinaryBooleanExpression>(cardinalities);
+		for (final BinaryBooleanExpression expression : minimalSpanningTree) {
+			final int vertex1 = expression.getExpr1().findFirst(InputSelection.class).getIndex();
+			final int vertex2 = expression.getExpr2().findFirst(InputSelection.class).getIndex();
+			final int broadcastInput = this.chooseBroadcastInput(vertex1, vertex2);
+			ordering.addEdge(expression, vertex1, vertex2,
+				this.estimateSelectivity(expression, bands.containsKey(expression), cardinalities[vertex1],
+					cardinalities[vertex2]),
+				broadcastInput == -1 ? -1 : broadcastInput == 0 ? vertex1 : vertex2);
+		}
+
 		final List<TwoSourceJoin> joins = new ArrayList<TwoSourceJoin>();
-		for (final BinaryBooleanExpression expression : minimalSpanningTree)
-			joins.add(this.getTwoSourceJoinForExpression(expression, module));
-		// TODO: add some kind of optimization?
+		for (final BinaryBooleanExpression expression : ordering.getOrder())
+			joins.add(this.getTwoSourceJoinForExpression(expression, bands.get(expression), module));
 		return joins;
 	}
 
+	/**
+	 * Estimates the cardinality of each input with the size of its data. Inputs of unknown size are assumed to be as
+	 * large as the average known input.
+	 */
+	private double[] estimateCardinalities() {
+		final double[] cardinalities = new double[this.getNumInputs()];
+		double knownSizes = 0;
+		int numKnownSizes = 0;
+		for (int index = 0; index < cardinalities.length; index++) {
+			cardinalities[index] = SopremoOperatorUtil.estimateSize(this.getInput(index));
+			if (cardinalities[index] > 0) {
+				knownSizes += cardinalities[index];
+				numKnownSizes++;
+			}
+		}
+
+		final double defaultCardinality = numKnownSizes == 0 ? 1 : knownSizes / numKnownSizes;
+		for (int index = 0; index < cardinalities.length; index++)
+			if (cardinalities[index] <= 0)
+				cardinalities[index] = defaultCardinality;
+		return cardinalities;
+	}
+
+	/**
+	 * Estimates the fraction of the cross product of both inputs that satisfies the condition. Without statistics on
+	 * the join keys, an equi-join is assumed to join a foreign key with a key, such that each record of the larger
+	 * input finds one partner, and a semi- or anti-join is assumed to retain half of the records.
+	 */
+	private double estimateSelectivity(final BinaryBooleanExpression condition, final boolean band,
+			final double cardinality1, final double cardinality2) {
+		if (condition instanceof ElementInSetExpression)
+			return 0.5 / cardinality2;
+		if (((ComparativeExpression) condition).getBinaryOperator().equals(BinaryOperator.EQUAL))
+			return 1 / Math.min(cardinality1, cardinality2);
+		// the bounds of a band usually retain a small fraction, a single inequality a third of the cross product
+		return band ? 0.01 : 1.0 / 3;
+	}
+
 	/**
 	 * Create a TwoSourceJoin that performs the join on the given condition.<br>
 	 * Adjusts the expression to the position-encoding data schema.
 	 */
 	private TwoSourceJoin getTwoSourceJoinForExpression(final BinaryBooleanExpression binaryCondition,
-			final SopremoModule module) {
+			final ComparativeExpression secondBound, final SopremoModule module) {
 		final IntList originalIndices = new IntArrayList();
 
 		final BinaryBooleanExpression adjustedExpression = (BinaryBooleanExpression) binaryCondition.clone();
 		// change indices and emulate old behavior with array access
 		// in1.fk == in3.key -> in0[1].fk == in1[3].key
-		adjustedExpression.replace(Predicates.instanceOf(InputSelection.class),
-			new TransformFunction() {
+		final TransformFunction adjustInputSelection = new TransformFunction() {
 				@Override
 				public EvaluationExpression apply(final EvaluationExpression argument) {
 					final InputSelection inputSelection = (InputSelection) argument;
@@ -375,7 +788,8 @@ public class Join extends CompositeOperator<Join> {
 					}
 					return ExpressionUtil.makePath(new InputSelection(newIndex), new ArrayAccess(originalIndex));
 				}
-			});
+			};
+		adjustedExpression.replace(Predicates.instanceOf(InputSelection.class), adjustInputSelection);
 		if (originalIndices.size() != 2)
 			throw new IllegalArgumentException(String.format("Condition must refer to exactly two sources: %s",
 				binaryCondition));
@@ -388,9 +802,18 @@ public class Join extends CompositeOperator<Join> {
 		if (this.outerJoinSources.contains(secondIndex))
 			outerJoinIndices.add(1);
 
-		return new TwoSourceJoin().withOuterJoinIndices(outerJoinIndices.toIntArray()).
+		final TwoSourceJoin join = new TwoSourceJoin().withOuterJoinIndices(outerJoinIndices.toIntArray()).
+			withBroadcastInput(this.chooseBroadcastInput(firstIndex, secondIndex)).
+			withBloomFilterInput(this.chooseBloomFilterInput(firstIndex, secondIndex)).
+			withSkewFactor(this.skewFactor).
 			withInputs(module.getInput(firstIndex), module.getInput(secondIndex)).
 			withCondition(adjustedExpression);
+		if (secondBound != null) {
+			final ComparativeExpression adjustedBound = (ComparativeExpression) secondBound.clone();
+			adjustedBound.replace(Predicates.instanceOf(InputSelection.class), adjustInputSelection);
+			join.setBand(adjustedBound, this.bandWidth);
+		}
+		return join;
 	}
 
 	private void sortEdgesByWeight(final List<Object2IntMap.Entry<BinaryBooleanExpression>> edgesWithWeight) {
@@ -407,7 +830,8 @@ public class Join extends CompositeOperator<Join> {
 	}
 
 	private LinkedList<Object2IntMap.Entry<BinaryBooleanExpression>> weightEdges(
-			final List<BinaryBooleanExpression> someBinaryConditions) {
+			final List<BinaryBooleanExpression> someBinaryConditions,
+			final Map<BinaryBooleanExpression, ComparativeExpression> bands) {
 		final LinkedList<Object2IntMap.Entry<BinaryBooleanExpression>> edgesWithWeight =
 			new LinkedList<Object2IntMap.Entry<BinaryBooleanExpression>>();
 		for (final BinaryBooleanExpression expression : someBinaryConditions) {
@@ -417,6 +841,8 @@ public class Join extends CompositeOperator<Join> {
 				weight = 5;
 			else if (((ComparativeExpression) expression).getBinaryOperator().equals(BinaryOperator.EQUAL))
 				weight = 1;
+			else if (bands.containsKey(expression))
+				weight = 7;
 			else
 				weight = 10;
 
@@ -0,0 +1,230 @@
+package eu.stratosphere.sopremo.base;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Orders the edges of a join tree, such that the estimated costs of the resulting sequence of two-way joins are
+ * minimal.<br>
+ * The costs of a join are the estimated size of its result and the size of the data that needs to be shipped to
+ * execute it: a join that broadcasts an original input ships only that input, all other joins repartition both
+ * inputs.<br>
+ * For up to {@link #MAX_EXHAUSTIVE_INPUTS} inputs, all bushy join trees are enumerated with dynamic programming over
+ * the connected subsets of inputs. For more inputs, the join with the smallest costs is greedily chosen next.
+ *
+ * @param <E>
+ *        the type of the edges
+ */
+class JoinOrdering<E> {
+	/**
+	 * The maximum number of inputs that are ordered exhaustively.
+	 */
+	static final int MAX_EXHAUSTIVE_INPUTS = 10;
+
+	private final double[] cardinalities;
+
+	private final List<Edge<E>> edges = new ArrayList<Edge<E>>();
+
+	/**
+	 * Initializes JoinOrdering with the estimated cardinalities of the inputs.
+	 *
+	 * @param cardinalities
+	 *        the estimated cardinality of each input
+	 */
+	JoinOrdering(final double[] cardinalities) {
+		this.cardinalities = cardinalities;
+	}
+
+	/**
+	 * Adds an edge of the join tree.
+	 *
+	 * @param edge
+	 *        the edge that is returned in the ordered list
+	 * @param vertex1
+	 *        the index of the first input
+	 * @param vertex2
+	 *        the index of the second input
+	 * @param selectivity
+	 *        the fraction of the cross product of both inputs that satisfies the join condition
+	 * @param broadcastVertex
+	 *        the index of the input that can be broadcasted or -1
+	 */
+	void addEdge(final E edge, final int vertex1, final int vertex2, final double selectivity,
+			final int broadcastVertex) {
+		this.edges.add(new Edge<E>(edge, vertex1, vertex2, selectivity, broadcastVertex));
+	}
+
+	/**
+	 * Returns the edges in the order in which the joins should be executed.
+	 *
+	 * @return the ordered edges
+	 */
+	List<E> getOrder() {
+		if (this.cardinalities.length <= MAX_EXHAUSTIVE_INPUTS) {
+			final List<E> order = this.orderExhaustively();
+			if (order != null)
+				return order;
+		}
+		return this.orderGreedily();
+	}
+
+	private double getShippingCosts(final Edge<E> edge, final double cardinality1, final boolean original1,
+			final double cardinality2, final boolean original2) {
+		if (edge.broadcastVertex == edge.vertex1 && original1)
+			return cardinality1;
+		if (edge.broadcastVertex == edge.vertex2 && original2)
+			return cardinality2;
+		return cardinality1 + cardinality2;
+	}
+
+	/**
+	 * Enumerates all splits of connected subsets along one of their edges. Returns null if the edges do not connect
+	 * all inputs.
+	 */
+	private List<E> orderExhaustively() {
+		final int numSubsets = 1 << this.cardinalities.length;
+		final double[] cardinality = new double[numSubsets];
+		final double[] costs = new double[numSubsets];
+		final int[] bestEdge = new int[numSubsets];
+		final int[] bestSplit = new int[numSubsets];
+
+		// subsets of a set have smaller bit masks and are thus processed before the set itself
+		for (int subset = 1; subset < numSubsets; subset++) {
+			costs[subset] = Double.POSITIVE_INFINITY;
+			bestEdge[subset] = -1;
+			if (Integer.bitCount(subset) == 1) {
+				cardinality[subset] = this.cardinalities[Integer.numberOfTrailingZeros(subset)];
+				costs[subset] = 0;
+				continue;
+			}
+
+			for (int edgeIndex = 0; edgeIndex < this.edges.size(); edgeIndex++) {
+				final Edge<E> edge = this.edges.get(edgeIndex);
+				if ((subset & edge.getMask()) != edge.getMask())
+					continue;
+
+				final int subset1 = this.getComponent(subset, edgeIndex, edge.vertex1);
+				final int subset2 = subset & ~subset1;
+				if (subset2 != this.getComponent(subset, edgeIndex, edge.vertex2) ||
+					Double.isInfinite(costs[subset1]) || Double.isInfinite(costs[subset2]))
+					continue;
+
+				// the cardinality of a connected subset does not depend on the split
+				cardinality[subset] = cardinality[subset1] * cardinality[subset2] * edge.selectivity;
+				final double splitCosts = costs[subset1] + costs[subset2] + cardinality[subset] +
+					this.getShippingCosts(edge, cardinality[subset1], Integer.bitCount(subset1) == 1,
+						cardinality[subset2], Integer.bitCount(subset2) == 1);
+				if (splitCosts < costs[subset]) {
+					costs[subset] = splitCosts;
+					bestEdge[subset] = edgeIndex;
+					bestSplit[subset] = subset1;
+				}
+			}
+		}
+
+		if (bestEdge[numSubsets - 1] == -1)
+			return null;
+		final List<E> order = new ArrayList<E>();
+		this.collectOrder(numSubsets - 1, bestEdge, bestSplit, order);
+		return order;
+	}
+
+	private void collectOrder(final int subset, final int[] bestEdge, final int[] bestSplit, final List<E> order) {
+		if (bestEdge[subset] == -1)
+			return;
+		this.collectOrder(bestSplit[subset], bestEdge, bestSplit, order);
+		this.collectOrder(subset & ~bestSplit[subset], bestEdge, bestSplit, order);
+		order.add(this.edges.get(bestEdge[subset]).edge);
+	}
+
+	/**
+	 * Returns the inputs of the subset that are reachable from the given vertex without using the excluded edge.
+	 */
+	private int getComponent(final int subset, final int excludedEdge, final int vertex) {
+		int component = 1 << vertex, previous;
+		do {
+			previous = component;
+			for (int edgeIndex = 0; edgeIndex < this.edges.size(); edgeIndex++) {
+				final int mask = this.edges.get(edgeIndex).getMask();
+				if (edgeIndex != excludedEdge && (subset & mask) == mask && (component & mask) != 0)
+					component |= mask;
+			}
+		} while (component != previous);
+		return component;
+	}
+
+	private List<E> orderGreedily() {
+		final int numInputs = this.cardinalities.length;
+		// union-find over the inputs; the cardinality and size are maintained for the representatives
+		final int[] representatives = new int[numInputs];
+		final double[] cardinality = this.cardinalities.clone();
+		final int[] size = new int[numInputs];
+		for (int index = 0; index < numInputs; index++) {
+			representatives[index] = index;
+			size[index] = 1;
+		}
+
+		final List<Edge<E>> remainingEdges = new ArrayList<Edge<E>>(this.edges);
+		final List<E> order = new ArrayList<E>();
+		while (!remainingEdges.isEmpty()) {
+			Edge<E> bestEdge = null;
+			double bestCosts = Double.POSITIVE_INFINITY;
+			for (int index = remainingEdges.size() - 1; index >= 0; index--) {
+				final Edge<E> edge = remainingEdges.get(index);
+				final int root1 = findRepresentative(representatives, edge.vertex1);
+				final int root2 = findRepresentative(representatives, edge.vertex2);
+				if (root1 == root2) {
+					// the edge would close a cycle
+					remainingEdges.remove(index);
+					continue;
+				}
+
+				final double costs = cardinality[root1] * cardinality[root2] * edge.selectivity +
+					this.getShippingCosts(edge, cardinality[root1], size[root1] == 1, cardinality[root2],
+						size[root2] == 1);
+				if (costs <= bestCosts) {
+					bestEdge = edge;
+					bestCosts = costs;
+				}
+			}
+			if (bestEdge == null)
+				break;
+
+			final int root1 = findRepresentative(representatives, bestEdge.vertex1);
+			final int root2 = findRepresentative(representatives, bestEdge.vertex2);
+			cardinality[root1] = cardinality[root1] * cardinality[root2] * bestEdge.selectivity;
+			size[root1] += size[root2];
+			representatives[root2] = root1;
+			remainingEdges.remove(bestEdge);
+			order.add(bestEdge.edge);
+		}
+		return order;
+	}
+
+	private static int findRepresentative(final int[] representatives, final int vertex) {
+		int root = vertex;
+		while (representatives[root] != root)
+			root = representatives[root];
+		return root;
+	}
+
+	private static class Edge<E> {
+		private final E edge;
+
+		private final int vertex1, vertex2, broadcastVertex;
+
+		private final double selectivity;
+
+		Edge(final E edge, final int vertex1, final int vertex2, final double selectivity, final int broadcastVertex) {
+			this.edge = edge;
+			this.vertex1 = vertex1;
+			this.vertex2 = vertex2;
+			this.selectivity = selectivity;
+			this.broadcastVertex = broadcastVertex;
+		}
+
+		int getMask() {
+			return 1 << this.vertex1 | 1 << this.vertex2;
+		}
+	}
+}
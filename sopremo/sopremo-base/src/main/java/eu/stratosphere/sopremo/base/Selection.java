@@ -9,6 +9,7 @@ import eu.stratosphere.sopremo.operator.ElementaryOperator;
 import eu.stratosphere.sopremo.operator.InputCardinality;
 import eu.stratosphere.sopremo.operator.Name;
 import eu.stratosphere.sopremo.operator.Property;
+import eu.stratosphere.sopremo.operator.SelectingOperator;
 import eu.stratosphere.sopremo.pact.JsonCollector;
 import eu.stratosphere.sopremo.pact.SopremoMap;
 import eu.stratosphere.sopremo.type.BooleanNode;
@@ -16,7 +17,7 @@ import eu.stratosphere.sopremo.type.IJsonNode;
 
 @Name(verb = "filter")
 @InputCardinality(1)
-public class Selection extends ElementaryOperator<Selection> {
+public class Selection extends ElementaryOperator<Selection> implements SelectingOperator {
 	private BooleanExpression condition = new UnaryExpression(new ConstantExpression(true));
 
 	@Override
@@ -30,6 +31,7 @@ public class Selection extends ElementaryOperator<Selection> {
 		return super.equals(obj) && this.condition.equals(((Selection) obj).condition);
 	}
 
+	@Override
 	public EvaluationExpression getCondition() {
 		return this.condition;
 	}
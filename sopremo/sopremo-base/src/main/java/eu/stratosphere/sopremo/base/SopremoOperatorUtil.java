@@ -14,17 +14,58 @@
  **********************************************************************************************************************/
 package eu.stratosphere.sopremo.base;
 
+import java.io.IOException;
 import java.util.Arrays;
 
+import eu.stratosphere.core.fs.FileStatus;
+import eu.stratosphere.core.fs.FileSystem;
+import eu.stratosphere.core.fs.Path;
 import eu.stratosphere.sopremo.expressions.ArrayCreation;
 import eu.stratosphere.sopremo.expressions.ConstantExpression;
 import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.io.Source;
 import eu.stratosphere.sopremo.operator.JsonStream;
+import eu.stratosphere.sopremo.operator.Operator;
 
 /**
  * Some convenience method to implement complex operators.
  */
 public class SopremoOperatorUtil {
+	/**
+	 * Estimates the size of the given stream in bytes if the stream is directly produced by a {@link Source}. The size
+	 * of a file source is the size of its files and the size of an adhoc source the length of its values.
+	 * 
+	 * @param stream
+	 *        the stream
+	 * @return the estimated size or -1 if the size is unknown
+	 */
+	public static long estimateSize(final JsonStream stream) {
+		if (stream == null)
+			return -1;
+		final Operator<?> operator = stream.getSource().getOperator();
+		if (!(operator instanceof Source))
+			return -1;
+
+		final Source source = (Source) operator;
+		if (source.isAdhoc())
+			return source.getAdhocValues().toString().length();
+		if (source.getInputPath() == null)
+			return -1;
+		try {
+			final Path path = new Path(source.getInputPath());
+			final FileSystem fs = path.getFileSystem();
+			final FileStatus fileStatus = fs.getFileStatus(path);
+			if (!fileStatus.isDir())
+				return fileStatus.getLen();
+			long size = 0;
+			for (final FileStatus status : fs.listStatus(path))
+				size += status.getLen();
+			return size;
+		} catch (final IOException e) {
+			return -1;
+		}
+	}
+
 	public static JsonStream positionEncode(final JsonStream input, final int index, final int maxIndex) {
 		final EvaluationExpression[] elements = new EvaluationExpression[maxIndex];
 		Arrays.fill(elements, ConstantExpression.MISSING);
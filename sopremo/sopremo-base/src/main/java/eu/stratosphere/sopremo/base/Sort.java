@@ -14,59 +14,215 @@
  **********************************************************************************************************************/
 package eu.stratosphere.sopremo.base;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import eu.stratosphere.api.common.operators.Order;
+import eu.stratosphere.api.common.operators.base.CrossOperatorBase.CrossWithSmall;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.sopremo.expressions.ArrayAccess;
 import eu.stratosphere.sopremo.expressions.ConstantExpression;
 import eu.stratosphere.sopremo.expressions.EvaluationExpression;
 import eu.stratosphere.sopremo.expressions.InputSelection;
 import eu.stratosphere.sopremo.expressions.OrderingExpression;
+import eu.stratosphere.sopremo.operator.CompositeOperator;
 import eu.stratosphere.sopremo.operator.DegreeOfParallelism;
 import eu.stratosphere.sopremo.operator.ElementaryOperator;
 import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Internal;
+import eu.stratosphere.sopremo.operator.JsonStream;
 import eu.stratosphere.sopremo.operator.Name;
+import eu.stratosphere.sopremo.operator.OutputCardinality;
 import eu.stratosphere.sopremo.operator.Property;
+import eu.stratosphere.sopremo.operator.SopremoModule;
 import eu.stratosphere.sopremo.pact.JsonCollector;
+import eu.stratosphere.sopremo.pact.SopremoCross;
+import eu.stratosphere.sopremo.pact.SopremoMap;
 import eu.stratosphere.sopremo.pact.SopremoReduce;
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.IArrayNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.INumericNode;
 import eu.stratosphere.sopremo.type.IStreamNode;
+import eu.stratosphere.sopremo.type.IntNode;
 
 /**
- * Sorts the tuples globally.
+ * Sorts the tuples globally.<br/>
+ * By default, all tuples are sorted by a single task. If the number of ranges is set, the tuples are sorted in
+ * parallel instead: a sample of the sorting keys determines the boundaries of the ranges, each tuple is shipped to the
+ * task that is responsible for its range, and the ranges are sorted locally. The i-th range is sorted by the i-th of
+ * as many tasks as there are ranges, such that the concatenation of the output files in the order of the tasks is
+ * globally sorted. The files are only ordered if the sink has the same degree of parallelism as the ranges; tasks
+ * that do not receive their range because the hash partitioning of the runtime changed fail instead of producing
+ * unordered files.<br/>
+ * If a limit is given, only the first tuples are retained with a {@link TopK}.
  */
 @InputCardinality(1)
-@DegreeOfParallelism(1)
+@OutputCardinality(1)
 @Name(verb = "sort", noun = "sort")
-public class Sort extends ElementaryOperator<Sort> {
-	/**
-	 * Initializes Sort.
+public class Sort extends CompositeOperator<Sort> {
+	// the hash of a record with a single key k is 37 * 37 + k
+	private static final int KEY_HASH_OFFSET = 37 * 37;
+
+	private OrderingExpression orderingExpression = new OrderingExpression();
+
+	private int numRanges = 0;
+
+	private double sampleRate = 0.001;
+
+	private int limit = 0;
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.CompositeOperator#addImplementation(eu.stratosphere.sopremo.operator.
+	 * SopremoModule)
 	 */
-	public Sort() {
-		this.setKeyExpressions(0, ConstantExpression.NULL);
-		this.setInnerGroupOrder(0, new OrderingExpression());
+	@Override
+	public void addImplementation(final SopremoModule module) {
+		if (this.limit > 0) {
+			// no need to sort all tuples, if only the first tuples are retained
+			module.getOutput(0).setInput(0, new TopK().
+				withSortingExpression(this.getSortingExpression()).
+				withDirection(this.getDirection()).
+				withLimit(this.limit).
+				withInputs(module.getInput(0)));
+			return;
+		}
+
+		if (this.numRanges <= 1) {
+			module.getOutput(0).setInput(0,
+				new SingleTaskSort().withOrderingExpression((OrderingExpression) this.orderingExpression.clone()).
+					withInputs(module.getInput(0)));
+			return;
+		}
+
+		final EvaluationExpression sortingExpression = this.getSortingExpression().clone();
+		final JsonStream samples = new SampleSortingKeys().
+			withSortingExpression(sortingExpression).
+			withSampleRate(this.sampleRate).
+			withInputs(module.getInput(0));
+		final JsonStream boundaries = new RangeBoundaries().
+			withNumRanges(this.numRanges).
+			withDirection(this.getDirection()).
+			withInputs(samples);
+		final JsonStream rangedValues = new AssignRanges().
+			withSortingExpression(sortingExpression).
+			withDirection(this.getDirection()).
+			withInputs(module.getInput(0), boundaries);
+		final RangeSort rangeSort = new RangeSort().
+			withDirection(this.getDirection()).
+			withNumRanges(this.numRanges).
+			withInputs(rangedValues);
+		// one task per range; the partition keys of the ranges rely on this degree of parallelism
+		rangeSort.setDegreeOfParallelism(this.numRanges);
+		module.getOutput(0).setInput(0, rangeSort);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		final Sort other = (Sort) obj;
+		return this.limit == other.limit && this.numRanges == other.numRanges &&
+			this.orderingExpression.equals(other.orderingExpression) && this.sampleRate == other.sampleRate;
 	}
 
 	public Order getDirection() {
 		return this.getOrderingExpression().getOrder();
 	}
 
+	/**
+	 * Returns the maximum number of tuples that are returned or 0 if all tuples are returned.
+	 * 
+	 * @return the limit
+	 */
+	public int getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 * Returns the number of ranges that are sorted in parallel.
+	 * 
+	 * @return the numRanges
+	 */
+	public int getNumRanges() {
+		return this.numRanges;
+	}
+
 	/**
 	 * Returns the orderingExpression.
 	 * 
 	 * @return the orderingExpression
 	 */
 	public OrderingExpression getOrderingExpression() {
-		return this.getInnerGroupOrder(0).get(0);
+		return this.orderingExpression;
+	}
+
+	/**
+	 * Returns the fraction of tuples whose sorting keys are used to determine the boundaries of the ranges.
+	 * 
+	 * @return the sampleRate
+	 */
+	public double getSampleRate() {
+		return this.sampleRate;
 	}
 
 	public EvaluationExpression getSortingExpression() {
 		return this.getOrderingExpression().getPath();
 	}
 
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + this.limit;
+		result = prime * result + this.numRanges;
+		result = prime * result + this.orderingExpression.hashCode();
+		final long sampleBits = Double.doubleToLongBits(this.sampleRate);
+		result = prime * result + (int) (sampleBits ^ sampleBits >>> 32);
+		return result;
+	}
+
 	@Property
 	@Name(noun = { "direction", "order" })
 	public void setDirection(final Order order) {
 		this.getOrderingExpression().setOrder(order);
 	}
 
+	/**
+	 * Sets the maximum number of tuples that are returned. If set, the operator is implemented as a {@link TopK}
+	 * instead of a complete sort. A value of 0 returns all tuples.
+	 * 
+	 * @param limit
+	 *        the limit to set
+	 */
+	@Property
+	@Name(noun = "limit")
+	public void setLimit(final int limit) {
+		if (limit < 0)
+			throw new IllegalArgumentException("limit must not be negative");
+
+		this.limit = limit;
+	}
+
+	/**
+	 * Sets the number of ranges that are sorted in parallel. Values below 2 sort all tuples in a single task.
+	 * 
+	 * @param numRanges
+	 *        the numRanges to set
+	 */
+	@Property
+	@Name(noun = "ranges")
+	public void setNumRanges(final int numRanges) {
+		if (numRanges < 0)
+			throw new IllegalArgumentException("numRanges must not be negative");
+
+		this.numRanges = numRanges;
+	}
+
 	/**
 	 * Sets the orderingExpression to the specified value.
 	 * 
@@ -77,7 +233,21 @@ public class Sort extends ElementaryOperator<Sort> {
 		if (orderingExpression == null)
 			throw new NullPointerException("orderingExpression must not be null");
 
-		this.setInnerGroupOrder(0, orderingExpression);
+		this.orderingExpression = orderingExpression;
+	}
+
+	/**
+	 * Sets the fraction of tuples whose sorting keys are used to determine the boundaries of the ranges.
+	 * 
+	 * @param sampleRate
+	 *        the sampleRate to set
+	 */
+	@Property(hidden = true)
+	public void setSampleRate(final double sampleRate) {
+		if (sampleRate <= 0 || sampleRate > 1)
+			throw new IllegalArgumentException("sampleRate must be in (0, 1]");
+
+		this.sampleRate = sampleRate;
 	}
 
 	@Property
@@ -91,26 +261,452 @@ public class Sort extends ElementaryOperator<Sort> {
 		return this;
 	}
 
+	public Sort withLimit(final int limit) {
+		this.setLimit(limit);
+		return this;
+	}
+
+	public Sort withNumRanges(final int numRanges) {
+		this.setNumRanges(numRanges);
+		return this;
+	}
+
 	public Sort withOrderingExpression(final OrderingExpression orderingExpression) {
 		this.setOrderingExpression(orderingExpression);
 		return this;
 	}
 
+	public Sort withSampleRate(final double sampleRate) {
+		this.setSampleRate(sampleRate);
+		return this;
+	}
+
 	public Sort withSortingExpression(final EvaluationExpression sortingExpression) {
 		this.setSortingExpression(sortingExpression);
 		return this;
 	}
 
-	public static class Implementation extends SopremoReduce {
-		/*
-		 * (non-Javadoc)
-		 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#reduce(eu.stratosphere.sopremo.type.IStreamNode,
-		 * eu.stratosphere.sopremo.pact.JsonCollector)
+	/**
+	 * Returns one partition key for each range, such that the hash partitioning of the runtime ships the tuples of the
+	 * i-th range to the i-th of numRanges tasks.<br/>
+	 * The runtime selects the task <code>|hash| % numRanges</code> for the hash of a {@link RangeSort} key, which is
+	 * <code>37 * 37 + key</code> for a single integer key (see
+	 * {@link eu.stratosphere.sopremo.serialization.SopremoRecordComparator#hash}). Since some versions of the runtime
+	 * scramble the hash with murmur hash before, the keys are chosen to be routed correctly in both cases.<br/>
+	 * {@link RangeSort} verifies at runtime that each task receives its own range.
+	 */
+	static int[] getPartitionKeys(final int numRanges) {
+		final int[] keys = new int[numRanges];
+		for (int range = 0; range < numRanges; range++) {
+			// start at the smallest non-negative key with hash % numRanges == range and keep that congruence
+			int key = ((range - KEY_HASH_OFFSET) % numRanges + numRanges) % numRanges;
+			while (getTargetTask(KEY_HASH_OFFSET + key, numRanges) != range)
+				key += numRanges;
+			keys[range] = key;
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns the task to which the hash partitioning of the runtime ships a record with the given hash.
+	 */
+	static int getTargetTask(final int recordHash, final int numTasks) {
+		return selectTask(murmurHash(recordHash), numTasks);
+	}
+
+	private static int murmurHash(int hash) {
+		hash *= 0xcc9e2d51;
+		hash = Integer.rotateLeft(hash, 15);
+		hash *= 0x1b873593;
+		hash = Integer.rotateLeft(hash, 13);
+		hash *= 0xe6546b64;
+		hash ^= 4;
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	private static int selectTask(final int hash, final int numTasks) {
+		if (hash == Integer.MIN_VALUE)
+			return 0;
+		return Math.abs(hash) % numTasks;
+	}
+
+	/**
+	 * Tags each tuple with the partition key of its range and its sorting key: [partition key, key, value].
+	 * 
+	 * @see Sort#getPartitionKeys(int)
+	 */
+	@Internal
+	@InputCardinality(2)
+	public static class AssignRanges extends ElementaryOperator<AssignRanges> {
+		private EvaluationExpression sortingExpression = EvaluationExpression.VALUE;
+
+		private Order direction = Order.ASCENDING;
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!super.equals(obj))
+				return false;
+			final AssignRanges other = (AssignRanges) obj;
+			return this.direction == other.direction && this.sortingExpression.equals(other.sortingExpression);
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = super.hashCode();
+			result = prime * result + this.direction.hashCode();
+			result = prime * result + this.sortingExpression.hashCode();
+			return result;
+		}
+
+		public AssignRanges withDirection(final Order direction) {
+			if (direction == null)
+				throw new NullPointerException("direction must not be null");
+
+			this.direction = direction;
+			return this;
+		}
+
+		public AssignRanges withSortingExpression(final EvaluationExpression sortingExpression) {
+			if (sortingExpression == null)
+				throw new NullPointerException("sortingExpression must not be null");
+
+			this.sortingExpression = sortingExpression;
+			return this;
+		}
+
+		public static class Implementation extends SopremoCross implements CrossWithSmall {
+			private EvaluationExpression sortingExpression;
+
+			private Order direction;
+
+			private final transient IArrayNode<IJsonNode> rangedValue = new ArrayNode<IJsonNode>();
+
+			private final transient IntNode partitionKey = new IntNode();
+
+			private transient int[] partitionKeys = new int[0];
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoCross#cross(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.type.IJsonNode, eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void cross(final IJsonNode value, final IJsonNode boundaries, final JsonCollector<IJsonNode> out) {
+				final IJsonNode key = this.sortingExpression.evaluate(value);
+				@SuppressWarnings("unchecked")
+				final IArrayNode<IJsonNode> boundaryArray = (IArrayNode<IJsonNode>) boundaries;
+
+				// binary search for the first boundary that is not before the key
+				int low = 0, high = boundaryArray.size();
+				while (low < high) {
+					final int mid = (low + high) >>> 1;
+					int comparison = key.compareTo(boundaryArray.get(mid));
+					if (this.direction == Order.DESCENDING)
+						comparison = -comparison;
+					if (comparison > 0)
+						low = mid + 1;
+					else
+						high = mid;
+				}
+
+				// there is one more range than boundaries
+				if (this.partitionKeys.length != boundaryArray.size() + 1)
+					this.partitionKeys = getPartitionKeys(boundaryArray.size() + 1);
+				this.partitionKey.setValue(this.partitionKeys[low]);
+				this.rangedValue.clear();
+				this.rangedValue.add(this.partitionKey);
+				this.rangedValue.add(key);
+				this.rangedValue.add(value);
+				out.collect(this.rangedValue);
+			}
+		}
+	}
+
+	/**
+	 * Determines the boundaries between the ranges from the sorted sample and emits them as a single array.
+	 */
+	@Internal
+	@InputCardinality(1)
+	@DegreeOfParallelism(1)
+	public static class RangeBoundaries extends ElementaryOperator<RangeBoundaries> {
+		private int numRanges = 2;
+
+		/**
+		 * Initializes RangeBoundaries.
+		 */
+		public RangeBoundaries() {
+			this.setKeyExpressions(0, ConstantExpression.NULL);
+			this.setInnerGroupOrder(0, new OrderingExpression());
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!super.equals(obj))
+				return false;
+			return this.numRanges == ((RangeBoundaries) obj).numRanges;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * super.hashCode() + this.numRanges;
+		}
+
+		public RangeBoundaries withDirection(final Order direction) {
+			this.getInnerGroupOrder(0).get(0).setOrder(direction);
+			return this;
+		}
+
+		public RangeBoundaries withNumRanges(final int numRanges) {
+			if (numRanges < 1)
+				throw new IllegalArgumentException("numRanges must be positive");
+
+			this.numRanges = numRanges;
+			return this;
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private int numRanges;
+
+			private final transient List<IJsonNode> sample = new ArrayList<IJsonNode>();
+
+			private final transient IArrayNode<IJsonNode> boundaries = new ArrayNode<IJsonNode>();
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#reduce(eu.stratosphere.sopremo.type.IStreamNode,
+			 * eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				// the sample is small and arrives sorted
+				this.sample.clear();
+				for (final IJsonNode value : values)
+					this.sample.add(value.clone());
+
+				this.boundaries.clear();
+				final int size = this.sample.size();
+				for (int range = 1; range < this.numRanges; range++)
+					this.boundaries.add(this.sample.get((int) ((long) range * size / this.numRanges)));
+				out.collect(this.boundaries);
+			}
+		}
+	}
+
+	/**
+	 * Sorts each range locally and emits the original tuples. The degree of parallelism must be the number of ranges
+	 * and the i-th task must receive the i-th range; both conditions are checked at runtime.
+	 */
+	@Internal
+	@InputCardinality(1)
+	public static class RangeSort extends ElementaryOperator<RangeSort> {
+		private int numRanges = 2;
+
+		/**
+		 * Initializes RangeSort.
 		 */
+		public RangeSort() {
+			this.setKeyExpressions(0, new ArrayAccess(0));
+			this.setInnerGroupOrder(0, new OrderingExpression(Order.ASCENDING, new ArrayAccess(1)));
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!super.equals(obj))
+				return false;
+			return this.numRanges == ((RangeSort) obj).numRanges;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * super.hashCode() + this.numRanges;
+		}
+
+		public RangeSort withDirection(final Order direction) {
+			this.getInnerGroupOrder(0).get(0).setOrder(direction);
+			return this;
+		}
+
+		public RangeSort withNumRanges(final int numRanges) {
+			if (numRanges < 1)
+				throw new IllegalArgumentException("numRanges must be positive");
+
+			this.numRanges = numRanges;
+			return this;
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private int numRanges;
+
+			private transient int partitionKey;
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#open(eu.stratosphere.configuration.Configuration)
+			 */
+			@Override
+			public void open(final Configuration parameters) {
+				super.open(parameters);
+
+				final int numTasks = this.getRuntimeContext().getNumberOfParallelSubtasks();
+				if (numTasks != this.numRanges)
+					throw new IllegalStateException(String.format(
+						"%d ranges must be sorted by as many tasks, but got %d", this.numRanges, numTasks));
+				this.partitionKey = getPartitionKeys(this.numRanges)[this.getRuntimeContext().getIndexOfThisSubtask()];
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#reduce(eu.stratosphere.sopremo.type.IStreamNode,
+			 * eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				boolean first = true;
+				for (final IJsonNode value : values) {
+					final IArrayNode<?> rangedValue = (IArrayNode<?>) value;
+					if (first) {
+						this.checkRange(((INumericNode) rangedValue.get(0)).getIntValue());
+						first = false;
+					}
+					out.collect(rangedValue.get(2));
+				}
+			}
+
+			private void checkRange(final int receivedKey) {
+				if (receivedKey != this.partitionKey)
+					throw new IllegalStateException(String.format("Task %d received the range with partition key " +
+						"%d instead of %d; the hash partitioning no longer matches Sort#getPartitionKeys",
+						this.getRuntimeContext().getIndexOfThisSubtask(), receivedKey, this.partitionKey));
+			}
+		}
+	}
+
+	/**
+	 * Emits the sorting keys of a random sample of the tuples. Each task emits at least the key of its first tuple,
+	 * such that a non-empty input always results in boundaries.
+	 */
+	@Internal
+	@InputCardinality(1)
+	public static class SampleSortingKeys extends ElementaryOperator<SampleSortingKeys> {
+		private EvaluationExpression sortingExpression = EvaluationExpression.VALUE;
+
+		private double sampleRate = 0.001;
+
 		@Override
-		protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
-			for (final IJsonNode value : values)
-				out.collect(value);
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!super.equals(obj))
+				return false;
+			final SampleSortingKeys other = (SampleSortingKeys) obj;
+			return this.sampleRate == other.sampleRate && this.sortingExpression.equals(other.sortingExpression);
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = super.hashCode();
+			final long sampleBits = Double.doubleToLongBits(this.sampleRate);
+			result = prime * result + (int) (sampleBits ^ sampleBits >>> 32);
+			result = prime * result + this.sortingExpression.hashCode();
+			return result;
+		}
+
+		public SampleSortingKeys withSampleRate(final double sampleRate) {
+			if (sampleRate <= 0 || sampleRate > 1)
+				throw new IllegalArgumentException("sampleRate must be in (0, 1]");
+
+			this.sampleRate = sampleRate;
+			return this;
+		}
+
+		public SampleSortingKeys withSortingExpression(final EvaluationExpression sortingExpression) {
+			if (sortingExpression == null)
+				throw new NullPointerException("sortingExpression must not be null");
+
+			this.sortingExpression = sortingExpression;
+			return this;
+		}
+
+		public static class Implementation extends SopremoMap {
+			private EvaluationExpression sortingExpression;
+
+			private double sampleRate;
+
+			private transient Random random;
+
+			private transient boolean sampled;
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoMap#open(eu.stratosphere.configuration.Configuration)
+			 */
+			@Override
+			public void open(final Configuration parameters) {
+				super.open(parameters);
+				// fixed seed per task for reproducible boundaries
+				this.random = new Random(this.getRuntimeContext().getIndexOfThisSubtask());
+				this.sampled = false;
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoMap#map(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				if (!this.sampled || this.random.nextDouble() < this.sampleRate) {
+					this.sampled = true;
+					out.collect(this.sortingExpression.evaluate(value));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sorts all tuples in a single task.
+	 */
+	@Internal
+	@InputCardinality(1)
+	@DegreeOfParallelism(1)
+	public static class SingleTaskSort extends ElementaryOperator<SingleTaskSort> {
+		/**
+		 * Initializes SingleTaskSort.
+		 */
+		public SingleTaskSort() {
+			this.setKeyExpressions(0, ConstantExpression.NULL);
+			this.setInnerGroupOrder(0, new OrderingExpression());
+		}
+
+		public SingleTaskSort withOrderingExpression(final OrderingExpression orderingExpression) {
+			this.setInnerGroupOrder(0, orderingExpression);
+			return this;
+		}
+
+		public static class Implementation extends SopremoReduce {
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#reduce(eu.stratosphere.sopremo.type.IStreamNode,
+			 * eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				for (final IJsonNode value : values)
+					out.collect(value);
+			}
 		}
 	}
 }
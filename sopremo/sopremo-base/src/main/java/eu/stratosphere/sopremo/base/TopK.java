@@ -0,0 +1,216 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import eu.stratosphere.api.common.operators.Order;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.expressions.InputSelection;
+import eu.stratosphere.sopremo.operator.ElementaryOperator;
+import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Name;
+import eu.stratosphere.sopremo.operator.Property;
+import eu.stratosphere.sopremo.pact.JsonCollector;
+import eu.stratosphere.sopremo.pact.SopremoReduce;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IStreamNode;
+
+/**
+ * Returns the first k tuples according to the sorting expression and direction, e.g., the 100 records with the highest
+ * score.<br/>
+ * In contrast to a {@link Sort} of all tuples, each task keeps only the best k tuples in a bounded heap while combining
+ * its local tuples. Thus, at most k candidates per combiner run are shipped to the single task that selects the final
+ * k tuples.
+ */
+@InputCardinality(1)
+@Name(noun = "top")
+public class TopK extends ElementaryOperator<TopK> {
+	private EvaluationExpression sortingExpression = EvaluationExpression.VALUE;
+
+	private Order direction = Order.ASCENDING;
+
+	private int limit = 1;
+
+	/**
+	 * Initializes TopK.
+	 */
+	public TopK() {
+		this.setKeyExpressions(0, ConstantExpression.NULL);
+		this.setCombinable(true);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		final TopK other = (TopK) obj;
+		return this.direction == other.direction && this.limit == other.limit &&
+			this.sortingExpression.equals(other.sortingExpression);
+	}
+
+	public Order getDirection() {
+		return this.direction;
+	}
+
+	/**
+	 * Returns the maximum number of tuples that are returned.
+	 *
+	 * @return the limit
+	 */
+	public int getLimit() {
+		return this.limit;
+	}
+
+	public EvaluationExpression getSortingExpression() {
+		return this.sortingExpression;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + this.direction.hashCode();
+		result = prime * result + this.limit;
+		result = prime * result + this.sortingExpression.hashCode();
+		return result;
+	}
+
+	@Property
+	@Name(noun = { "direction", "order" })
+	public void setDirection(final Order direction) {
+		if (direction == null)
+			throw new NullPointerException("direction must not be null");
+
+		this.direction = direction;
+	}
+
+	/**
+	 * Sets the maximum number of tuples that are returned.
+	 *
+	 * @param limit
+	 *        the limit to set
+	 */
+	@Property(preferred = true)
+	@Name(noun = "limit")
+	public void setLimit(final int limit) {
+		if (limit < 1)
+			throw new IllegalArgumentException("limit must be positive");
+
+		this.limit = limit;
+	}
+
+	@Property
+	@Name(preposition = "on")
+	public void setSortingExpression(final EvaluationExpression sortingExpression) {
+		if (sortingExpression == null)
+			throw new NullPointerException("sortingExpression must not be null");
+
+		this.sortingExpression = sortingExpression.clone().remove(InputSelection.class);
+	}
+
+	public TopK withDirection(final Order direction) {
+		this.setDirection(direction);
+		return this;
+	}
+
+	public TopK withLimit(final int limit) {
+		this.setLimit(limit);
+		return this;
+	}
+
+	public TopK withSortingExpression(final EvaluationExpression sortingExpression) {
+		this.setSortingExpression(sortingExpression);
+		return this;
+	}
+
+	public static class Implementation extends SopremoReduce {
+		private EvaluationExpression sortingExpression;
+
+		private Order direction;
+
+		private int limit;
+
+		private transient Comparator<Candidate> comparator;
+
+		// the worst candidate is at the head
+		private transient PriorityQueue<Candidate> heap;
+
+		private final transient List<Candidate> result = new ArrayList<Candidate>();
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#open(eu.stratosphere.configuration.Configuration)
+		 */
+		@Override
+		public void open(final Configuration parameters) {
+			super.open(parameters);
+
+			final boolean descending = this.direction == Order.DESCENDING;
+			this.comparator = new Comparator<Candidate>() {
+				@Override
+				public int compare(final Candidate candidate1, final Candidate candidate2) {
+					final int comparison = candidate1.key.compareTo(candidate2.key);
+					return descending ? -comparison : comparison;
+				}
+			};
+			this.heap = new PriorityQueue<Candidate>(this.limit + 1, Collections.reverseOrder(this.comparator));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#reduce(eu.stratosphere.sopremo.type.IStreamNode,
+		 * eu.stratosphere.sopremo.pact.JsonCollector)
+		 */
+		@Override
+		protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+			this.heap.clear();
+			final Candidate probe = new Candidate();
+			for (final IJsonNode value : values) {
+				probe.key = this.sortingExpression.evaluate(value);
+				if (this.heap.size() < this.limit)
+					this.heap.add(new Candidate().copyFrom(probe.key, value));
+				else if (this.comparator.compare(probe, this.heap.peek()) < 0)
+					// reuse the evicted candidate to avoid allocations for the remaining stream
+					this.heap.add(this.heap.poll().copyFrom(probe.key, value));
+			}
+
+			this.result.clear();
+			this.result.addAll(this.heap);
+			Collections.sort(this.result, this.comparator);
+			for (final Candidate candidate : this.result)
+				out.collect(candidate.value);
+		}
+
+		private static class Candidate {
+			private IJsonNode key, value;
+
+			Candidate copyFrom(final IJsonNode key, final IJsonNode value) {
+				this.key = SopremoUtil.copyInto(key, this.key);
+				this.value = SopremoUtil.copyInto(value, this.value);
+				return this;
+			}
+		}
+	}
+}
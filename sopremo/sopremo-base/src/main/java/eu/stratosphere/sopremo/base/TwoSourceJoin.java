@@ -5,35 +5,56 @@ import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import com.google.common.base.Predicates;
 
+import eu.stratosphere.api.common.operators.Operator;
 import eu.stratosphere.api.common.operators.util.OperatorUtil;
 import eu.stratosphere.pact.common.plan.PactModule;
 import eu.stratosphere.sopremo.base.join.AntiJoin;
+import eu.stratosphere.sopremo.base.join.BandJoin;
+import eu.stratosphere.sopremo.base.join.BloomFilterReduction;
+import eu.stratosphere.sopremo.base.join.BroadcastHashJoin;
 import eu.stratosphere.sopremo.base.join.EquiJoin;
 import eu.stratosphere.sopremo.base.join.EquiJoin.Mode;
 import eu.stratosphere.sopremo.base.join.SemiJoin;
+import eu.stratosphere.sopremo.base.join.SkewedEquiJoin;
 import eu.stratosphere.sopremo.base.join.ThetaJoin;
 import eu.stratosphere.sopremo.base.join.TwoSourceJoinBase;
+import eu.stratosphere.sopremo.expressions.AndExpression;
 import eu.stratosphere.sopremo.expressions.ArrayCreation;
 import eu.stratosphere.sopremo.expressions.BinaryBooleanExpression;
 import eu.stratosphere.sopremo.expressions.ComparativeExpression;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
 import eu.stratosphere.sopremo.expressions.ElementInSetExpression;
+import eu.stratosphere.sopremo.expressions.ElementInSetExpression.Quantor;
 import eu.stratosphere.sopremo.expressions.EvaluationExpression;
 import eu.stratosphere.sopremo.expressions.InputSelection;
 import eu.stratosphere.sopremo.expressions.TransformFunction;
 import eu.stratosphere.sopremo.operator.Internal;
 import eu.stratosphere.sopremo.operator.Name;
 import eu.stratosphere.sopremo.operator.Property;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
 
 @Internal
 public class TwoSourceJoin extends TwoSourceJoinBase<TwoSourceJoin> {
 	private BinaryBooleanExpression condition = new ComparativeExpression(new InputSelection(0),
 		ComparativeExpression.BinaryOperator.EQUAL, new InputSelection(1));
 
+	private ComparativeExpression secondBound;
+
+	private double bandWidth;
+
+	private int broadcastInput = -1;
+
+	private int bloomFilterInput = -1;
+
+	private int skewFactor = 0;
+
 	private TwoSourceJoinBase<?> strategy;
 
 	private boolean inverseInputs;
@@ -55,6 +76,10 @@ public class TwoSourceJoin extends TwoSourceJoinBase<TwoSourceJoin> {
 	public void appendAsString(final Appendable appendable) throws IOException {
 		appendable.append("Join on ");
 		this.condition.appendAsString(appendable);
+		if (this.secondBound != null) {
+			appendable.append(" and ");
+			this.secondBound.appendAsString(appendable);
+		}
 		if (this.getResultProjection() != EvaluationExpression.VALUE) {
 			appendable.append(" to ");
 			this.getResultProjection().appendAsString(appendable);
@@ -82,12 +107,18 @@ public class TwoSourceJoin extends TwoSourceJoinBase<TwoSourceJoin> {
 			((EquiJoin) this.strategy).withMode(
 				this.outerJoinSources.contains(this.inverseInputs ? 1 : 0),
 				this.outerJoinSources.contains(this.inverseInputs ? 0 : 1));
+		if (!this.outerJoinSources.isEmpty() && this.strategy instanceof SkewedEquiJoin)
+			((SkewedEquiJoin) this.strategy).withMode(this.outerJoinSources.contains(0),
+				this.outerJoinSources.contains(1));
 
 		if (this.getDegreeOfParallelism() != STANDARD_DEGREE_OF_PARALLELISM)
 			this.strategy.setDegreeOfParallelism(this.getDegreeOfParallelism());
 
 		final PactModule pactModule = this.strategy.asPactModule();
-		if (this.inverseInputs)
+		if (this.bloomFilterInput != -1)
+			this.applyBloomFilter(pactModule.getOutput(0).getInputs().get(0));
+		// the broadcast join consists of several contracts and connects the inverse inputs itself
+		if (this.inverseInputs && !(this.strategy instanceof BroadcastHashJoin))
 			OperatorUtil.swapInputs(pactModule.getOutput(0).getInputs().get(0), 0, 1);
 		return pactModule;
 	}
@@ -102,9 +133,54 @@ public class TwoSourceJoin extends TwoSourceJoinBase<TwoSourceJoin> {
 			return false;
 		final TwoSourceJoin other = (TwoSourceJoin) obj;
 		return this.condition.equals(other.condition) && this.inverseInputs == other.inverseInputs
+			&& (this.secondBound == null ? other.secondBound == null : this.secondBound.equals(other.secondBound))
+			&& Double.doubleToLongBits(this.bandWidth) == Double.doubleToLongBits(other.bandWidth)
+			&& this.broadcastInput == other.broadcastInput && this.bloomFilterInput == other.bloomFilterInput
+			&& this.skewFactor == other.skewFactor
 			&& this.outerJoinSources.equals(other.outerJoinSources) && this.strategy.equals(other.strategy);
 	}
 
+	/**
+	 * Returns the width of the band that is used to bucket the inputs or 0 if it is derived from the condition.
+	 * 
+	 * @return the width of the band
+	 */
+	public double getBandWidth() {
+		return this.bandWidth;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#getAllKeyExpressions()
+	 */
+	@Override
+	public Set<EvaluationExpression> getAllKeyExpressions() {
+		final Set<EvaluationExpression> allKeys = super.getAllKeyExpressions();
+		// the Bloom filter is built under a constant key
+		if (this.bloomFilterInput != -1)
+			allKeys.add(ConstantExpression.NULL);
+		return allKeys;
+	}
+
+	/**
+	 * Returns the index of the input whose keys are used to filter the other input or -1 if no input is filtered.
+	 * 
+	 * @return the index of the input that builds the Bloom filter
+	 */
+	public int getBloomFilterInput() {
+		return this.bloomFilterInput;
+	}
+
+	/**
+	 * Returns the index of the input that is broadcasted to all tasks of the other input or -1 if the inputs are
+	 * repartitioned.
+	 * 
+	 * @return the index of the broadcasted input
+	 */
+	public int getBroadcastInput() {
+		return this.broadcastInput;
+	}
+
 	public BinaryBooleanExpression getCondition() {
 		return this.condition;
 	}
@@ -132,17 +208,88 @@ public class TwoSourceJoin extends TwoSourceJoinBase<TwoSourceJoin> {
 		return new ArrayCreation(expressions);
 	}
 
+	/**
+	 * Returns the number of tasks that join the values of a frequent key. Values below 2 disable the skew handling.
+	 * 
+	 * @return the skew factor
+	 */
+	public int getSkewFactor() {
+		return this.skewFactor;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = super.hashCode();
 		result = prime * result + this.condition.hashCode();
+		final long bandWidthBits = Double.doubleToLongBits(this.bandWidth);
+		result = prime * result + (int) (bandWidthBits ^ bandWidthBits >>> 32);
+		result = prime * result + (this.secondBound == null ? 0 : this.secondBound.hashCode());
+		result = prime * result + this.broadcastInput;
+		result = prime * result + this.bloomFilterInput;
+		result = prime * result + this.skewFactor;
 		result = prime * result + (this.inverseInputs ? 1231 : 1237);
 		result = prime * result + this.outerJoinSources.hashCode();
 		result = prime * result + this.strategy.hashCode();
 		return result;
 	}
 
+	/**
+	 * Sets a second comparison that bounds the same value as the condition from the other side, such that both
+	 * comparisons form a band, e.g., <code>$a.ts &lt;= $b.end</code> for the condition
+	 * <code>$a.ts &gt;= $b.start</code>. A band is joined with a {@link BandJoin} instead of a cross product.
+	 * 
+	 * @param secondBound
+	 *        the second comparison or null
+	 * @param bandWidth
+	 *        the width of the buckets of the {@link BandJoin} or 0 to derive the width from constant offsets in the
+	 *        bounds
+	 */
+	public void setBand(final ComparativeExpression secondBound, final double bandWidth) {
+		if (bandWidth < 0)
+			throw new IllegalArgumentException("bandWidth must not be negative");
+
+		this.secondBound = secondBound;
+		this.bandWidth = bandWidth;
+		this.chooseStrategy();
+	}
+
+	/**
+	 * Builds a Bloom filter over the keys of the given input and drops the values of the other input that definitely
+	 * have no partner before they are repartitioned. The filter should be built over the smaller input of a selective
+	 * join.<br>
+	 * The hint is only applied to equi-joins that do not preserve the filtered input and to semi-joins that build the
+	 * filter over the set of the condition. It is ignored with a warning if the join is broadcasted or salted because
+	 * of skew.
+	 * 
+	 * @param bloomFilterInput
+	 *        the index of the input that builds the filter or -1
+	 */
+	public void setBloomFilterInput(final int bloomFilterInput) {
+		if (bloomFilterInput < -1 || bloomFilterInput > 1)
+			throw new IllegalArgumentException("bloomFilterInput must be -1, 0, or 1");
+
+		this.bloomFilterInput = bloomFilterInput;
+	}
+
+	/**
+	 * Broadcasts the given input to all tasks of the other input, which is then joined with an in-memory hash table of
+	 * the broadcasted input instead of repartitioning both inputs. The broadcasted input should be small, e.g., a
+	 * dimension table.<br>
+	 * The hint is only applied to equi-joins that do not preserve the broadcasted input and to semi- and anti-joins
+	 * that broadcast the set of the condition.
+	 * 
+	 * @param broadcastInput
+	 *        the index of the broadcasted input or -1
+	 */
+	public void setBroadcastInput(final int broadcastInput) {
+		if (broadcastInput < -1 || broadcastInput > 1)
+			throw new IllegalArgumentException("broadcastInput must be -1, 0, or 1");
+
+		this.broadcastInput = broadcastInput;
+		this.chooseStrategy();
+	}
+
 	// TODO name inconsistency with Join.setJoinCondition()
 	@Property
 	public void setCondition(final BinaryBooleanExpression condition) {
@@ -177,6 +324,7 @@ public class TwoSourceJoin extends TwoSourceJoinBase<TwoSourceJoin> {
 		this.outerJoinSources.clear();
 		for (final int index : outerJoinIndices)
 			this.outerJoinSources.add(index);
+		this.chooseStrategy();
 	}
 
 	@Property
@@ -196,6 +344,39 @@ public class TwoSourceJoin extends TwoSourceJoinBase<TwoSourceJoin> {
 		this.outerJoinSources.clear();
 		for (final EvaluationExpression expression : expressions)
 			this.outerJoinSources.add(((InputSelection) expression).getIndex());
+		this.chooseStrategy();
+	}
+
+	/**
+	 * Distributes the values of the join keys that occur in a large fraction of an input over the given number of
+	 * tasks and replicates their partners of the other input to all of these tasks. The frequent keys are found by
+	 * sampling both inputs.<br>
+	 * The hint is only applied to equi-joins that do not broadcast an input. Values below 2 disable the skew handling.
+	 * 
+	 * @param skewFactor
+	 *        the number of tasks per frequent key
+	 */
+	public void setSkewFactor(final int skewFactor) {
+		if (skewFactor < 0)
+			throw new IllegalArgumentException("skewFactor must not be negative");
+
+		this.skewFactor = skewFactor;
+		this.chooseStrategy();
+	}
+
+	public TwoSourceJoin withBand(final ComparativeExpression secondBound, final double bandWidth) {
+		this.setBand(secondBound, bandWidth);
+		return this;
+	}
+
+	public TwoSourceJoin withBloomFilterInput(final int bloomFilterInput) {
+		this.setBloomFilterInput(bloomFilterInput);
+		return this;
+	}
+
+	public TwoSourceJoin withBroadcastInput(final int broadcastInput) {
+		this.setBroadcastInput(broadcastInput);
+		return this;
 	}
 
 	public TwoSourceJoin withCondition(final BinaryBooleanExpression condition) {
@@ -213,6 +394,11 @@ public class TwoSourceJoin extends TwoSourceJoinBase<TwoSourceJoin> {
 		return this;
 	}
 
+	public TwoSourceJoin withSkewFactor(final int skewFactor) {
+		this.setSkewFactor(skewFactor);
+		return this;
+	}
+
 	/**
 	 * Returns the strategy. For testing only.
 	 * 
@@ -222,6 +408,76 @@ public class TwoSourceJoin extends TwoSourceJoinBase<TwoSourceJoin> {
 		return this.strategy;
 	}
 
+	/**
+	 * Filters the input of the strategy's contract that does not build the Bloom filter if the filter does not drop
+	 * any values that contribute to the result.
+	 */
+	private void applyBloomFilter(final Operator contract) {
+		// the strategy sees the inputs in inversed order
+		final int buildIndex = this.inverseInputs ? 1 - this.bloomFilterInput : this.bloomFilterInput;
+		final int probeIndex = 1 - buildIndex;
+		// the broadcast join does not ship the probe input and the skewed join salts its inputs in separate contracts
+		if (this.strategy instanceof BroadcastHashJoin || this.strategy instanceof SkewedEquiJoin) {
+			SopremoUtil.LOG.warn(String.format("Ignoring the Bloom filter of %s, because it is not supported by %s",
+				this, this.strategy.getClass().getSimpleName()));
+			return;
+		}
+		if (this.strategy instanceof EquiJoin) {
+			final Mode mode = ((EquiJoin) this.strategy).getMode();
+			if (mode == Mode.BOTH || mode == (probeIndex == 0 ? Mode.LEFT : Mode.RIGHT))
+				return;
+		} else if (!(this.strategy instanceof SemiJoin) || probeIndex != 0)
+			return;
+
+		final BloomFilterReduction reduction = new BloomFilterReduction().
+			withProbeKeyExpression(this.strategy.getKeyExpressions(probeIndex).get(0)).
+			withBuildKeyExpression(this.strategy.getKeyExpressions(buildIndex).get(0));
+		if (this.getDegreeOfParallelism() != STANDARD_DEGREE_OF_PARALLELISM)
+			reduction.setDegreeOfParallelism(this.getDegreeOfParallelism());
+		final List<List<Operator>> inputs = OperatorUtil.getInputs(contract);
+		final List<Operator> filteredInput = new ArrayList<Operator>();
+		filteredInput.add(reduction.filter(inputs.get(probeIndex), inputs.get(buildIndex)));
+		inputs.set(probeIndex, filteredInput);
+		OperatorUtil.setInputs(contract, inputs);
+	}
+
+	private TwoSourceJoinBase<?> chooseBandStrategy(final ComparativeExpression comparison) {
+		if (this.secondBound == null)
+			return new ThetaJoin().withCondition(comparison);
+
+		final ComparativeExpression secondComparison = (ComparativeExpression) this.secondBound.clone();
+		final ComparativeExpression[] band = BandJoin.asBand(comparison, secondComparison);
+		if (band != null) {
+			// a width of 0 lets the band join derive the width from the lengths of the intervals at runtime
+			final double bucketWidth = this.bandWidth > 0 ? this.bandWidth : BandJoin.estimateBucketWidth(band[0],
+				band[1]);
+			return new BandJoin().withBounds(band[0], band[1]).withBucketWidth(bucketWidth);
+		}
+		// the cross product is the last resort but at least applies both comparisons at once
+		return new ThetaJoin().withCondition(new AndExpression(comparison, secondComparison));
+	}
+
+	private BroadcastHashJoin createBroadcastStrategy(final EvaluationExpression expr1,
+			final EvaluationExpression expr2, final BroadcastHashJoin.Mode mode) {
+		// the probe input is the input that is not broadcasted
+		final boolean expr1Probes = expr1.findFirst(InputSelection.class).getIndex() != this.broadcastInput;
+		final BroadcastHashJoin broadcastJoin = new BroadcastHashJoin().withMode(mode).
+			withProbeKeyExpression((expr1Probes ? expr1 : expr2).remove(InputSelection.class)).
+			withBuildKeyExpression((expr1Probes ? expr2 : expr1).remove(InputSelection.class));
+		this.inverseInputs = this.broadcastInput == 0;
+		broadcastJoin.setInverseInputs(this.inverseInputs);
+		return broadcastJoin;
+	}
+
+	private SkewedEquiJoin createSkewedStrategy(final EvaluationExpression expr1, final EvaluationExpression expr2) {
+		// the salted inputs are connected by the strategy, so that the keys are assigned to the actual inputs
+		this.inverseInputs = false;
+		final boolean expr1First = expr1.findFirst(InputSelection.class).getIndex() == 0;
+		return new SkewedEquiJoin().withSkewFactor(this.skewFactor).
+			withFirstKeyExpression((expr1First ? expr1 : expr2).remove(InputSelection.class)).
+			withSecondKeyExpression((expr1First ? expr2 : expr1).remove(InputSelection.class));
+	}
+
 	private void chooseStrategy() {
 		this.inverseInputs = false;
 		this.strategy = null;
@@ -231,29 +487,43 @@ public class TwoSourceJoin extends TwoSourceJoinBase<TwoSourceJoin> {
 			switch (comparison.getBinaryOperator()) {
 			case EQUAL:
 				this.inverseInputs = comparison.getExpr1().findFirst(InputSelection.class).getIndex() == 1;
-				this.strategy = new EquiJoin().withMode(Mode.NONE).
-					withKeyExpression(0, comparison.getExpr1().remove(InputSelection.class)).
-					withKeyExpression(1, comparison.getExpr2().remove(InputSelection.class));
+				// the broadcasted input cannot be preserved, as each task only sees a part of the other input
+				if (this.broadcastInput != -1 && !this.outerJoinSources.contains(this.broadcastInput))
+					this.strategy = this.createBroadcastStrategy(comparison.getExpr1(), comparison.getExpr2(),
+						this.outerJoinSources.isEmpty() ? BroadcastHashJoin.Mode.INNER :
+							BroadcastHashJoin.Mode.LEFT_OUTER);
+				else if (this.skewFactor > 1)
+					this.strategy = this.createSkewedStrategy(comparison.getExpr1(), comparison.getExpr2());
+				else
+					this.strategy = new EquiJoin().withMode(Mode.NONE).
+						withKeyExpression(0, comparison.getExpr1().remove(InputSelection.class)).
+						withKeyExpression(1, comparison.getExpr2().remove(InputSelection.class));
 				break;
 			default:
-				this.strategy = new ThetaJoin().withCondition(comparison);
+				this.strategy = this.chooseBandStrategy(comparison);
 			}
 		} else if (this.condition instanceof ElementInSetExpression) {
 			final ElementInSetExpression elementInSetExpression = (ElementInSetExpression) this.condition.clone();
 			this.inverseInputs =
 				elementInSetExpression.getElementExpr().findFirst(InputSelection.class).getIndex() == 1;
-			switch (elementInSetExpression.getQuantor()) {
-			case EXISTS_NOT_IN:
-				this.strategy = new AntiJoin().
-					withKeyExpression(0, elementInSetExpression.getElementExpr().remove(InputSelection.class)).
-					withKeyExpression(1, elementInSetExpression.getSetExpr().remove(InputSelection.class));
-				break;
-			case EXISTS_IN:
-				this.strategy = new SemiJoin().
-					withKeyExpression(0, elementInSetExpression.getElementExpr().remove(InputSelection.class)).
-					withKeyExpression(1, elementInSetExpression.getSetExpr().remove(InputSelection.class));
-				break;
-			}
+			if (this.broadcastInput == (this.inverseInputs ? 0 : 1))
+				this.strategy = this.createBroadcastStrategy(elementInSetExpression.getElementExpr(),
+					elementInSetExpression.getSetExpr(),
+					elementInSetExpression.getQuantor() == Quantor.EXISTS_IN ? BroadcastHashJoin.Mode.SEMI :
+						BroadcastHashJoin.Mode.ANTI);
+			else
+				switch (elementInSetExpression.getQuantor()) {
+				case EXISTS_NOT_IN:
+					this.strategy = new AntiJoin().
+						withKeyExpression(0, elementInSetExpression.getElementExpr().remove(InputSelection.class)).
+						withKeyExpression(1, elementInSetExpression.getSetExpr().remove(InputSelection.class));
+					break;
+				case EXISTS_IN:
+					this.strategy = new SemiJoin().
+						withKeyExpression(0, elementInSetExpression.getElementExpr().remove(InputSelection.class)).
+						withKeyExpression(1, elementInSetExpression.getSetExpr().remove(InputSelection.class));
+					break;
+				}
 		}
 		if (this.strategy == null)
 			throw new UnsupportedOperationException("condition " + this.condition + " not supported");
@@ -14,18 +14,38 @@
  **********************************************************************************************************************/
 package eu.stratosphere.sopremo.base;
 
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.stratosphere.api.common.operators.Operator;
+import eu.stratosphere.api.common.operators.util.OperatorUtil;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.pact.common.plan.PactModule;
 import eu.stratosphere.sopremo.expressions.EvaluationExpression;
 import eu.stratosphere.sopremo.operator.ElementaryOperator;
 import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Internal;
 import eu.stratosphere.sopremo.operator.Name;
+import eu.stratosphere.sopremo.operator.Property;
 import eu.stratosphere.sopremo.pact.JsonCollector;
+import eu.stratosphere.sopremo.pact.SopremoMap;
 import eu.stratosphere.sopremo.pact.SopremoReduce;
 import eu.stratosphere.sopremo.type.IJsonNode;
 import eu.stratosphere.sopremo.type.IStreamNode;
 
+/**
+ * Emits each distinct value of the input once.<br>
+ * Before the values are repartitioned, each task drops the duplicates that it finds with a bounded in-memory hash set
+ * (see {@link LocalDeduplication}), such that inputs with many duplicates ship only a fraction of their values. The
+ * remaining duplicates are removed after the repartitioning.
+ */
 @InputCardinality(min = 1, max = 1)
 @Name(adjective = "unique")
 public class Unique extends ElementaryOperator<Unique> {
+	private int localCapacity = LocalDeduplication.DEFAULT_CAPACITY;
+
 	/**
 	 * Initializes Unique.
 	 */
@@ -34,6 +54,75 @@ public class Unique extends ElementaryOperator<Unique> {
 		this.setCombinable(true);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#asPactModule()
+	 */
+	@Override
+	public PactModule asPactModule() {
+		if (this.localCapacity == 0)
+			return super.asPactModule();
+
+		final LocalDeduplication localDeduplication = new LocalDeduplication().withCapacity(this.localCapacity);
+		if (this.getDegreeOfParallelism() != STANDARD_DEGREE_OF_PARALLELISM)
+			localDeduplication.setDegreeOfParallelism(this.getDegreeOfParallelism());
+		final Operator localContract = localDeduplication.asPactModule().getOutput(0).getInputs().get(0);
+
+		final PactModule module = super.asPactModule();
+		final Operator reduce = module.getOutput(0).getInputs().get(0);
+		OperatorUtil.setInputs(localContract, OperatorUtil.getInputs(reduce));
+		final List<Operator> reduceInput = new ArrayList<Operator>();
+		reduceInput.add(localContract);
+		final List<List<Operator>> reduceInputs = new ArrayList<List<Operator>>();
+		reduceInputs.add(reduceInput);
+		OperatorUtil.setInputs(reduce, reduceInputs);
+		return module;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		return this.localCapacity == ((Unique) obj).localCapacity;
+	}
+
+	/**
+	 * Returns the maximum number of distinct values that each task remembers to drop duplicates before the
+	 * repartitioning.
+	 * 
+	 * @return the local capacity
+	 */
+	public int getLocalCapacity() {
+		return this.localCapacity;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + this.localCapacity;
+	}
+
+	/**
+	 * Sets the maximum number of distinct values that each task remembers to drop duplicates before the
+	 * repartitioning. A capacity of 0 disables the local deduplication.
+	 * 
+	 * @param localCapacity
+	 *        the local capacity
+	 */
+	@Property(hidden = true)
+	public void setLocalCapacity(final int localCapacity) {
+		if (localCapacity < 0)
+			throw new IllegalArgumentException("localCapacity must not be negative");
+
+		this.localCapacity = localCapacity;
+	}
+
+	public Unique withLocalCapacity(final int localCapacity) {
+		this.setLocalCapacity(localCapacity);
+		return this;
+	}
+
 	public static class Implementation extends SopremoReduce {
 		/*
 		 * (non-Javadoc)
@@ -46,4 +135,82 @@ public class Unique extends ElementaryOperator<Unique> {
 		}
 	}
 
+	/**
+	 * Drops the values that the task has already seen, as long as the number of remembered distinct values does not
+	 * exceed the capacity. When the capacity is reached, the hash set is cleared and filled anew. Since all emitted
+	 * values are deduplicated again after the repartitioning, forgetting values only lets some duplicates pass.
+	 */
+	@Internal
+	@InputCardinality(1)
+	public static class LocalDeduplication extends ElementaryOperator<LocalDeduplication> {
+		/**
+		 * The default number of distinct values that are remembered per task.
+		 */
+		public static final int DEFAULT_CAPACITY = 1 << 16;
+
+		private int capacity = DEFAULT_CAPACITY;
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!super.equals(obj))
+				return false;
+			return this.capacity == ((LocalDeduplication) obj).capacity;
+		}
+
+		public int getCapacity() {
+			return this.capacity;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * super.hashCode() + this.capacity;
+		}
+
+		public void setCapacity(final int capacity) {
+			if (capacity < 1)
+				throw new IllegalArgumentException("capacity must be positive");
+
+			this.capacity = capacity;
+		}
+
+		public LocalDeduplication withCapacity(final int capacity) {
+			this.setCapacity(capacity);
+			return this;
+		}
+
+		public static class Implementation extends SopremoMap {
+			private int capacity;
+
+			private transient ObjectOpenHashSet<IJsonNode> seenValues;
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoMap#open(eu.stratosphere.configuration.Configuration)
+			 */
+			@Override
+			public void open(final Configuration parameters) {
+				super.open(parameters);
+				this.seenValues = new ObjectOpenHashSet<IJsonNode>();
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoMap#map(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				if (this.seenValues.contains(value))
+					return;
+
+				if (this.seenValues.size() >= this.capacity)
+					this.seenValues.clear();
+				// the input value is reused by the caller
+				this.seenValues.add(value.clone());
+				out.collect(value);
+			}
+		}
+	}
 }
\ No newline at end of file
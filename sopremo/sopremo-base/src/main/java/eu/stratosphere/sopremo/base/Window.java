@@ -0,0 +1,198 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.base;
+
+import java.util.List;
+
+import eu.stratosphere.api.common.operators.Order;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.sopremo.base.window.WindowFrame;
+import eu.stratosphere.sopremo.base.window.WindowFunctionCall;
+import eu.stratosphere.sopremo.base.window.WindowFunctions;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.expressions.InputSelection;
+import eu.stratosphere.sopremo.expressions.OrderingExpression;
+import eu.stratosphere.sopremo.operator.ElementaryOperator;
+import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Name;
+import eu.stratosphere.sopremo.operator.Property;
+import eu.stratosphere.sopremo.pact.JsonCollector;
+import eu.stratosphere.sopremo.pact.SopremoReduce;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IStreamNode;
+
+/**
+ * Evaluates {@link WindowFunctions} such as row_number, rank, lag, lead, or running_sum for each record.<br/>
+ * The records are partitioned by the partition key and sorted within each partition. Each partition is then streamed
+ * in a single pass; only the current record and the records needed for lead are buffered. The result projection
+ * determines how the values of the window functions are attached to each record, for example,
+ * <code>{$record.*, rank: rank()}</code>.
+ */
+@InputCardinality(1)
+@Name(noun = "window")
+public class Window extends ElementaryOperator<Window> {
+	/**
+	 * Initializes Window.
+	 */
+	public Window() {
+		this.setKeyExpressions(0, ConstantExpression.NULL);
+		this.setInnerGroupOrder(0, new OrderingExpression());
+	}
+
+	public Order getDirection() {
+		return this.getOrderingExpression().getOrder();
+	}
+
+	/**
+	 * Returns the orderingExpression.
+	 *
+	 * @return the orderingExpression
+	 */
+	public OrderingExpression getOrderingExpression() {
+		return this.getInnerGroupOrder(0).get(0);
+	}
+
+	public EvaluationExpression getPartitionKey() {
+		return this.getKeyExpressions(0).get(0);
+	}
+
+	public EvaluationExpression getSortingExpression() {
+		return this.getOrderingExpression().getPath();
+	}
+
+	@Property
+	@Name(noun = { "direction", "order" })
+	public void setDirection(final Order order) {
+		this.getOrderingExpression().setOrder(order);
+	}
+
+	/**
+	 * Sets the orderingExpression to the specified value.
+	 *
+	 * @param orderingExpression
+	 *        the orderingExpression to set
+	 */
+	public void setOrderingExpression(final OrderingExpression orderingExpression) {
+		if (orderingExpression == null)
+			throw new NullPointerException("orderingExpression must not be null");
+
+		this.setInnerGroupOrder(0, orderingExpression);
+	}
+
+	@Property(preferred = true)
+	@Name(preposition = "by")
+	public void setPartitionKey(final EvaluationExpression partitionKey) {
+		if (partitionKey == null)
+			throw new NullPointerException("partitionKey must not be null");
+
+		this.setKeyExpressions(0, partitionKey.clone().remove(InputSelection.class));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#setResultProjection(eu.stratosphere.sopremo.expressions.
+	 * EvaluationExpression)
+	 */
+	@Override
+	@Property(preferred = true)
+	@Name(preposition = "into")
+	public void setResultProjection(final EvaluationExpression resultProjection) {
+		if (resultProjection == null)
+			throw new NullPointerException("resultProjection must not be null");
+
+		super.setResultProjection(WindowFunctionCall.replaceFunctionCalls(resultProjection.clone()));
+	}
+
+	@Property
+	@Name(preposition = "on")
+	public void setSortingExpression(final EvaluationExpression sortingExpression) {
+		if (sortingExpression == null)
+			throw new NullPointerException("sortingExpression must not be null");
+
+		this.getOrderingExpression().setPath(sortingExpression.clone().remove(InputSelection.class));
+	}
+
+	public Window withDirection(final Order order) {
+		this.setDirection(order);
+		return this;
+	}
+
+	public Window withOrderingExpression(final OrderingExpression orderingExpression) {
+		this.setOrderingExpression(orderingExpression);
+		return this;
+	}
+
+	public Window withPartitionKey(final EvaluationExpression partitionKey) {
+		this.setPartitionKey(partitionKey);
+		return this;
+	}
+
+	public Window withSortingExpression(final EvaluationExpression sortingExpression) {
+		this.setSortingExpression(sortingExpression);
+		return this;
+	}
+
+	public static class Implementation extends SopremoReduce {
+		// transferred from ElementaryOperator to detect peers
+		private List<List<OrderingExpression>> innerGroupOrders;
+
+		private transient List<WindowFunctionCall> functionCalls;
+
+		private transient WindowFrame frame;
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#open(eu.stratosphere.configuration.Configuration)
+		 */
+		@Override
+		public void open(final Configuration parameters) {
+			super.open(parameters);
+
+			this.functionCalls = this.getContext().getResultProjection().findAll(WindowFunctionCall.class);
+			int lookahead = 0;
+			for (final WindowFunctionCall functionCall : this.functionCalls)
+				lookahead = Math.max(lookahead, functionCall.getLookahead());
+			this.frame = new WindowFrame(lookahead, this.innerGroupOrders.get(0));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.pact.GenericSopremoReduce#reduce(eu.stratosphere.sopremo.type.IStreamNode,
+		 * eu.stratosphere.sopremo.pact.JsonCollector)
+		 */
+		@Override
+		protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+			this.frame.reset();
+			for (final WindowFunctionCall functionCall : this.functionCalls)
+				functionCall.initialize(this.frame);
+
+			for (final IJsonNode value : values) {
+				this.frame.add(value);
+				if (this.frame.isFull())
+					this.emitCurrent(out);
+			}
+			while (!this.frame.isEmpty())
+				this.emitCurrent(out);
+		}
+
+		private void emitCurrent(final JsonCollector<IJsonNode> out) {
+			this.frame.advance();
+			// the window functions are evaluated within the result projection of the collector
+			out.collect(this.frame.getCurrent());
+			this.frame.removeCurrent();
+		}
+	}
+}
@@ -0,0 +1,689 @@
+package eu.stratosphere.sopremo.base.join;
+
+import java.util.Set;
+
+import eu.stratosphere.api.common.functions.Function;
+import eu.stratosphere.api.common.operators.Operator;
+import eu.stratosphere.api.common.operators.base.CrossOperatorBase.CrossWithSmall;
+import eu.stratosphere.pact.common.plan.PactModule;
+import eu.stratosphere.sopremo.expressions.AndExpression;
+import eu.stratosphere.sopremo.expressions.ArithmeticExpression;
+import eu.stratosphere.sopremo.expressions.ArithmeticExpression.ArithmeticOperator;
+import eu.stratosphere.sopremo.expressions.ArrayAccess;
+import eu.stratosphere.sopremo.expressions.BooleanExpression;
+import eu.stratosphere.sopremo.expressions.ComparativeExpression;
+import eu.stratosphere.sopremo.expressions.ComparativeExpression.BinaryOperator;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.expressions.InputSelection;
+import eu.stratosphere.sopremo.operator.DegreeOfParallelism;
+import eu.stratosphere.sopremo.operator.ElementaryOperator;
+import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Internal;
+import eu.stratosphere.sopremo.pact.JsonCollector;
+import eu.stratosphere.sopremo.pact.SopremoCross;
+import eu.stratosphere.sopremo.pact.SopremoJoin;
+import eu.stratosphere.sopremo.pact.SopremoMap;
+import eu.stratosphere.sopremo.pact.SopremoReduce;
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.BooleanNode;
+import eu.stratosphere.sopremo.type.DoubleNode;
+import eu.stratosphere.sopremo.type.IArrayNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.INumericNode;
+import eu.stratosphere.sopremo.type.IStreamNode;
+import eu.stratosphere.sopremo.type.LongNode;
+import eu.stratosphere.sopremo.type.NullNode;
+
+/**
+ * Joins the values of one input with the values of the other input that bound them from both sides, e.g.,
+ * <code>$a.ts &gt;= $b.start and $a.ts &lt;= $b.end</code> or <code>$a.x &gt; $b.x - 5 and $a.x &lt; $b.x + 5</code>.<br>
+ * Instead of evaluating the condition on the cross product, the numeric domain is cut into buckets of a fixed width.
+ * Each point is assigned to the bucket that contains it and each interval is replicated to all buckets that it
+ * overlaps. An equi-join on the bucket then only probes the pairs that share a bucket and evaluates the exact condition
+ * on them.<br>
+ * The bucket width should be in the order of the typical interval length: smaller buckets replicate the intervals more
+ * often, larger buckets probe more pairs. If no width is given, the average length of the intervals is computed in an
+ * additional pass. Intervals that would be replicated to more than {@link #MAX_BUCKETS} buckets are instead joined
+ * with all points, which is cheap as long as such intervals are rare.<br>
+ * Values of different types never satisfy a comparison unless both are numeric. Hence, points that are not numeric
+ * can only match intervals whose bounds are both not numeric. Such intervals are joined with all points like the wide
+ * intervals, which degrades to the cross product of a {@link ThetaJoin} if no bound is numeric, e.g., for dates that
+ * are given as strings.
+ */
+@InputCardinality(min = 2, max = 2)
+@Internal
+public class BandJoin extends TwoSourceJoinBase<BandJoin> {
+	private static final EvaluationExpression BUCKET = new ArrayAccess(0);
+
+	/**
+	 * The maximum number of buckets to which an interval is replicated. Wider intervals are joined with all points.
+	 */
+	public static final int MAX_BUCKETS = 64;
+
+	private ComparativeExpression lowerBound = new ComparativeExpression(new InputSelection(0),
+		BinaryOperator.GREATER_EQUAL, new InputSelection(1));
+
+	private ComparativeExpression upperBound = new ComparativeExpression(new InputSelection(0),
+		BinaryOperator.LESS_EQUAL, new InputSelection(1));
+
+	private double bucketWidth = 1;
+
+	/**
+	 * Initializes BandJoin.
+	 */
+	public BandJoin() {
+		// the bucket ids are the keys of the internal equi-join
+		this.setKeyExpressions(0, BUCKET);
+		this.setKeyExpressions(1, BUCKET);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#getAllKeyExpressions()
+	 */
+	@Override
+	public Set<EvaluationExpression> getAllKeyExpressions() {
+		final Set<EvaluationExpression> allKeys = super.getAllKeyExpressions();
+		// the lengths of the intervals are summed under a constant key
+		if (this.bucketWidth == 0)
+			allKeys.add(ConstantExpression.NULL);
+		return allKeys;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#asPactModule()
+	 */
+	@Override
+	public PactModule asPactModule() {
+		final int pointIndex = this.lowerBound.getExpr1().findFirst(InputSelection.class).getIndex();
+
+		final EvaluationExpression lowerExpression = this.lowerBound.getExpr2().clone().remove(InputSelection.class);
+		final EvaluationExpression upperExpression = this.upperBound.getExpr2().clone().remove(InputSelection.class);
+
+		final PactModule module = new PactModule(2, 1);
+		final Operator points = module.getInput(pointIndex), intervals = module.getInput(1 - pointIndex);
+		// without a given width, the average length of the intervals is broadcasted to the bucket assignments
+		final Operator[] pointInputs, intervalInputs;
+		if (this.bucketWidth > 0) {
+			pointInputs = new Operator[] { points };
+			intervalInputs = new Operator[] { intervals };
+		} else {
+			final Operator lengths = this.toContract(new SumIntervalLengths(), this.toContract(new MeasureIntervals().
+				withLowerExpression(lowerExpression).
+				withUpperExpression(upperExpression), intervals));
+			pointInputs = new Operator[] { points, lengths };
+			intervalInputs = new Operator[] { intervals, lengths };
+		}
+
+		final Operator[] buckets = new Operator[2];
+		buckets[pointIndex] = this.toContract(new AssignBucket().
+			withPointExpression(this.lowerBound.getExpr1().clone().remove(InputSelection.class)).
+			withBucketWidth(this.bucketWidth), pointInputs);
+		buckets[1 - pointIndex] = this.toContract(new ReplicateToBuckets().
+			withLowerExpression(lowerExpression).
+			withUpperExpression(upperExpression).
+			withBucketWidth(this.bucketWidth), intervalInputs);
+
+		final BooleanExpression condition = new AndExpression(this.lowerBound.clone(), this.upperBound.clone());
+		final ProbeBuckets probe = new ProbeBuckets().withCondition(condition);
+		probe.setResultProjection(this.getResultProjection());
+		module.getOutput(0).addInput(this.toContract(probe, buckets));
+
+		// intervals that would be replicated to too many buckets or that are not numeric are joined with all points
+		final Operator wideIntervals = this.toContract(new ReplicateToBuckets().
+			withLowerExpression(lowerExpression).
+			withUpperExpression(upperExpression).
+			withBucketWidth(this.bucketWidth).
+			withWideIntervals(true), intervalInputs);
+		final ProbeWideIntervals wideProbe = new ProbeWideIntervals().
+			withCondition((BooleanExpression) condition.clone()).
+			withPointIndex(pointIndex);
+		wideProbe.setResultProjection(this.getResultProjection());
+		module.getOutput(0).addInput(this.toContract(wideProbe, points, wideIntervals));
+		return module;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		final BandJoin other = (BandJoin) obj;
+		return Double.doubleToLongBits(this.bucketWidth) == Double.doubleToLongBits(other.bucketWidth) &&
+			this.lowerBound.equals(other.lowerBound) && this.upperBound.equals(other.upperBound);
+	}
+
+	/**
+	 * Returns the width of the buckets.
+	 *
+	 * @return the width of the buckets
+	 */
+	public double getBucketWidth() {
+		return this.bucketWidth;
+	}
+
+	/**
+	 * Returns the condition <code>point &gt;(=) lower</code>.
+	 *
+	 * @return the lower bound
+	 */
+	public ComparativeExpression getLowerBound() {
+		return this.lowerBound;
+	}
+
+	/**
+	 * Returns the condition <code>point &lt;(=) upper</code>.
+	 *
+	 * @return the upper bound
+	 */
+	public ComparativeExpression getUpperBound() {
+		return this.upperBound;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		final long bits = Double.doubleToLongBits(this.bucketWidth);
+		result = prime * result + (int) (bits ^ bits >>> 32);
+		result = prime * result + this.lowerBound.hashCode();
+		result = prime * result + this.upperBound.hashCode();
+		return result;
+	}
+
+	/**
+	 * Sets the bounds of the band as returned by {@link #asBand(ComparativeExpression, ComparativeExpression)}.
+	 *
+	 * @param lowerBound
+	 *        the condition <code>point &gt;(=) lower</code>
+	 * @param upperBound
+	 *        the condition <code>point &lt;(=) upper</code>
+	 */
+	public void setBounds(final ComparativeExpression lowerBound, final ComparativeExpression upperBound) {
+		if (lowerBound == null)
+			throw new NullPointerException("lowerBound must not be null");
+		if (upperBound == null)
+			throw new NullPointerException("upperBound must not be null");
+		if (!lowerBound.getExpr1().equals(upperBound.getExpr1()))
+			throw new IllegalArgumentException(String.format("Bounds %s and %s do not refer to the same value",
+				lowerBound, upperBound));
+
+		this.lowerBound = lowerBound;
+		this.upperBound = upperBound;
+	}
+
+	/**
+	 * Sets the width of the buckets. If the width is 0, the average length of the intervals is used.
+	 *
+	 * @param bucketWidth
+	 *        the width of the buckets
+	 */
+	public void setBucketWidth(final double bucketWidth) {
+		if (!(bucketWidth >= 0))
+			throw new IllegalArgumentException("bucketWidth must not be negative");
+
+		this.bucketWidth = bucketWidth;
+	}
+
+	public BandJoin withBounds(final ComparativeExpression lowerBound, final ComparativeExpression upperBound) {
+		this.setBounds(lowerBound, upperBound);
+		return this;
+	}
+
+	public BandJoin withBucketWidth(final double bucketWidth) {
+		this.setBucketWidth(bucketWidth);
+		return this;
+	}
+
+	/**
+	 * Interprets the two comparisons as a band, i.e., as a lower and an upper bound of the same value.
+	 *
+	 * @return the lower bound <code>point &gt;(=) lower</code> and the upper bound <code>point &lt;(=) upper</code> or
+	 *         null if the comparisons do not form a band
+	 */
+	public static ComparativeExpression[] asBand(final ComparativeExpression condition1,
+			final ComparativeExpression condition2) {
+		final ComparativeExpression[] orientations1 = { condition1, mirror(condition1) };
+		final ComparativeExpression[] orientations2 = { condition2, mirror(condition2) };
+		for (final ComparativeExpression oriented1 : orientations1)
+			for (final ComparativeExpression oriented2 : orientations2) {
+				if (oriented1 == null || oriented2 == null || !oriented1.getExpr1().equals(oriented2.getExpr1()))
+					continue;
+				if (isLowerBound(oriented1) && isUpperBound(oriented2))
+					return new ComparativeExpression[] { oriented1, oriented2 };
+				if (isUpperBound(oriented1) && isLowerBound(oriented2))
+					return new ComparativeExpression[] { oriented2, oriented1 };
+			}
+		return null;
+	}
+
+	/**
+	 * Derives the bucket width from bounds of the form <code>x - c1</code> and <code>x + c2</code>, where c1 and c2
+	 * are numeric constants.
+	 *
+	 * @return the width of the band or 0 if it cannot be derived
+	 */
+	public static double estimateBucketWidth(final ComparativeExpression lowerBound,
+			final ComparativeExpression upperBound) {
+		final EvaluationExpression[] lowerBase = new EvaluationExpression[1], upperBase = new EvaluationExpression[1];
+		final double lowerOffset = getOffset(lowerBound.getExpr2(), lowerBase);
+		final double upperOffset = getOffset(upperBound.getExpr2(), upperBase);
+		if (!lowerBase[0].equals(upperBase[0]) || !(upperOffset > lowerOffset))
+			return 0;
+		return upperOffset - lowerOffset;
+	}
+
+	private static double getOffset(final EvaluationExpression expression, final EvaluationExpression[] base) {
+		base[0] = expression;
+		if (!(expression instanceof ArithmeticExpression))
+			return 0;
+
+		final ArithmeticExpression arithmetic = (ArithmeticExpression) expression;
+		final EvaluationExpression first = arithmetic.getFirstOperand(), second = arithmetic.getSecondOperand();
+		if (second instanceof ConstantExpression &&
+			((ConstantExpression) second).getConstant() instanceof INumericNode) {
+			final double constant = ((INumericNode) ((ConstantExpression) second).getConstant()).getDoubleValue();
+			if (arithmetic.getOperator() == ArithmeticOperator.ADDITION) {
+				base[0] = first;
+				return constant;
+			}
+			if (arithmetic.getOperator() == ArithmeticOperator.SUBTRACTION) {
+				base[0] = first;
+				return -constant;
+			}
+		} else if (first instanceof ConstantExpression &&
+			((ConstantExpression) first).getConstant() instanceof INumericNode &&
+			arithmetic.getOperator() == ArithmeticOperator.ADDITION) {
+			base[0] = second;
+			return ((INumericNode) ((ConstantExpression) first).getConstant()).getDoubleValue();
+		}
+		return 0;
+	}
+
+	private static boolean isLowerBound(final ComparativeExpression comparison) {
+		return comparison.getBinaryOperator() == BinaryOperator.GREATER ||
+			comparison.getBinaryOperator() == BinaryOperator.GREATER_EQUAL;
+	}
+
+	private static boolean isUpperBound(final ComparativeExpression comparison) {
+		return comparison.getBinaryOperator() == BinaryOperator.LESS ||
+			comparison.getBinaryOperator() == BinaryOperator.LESS_EQUAL;
+	}
+
+	private static ComparativeExpression mirror(final ComparativeExpression comparison) {
+		final BinaryOperator mirrored;
+		switch (comparison.getBinaryOperator()) {
+		case LESS:
+			mirrored = BinaryOperator.GREATER;
+			break;
+		case LESS_EQUAL:
+			mirrored = BinaryOperator.GREATER_EQUAL;
+			break;
+		case GREATER:
+			mirrored = BinaryOperator.LESS;
+			break;
+		case GREATER_EQUAL:
+			mirrored = BinaryOperator.LESS_EQUAL;
+			break;
+		default:
+			return null;
+		}
+		return new ComparativeExpression(comparison.getExpr2(), mirrored, comparison.getExpr1());
+	}
+
+	/**
+	 * Returns the bucket width that is derived from <code>[sum of lengths, number of intervals]</code>.
+	 */
+	static double getEstimatedBucketWidth(final IJsonNode lengths) {
+		final IArrayNode<?> sumAndCount = (IArrayNode<?>) lengths;
+		final double sum = ((INumericNode) sumAndCount.get(0)).getDoubleValue();
+		final long count = ((INumericNode) sumAndCount.get(1)).getLongValue();
+		// intervals of length 0 can be bucketed with any width
+		return sum > 0 && count > 0 ? sum / count : 1;
+	}
+
+	/**
+	 * Emits <code>[bucket, value]</code> for the bucket that contains the point of the value. Points that are not
+	 * numeric are skipped, as they are only joined with the intervals that are probed with all points. If no bucket
+	 * width is given, it is derived from the lengths that are received on the second input.
+	 */
+	@InputCardinality(min = 1, max = 2)
+	@Internal
+	public static class AssignBucket extends ElementaryOperator<AssignBucket> {
+		private EvaluationExpression pointExpression = EvaluationExpression.VALUE;
+
+		private double bucketWidth = 1;
+
+		public AssignBucket withBucketWidth(final double bucketWidth) {
+			this.bucketWidth = bucketWidth;
+			return this;
+		}
+
+		public AssignBucket withPointExpression(final EvaluationExpression pointExpression) {
+			this.pointExpression = pointExpression;
+			return this;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#getFunctionClass()
+		 */
+		@Override
+		protected Class<? extends Function> getFunctionClass() {
+			return this.bucketWidth > 0 ? Implementation.class : EstimatedImplementation.class;
+		}
+
+		public static class EstimatedImplementation extends SopremoCross implements CrossWithSmall {
+			private final transient Implementation implementation = new Implementation();
+
+			private EvaluationExpression pointExpression;
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoCross#cross(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.type.IJsonNode, eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void cross(final IJsonNode value, final IJsonNode lengths, final JsonCollector<IJsonNode> out) {
+				this.implementation.pointExpression = this.pointExpression;
+				this.implementation.bucketWidth = getEstimatedBucketWidth(lengths);
+				this.implementation.map(value, out);
+			}
+		}
+
+		public static class Implementation extends SopremoMap {
+			private EvaluationExpression pointExpression;
+
+			private double bucketWidth;
+
+			private final transient LongNode bucket = new LongNode();
+
+			private final transient IArrayNode<IJsonNode> result = new ArrayNode<IJsonNode>(this.bucket,
+				NullNode.getInstance());
+
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				final IJsonNode point = this.pointExpression.evaluate(value);
+				if (!(point instanceof INumericNode))
+					return;
+				this.bucket.setValue((long) Math.floor(((INumericNode) point).getDoubleValue() / this.bucketWidth));
+				this.result.set(1, value);
+				out.collect(this.result);
+			}
+		}
+	}
+
+	/**
+	 * Emits <code>[length, 1]</code> for each interval with numeric bounds and <code>[0, 0]</code> for all other
+	 * intervals, so that the lengths are summed up as long as there is any interval.
+	 */
+	@InputCardinality(1)
+	@Internal
+	public static class MeasureIntervals extends ElementaryOperator<MeasureIntervals> {
+		private EvaluationExpression lowerExpression = EvaluationExpression.VALUE;
+
+		private EvaluationExpression upperExpression = EvaluationExpression.VALUE;
+
+		public MeasureIntervals withLowerExpression(final EvaluationExpression lowerExpression) {
+			this.lowerExpression = lowerExpression;
+			return this;
+		}
+
+		public MeasureIntervals withUpperExpression(final EvaluationExpression upperExpression) {
+			this.upperExpression = upperExpression;
+			return this;
+		}
+
+		public static class Implementation extends SopremoMap {
+			private EvaluationExpression lowerExpression, upperExpression;
+
+			private final transient DoubleNode length = new DoubleNode();
+
+			private final transient LongNode count = new LongNode();
+
+			private final transient IArrayNode<IJsonNode> result = new ArrayNode<IJsonNode>(this.length, this.count);
+
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				final IJsonNode lower = this.lowerExpression.evaluate(value);
+				final IJsonNode upper = this.upperExpression.evaluate(value);
+				if (lower instanceof INumericNode && upper instanceof INumericNode) {
+					this.length.setValue(Math.max(0,
+						((INumericNode) upper).getDoubleValue() - ((INumericNode) lower).getDoubleValue()));
+					this.count.setValue(1);
+				} else {
+					// the bucket assignments wait for the sum, so it must not be empty
+					this.length.setValue(0);
+					this.count.setValue(0);
+				}
+				out.collect(this.result);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the band condition on the cross product of all points and the intervals that span more than
+	 * {@link BandJoin#MAX_BUCKETS} buckets or whose bounds are not numeric.
+	 */
+	@InputCardinality(2)
+	@Internal
+	public static class ProbeWideIntervals extends ElementaryOperator<ProbeWideIntervals> {
+		private BooleanExpression condition;
+
+		private int pointIndex;
+
+		public ProbeWideIntervals withCondition(final BooleanExpression condition) {
+			this.condition = condition;
+			return this;
+		}
+
+		public ProbeWideIntervals withPointIndex(final int pointIndex) {
+			this.pointIndex = pointIndex;
+			return this;
+		}
+
+		public static class Implementation extends SopremoCross implements CrossWithSmall {
+			private final transient IArrayNode<IJsonNode> inputs = new ArrayNode<IJsonNode>();
+
+			private BooleanExpression condition;
+
+			private int pointIndex;
+
+			@Override
+			protected void cross(final IJsonNode point, final IJsonNode interval, final JsonCollector<IJsonNode> out) {
+				// the wide intervals are always the second input, so that they are broadcasted
+				this.inputs.set(this.pointIndex, point);
+				this.inputs.set(1 - this.pointIndex, interval);
+				if (this.condition.evaluate(this.inputs) == BooleanNode.TRUE)
+					out.collect(this.inputs);
+			}
+		}
+	}
+
+	/**
+	 * Emits <code>[bucket, value]</code> for all buckets that overlap the interval of the value. Intervals that span
+	 * more than {@link BandJoin#MAX_BUCKETS} buckets or whose bounds are not numeric are not replicated. Instead, they
+	 * are emitted unchanged if wide intervals are selected. If no bucket width is given, it is derived from the lengths
+	 * that are received on the second input.
+	 */
+	@InputCardinality(min = 1, max = 2)
+	@Internal
+	public static class ReplicateToBuckets extends ElementaryOperator<ReplicateToBuckets> {
+		private EvaluationExpression lowerExpression = EvaluationExpression.VALUE;
+
+		private EvaluationExpression upperExpression = EvaluationExpression.VALUE;
+
+		private double bucketWidth = 1;
+
+		private boolean wideIntervals = false;
+
+		public ReplicateToBuckets withBucketWidth(final double bucketWidth) {
+			this.bucketWidth = bucketWidth;
+			return this;
+		}
+
+		public ReplicateToBuckets withLowerExpression(final EvaluationExpression lowerExpression) {
+			this.lowerExpression = lowerExpression;
+			return this;
+		}
+
+		public ReplicateToBuckets withUpperExpression(final EvaluationExpression upperExpression) {
+			this.upperExpression = upperExpression;
+			return this;
+		}
+
+		public ReplicateToBuckets withWideIntervals(final boolean wideIntervals) {
+			this.wideIntervals = wideIntervals;
+			return this;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#getFunctionClass()
+		 */
+		@Override
+		protected Class<? extends Function> getFunctionClass() {
+			return this.bucketWidth > 0 ? Implementation.class : EstimatedImplementation.class;
+		}
+
+		public static class EstimatedImplementation extends SopremoCross implements CrossWithSmall {
+			private final transient Implementation implementation = new Implementation();
+
+			private EvaluationExpression lowerExpression, upperExpression;
+
+			private boolean wideIntervals;
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoCross#cross(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.type.IJsonNode, eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void cross(final IJsonNode value, final IJsonNode lengths, final JsonCollector<IJsonNode> out) {
+				this.implementation.lowerExpression = this.lowerExpression;
+				this.implementation.upperExpression = this.upperExpression;
+				this.implementation.wideIntervals = this.wideIntervals;
+				this.implementation.bucketWidth = getEstimatedBucketWidth(lengths);
+				this.implementation.map(value, out);
+			}
+		}
+
+		public static class Implementation extends SopremoMap {
+			private EvaluationExpression lowerExpression, upperExpression;
+
+			private double bucketWidth;
+
+			private boolean wideIntervals;
+
+			private final transient LongNode bucket = new LongNode();
+
+			private final transient IArrayNode<IJsonNode> result = new ArrayNode<IJsonNode>(this.bucket,
+				NullNode.getInstance());
+
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				this.result.set(1, value);
+				final IJsonNode lower = this.lowerExpression.evaluate(value);
+				final IJsonNode upper = this.upperExpression.evaluate(value);
+				if (!(lower instanceof INumericNode) || !(upper instanceof INumericNode)) {
+					if (this.wideIntervals)
+						out.collect(value);
+					return;
+				}
+				final double firstBucket = Math.floor(((INumericNode) lower).getDoubleValue() / this.bucketWidth);
+				final double lastBucket = Math.floor(((INumericNode) upper).getDoubleValue() / this.bucketWidth);
+
+				final boolean wide = lastBucket - firstBucket >= MAX_BUCKETS;
+				if (this.wideIntervals) {
+					if (wide)
+						out.collect(value);
+					return;
+				}
+				if (wide)
+					return;
+
+				for (long bucketId = (long) firstBucket; bucketId <= lastBucket; bucketId++) {
+					this.bucket.setValue(bucketId);
+					out.collect(this.result);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the band condition on all pairs of values that share a bucket and emits the matching pairs.
+	 */
+	@InputCardinality(2)
+	@Internal
+	public static class ProbeBuckets extends ElementaryOperator<ProbeBuckets> {
+		private BooleanExpression condition;
+
+		/**
+		 * Initializes ProbeBuckets.
+		 */
+		public ProbeBuckets() {
+			this.setKeyExpressions(0, BUCKET);
+			this.setKeyExpressions(1, BUCKET);
+		}
+
+		public ProbeBuckets withCondition(final BooleanExpression condition) {
+			this.condition = condition;
+			return this;
+		}
+
+		public static class Implementation extends SopremoJoin {
+			private final transient IArrayNode<IJsonNode> inputs = new ArrayNode<IJsonNode>();
+
+			private BooleanExpression condition;
+
+			@Override
+			protected void join(final IJsonNode value1, final IJsonNode value2, final JsonCollector<IJsonNode> out) {
+				this.inputs.set(0, ((IArrayNode<?>) value1).get(1));
+				this.inputs.set(1, ((IArrayNode<?>) value2).get(1));
+				if (this.condition.evaluate(this.inputs) == BooleanNode.TRUE)
+					out.collect(this.inputs);
+			}
+		}
+	}
+
+	/**
+	 * Sums up the lengths of the intervals to <code>[sum of lengths, number of intervals]</code>.
+	 */
+	@InputCardinality(1)
+	@Internal
+	@DegreeOfParallelism(1)
+	public static class SumIntervalLengths extends ElementaryOperator<SumIntervalLengths> {
+		/**
+		 * Initializes SumIntervalLengths.
+		 */
+		public SumIntervalLengths() {
+			this.setKeyExpressions(0, ConstantExpression.NULL);
+			this.setCombinable(true);
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private final transient DoubleNode sum = new DoubleNode();
+
+			private final transient LongNode count = new LongNode();
+
+			private final transient IArrayNode<IJsonNode> result = new ArrayNode<IJsonNode>(this.sum, this.count);
+
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				double sum = 0;
+				long count = 0;
+				for (final IJsonNode value : values) {
+					final IArrayNode<?> partialSum = (IArrayNode<?>) value;
+					sum += ((INumericNode) partialSum.get(0)).getDoubleValue();
+					count += ((INumericNode) partialSum.get(1)).getLongValue();
+				}
+				this.sum.setValue(sum);
+				this.count.setValue(count);
+				out.collect(this.result);
+			}
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package eu.stratosphere.sopremo.base.join;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.stratosphere.api.common.operators.Operator;
+import eu.stratosphere.api.common.operators.base.CrossOperatorBase.CrossWithSmall;
+import eu.stratosphere.api.common.operators.util.OperatorUtil;
+import eu.stratosphere.pact.common.plan.PactModule;
+import eu.stratosphere.sopremo.expressions.ArrayCreation;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.io.Source;
+import eu.stratosphere.sopremo.operator.DegreeOfParallelism;
+import eu.stratosphere.sopremo.operator.ElementaryOperator;
+import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Internal;
+import eu.stratosphere.sopremo.pact.JsonCollector;
+import eu.stratosphere.sopremo.pact.SopremoCross;
+import eu.stratosphere.sopremo.pact.SopremoMap;
+import eu.stratosphere.sopremo.pact.SopremoReduce;
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.IArrayNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IStreamNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.LongNode;
+
+/**
+ * Drops the values of the first (probe) input whose key definitely does not occur in the second (build) input.<br>
+ * The keys of the build input are hashed into a Bloom filter that is broadcasted to all tasks of the probe input. Thus,
+ * a subsequent equi- or semi-join only needs to repartition the probe values that probably have a partner. The filter
+ * is sized with {@value #BITS_PER_KEY} bits per build value after all build keys have been counted, which yields a
+ * false positive rate of about one percent.<br>
+ * The reduction is only correct if probe values without partner do not contribute to the result, e.g., for inner joins
+ * and the element side of semi-joins.<br>
+ * The hashes of all build keys are sent to a single task that builds the filter. Thus, the reduction pays off for
+ * build inputs of up to a few million values, for which the four bytes per hash are small compared to the probe values
+ * that are saved from the shuffle.
+ */
+@InputCardinality(min = 2, max = 2)
+@Internal
+public class BloomFilterReduction extends TwoSourceJoinBase<BloomFilterReduction> {
+	/**
+	 * The number of bits of the filter per build value.
+	 */
+	public static final int BITS_PER_KEY = 10;
+
+	private static final int NUM_HASH_FUNCTIONS = 7;
+
+	private EvaluationExpression probeKeyExpression = EvaluationExpression.VALUE;
+
+	private EvaluationExpression buildKeyExpression = EvaluationExpression.VALUE;
+
+	/**
+	 * Initializes BloomFilterReduction.
+	 */
+	public BloomFilterReduction() {
+		// the hashed keys are collected under the same key
+		this.setKeyExpressions(0, ConstantExpression.NULL);
+		this.setKeyExpressions(1, ConstantExpression.NULL);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#asPactModule()
+	 */
+	@Override
+	public PactModule asPactModule() {
+		final PactModule module = new PactModule(2, 1);
+		module.getOutput(0).addInput(this.filter(asList(module.getInput(0)), asList(module.getInput(1))));
+		return module;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		final BloomFilterReduction other = (BloomFilterReduction) obj;
+		return this.probeKeyExpression.equals(other.probeKeyExpression) &&
+			this.buildKeyExpression.equals(other.buildKeyExpression);
+	}
+
+	/**
+	 * Translates the reduction into contracts that filter the union of the given probe contracts with the keys of the
+	 * union of the given build contracts. This method allows strategies to filter one of their inputs before it is
+	 * shipped.
+	 *
+	 * @param probeInputs
+	 *        the contracts that provide the values to filter
+	 * @param buildInputs
+	 *        the contracts that provide the keys of the filter
+	 * @return the contract that emits the filtered probe values
+	 */
+	public Operator filter(final List<Operator> probeInputs, final List<Operator> buildInputs) {
+		final Operator hashedKeys = this.toContract(new HashKeys().withBuildKeyExpression(this.buildKeyExpression));
+		OperatorUtil.setInputs(hashedKeys, asInputLists(buildInputs));
+
+		// the sentinel guarantees a filter even if the build input is empty
+		final List<Operator> filterInputs = asList(hashedKeys);
+		filterInputs.add(new Source(new ArrayCreation()).asPactModule().getOutput(0).getInputs().get(0));
+		final Operator filter = this.toContract(new BuildFilter());
+		OperatorUtil.setInputs(filter, asInputLists(filterInputs));
+
+		final Operator probe = this.toContract(new ProbeFilter().withProbeKeyExpression(this.probeKeyExpression));
+		final List<List<Operator>> probeInputLists = asInputLists(probeInputs);
+		probeInputLists.add(asList(filter));
+		OperatorUtil.setInputs(probe, probeInputLists);
+		return probe;
+	}
+
+	public EvaluationExpression getBuildKeyExpression() {
+		return this.buildKeyExpression;
+	}
+
+	public EvaluationExpression getProbeKeyExpression() {
+		return this.probeKeyExpression;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + this.probeKeyExpression.hashCode();
+		result = prime * result + this.buildKeyExpression.hashCode();
+		return result;
+	}
+
+	public void setBuildKeyExpression(final EvaluationExpression buildKeyExpression) {
+		if (buildKeyExpression == null)
+			throw new NullPointerException("buildKeyExpression must not be null");
+
+		this.buildKeyExpression = buildKeyExpression;
+	}
+
+	public void setProbeKeyExpression(final EvaluationExpression probeKeyExpression) {
+		if (probeKeyExpression == null)
+			throw new NullPointerException("probeKeyExpression must not be null");
+
+		this.probeKeyExpression = probeKeyExpression;
+	}
+
+	public BloomFilterReduction withBuildKeyExpression(final EvaluationExpression buildKeyExpression) {
+		this.setBuildKeyExpression(buildKeyExpression);
+		return this;
+	}
+
+	public BloomFilterReduction withProbeKeyExpression(final EvaluationExpression probeKeyExpression) {
+		this.setProbeKeyExpression(probeKeyExpression);
+		return this;
+	}
+
+	private static List<List<Operator>> asInputLists(final List<Operator> inputs) {
+		final List<List<Operator>> inputLists = new ArrayList<List<Operator>>();
+		inputLists.add(inputs);
+		return inputLists;
+	}
+
+	private static List<Operator> asList(final Operator input) {
+		final List<Operator> inputs = new ArrayList<Operator>();
+		inputs.add(input);
+		return inputs;
+	}
+
+	/**
+	 * Returns the position of the bit of the given hash function in a filter with the given number of bits.
+	 */
+	static int getBitIndex(final int keyHash, final int hashFunction, final int numBits) {
+		// double hashing derives all hash functions from two independent hashes of the key
+		final int secondHash = Integer.rotateLeft(keyHash * 0x9E3779B9, 16) | 1;
+		return ((keyHash + hashFunction * secondHash) & Integer.MAX_VALUE) % numBits;
+	}
+
+	/**
+	 * Emits the hash of the key of each build value.
+	 */
+	@InputCardinality(1)
+	@Internal
+	public static class HashKeys extends ElementaryOperator<HashKeys> {
+		private EvaluationExpression buildKeyExpression = EvaluationExpression.VALUE;
+
+		public HashKeys withBuildKeyExpression(final EvaluationExpression buildKeyExpression) {
+			this.buildKeyExpression = buildKeyExpression;
+			return this;
+		}
+
+		public static class Implementation extends SopremoMap {
+			private EvaluationExpression buildKeyExpression;
+
+			private final transient IntNode keyHash = new IntNode();
+
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				this.keyHash.setValue(this.buildKeyExpression.evaluate(value).hashCode());
+				out.collect(this.keyHash);
+			}
+		}
+	}
+
+	/**
+	 * Builds a single Bloom filter over all key hashes. The filter is represented as an array of longs.
+	 */
+	@InputCardinality(1)
+	@Internal
+	@DegreeOfParallelism(1)
+	public static class BuildFilter extends ElementaryOperator<BuildFilter> {
+		/**
+		 * Initializes BuildFilter.
+		 */
+		public BuildFilter() {
+			this.setKeyExpressions(0, ConstantExpression.NULL);
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private final transient IntArrayList keyHashes = new IntArrayList();
+
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				this.keyHashes.clear();
+				for (final IJsonNode value : values)
+					if (value instanceof IntNode)
+						this.keyHashes.add(((IntNode) value).getIntValue());
+
+				final long[] bits = new long[Math.max(1, (this.keyHashes.size() * BITS_PER_KEY + 63) / 64)];
+				final int numBits = bits.length * 64;
+				for (int index = 0, size = this.keyHashes.size(); index < size; index++)
+					for (int hashFunction = 0; hashFunction < NUM_HASH_FUNCTIONS; hashFunction++) {
+						final int bitIndex = getBitIndex(this.keyHashes.getInt(index), hashFunction, numBits);
+						bits[bitIndex >>> 6] |= 1L << bitIndex;
+					}
+
+				final IArrayNode<LongNode> filter = new ArrayNode<LongNode>();
+				for (final long word : bits)
+					filter.add(new LongNode(word));
+				out.collect(filter);
+			}
+		}
+	}
+
+	/**
+	 * Emits the probe values whose key hash is contained in the broadcasted filter.
+	 */
+	@InputCardinality(2)
+	@Internal
+	public static class ProbeFilter extends ElementaryOperator<ProbeFilter> {
+		private EvaluationExpression probeKeyExpression = EvaluationExpression.VALUE;
+
+		public ProbeFilter withProbeKeyExpression(final EvaluationExpression probeKeyExpression) {
+			this.probeKeyExpression = probeKeyExpression;
+			return this;
+		}
+
+		public static class Implementation extends SopremoCross implements CrossWithSmall {
+			private EvaluationExpression probeKeyExpression;
+
+			private transient long[] bits;
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoCross#cross(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.type.IJsonNode, eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void cross(final IJsonNode probeValue, final IJsonNode filter,
+					final JsonCollector<IJsonNode> out) {
+				// there is exactly one filter per task, so it is decoded on the first probe value
+				if (this.bits == null) {
+					final IArrayNode<?> words = (IArrayNode<?>) filter;
+					this.bits = new long[words.size()];
+					for (int index = 0; index < this.bits.length; index++)
+						this.bits[index] = ((LongNode) words.get(index)).getLongValue();
+				}
+
+				final int keyHash = this.probeKeyExpression.evaluate(probeValue).hashCode();
+				final int numBits = this.bits.length * 64;
+				for (int hashFunction = 0; hashFunction < NUM_HASH_FUNCTIONS; hashFunction++) {
+					final int bitIndex = getBitIndex(keyHash, hashFunction, numBits);
+					if ((this.bits[bitIndex >>> 6] & 1L << bitIndex) == 0)
+						return;
+				}
+				out.collect(probeValue);
+			}
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package eu.stratosphere.sopremo.base.join;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eu.stratosphere.api.common.operators.Operator;
+import eu.stratosphere.api.common.operators.base.CrossOperatorBase.CrossWithSmall;
+import eu.stratosphere.api.common.operators.util.OperatorUtil;
+import eu.stratosphere.pact.common.plan.PactModule;
+import eu.stratosphere.sopremo.expressions.ArrayCreation;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.io.Source;
+import eu.stratosphere.sopremo.operator.DegreeOfParallelism;
+import eu.stratosphere.sopremo.operator.ElementaryOperator;
+import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Internal;
+import eu.stratosphere.sopremo.pact.JsonCollector;
+import eu.stratosphere.sopremo.pact.SopremoCross;
+import eu.stratosphere.sopremo.pact.SopremoMap;
+import eu.stratosphere.sopremo.pact.SopremoReduce;
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.IArrayNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IStreamNode;
+import eu.stratosphere.sopremo.type.MissingNode;
+import eu.stratosphere.sopremo.type.NullNode;
+
+/**
+ * Equi-joins a large probe input (first input) with a small build input (second input) without repartitioning the
+ * probe input.<br>
+ * The build input is collected into a single record that is broadcasted to all tasks of the probe input. Each task
+ * indexes the build records once in a sorted in-memory map and streams its part of the probe input through it.
+ * Thus, the build input needs to fit into the memory of each task. Additionally, the build record is assembled by a
+ * single task, which limits this strategy to build inputs of a few megabytes regardless of the available memory.<br>
+ * The keys are matched with {@link IJsonNode#compareTo(IJsonNode)} as in an {@link EquiJoin}, such that numeric keys of
+ * different types, e.g., 1 and 1L, match.<br>
+ * Since every task sees all build records but only a part of the probe records, only the probe input can be preserved
+ * as in a left outer join or filtered as in a semi- or anti-join.
+ */
+@InputCardinality(min = 2, max = 2)
+@Internal
+public class BroadcastHashJoin extends TwoSourceJoinBase<BroadcastHashJoin> {
+	private EvaluationExpression probeKeyExpression = EvaluationExpression.VALUE;
+
+	private EvaluationExpression buildKeyExpression = EvaluationExpression.VALUE;
+
+	private Mode mode = Mode.INNER;
+
+	private boolean inverseInputs;
+
+	/**
+	 * Initializes BroadcastHashJoin.
+	 */
+	public BroadcastHashJoin() {
+		// the build records are collected under the same key
+		this.setKeyExpressions(0, ConstantExpression.NULL);
+		this.setKeyExpressions(1, ConstantExpression.NULL);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#asPactModule()
+	 */
+	@Override
+	public PactModule asPactModule() {
+		final int probeIndex = this.inverseInputs ? 1 : 0;
+		final PactModule module = new PactModule(2, 1);
+
+		// the sentinel guarantees a build record even if the build input is empty
+		final Operator sentinel = new Source(new ArrayCreation(new ArrayCreation())).asPactModule().
+			getOutput(0).getInputs().get(0);
+		final Operator tagged = this.toContract(new TagBuildValues(), module.getInput(1 - probeIndex));
+		final Operator collected = this.toContract(new CollectBuildValues(), tagged);
+		final List<List<Operator>> collectedInputs = OperatorUtil.getInputs(collected);
+		collectedInputs.get(0).add(sentinel);
+		OperatorUtil.setInputs(collected, collectedInputs);
+
+		final ProbeHashTable probe = new ProbeHashTable().
+			withProbeKeyExpression(this.probeKeyExpression).
+			withBuildKeyExpression(this.buildKeyExpression).
+			withMode(this.mode);
+		probe.setResultProjection(this.getResultProjection());
+		module.getOutput(0).addInput(this.toContract(probe, module.getInput(probeIndex), collected));
+		return module;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		final BroadcastHashJoin other = (BroadcastHashJoin) obj;
+		return this.mode == other.mode && this.inverseInputs == other.inverseInputs &&
+			this.probeKeyExpression.equals(other.probeKeyExpression) &&
+			this.buildKeyExpression.equals(other.buildKeyExpression);
+	}
+
+	public EvaluationExpression getBuildKeyExpression() {
+		return this.buildKeyExpression;
+	}
+
+	public Mode getMode() {
+		return this.mode;
+	}
+
+	public EvaluationExpression getProbeKeyExpression() {
+		return this.probeKeyExpression;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + this.mode.hashCode();
+		result = prime * result + (this.inverseInputs ? 1231 : 1237);
+		result = prime * result + this.probeKeyExpression.hashCode();
+		result = prime * result + this.buildKeyExpression.hashCode();
+		return result;
+	}
+
+	/**
+	 * Returns true if the probe input is connected to the second input of the contracts.
+	 *
+	 * @return whether the inputs are inversed
+	 */
+	public boolean isInverseInputs() {
+		return this.inverseInputs;
+	}
+
+	public void setBuildKeyExpression(final EvaluationExpression buildKeyExpression) {
+		if (buildKeyExpression == null)
+			throw new NullPointerException("buildKeyExpression must not be null");
+
+		this.buildKeyExpression = buildKeyExpression;
+	}
+
+	/**
+	 * Connects the probe input to the second input of the contracts. In contrast to the other strategies, the inputs
+	 * cannot be swapped afterwards, because the strategy consists of several contracts.
+	 *
+	 * @param inverseInputs
+	 *        whether the inputs are inversed
+	 */
+	public void setInverseInputs(final boolean inverseInputs) {
+		this.inverseInputs = inverseInputs;
+	}
+
+	public void setMode(final Mode mode) {
+		if (mode == null)
+			throw new NullPointerException("mode must not be null");
+
+		this.mode = mode;
+	}
+
+	public void setProbeKeyExpression(final EvaluationExpression probeKeyExpression) {
+		if (probeKeyExpression == null)
+			throw new NullPointerException("probeKeyExpression must not be null");
+
+		this.probeKeyExpression = probeKeyExpression;
+	}
+
+	public BroadcastHashJoin withBuildKeyExpression(final EvaluationExpression buildKeyExpression) {
+		this.setBuildKeyExpression(buildKeyExpression);
+		return this;
+	}
+
+	public BroadcastHashJoin withMode(final Mode mode) {
+		this.setMode(mode);
+		return this;
+	}
+
+	public BroadcastHashJoin withProbeKeyExpression(final EvaluationExpression probeKeyExpression) {
+		this.setProbeKeyExpression(probeKeyExpression);
+		return this;
+	}
+
+	/**
+	 * Determines which probe values are emitted.
+	 */
+	public static enum Mode {
+		/**
+		 * Emits <code>[probe, build]</code> for all matching pairs.
+		 */
+		INNER,
+		/**
+		 * Additionally emits <code>[probe, missing]</code> for probe values without a match.
+		 */
+		LEFT_OUTER,
+		/**
+		 * Emits <code>[probe]</code> for probe values with at least one match.
+		 */
+		SEMI,
+		/**
+		 * Emits <code>[probe]</code> for probe values without a match.
+		 */
+		ANTI;
+	}
+
+	/**
+	 * Wraps each build value in an array to distinguish it from the empty sentinel array.
+	 */
+	@InputCardinality(1)
+	@Internal
+	public static class TagBuildValues extends ElementaryOperator<TagBuildValues> {
+		public static class Implementation extends SopremoMap {
+			private final transient IArrayNode<IJsonNode> tagged = new ArrayNode<IJsonNode>(NullNode.getInstance());
+
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				this.tagged.set(0, value);
+				out.collect(this.tagged);
+			}
+		}
+	}
+
+	/**
+	 * Collects all tagged build values into a single array. All build values pass through the single task of this
+	 * operator.
+	 */
+	@InputCardinality(1)
+	@Internal
+	@DegreeOfParallelism(1)
+	public static class CollectBuildValues extends ElementaryOperator<CollectBuildValues> {
+		/**
+		 * Initializes CollectBuildValues.
+		 */
+		public CollectBuildValues() {
+			this.setKeyExpressions(0, ConstantExpression.NULL);
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private final transient IArrayNode<IJsonNode> buildValues = new ArrayNode<IJsonNode>();
+
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				this.buildValues.clear();
+				for (final IJsonNode value : values) {
+					final IArrayNode<?> tagged = (IArrayNode<?>) value;
+					if (!tagged.isEmpty())
+						this.buildValues.add(tagged.get(0).clone());
+				}
+				out.collect(this.buildValues);
+			}
+		}
+	}
+
+	/**
+	 * Streams the probe values through the sorted index of the broadcasted build values.
+	 */
+	@InputCardinality(2)
+	@Internal
+	public static class ProbeHashTable extends ElementaryOperator<ProbeHashTable> {
+		private EvaluationExpression probeKeyExpression = EvaluationExpression.VALUE;
+
+		private EvaluationExpression buildKeyExpression = EvaluationExpression.VALUE;
+
+		private Mode mode = Mode.INNER;
+
+		public ProbeHashTable withBuildKeyExpression(final EvaluationExpression buildKeyExpression) {
+			this.buildKeyExpression = buildKeyExpression;
+			return this;
+		}
+
+		public ProbeHashTable withMode(final Mode mode) {
+			this.mode = mode;
+			return this;
+		}
+
+		public ProbeHashTable withProbeKeyExpression(final EvaluationExpression probeKeyExpression) {
+			this.probeKeyExpression = probeKeyExpression;
+			return this;
+		}
+
+		public static class Implementation extends SopremoCross implements CrossWithSmall {
+			private EvaluationExpression probeKeyExpression, buildKeyExpression;
+
+			private Mode mode;
+
+			private transient Map<IJsonNode, List<IJsonNode>> buildValues;
+
+			private final transient IArrayNode<IJsonNode> result = new ArrayNode<IJsonNode>();
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoCross#cross(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.type.IJsonNode, eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void cross(final IJsonNode probeValue, final IJsonNode buildRecord,
+					final JsonCollector<IJsonNode> out) {
+				// there is exactly one build record per task, so the values are indexed on the first probe value
+				if (this.buildValues == null)
+					this.indexBuildValues((IArrayNode<?>) buildRecord);
+
+				final List<IJsonNode> matches = this.buildValues.get(this.probeKeyExpression.evaluate(probeValue));
+				this.result.clear();
+				this.result.add(probeValue);
+				switch (this.mode) {
+				case SEMI:
+					if (matches != null)
+						out.collect(this.result);
+					break;
+				case ANTI:
+					if (matches == null)
+						out.collect(this.result);
+					break;
+				case LEFT_OUTER:
+					if (matches == null) {
+						this.result.add(MissingNode.getInstance());
+						out.collect(this.result);
+						break;
+					}
+					//$FALL-THROUGH$
+				case INNER:
+					if (matches != null) {
+						this.result.add(MissingNode.getInstance());
+						for (final IJsonNode match : matches) {
+							this.result.set(1, match);
+							out.collect(this.result);
+						}
+					}
+				}
+			}
+
+			private void indexBuildValues(final IArrayNode<?> buildRecord) {
+				// equals and hashCode distinguish the numeric types, while the comparison of the keys does not
+				this.buildValues = new TreeMap<IJsonNode, List<IJsonNode>>();
+				for (final IJsonNode buildValue : buildRecord) {
+					final IJsonNode key = this.buildKeyExpression.evaluate(buildValue).clone();
+					List<IJsonNode> values = this.buildValues.get(key);
+					if (values == null)
+						this.buildValues.put(key, values = new ArrayList<IJsonNode>(1));
+					values.add(buildValue.clone());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,629 @@
+package eu.stratosphere.sopremo.base.join;
+
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import eu.stratosphere.api.common.operators.Operator;
+import eu.stratosphere.api.common.operators.base.CrossOperatorBase.CrossWithSmall;
+import eu.stratosphere.api.common.operators.util.OperatorUtil;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.pact.common.plan.PactModule;
+import eu.stratosphere.sopremo.base.join.EquiJoin.Mode;
+import eu.stratosphere.sopremo.expressions.ArrayAccess;
+import eu.stratosphere.sopremo.expressions.ArrayCreation;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.io.Source;
+import eu.stratosphere.sopremo.operator.DegreeOfParallelism;
+import eu.stratosphere.sopremo.operator.ElementaryOperator;
+import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Internal;
+import eu.stratosphere.sopremo.pact.JsonCollector;
+import eu.stratosphere.sopremo.pact.SopremoCoGroup;
+import eu.stratosphere.sopremo.pact.SopremoCross;
+import eu.stratosphere.sopremo.pact.SopremoJoin;
+import eu.stratosphere.sopremo.pact.SopremoMap;
+import eu.stratosphere.sopremo.pact.SopremoReduce;
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.BooleanNode;
+import eu.stratosphere.sopremo.type.CachingArrayNode;
+import eu.stratosphere.sopremo.type.IArrayNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IStreamNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.LongNode;
+import eu.stratosphere.sopremo.type.MissingNode;
+
+/**
+ * Equi-joins two inputs, of which one or both contain a few keys that are shared by a large fraction of the records.
+ * <br>
+ * The keys of both inputs are sampled to find these heavy hitters. Each task samples a logarithmic number of records of
+ * its part of the input, and the samples are counted per key in parallel before the single task that finds the heavy
+ * hitters receives one count per sampled key. Each record of a heavy hitter is assigned to one of
+ * several buckets of its key, while the records of the other input with the same key are replicated to all buckets.
+ * Thus, the pairs of a heavy hitter are computed by several tasks. All other keys are partitioned as usual.<br>
+ * The result is identical to an {@link EquiJoin} with the same mode: a record of a heavy hitter finds all partners in
+ * its bucket, and a replicated record is never emitted without partner, because its key has been sampled from the other
+ * input.
+ */
+@InputCardinality(min = 2, max = 2)
+@Internal
+public class SkewedEquiJoin extends TwoSourceJoinBase<SkewedEquiJoin> {
+	private static final EvaluationExpression BUCKET = new ArrayAccess(0);
+
+	private static final EvaluationExpression SAMPLED_INPUT = new ArrayAccess(0), SAMPLED_KEY = new ArrayAccess(1);
+
+	private EvaluationExpression firstKeyExpression = EvaluationExpression.VALUE;
+
+	private EvaluationExpression secondKeyExpression = EvaluationExpression.VALUE;
+
+	private Mode mode = Mode.NONE;
+
+	private int skewFactor = 2;
+
+	private double heavyHitterThreshold = 0.01;
+
+	/**
+	 * Initializes SkewedEquiJoin.
+	 */
+	public SkewedEquiJoin() {
+		// the salted keys are joined, the samples are counted per key, and the counts are collected under the same key
+		this.setKeyExpressions(0, BUCKET, SAMPLED_KEY, ConstantExpression.NULL);
+		this.setKeyExpressions(1, BUCKET, SAMPLED_KEY, ConstantExpression.NULL);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#asPactModule()
+	 */
+	@Override
+	public PactModule asPactModule() {
+		final PactModule module = new PactModule(2, 1);
+		final EvaluationExpression[] keyExpressions = { this.firstKeyExpression, this.secondKeyExpression };
+
+		final List<Operator> samples = new ArrayList<Operator>();
+		for (int index = 0; index < 2; index++)
+			samples.add(this.toContract(new SampleKeys().withInput(index).withKeyExpression(keyExpressions[index]),
+				module.getInput(index)));
+		final Operator sampleCounts = this.toContract(new CountSamples());
+		final List<List<Operator>> sampleCountsInputs = new ArrayList<List<Operator>>();
+		sampleCountsInputs.add(samples);
+		OperatorUtil.setInputs(sampleCounts, sampleCountsInputs);
+
+		// the sentinel guarantees a record of heavy hitters even if both inputs are empty
+		final List<Operator> counts = new ArrayList<Operator>();
+		counts.add(new Source(new ArrayCreation()).asPactModule().getOutput(0).getInputs().get(0));
+		counts.add(sampleCounts);
+		final Operator heavyHitters = this.toContract(new FindHeavyHitters().
+			withHeavyHitterThreshold(this.heavyHitterThreshold));
+		final List<List<Operator>> heavyHittersInputs = new ArrayList<List<Operator>>();
+		heavyHittersInputs.add(counts);
+		OperatorUtil.setInputs(heavyHitters, heavyHittersInputs);
+
+		final Operator[] saltedInputs = new Operator[2];
+		for (int index = 0; index < 2; index++)
+			saltedInputs[index] = this.toContract(new SaltKeys().withInput(index).
+				withKeyExpression(keyExpressions[index]).withSkewFactor(this.skewFactor),
+				module.getInput(index), heavyHitters);
+
+		final ElementaryOperator<?> join = this.mode == Mode.NONE ? new JoinSaltedKeys() :
+			new OuterJoinSaltedKeys().withMode(this.mode);
+		join.setResultProjection(this.getResultProjection());
+		module.getOutput(0).addInput(this.toContract(join, saltedInputs));
+		return module;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		final SkewedEquiJoin other = (SkewedEquiJoin) obj;
+		return this.mode == other.mode && this.skewFactor == other.skewFactor &&
+			this.heavyHitterThreshold == other.heavyHitterThreshold &&
+			this.firstKeyExpression.equals(other.firstKeyExpression) &&
+			this.secondKeyExpression.equals(other.secondKeyExpression);
+	}
+
+	public EvaluationExpression getFirstKeyExpression() {
+		return this.firstKeyExpression;
+	}
+
+	/**
+	 * Returns the minimum fraction of the records of an input that a key needs to have in the weighted sample to be
+	 * treated as a heavy hitter.
+	 *
+	 * @return the heavy hitter threshold
+	 */
+	public double getHeavyHitterThreshold() {
+		return this.heavyHitterThreshold;
+	}
+
+	public Mode getMode() {
+		return this.mode;
+	}
+
+	public EvaluationExpression getSecondKeyExpression() {
+		return this.secondKeyExpression;
+	}
+
+	/**
+	 * Returns the number of buckets of each heavy hitter.
+	 *
+	 * @return the skew factor
+	 */
+	public int getSkewFactor() {
+		return this.skewFactor;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		final long thresholdBits = Double.doubleToLongBits(this.heavyHitterThreshold);
+		result = prime * result + (int) (thresholdBits ^ thresholdBits >>> 32);
+		result = prime * result + this.mode.hashCode();
+		result = prime * result + this.skewFactor;
+		result = prime * result + this.firstKeyExpression.hashCode();
+		result = prime * result + this.secondKeyExpression.hashCode();
+		return result;
+	}
+
+	public void setFirstKeyExpression(final EvaluationExpression firstKeyExpression) {
+		if (firstKeyExpression == null)
+			throw new NullPointerException("firstKeyExpression must not be null");
+
+		this.firstKeyExpression = firstKeyExpression;
+	}
+
+	/**
+	 * Sets the minimum fraction of the records of an input that a key needs to have in the weighted sample to be
+	 * treated as a heavy hitter.
+	 *
+	 * @param heavyHitterThreshold
+	 *        the heavy hitter threshold
+	 */
+	public void setHeavyHitterThreshold(final double heavyHitterThreshold) {
+		if (heavyHitterThreshold <= 0 || heavyHitterThreshold > 1)
+			throw new IllegalArgumentException("heavyHitterThreshold must be in (0, 1]");
+
+		this.heavyHitterThreshold = heavyHitterThreshold;
+	}
+
+	/**
+	 * Sets the mode of the outer join.
+	 *
+	 * @param mode
+	 *        the mode to set
+	 */
+	public void setMode(final Mode mode) {
+		if (mode == null)
+			throw new NullPointerException("mode must not be null");
+
+		this.mode = mode;
+	}
+
+	public void setSecondKeyExpression(final EvaluationExpression secondKeyExpression) {
+		if (secondKeyExpression == null)
+			throw new NullPointerException("secondKeyExpression must not be null");
+
+		this.secondKeyExpression = secondKeyExpression;
+	}
+
+	/**
+	 * Sets the number of buckets of each heavy hitter.
+	 *
+	 * @param skewFactor
+	 *        the skew factor
+	 */
+	public void setSkewFactor(final int skewFactor) {
+		if (skewFactor < 1)
+			throw new IllegalArgumentException("skewFactor must be positive");
+
+		this.skewFactor = skewFactor;
+	}
+
+	public SkewedEquiJoin withFirstKeyExpression(final EvaluationExpression firstKeyExpression) {
+		this.setFirstKeyExpression(firstKeyExpression);
+		return this;
+	}
+
+	public SkewedEquiJoin withHeavyHitterThreshold(final double heavyHitterThreshold) {
+		this.setHeavyHitterThreshold(heavyHitterThreshold);
+		return this;
+	}
+
+	/**
+	 * Sets the mode of the outer join.
+	 *
+	 * @param retainFirst
+	 *        whether first input should be retained
+	 * @param retainSecond
+	 *        whether second input should be retained
+	 * @return this
+	 */
+	public SkewedEquiJoin withMode(final boolean retainFirst, final boolean retainSecond) {
+		this.setMode(Mode.values()[(retainFirst ? 1 : 0) + 2 * (retainSecond ? 1 : 0)]);
+		return this;
+	}
+
+	public SkewedEquiJoin withSecondKeyExpression(final EvaluationExpression secondKeyExpression) {
+		this.setSecondKeyExpression(secondKeyExpression);
+		return this;
+	}
+
+	public SkewedEquiJoin withSkewFactor(final int skewFactor) {
+		this.setSkewFactor(skewFactor);
+		return this;
+	}
+
+	/**
+	 * Emits <code>[input, key, weight]</code> for a sample of the records of each task. The first 1000 records are
+	 * sampled, then every second record of the next 2000 records, every fourth record of the next 4000 records, and so
+	 * on. Thus, a task emits about 1000 samples per doubling of its number of records, and the weight of a sample is
+	 * the number of records that it represents.
+	 */
+	@InputCardinality(1)
+	@Internal
+	public static class SampleKeys extends ElementaryOperator<SampleKeys> {
+		private int input;
+
+		private EvaluationExpression keyExpression = EvaluationExpression.VALUE;
+
+		public SampleKeys withInput(final int input) {
+			this.input = input;
+			return this;
+		}
+
+		public SampleKeys withKeyExpression(final EvaluationExpression keyExpression) {
+			this.keyExpression = keyExpression;
+			return this;
+		}
+
+		public static class Implementation extends SopremoMap {
+			private static final int SAMPLES_PER_INTERVAL = 1000;
+
+			private int input;
+
+			private EvaluationExpression keyExpression;
+
+			private transient long numRecords, sampleInterval;
+
+			private transient int numSamples;
+
+			private final transient LongNode weight = new LongNode();
+
+			private final transient IArrayNode<IJsonNode> sample = new ArrayNode<IJsonNode>(3);
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoMap#open(eu.stratosphere.configuration.Configuration)
+			 */
+			@Override
+			public void open(final Configuration parameters) {
+				super.open(parameters);
+				this.sample.set(0, new IntNode(this.input));
+				this.sample.set(2, this.weight);
+				this.numRecords = 0;
+				this.sampleInterval = 1;
+				this.numSamples = 0;
+			}
+
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				if (this.numRecords++ % this.sampleInterval != 0)
+					return;
+
+				this.weight.setValue(this.sampleInterval);
+				this.sample.set(1, this.keyExpression.evaluate(value));
+				out.collect(this.sample);
+				if (++this.numSamples == SAMPLES_PER_INTERVAL) {
+					this.sampleInterval *= 2;
+					this.numSamples = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Emits <code>[input, key, weight]</code> for each sampled key of an input with the summed weight of its samples.
+	 * The weights are already summed up before they are shipped.
+	 */
+	@InputCardinality(1)
+	@Internal
+	public static class CountSamples extends ElementaryOperator<CountSamples> {
+		/**
+		 * Initializes CountSamples.
+		 */
+		public CountSamples() {
+			this.setKeyExpressions(0, SAMPLED_INPUT, SAMPLED_KEY);
+			this.setCombinable(true);
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private final transient LongNode weight = new LongNode();
+
+			private final transient IArrayNode<IJsonNode> count = new ArrayNode<IJsonNode>(3);
+
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				long weight = 0;
+				for (final IJsonNode value : values) {
+					final IArrayNode<?> sample = (IArrayNode<?>) value;
+					this.count.set(0, sample.get(0));
+					this.count.set(1, sample.get(1));
+					weight += ((LongNode) sample.get(2)).getLongValue();
+				}
+				this.weight.setValue(weight);
+				this.count.set(2, this.weight);
+				out.collect(this.count);
+			}
+		}
+	}
+
+	/**
+	 * Emits the heavy hitters of both inputs as <code>[[heavy hitters of first input], [... of second input]]</code>.
+	 * A key that is frequent in both inputs is only a heavy hitter of the input in which it has been sampled more
+	 * often.
+	 */
+	@InputCardinality(1)
+	@Internal
+	@DegreeOfParallelism(1)
+	public static class FindHeavyHitters extends ElementaryOperator<FindHeavyHitters> {
+		private double heavyHitterThreshold;
+
+		/**
+		 * Initializes FindHeavyHitters.
+		 */
+		public FindHeavyHitters() {
+			this.setKeyExpressions(0, ConstantExpression.NULL);
+		}
+
+		public FindHeavyHitters withHeavyHitterThreshold(final double heavyHitterThreshold) {
+			this.heavyHitterThreshold = heavyHitterThreshold;
+			return this;
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private double heavyHitterThreshold;
+
+			@SuppressWarnings("unchecked")
+			private final transient Object2LongMap<IJsonNode>[] counts = new Object2LongMap[2];
+
+			private final transient IArrayNode<IArrayNode<IJsonNode>> heavyHitters =
+				new ArrayNode<IArrayNode<IJsonNode>>();
+
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				final long[] numSamples = new long[2];
+				for (int index = 0; index < 2; index++)
+					this.counts[index] = new Object2LongOpenHashMap<IJsonNode>();
+				for (final IJsonNode value : values) {
+					final IArrayNode<?> count = (IArrayNode<?>) value;
+					if (count.isEmpty())
+						continue;
+					final int input = ((IntNode) count.get(0)).getIntValue();
+					final long weight = ((LongNode) count.get(2)).getLongValue();
+					this.counts[input].put(count.get(1).clone(), weight);
+					numSamples[input] += weight;
+				}
+
+				this.heavyHitters.clear();
+				for (int index = 0; index < 2; index++) {
+					final IArrayNode<IJsonNode> inputHeavyHitters = new ArrayNode<IJsonNode>();
+					final Object2LongMap<IJsonNode> otherCounts = this.counts[1 - index];
+					for (final Object2LongMap.Entry<IJsonNode> entry : this.counts[index].object2LongEntrySet()) {
+						final long count = entry.getLongValue(), otherCount = otherCounts.getLong(entry.getKey());
+						if (count >= this.heavyHitterThreshold * numSamples[index] &&
+							(count > otherCount || count == otherCount && index == 0))
+							inputHeavyHitters.add(entry.getKey());
+					}
+					this.heavyHitters.add(inputHeavyHitters);
+				}
+				out.collect(this.heavyHitters);
+			}
+		}
+	}
+
+	/**
+	 * Wraps each record as <code>[[key, bucket], record, replicated]</code>. The records of the heavy hitters of the
+	 * input are distributed over the buckets of their key, the records of the heavy hitters of the other input are
+	 * replicated to all buckets, and all other records are assigned to the first bucket.
+	 */
+	@InputCardinality(2)
+	@Internal
+	public static class SaltKeys extends ElementaryOperator<SaltKeys> {
+		private int input;
+
+		private EvaluationExpression keyExpression = EvaluationExpression.VALUE;
+
+		private int skewFactor;
+
+		public SaltKeys withInput(final int input) {
+			this.input = input;
+			return this;
+		}
+
+		public SaltKeys withKeyExpression(final EvaluationExpression keyExpression) {
+			this.keyExpression = keyExpression;
+			return this;
+		}
+
+		public SaltKeys withSkewFactor(final int skewFactor) {
+			this.skewFactor = skewFactor;
+			return this;
+		}
+
+		public static class Implementation extends SopremoCross implements CrossWithSmall {
+			private int input;
+
+			private EvaluationExpression keyExpression;
+
+			private int skewFactor;
+
+			private transient Set<IJsonNode> heavyHitters, replicatedKeys;
+
+			private transient int nextBucket;
+
+			private final transient IntNode bucket = new IntNode();
+
+			private final transient IArrayNode<IJsonNode> saltedKey = new ArrayNode<IJsonNode>(2);
+
+			private final transient IArrayNode<IJsonNode> result = new ArrayNode<IJsonNode>(3);
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoCross#open(eu.stratosphere.configuration.Configuration)
+			 */
+			@Override
+			public void open(final Configuration parameters) {
+				super.open(parameters);
+				this.heavyHitters = null;
+				// start with different buckets on each task to balance the first records of a heavy hitter
+				this.nextBucket = this.getRuntimeContext().getIndexOfThisSubtask();
+				this.saltedKey.set(1, this.bucket);
+				this.result.set(0, this.saltedKey);
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoCross#cross(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.type.IJsonNode, eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void cross(final IJsonNode value, final IJsonNode heavyHitters,
+					final JsonCollector<IJsonNode> out) {
+				// there is exactly one record of heavy hitters per task, so the sets are built on the first value
+				if (this.heavyHitters == null) {
+					final IArrayNode<?> heavyHittersOfInputs = (IArrayNode<?>) heavyHitters;
+					this.heavyHitters = toSet((IArrayNode<?>) heavyHittersOfInputs.get(this.input));
+					this.replicatedKeys = toSet((IArrayNode<?>) heavyHittersOfInputs.get(1 - this.input));
+				}
+
+				final IJsonNode key = this.keyExpression.evaluate(value);
+				this.saltedKey.set(0, key);
+				this.result.set(1, value);
+				if (this.replicatedKeys.contains(key)) {
+					this.result.set(2, BooleanNode.TRUE);
+					for (int bucketIndex = 0; bucketIndex < this.skewFactor; bucketIndex++) {
+						this.bucket.setValue(bucketIndex);
+						out.collect(this.result);
+					}
+					return;
+				}
+
+				this.bucket.setValue(this.heavyHitters.contains(key) ? this.nextBucket++ % this.skewFactor : 0);
+				this.result.set(2, BooleanNode.FALSE);
+				out.collect(this.result);
+			}
+
+			private static Set<IJsonNode> toSet(final IArrayNode<?> keys) {
+				final Set<IJsonNode> set = new HashSet<IJsonNode>();
+				for (final IJsonNode key : keys)
+					set.add(key.clone());
+				return set;
+			}
+		}
+	}
+
+	/**
+	 * Joins the salted records of both inputs and emits <code>[record1, record2]</code>.
+	 */
+	@InputCardinality(2)
+	@Internal
+	public static class JoinSaltedKeys extends ElementaryOperator<JoinSaltedKeys> {
+		/**
+		 * Initializes JoinSaltedKeys.
+		 */
+		public JoinSaltedKeys() {
+			this.setKeyExpressions(0, BUCKET);
+			this.setKeyExpressions(1, BUCKET);
+		}
+
+		public static class Implementation extends SopremoJoin {
+			private final transient IArrayNode<IJsonNode> result = new ArrayNode<IJsonNode>(2);
+
+			@Override
+			protected void join(final IJsonNode value1, final IJsonNode value2, final JsonCollector<IJsonNode> out) {
+				this.result.set(0, ((IArrayNode<?>) value1).get(1));
+				this.result.set(1, ((IArrayNode<?>) value2).get(1));
+				out.collect(this.result);
+			}
+		}
+	}
+
+	/**
+	 * Outer joins the salted records of both inputs. Replicated records are not emitted without partner, because their
+	 * partners may be in another bucket.
+	 */
+	@InputCardinality(2)
+	@Internal
+	public static class OuterJoinSaltedKeys extends ElementaryOperator<OuterJoinSaltedKeys> {
+		private Mode mode = Mode.BOTH;
+
+		/**
+		 * Initializes OuterJoinSaltedKeys.
+		 */
+		public OuterJoinSaltedKeys() {
+			this.setKeyExpressions(0, BUCKET);
+			this.setKeyExpressions(1, BUCKET);
+		}
+
+		public OuterJoinSaltedKeys withMode(final Mode mode) {
+			this.mode = mode;
+			return this;
+		}
+
+		public static class Implementation extends SopremoCoGroup {
+			private Mode mode;
+
+			private final transient IArrayNode<IJsonNode> result = new ArrayNode<IJsonNode>(2);
+
+			private final transient CachingArrayNode<IJsonNode> firstValues = new CachingArrayNode<IJsonNode>();
+
+			@Override
+			protected void coGroup(final IStreamNode<IJsonNode> values1, final IStreamNode<IJsonNode> values2,
+					final JsonCollector<IJsonNode> out) {
+				if (values1.isEmpty()) {
+					if (this.mode == Mode.RIGHT || this.mode == Mode.BOTH)
+						this.emitWithoutPartner(values2, 1, out);
+					return;
+				}
+				if (values2.isEmpty()) {
+					if (this.mode == Mode.LEFT || this.mode == Mode.BOTH)
+						this.emitWithoutPartner(values1, 0, out);
+					return;
+				}
+
+				this.firstValues.setSize(0);
+				for (final IJsonNode value : values1)
+					this.firstValues.addClone(((IArrayNode<?>) value).get(1));
+				for (final IJsonNode value : values2) {
+					this.result.set(1, ((IArrayNode<?>) value).get(1));
+					for (final IJsonNode firstValue : this.firstValues) {
+						this.result.set(0, firstValue);
+						out.collect(this.result);
+					}
+				}
+			}
+
+			private void emitWithoutPartner(final IStreamNode<IJsonNode> values, final int index,
+					final JsonCollector<IJsonNode> out) {
+				this.result.set(1 - index, MissingNode.getInstance());
+				for (final IJsonNode value : values) {
+					final IArrayNode<?> salted = (IArrayNode<?>) value;
+					if (!((BooleanNode) salted.get(2)).getBooleanValue()) {
+						this.result.set(index, salted.get(1));
+						out.collect(this.result);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,387 @@
+package eu.stratosphere.sopremo.base.join;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eu.stratosphere.api.common.operators.Operator;
+import eu.stratosphere.api.common.operators.base.CrossOperatorBase.CrossWithSmall;
+import eu.stratosphere.api.common.operators.util.OperatorUtil;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.pact.common.plan.PactModule;
+import eu.stratosphere.sopremo.expressions.ArrayCreation;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.io.Source;
+import eu.stratosphere.sopremo.operator.DegreeOfParallelism;
+import eu.stratosphere.sopremo.operator.ElementaryOperator;
+import eu.stratosphere.sopremo.operator.InputCardinality;
+import eu.stratosphere.sopremo.operator.Internal;
+import eu.stratosphere.sopremo.pact.JsonCollector;
+import eu.stratosphere.sopremo.pact.SopremoCross;
+import eu.stratosphere.sopremo.pact.SopremoMap;
+import eu.stratosphere.sopremo.pact.SopremoReduce;
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.IArrayNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IStreamNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.MissingNode;
+
+/**
+ * Equi-joins a large fact input with several small dimension inputs in a single pass over the fact input.<br>
+ * All dimension inputs are collected into one record that is broadcasted to all tasks of the fact input. Each task
+ * builds one in-memory hash table per dimension and probes each fact record against all of them. Thus, in contrast to
+ * a chain of {@link BroadcastHashJoin}s, the fact input is read once and no intermediate results are materialized.<br>
+ * The result is the position-encoded array of the fact record and its partners, e.g., <code>[fact, dim1, dim2]</code>.
+ * Fact records that have no partner in an outer dimension are retained with a missing value at the position of the
+ * dimension; fact records without partner in any other dimension are dropped.<br>
+ * All dimension values pass through the single task that assembles the broadcasted record, and all dimensions together
+ * need to fit into the memory of each task. Therefore, {@link eu.stratosphere.sopremo.base.Join} only chooses this
+ * strategy if all dimensions are given as broadcast sources or if the summed estimated size of the dimensions stays
+ * below an explicitly set broadcast threshold. Otherwise, it falls back to a chain of pairwise joins. As in
+ * {@link EquiJoin}, keys are matched with {@link IJsonNode#compareTo(IJsonNode)}.
+ */
+@InputCardinality(min = 2)
+@Internal
+public class StarJoin extends TwoSourceJoinBase<StarJoin> {
+	private int factInput;
+
+	private final List<EvaluationExpression> factKeyExpressions = new ArrayList<EvaluationExpression>();
+
+	private final List<EvaluationExpression> dimensionKeyExpressions = new ArrayList<EvaluationExpression>();
+
+	private final IntSet outerDimensions = new IntOpenHashSet();
+
+	/**
+	 * Initializes StarJoin.
+	 */
+	public StarJoin() {
+		super(2, Integer.MAX_VALUE);
+		this.setKeyExpressions(0, ConstantExpression.NULL);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.operator.ElementaryOperator#asPactModule()
+	 */
+	@Override
+	public PactModule asPactModule() {
+		final int numInputs = this.getNumInputs();
+		final PactModule module = new PactModule(numInputs, 1);
+
+		// the sentinel guarantees a dimension record even if all dimension inputs are empty
+		final List<Operator> taggedDimensions = new ArrayList<Operator>();
+		taggedDimensions.add(new Source(new ArrayCreation(new ArrayCreation())).asPactModule().
+			getOutput(0).getInputs().get(0));
+		for (int index = 0; index < numInputs; index++)
+			if (index != this.factInput)
+				taggedDimensions.add(this.toContract(new TagDimensionValues().withInput(index),
+					module.getInput(index)));
+
+		final Operator collected = this.toContract(new CollectDimensions().withNumInputs(numInputs));
+		final List<List<Operator>> collectedInputs = new ArrayList<List<Operator>>();
+		collectedInputs.add(taggedDimensions);
+		OperatorUtil.setInputs(collected, collectedInputs);
+
+		final ProbeDimensions probe = new ProbeDimensions().
+			withFactInput(this.factInput).
+			withKeyExpressions(this.padToInputs(this.factKeyExpressions),
+				this.padToInputs(this.dimensionKeyExpressions)).
+			withOuterDimensions(this.outerDimensions);
+		probe.setResultProjection(this.getResultProjection());
+		module.getOutput(0).addInput(this.toContract(probe, module.getInput(this.factInput), collected));
+		return module;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		final StarJoin other = (StarJoin) obj;
+		return this.factInput == other.factInput && this.factKeyExpressions.equals(other.factKeyExpressions) &&
+			this.dimensionKeyExpressions.equals(other.dimensionKeyExpressions) &&
+			this.outerDimensions.equals(other.outerDimensions);
+	}
+
+	/**
+	 * Returns the index of the fact input.
+	 *
+	 * @return the index of the fact input
+	 */
+	public int getFactInput() {
+		return this.factInput;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + this.factInput;
+		result = prime * result + this.factKeyExpressions.hashCode();
+		result = prime * result + this.dimensionKeyExpressions.hashCode();
+		result = prime * result + this.outerDimensions.hashCode();
+		return result;
+	}
+
+	/**
+	 * Joins the dimension input with the given index on the equality of both keys.
+	 *
+	 * @param dimensionInput
+	 *        the index of the dimension input
+	 * @param factKeyExpression
+	 *        the key of the fact records
+	 * @param dimensionKeyExpression
+	 *        the key of the dimension records
+	 * @param outer
+	 *        whether fact records without partner in this dimension should be retained
+	 */
+	public void setDimension(final int dimensionInput, final EvaluationExpression factKeyExpression,
+			final EvaluationExpression dimensionKeyExpression, final boolean outer) {
+		if (factKeyExpression == null)
+			throw new NullPointerException("factKeyExpression must not be null");
+		if (dimensionKeyExpression == null)
+			throw new NullPointerException("dimensionKeyExpression must not be null");
+		if (dimensionInput == this.factInput)
+			throw new IllegalArgumentException("The fact input cannot be a dimension");
+
+		while (this.factKeyExpressions.size() <= dimensionInput) {
+			this.factKeyExpressions.add(null);
+			this.dimensionKeyExpressions.add(null);
+		}
+		this.factKeyExpressions.set(dimensionInput, factKeyExpression);
+		this.dimensionKeyExpressions.set(dimensionInput, dimensionKeyExpression);
+		if (outer)
+			this.outerDimensions.add(dimensionInput);
+		else
+			this.outerDimensions.remove(dimensionInput);
+		// all dimension records are collected under the same key
+		this.setKeyExpressions(dimensionInput, ConstantExpression.NULL);
+	}
+
+	/**
+	 * Sets the index of the fact input, which needs to be set before the dimensions.
+	 *
+	 * @param factInput
+	 *        the index of the fact input
+	 */
+	public void setFactInput(final int factInput) {
+		if (factInput < 0)
+			throw new IllegalArgumentException("factInput must not be negative");
+
+		this.factInput = factInput;
+		this.setKeyExpressions(factInput, ConstantExpression.NULL);
+	}
+
+	public StarJoin withDimension(final int dimensionInput, final EvaluationExpression factKeyExpression,
+			final EvaluationExpression dimensionKeyExpression, final boolean outer) {
+		this.setDimension(dimensionInput, factKeyExpression, dimensionKeyExpression, outer);
+		return this;
+	}
+
+	public StarJoin withFactInput(final int factInput) {
+		this.setFactInput(factInput);
+		return this;
+	}
+
+	private List<EvaluationExpression> padToInputs(final List<EvaluationExpression> expressions) {
+		final List<EvaluationExpression> padded = new ArrayList<EvaluationExpression>(expressions);
+		while (padded.size() < this.getNumInputs())
+			padded.add(null);
+		return padded;
+	}
+
+	/**
+	 * Wraps each dimension value in an array together with the index of its input.
+	 */
+	@InputCardinality(1)
+	@Internal
+	public static class TagDimensionValues extends ElementaryOperator<TagDimensionValues> {
+		private int input;
+
+		public TagDimensionValues withInput(final int input) {
+			this.input = input;
+			return this;
+		}
+
+		public static class Implementation extends SopremoMap {
+			private int input;
+
+			private final transient IArrayNode<IJsonNode> tagged = new ArrayNode<IJsonNode>(2);
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoMap#open(eu.stratosphere.configuration.Configuration)
+			 */
+			@Override
+			public void open(final Configuration parameters) {
+				super.open(parameters);
+				this.tagged.set(0, new IntNode(this.input));
+			}
+
+			@Override
+			protected void map(final IJsonNode value, final JsonCollector<IJsonNode> out) {
+				this.tagged.set(1, value);
+				out.collect(this.tagged);
+			}
+		}
+	}
+
+	/**
+	 * Collects the tagged dimension values into a single array with one array of values per input. All dimension values
+	 * pass through the single task of this operator.
+	 */
+	@InputCardinality(1)
+	@Internal
+	@DegreeOfParallelism(1)
+	public static class CollectDimensions extends ElementaryOperator<CollectDimensions> {
+		private int numInputs;
+
+		/**
+		 * Initializes CollectDimensions.
+		 */
+		public CollectDimensions() {
+			this.setKeyExpressions(0, ConstantExpression.NULL);
+		}
+
+		public CollectDimensions withNumInputs(final int numInputs) {
+			this.numInputs = numInputs;
+			return this;
+		}
+
+		public static class Implementation extends SopremoReduce {
+			private int numInputs;
+
+			private final transient IArrayNode<IArrayNode<IJsonNode>> dimensions =
+				new ArrayNode<IArrayNode<IJsonNode>>();
+
+			@Override
+			protected void reduce(final IStreamNode<IJsonNode> values, final JsonCollector<IJsonNode> out) {
+				this.dimensions.clear();
+				for (int index = 0; index < this.numInputs; index++)
+					this.dimensions.add(new ArrayNode<IJsonNode>());
+				for (final IJsonNode value : values) {
+					final IArrayNode<?> tagged = (IArrayNode<?>) value;
+					if (!tagged.isEmpty())
+						this.dimensions.get(((IntNode) tagged.get(0)).getIntValue()).add(tagged.get(1).clone());
+				}
+				out.collect(this.dimensions);
+			}
+		}
+	}
+
+	/**
+	 * Probes each fact value against the hash tables of all broadcasted dimensions.
+	 */
+	@InputCardinality(2)
+	@Internal
+	public static class ProbeDimensions extends ElementaryOperator<ProbeDimensions> {
+		private int factInput;
+
+		private List<EvaluationExpression> factKeyExpressions, dimensionKeyExpressions;
+
+		private IntSet outerDimensions;
+
+		public ProbeDimensions withFactInput(final int factInput) {
+			this.factInput = factInput;
+			return this;
+		}
+
+		public ProbeDimensions withKeyExpressions(final List<EvaluationExpression> factKeyExpressions,
+				final List<EvaluationExpression> dimensionKeyExpressions) {
+			this.factKeyExpressions = factKeyExpressions;
+			this.dimensionKeyExpressions = dimensionKeyExpressions;
+			return this;
+		}
+
+		public ProbeDimensions withOuterDimensions(final IntSet outerDimensions) {
+			this.outerDimensions = outerDimensions;
+			return this;
+		}
+
+		public static class Implementation extends SopremoCross implements CrossWithSmall {
+			private int factInput;
+
+			private List<EvaluationExpression> factKeyExpressions, dimensionKeyExpressions;
+
+			private IntSet outerDimensions;
+
+			private transient List<Map<IJsonNode, List<IJsonNode>>> hashTables;
+
+			private transient IArrayNode<IJsonNode> result;
+
+			/*
+			 * (non-Javadoc)
+			 * @see eu.stratosphere.sopremo.pact.GenericSopremoCross#cross(eu.stratosphere.sopremo.type.IJsonNode,
+			 * eu.stratosphere.sopremo.type.IJsonNode, eu.stratosphere.sopremo.pact.JsonCollector)
+			 */
+			@Override
+			protected void cross(final IJsonNode factValue, final IJsonNode dimensions,
+					final JsonCollector<IJsonNode> out) {
+				// there is exactly one dimension record per task, so the tables are built on the first fact value
+				if (this.hashTables == null)
+					this.buildHashTables((IArrayNode<?>) dimensions);
+
+				this.result.set(this.factInput, factValue);
+				this.probe(factValue, 0, out);
+			}
+
+			/**
+			 * Fills the positions of the given and all following dimensions with each combination of partners.
+			 */
+			private void probe(final IJsonNode factValue, final int dimensionInput, final JsonCollector<IJsonNode> out) {
+				if (dimensionInput == this.hashTables.size()) {
+					out.collect(this.result);
+					return;
+				}
+				final Map<IJsonNode, List<IJsonNode>> hashTable = this.hashTables.get(dimensionInput);
+				if (hashTable == null) {
+					this.probe(factValue, dimensionInput + 1, out);
+					return;
+				}
+
+				final List<IJsonNode> matches =
+					hashTable.get(this.factKeyExpressions.get(dimensionInput).evaluate(factValue));
+				if (matches == null) {
+					if (this.outerDimensions.contains(dimensionInput)) {
+						this.result.set(dimensionInput, MissingNode.getInstance());
+						this.probe(factValue, dimensionInput + 1, out);
+					}
+					return;
+				}
+				for (final IJsonNode match : matches) {
+					this.result.set(dimensionInput, match);
+					this.probe(factValue, dimensionInput + 1, out);
+				}
+			}
+
+			private void buildHashTables(final IArrayNode<?> dimensions) {
+				this.hashTables = new ArrayList<Map<IJsonNode, List<IJsonNode>>>();
+				this.result = new ArrayNode<IJsonNode>(dimensions.size());
+				for (int index = 0; index < dimensions.size(); index++) {
+					final EvaluationExpression keyExpression = this.dimensionKeyExpressions.get(index);
+					if (index == this.factInput || keyExpression == null) {
+						this.hashTables.add(null);
+						continue;
+					}
+
+					final Map<IJsonNode, List<IJsonNode>> hashTable = new TreeMap<IJsonNode, List<IJsonNode>>();
+					for (final IJsonNode dimensionValue : (IArrayNode<?>) dimensions.get(index)) {
+						final IJsonNode key = keyExpression.evaluate(dimensionValue).clone();
+						List<IJsonNode> values = hashTable.get(key);
+						if (values == null)
+							hashTable.put(key, values = new ArrayList<IJsonNode>(1));
+						values.add(dimensionValue.clone());
+					}
+					this.hashTables.add(hashTable);
+				}
+			}
+		}
+	}
+}
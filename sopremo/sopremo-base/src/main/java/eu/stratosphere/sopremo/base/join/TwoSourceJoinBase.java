@@ -1,5 +1,10 @@
 package eu.stratosphere.sopremo.base.join;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.stratosphere.api.common.operators.Operator;
+import eu.stratosphere.api.common.operators.util.OperatorUtil;
 import eu.stratosphere.sopremo.operator.ElementaryOperator;
 import eu.stratosphere.sopremo.operator.InputCardinality;
 import eu.stratosphere.sopremo.operator.Internal;
@@ -18,4 +23,28 @@ public abstract class TwoSourceJoinBase<Self extends TwoSourceJoinBase<Self>> ex
 	public TwoSourceJoinBase(final int minInputs, final int maxInputs) {
 		super(minInputs, maxInputs);
 	}
+
+	/**
+	 * Translates an internal operator of a strategy that consists of several contracts and connects the contract
+	 * with the given inputs.
+	 * 
+	 * @param operator
+	 *        the internal operator
+	 * @param inputs
+	 *        the contracts that provide the inputs of the operator
+	 * @return the contract of the operator
+	 */
+	protected Operator toContract(final ElementaryOperator<?> operator, final Operator... inputs) {
+		if (this.getDegreeOfParallelism() != STANDARD_DEGREE_OF_PARALLELISM)
+			operator.setDegreeOfParallelism(this.getDegreeOfParallelism());
+		final Operator contract = operator.asPactModule().getOutput(0).getInputs().get(0);
+		final List<List<Operator>> inputLists = new ArrayList<List<Operator>>();
+		for (final Operator input : inputs) {
+			final List<Operator> inputList = new ArrayList<Operator>();
+			inputList.add(input);
+			inputLists.add(inputList);
+		}
+		OperatorUtil.setInputs(contract, inputLists);
+		return contract;
+	}
 }
@@ -0,0 +1,175 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.base.window;
+
+import java.util.List;
+
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.expressions.OrderingExpression;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
+import eu.stratosphere.sopremo.type.IJsonNode;
+
+/**
+ * A sliding view on a sorted group that is used to evaluate {@link WindowFunction}s in a single pass.<br/>
+ * The frame buffers the current row and a fixed number of following rows (the lookahead), such that the memory
+ * consumption is independent of the size of the group.
+ */
+public class WindowFrame {
+	private final IJsonNode[] rows;
+
+	private final EvaluationExpression[] orderingPaths;
+
+	private final IJsonNode[] currentOrderingKey, previousOrderingKey;
+
+	private int start, count, position;
+
+	private boolean peerOfPrevious;
+
+	/**
+	 * Initializes WindowFrame.
+	 *
+	 * @param lookahead
+	 *        the number of rows following the current row that need to be accessible
+	 * @param ordering
+	 *        the ordering of the rows which is used to determine peers
+	 */
+	public WindowFrame(final int lookahead, final List<OrderingExpression> ordering) {
+		if (lookahead < 0)
+			throw new IllegalArgumentException("lookahead must not be negative");
+
+		this.rows = new IJsonNode[lookahead + 1];
+		this.orderingPaths = new EvaluationExpression[ordering.size()];
+		for (int index = 0; index < this.orderingPaths.length; index++)
+			this.orderingPaths[index] = ordering.get(index).getPath();
+		this.currentOrderingKey = new IJsonNode[this.orderingPaths.length];
+		this.previousOrderingKey = new IJsonNode[this.orderingPaths.length];
+	}
+
+	/**
+	 * Appends a copy of the given row to the frame.
+	 *
+	 * @param row
+	 *        the row to append
+	 */
+	public void add(final IJsonNode row) {
+		if (this.isFull())
+			throw new IllegalStateException("Frame is full; the current row must be removed first");
+		final int slot = (this.start + this.count) % this.rows.length;
+		this.rows[slot] = SopremoUtil.copyInto(row, this.rows[slot]);
+		this.count++;
+	}
+
+	/**
+	 * Advances to the next row and determines whether it is a peer of the previous row. Must be called before the
+	 * window functions are evaluated for the current row.
+	 */
+	public void advance() {
+		final IJsonNode current = this.getCurrent();
+		this.peerOfPrevious = this.position > 0;
+		for (int index = 0; index < this.orderingPaths.length; index++) {
+			final IJsonNode key = this.orderingPaths[index].evaluate(current);
+			if (this.peerOfPrevious && !key.equals(this.previousOrderingKey[index]))
+				this.peerOfPrevious = false;
+			this.currentOrderingKey[index] = SopremoUtil.copyInto(key, this.currentOrderingKey[index]);
+		}
+	}
+
+	/**
+	 * Returns the current row.
+	 *
+	 * @return the current row
+	 */
+	public IJsonNode getCurrent() {
+		if (this.count == 0)
+			throw new IllegalStateException("Frame is empty");
+		return this.rows[this.start];
+	}
+
+	/**
+	 * Returns the row that follows the current row with the given offset.
+	 *
+	 * @param offset
+	 *        the offset, which must not exceed the lookahead of the frame
+	 * @return the following row or null if the group ends before
+	 */
+	public IJsonNode getFollowing(final int offset) {
+		if (offset >= this.rows.length)
+			throw new IllegalArgumentException(String.format("Offset %d exceeds lookahead %d", offset,
+				this.rows.length - 1));
+		if (offset >= this.count)
+			return null;
+		return this.rows[(this.start + offset) % this.rows.length];
+	}
+
+	/**
+	 * Returns the zero-based position of the current row within the group.
+	 *
+	 * @return the position
+	 */
+	public int getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * Returns true if no rows are buffered.
+	 *
+	 * @return true if the frame is empty
+	 */
+	public boolean isEmpty() {
+		return this.count == 0;
+	}
+
+	/**
+	 * Returns true if the current row and all rows of the lookahead are buffered.
+	 *
+	 * @return true if the frame is full
+	 */
+	public boolean isFull() {
+		return this.count == this.rows.length;
+	}
+
+	/**
+	 * Returns true if the current row has the same ordering key as the previous row.
+	 *
+	 * @return true if the current row is a peer of the previous row
+	 */
+	public boolean isPeerOfPrevious() {
+		return this.peerOfPrevious;
+	}
+
+	/**
+	 * Removes the current row after all window functions have been evaluated.
+	 */
+	public void removeCurrent() {
+		if (this.count == 0)
+			throw new IllegalStateException("Frame is empty");
+		this.start = (this.start + 1) % this.rows.length;
+		this.count--;
+		this.position++;
+		for (int index = 0; index < this.currentOrderingKey.length; index++) {
+			final IJsonNode swap = this.previousOrderingKey[index];
+			this.previousOrderingKey[index] = this.currentOrderingKey[index];
+			this.currentOrderingKey[index] = swap;
+		}
+	}
+
+	/**
+	 * Resets the frame for a new group.
+	 */
+	public void reset() {
+		this.start = this.count = this.position = 0;
+		this.peerOfPrevious = false;
+	}
+}
@@ -0,0 +1,103 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.base.window;
+
+import java.util.List;
+
+import eu.stratosphere.sopremo.EvaluationException;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.function.SopremoFunction;
+import eu.stratosphere.sopremo.type.IArrayNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.INumericNode;
+
+/**
+ * A function that is evaluated for each row of a sorted group in a {@link eu.stratosphere.sopremo.base.Window}.<br/>
+ * In contrast to an {@link eu.stratosphere.sopremo.aggregation.Aggregation}, a window function computes one value
+ * per row and may access the rows that precede or follow the current row. Each call site of a window function
+ * receives an own instance, such that implementations may keep state between rows of the same group.<br/>
+ * Implementations may assume that {@link #evaluate(WindowFrame, List)} is invoked exactly once per row in the order
+ * of the group; {@link WindowFunctionCall} guarantees this even if the result projection evaluates the call
+ * repeatedly.
+ */
+public abstract class WindowFunction extends SopremoFunction {
+	/**
+	 * Initializes WindowFunction.
+	 */
+	public WindowFunction(final int minimumNumberOfParameters, final int maximumNumberOfParameters) {
+		super(minimumNumberOfParameters, maximumNumberOfParameters);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.function.Callable#call(java.lang.Object)
+	 */
+	@Override
+	public IJsonNode call(final IArrayNode<IJsonNode> params) {
+		throw new EvaluationException(String.format("Window function %s can only be used within a window", this));
+	}
+
+	/**
+	 * Computes the value of this function for the current row of the frame.
+	 *
+	 * @param frame
+	 *        the frame that holds the current row
+	 * @param parameters
+	 *        the parameter expressions of the call site
+	 * @return the value for the current row
+	 */
+	public abstract IJsonNode evaluate(WindowFrame frame, List<EvaluationExpression> parameters);
+
+	/**
+	 * Returns the number of rows following the current row that need to be accessible with
+	 * {@link WindowFrame#getFollowing(int)}.
+	 *
+	 * @param parameters
+	 *        the parameter expressions of the call site
+	 * @return the lookahead
+	 */
+	public int getLookahead(@SuppressWarnings("unused") final List<EvaluationExpression> parameters) {
+		return 0;
+	}
+
+	/**
+	 * Resets the state of this function at the beginning of a new group.
+	 */
+	public abstract void initialize();
+
+	/**
+	 * Returns the constant integer parameter at the given index or the default value if the parameter is not given.
+	 *
+	 * @param parameters
+	 *        the parameter expressions of the call site
+	 * @param index
+	 *        the index of the parameter
+	 * @param defaultValue
+	 *        the value that is used if the parameter is not specified
+	 * @return the constant value
+	 */
+	protected int getConstantInt(final List<EvaluationExpression> parameters, final int index,
+			final int defaultValue) {
+		if (index >= parameters.size())
+			return defaultValue;
+		final EvaluationExpression parameter = parameters.get(index);
+		if (!(parameter instanceof ConstantExpression) ||
+			!(((ConstantExpression) parameter).getConstant() instanceof INumericNode))
+			throw new IllegalArgumentException(String.format("Parameter %d of %s must be a constant number, but was %s",
+				index, this, parameter));
+		return ((INumericNode) ((ConstantExpression) parameter).getConstant()).getIntValue();
+	}
+}
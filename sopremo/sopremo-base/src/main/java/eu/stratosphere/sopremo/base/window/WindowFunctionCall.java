@@ -0,0 +1,187 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.base.window;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Predicate;
+
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.expressions.FunctionCall;
+import eu.stratosphere.sopremo.expressions.TransformFunction;
+import eu.stratosphere.sopremo.expressions.tree.ChildIterator;
+import eu.stratosphere.sopremo.expressions.tree.ListChildIterator;
+import eu.stratosphere.sopremo.type.IJsonNode;
+
+/**
+ * Evaluates a {@link WindowFunction} for the current row of a {@link WindowFrame}.<br/>
+ * The function is evaluated only once per row. If the enclosing expression evaluates this call again for the same
+ * row, the value of the first evaluation is returned, such that the state of the function advances exactly once per
+ * row.
+ */
+public class WindowFunctionCall extends EvaluationExpression {
+	private final WindowFunction function;
+
+	private final List<EvaluationExpression> parameters;
+
+	private transient WindowFrame frame;
+
+	private transient IJsonNode result;
+
+	private transient int evaluatedPosition = -1;
+
+	/**
+	 * Initializes WindowFunctionCall with the given function and parameter expressions.
+	 *
+	 * @param function
+	 *        the window function, which is exclusively used by this call
+	 * @param parameters
+	 *        the parameter expressions
+	 */
+	public WindowFunctionCall(final WindowFunction function, final List<EvaluationExpression> parameters) {
+		if (function == null)
+			throw new NullPointerException("function must not be null");
+		if (!function.accepts(parameters.size()))
+			throw new IllegalArgumentException(String.format("Function %s does not accept %d parameters", function,
+				parameters.size()));
+		this.function = function;
+		this.parameters = new ArrayList<EvaluationExpression>(parameters);
+	}
+
+	/**
+	 * Initializes WindowFunctionCall.
+	 */
+	WindowFunctionCall() {
+		this.function = null;
+		this.parameters = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.expressions.EvaluationExpression#appendAsString(java.lang.Appendable)
+	 */
+	@Override
+	public void appendAsString(final Appendable appendable) throws IOException {
+		this.function.appendAsString(appendable);
+		appendable.append('(');
+		this.append(appendable, this.parameters, ", ");
+		appendable.append(')');
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (!super.equals(obj))
+			return false;
+		final WindowFunctionCall other = (WindowFunctionCall) obj;
+		return this.function.equals(other.function) && this.parameters.equals(other.parameters);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.expressions.EvaluationExpression#evaluate(eu.stratosphere.sopremo.type.IJsonNode)
+	 */
+	@Override
+	public IJsonNode evaluate(final IJsonNode node) {
+		if (this.frame == null)
+			throw new IllegalStateException(String.format("%s can only be evaluated within a window", this));
+		if (this.evaluatedPosition != this.frame.getPosition()) {
+			this.result = this.function.evaluate(this.frame, this.parameters);
+			this.evaluatedPosition = this.frame.getPosition();
+		}
+		return this.result;
+	}
+
+	/**
+	 * Returns the function.
+	 *
+	 * @return the function
+	 */
+	public WindowFunction getFunction() {
+		return this.function;
+	}
+
+	/**
+	 * Returns the number of rows following the current row that this call accesses.
+	 *
+	 * @return the lookahead
+	 */
+	public int getLookahead() {
+		return this.function.getLookahead(this.parameters);
+	}
+
+	/**
+	 * Returns the parameters.
+	 *
+	 * @return the parameters
+	 */
+	public List<EvaluationExpression> getParameters() {
+		return this.parameters;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = super.hashCode();
+		hash = hash * 53 + this.function.hashCode();
+		hash = hash * 53 + this.parameters.hashCode();
+		return hash;
+	}
+
+	/**
+	 * Resets the state of the function for a new group, which is accessed through the given frame.
+	 *
+	 * @param frame
+	 *        the frame of the new group
+	 */
+	public void initialize(final WindowFrame frame) {
+		this.frame = frame;
+		this.evaluatedPosition = -1;
+		this.function.initialize();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.expressions.EvaluationExpression#iterator()
+	 */
+	@Override
+	public ChildIterator iterator() {
+		return new ListChildIterator(this.parameters.listIterator());
+	}
+
+	/**
+	 * Replaces all {@link FunctionCall}s of {@link WindowFunction}s in the given expression with
+	 * {@link WindowFunctionCall}s. Each call receives an own copy of the function.
+	 *
+	 * @param expression
+	 *        the expression that may contain window function calls
+	 * @return the expression with the replaced calls
+	 */
+	public static EvaluationExpression replaceFunctionCalls(final EvaluationExpression expression) {
+		return expression.replace(new Predicate<EvaluationExpression>() {
+			@Override
+			public boolean apply(final EvaluationExpression input) {
+				return input instanceof FunctionCall && ((FunctionCall) input).getFunction() instanceof WindowFunction;
+			}
+		}, new TransformFunction() {
+			@Override
+			public EvaluationExpression apply(final EvaluationExpression argument) {
+				final FunctionCall functionCall = (FunctionCall) argument;
+				return new WindowFunctionCall((WindowFunction) functionCall.getFunction().clone(),
+					functionCall.getParameters());
+			}
+		});
+	}
+}
@@ -0,0 +1,222 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.base.window;
+
+import java.util.List;
+
+import eu.stratosphere.sopremo.cache.NodeCache;
+import eu.stratosphere.sopremo.expressions.ArithmeticExpression.ArithmeticOperator;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.operator.Name;
+import eu.stratosphere.sopremo.packages.BuiltinProvider;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.NullNode;
+
+/**
+ * Window functions that can be used in the result projection of a {@link eu.stratosphere.sopremo.base.Window}.
+ */
+public class WindowFunctions implements BuiltinProvider {
+	/**
+	 * Returns the one-based position of the current row within its group.
+	 */
+	@Name(noun = "row_number")
+	public static class RowNumber extends WindowFunction {
+		private final transient IntNode result = new IntNode();
+
+		/**
+		 * Initializes RowNumber.
+		 */
+		public RowNumber() {
+			super(0, 0);
+		}
+
+		@Override
+		public IJsonNode evaluate(final WindowFrame frame, final List<EvaluationExpression> parameters) {
+			this.result.setValue(frame.getPosition() + 1);
+			return this.result;
+		}
+
+		@Override
+		public void initialize() {
+		}
+	}
+
+	/**
+	 * Returns the rank of the current row within its group. Peers, i.e., rows with the same ordering key, receive the
+	 * same rank and leave gaps in the sequence.
+	 */
+	@Name(noun = "rank")
+	public static class Rank extends WindowFunction {
+		private final transient IntNode result = new IntNode();
+
+		/**
+		 * Initializes Rank.
+		 */
+		public Rank() {
+			super(0, 0);
+		}
+
+		@Override
+		public IJsonNode evaluate(final WindowFrame frame, final List<EvaluationExpression> parameters) {
+			if (!frame.isPeerOfPrevious())
+				this.result.setValue(frame.getPosition() + 1);
+			return this.result;
+		}
+
+		@Override
+		public void initialize() {
+			this.result.setValue(0);
+		}
+	}
+
+	/**
+	 * Returns the rank of the current row within its group without gaps between the ranks of peers.
+	 */
+	@Name(noun = "dense_rank")
+	public static class DenseRank extends WindowFunction {
+		private final transient IntNode result = new IntNode();
+
+		/**
+		 * Initializes DenseRank.
+		 */
+		public DenseRank() {
+			super(0, 0);
+		}
+
+		@Override
+		public IJsonNode evaluate(final WindowFrame frame, final List<EvaluationExpression> parameters) {
+			if (!frame.isPeerOfPrevious())
+				this.result.increment();
+			return this.result;
+		}
+
+		@Override
+		public void initialize() {
+			this.result.setValue(0);
+		}
+	}
+
+	/**
+	 * Evaluates the expression on the row that precedes the current row by the given offset (default 1). Returns the
+	 * default value (default null) if there is no such row.
+	 */
+	@Name(verb = "lag")
+	public static class Lag extends WindowFunction {
+		private transient IJsonNode[] history = new IJsonNode[0];
+
+		private transient IJsonNode result;
+
+		private transient int offset = -1;
+
+		/**
+		 * Initializes Lag.
+		 */
+		public Lag() {
+			super(1, 3);
+		}
+
+		@Override
+		public IJsonNode evaluate(final WindowFrame frame, final List<EvaluationExpression> parameters) {
+			if (this.offset == -1) {
+				this.offset = this.getConstantInt(parameters, 1, 1);
+				if (this.offset < 1)
+					throw new IllegalArgumentException("Offset of lag must be positive");
+				this.history = new IJsonNode[this.offset];
+			}
+
+			final int slot = frame.getPosition() % this.offset;
+			final IJsonNode value;
+			if (frame.getPosition() < this.offset)
+				value = parameters.size() > 2 ? parameters.get(2).evaluate(frame.getCurrent()) :
+					NullNode.getInstance();
+			else
+				// copy before the slot is overwritten with the value of the current row
+				value = this.result = SopremoUtil.copyInto(this.history[slot], this.result);
+			this.history[slot] =
+				SopremoUtil.copyInto(parameters.get(0).evaluate(frame.getCurrent()), this.history[slot]);
+			return value;
+		}
+
+		@Override
+		public void initialize() {
+		}
+	}
+
+	/**
+	 * Evaluates the expression on the row that follows the current row by the given offset (default 1). Returns the
+	 * default value (default null) if there is no such row.
+	 */
+	@Name(verb = "lead")
+	public static class Lead extends WindowFunction {
+		/**
+		 * Initializes Lead.
+		 */
+		public Lead() {
+			super(1, 3);
+		}
+
+		@Override
+		public IJsonNode evaluate(final WindowFrame frame, final List<EvaluationExpression> parameters) {
+			final IJsonNode following = frame.getFollowing(this.getLookahead(parameters));
+			if (following == null)
+				return parameters.size() > 2 ? parameters.get(2).evaluate(frame.getCurrent()) :
+					NullNode.getInstance();
+			return parameters.get(0).evaluate(following);
+		}
+
+		@Override
+		public int getLookahead(final List<EvaluationExpression> parameters) {
+			final int offset = this.getConstantInt(parameters, 1, 1);
+			if (offset < 1)
+				throw new IllegalArgumentException("Offset of lead must be positive");
+			return offset;
+		}
+
+		@Override
+		public void initialize() {
+		}
+	}
+
+	/**
+	 * Sums up the expression for all rows from the beginning of the group up to the current row.
+	 */
+	@Name(noun = "running_sum")
+	public static class RunningSum extends WindowFunction {
+		private final transient NodeCache nodeCache = new NodeCache();
+
+		private transient IJsonNode sum = IntNode.ZERO;
+
+		/**
+		 * Initializes RunningSum.
+		 */
+		public RunningSum() {
+			super(1, 1);
+		}
+
+		@Override
+		public IJsonNode evaluate(final WindowFrame frame, final List<EvaluationExpression> parameters) {
+			this.sum = ArithmeticOperator.ADDITION.evaluate(this.sum, parameters.get(0).evaluate(frame.getCurrent()),
+				this.nodeCache);
+			return this.sum;
+		}
+
+		@Override
+		public void initialize() {
+			this.sum = IntNode.ZERO;
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package eu.stratosphere.sopremo.base;
 
+import org.junit.Test;
+
 import eu.stratosphere.sopremo.testing.SopremoOperatorTestBase;
+import eu.stratosphere.sopremo.testing.SopremoTestPlan;
 
 //import eu.stratosphere.sopremo.SopremoTestPlan;
 
@@ -14,6 +17,36 @@ public class DifferenceTest extends SopremoOperatorTestBase<Difference> {
 		return new Difference();
 	}
 
+	@Test
+	public void shouldSupportDuplicatesWithinSources() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(3, 1);
+
+		final Difference difference = new Difference();
+		difference.setInputs(sopremoPlan.getInputOperators(0, 3));
+		sopremoPlan.getOutputOperator(0).setInputs(difference);
+
+		sopremoPlan.getInput(0).
+			addValue(1).
+			addValue(2).
+			addValue(3).
+			addValue(3).
+			addValue(1).
+			addValue(3);
+		sopremoPlan.getInput(1).
+			addValue(2).
+			addValue(2).
+			addValue(4);
+		sopremoPlan.getInput(2).
+			addValue(4).
+			addValue(2).
+			addValue(5);
+		sopremoPlan.getExpectedOutput(0).
+			addValue(1).
+			addValue(3);
+
+		sopremoPlan.run();
+	}
+
 	//
 
 	// @Test
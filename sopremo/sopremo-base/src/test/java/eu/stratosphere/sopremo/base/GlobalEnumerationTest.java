@@ -14,13 +14,18 @@
  **********************************************************************************************************************/
 package eu.stratosphere.sopremo.base;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import eu.stratosphere.sopremo.testing.SopremoTestPlan;
+import eu.stratosphere.sopremo.base.GlobalEnumeration.IdGeneration;
 import eu.stratosphere.sopremo.type.IObjectNode;
+import eu.stratosphere.sopremo.type.LongNode;
 import eu.stratosphere.sopremo.type.TextNode;
 
 //import eu.stratosphere.sopremo.SopremoTestPlan;
@@ -50,4 +55,22 @@ public class GlobalEnumerationTest {
 					.get(globalEnumeration.getIdFieldName()).equals(
 						results.get(index2).get(globalEnumeration.getIdFieldName())));
 	}
+
+	@Test
+	public void shouldEnumerateDensely() {
+		final GlobalEnumeration globalEnumeration = new GlobalEnumeration().withIdGeneration(IdGeneration.DENSE);
+		globalEnumeration.setDegreeOfParallelism(2);
+		final SopremoTestPlan plan = new SopremoTestPlan(globalEnumeration);
+		for (int index = 0; index < 5; index++)
+			plan.getInput(0).addObject("text", "value");
+		plan.run();
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		final List<IObjectNode> results = (List) plan.getActualOutput(0).getAllNodes();
+		final List<Long> ids = new ArrayList<Long>();
+		for (final IObjectNode result : results)
+			ids.add(((LongNode) result.get(globalEnumeration.getIdFieldName())).getLongValue());
+		Collections.sort(ids);
+		Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), ids);
+	}
 }
@@ -4,9 +4,12 @@ import static eu.stratosphere.sopremo.expressions.ExpressionUtil.makePath;
 import static eu.stratosphere.sopremo.function.FunctionUtil.createFunctionCall;
 import static eu.stratosphere.sopremo.type.JsonUtil.createPath;
 
+import java.util.Arrays;
+
 import org.junit.Ignore;
 import org.junit.Test;
 
+import eu.stratosphere.api.common.operators.Order;
 import eu.stratosphere.sopremo.CoreFunctions;
 import eu.stratosphere.sopremo.expressions.ArrayAccess;
 import eu.stratosphere.sopremo.expressions.ArrayProjection;
@@ -14,6 +17,7 @@ import eu.stratosphere.sopremo.expressions.ConstantExpression;
 import eu.stratosphere.sopremo.expressions.InputSelection;
 import eu.stratosphere.sopremo.expressions.ObjectAccess;
 import eu.stratosphere.sopremo.expressions.ObjectCreation;
+import eu.stratosphere.sopremo.expressions.OrderingExpression;
 import eu.stratosphere.sopremo.testing.SopremoOperatorTestBase;
 import eu.stratosphere.sopremo.testing.SopremoTestPlan;
 
@@ -58,6 +62,56 @@ public class GroupingTest extends SopremoOperatorTestBase<Grouping> {
 		sopremoPlan.run();
 	}
 
+	@Test
+	public void shouldGroupThreeSourcesInOnePass() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(3, 1);
+
+		final ObjectCreation transformation = new ObjectCreation();
+		transformation.addMapping("dept",
+			makePath(new InputSelection(1), new ArrayAccess(0), new ObjectAccess("did")));
+		transformation.addMapping("numEmps", createFunctionCall(CoreFunctions.COUNT, new InputSelection(0)));
+		transformation.addMapping("expenses", createFunctionCall(CoreFunctions.SUM,
+			makePath(new InputSelection(2), new ArrayProjection(new ObjectAccess("amount")))));
+
+		final Grouping aggregation = new Grouping().withResultProjection(transformation);
+		aggregation.setInputs(sopremoPlan.getInputOperators(0, 3));
+		aggregation.setGroupingKey(0, createPath("dept"));
+		aggregation.setGroupingKey(1, createPath("did"));
+		aggregation.setGroupingKey(2, createPath("dept_id"));
+
+		sopremoPlan.getOutputOperator(0).setInputs(aggregation);
+		sopremoPlan.getInput(0).
+			addObject("id", 1, "dept", 1).
+			addObject("id", 2, "dept", 1).
+			addObject("id", 3, "dept", 2).
+			addObject("id", 4, "dept", 1);
+		sopremoPlan.getInput(1).
+			addObject("did", 1, "name", "development").
+			addObject("did", 2, "name", "marketing").
+			addObject("did", 3, "name", "sales");
+		sopremoPlan.getInput(2).
+			addObject("dept_id", 1, "amount", 100).
+			addObject("dept_id", 3, "amount", 50).
+			addObject("dept_id", 1, "amount", 20);
+		sopremoPlan.getExpectedOutput(0).
+			addObject("dept", 1, "numEmps", 3, "expenses", 120).
+			addObject("dept", 2, "numEmps", 1, "expenses", 0).
+			addObject("dept", 3, "numEmps", 0, "expenses", 50);
+
+		sopremoPlan.run();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldRejectInnerGroupOrderForThreeSources() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(3, 1);
+
+		final Grouping aggregation = new Grouping();
+		aggregation.setInputs(sopremoPlan.getInputOperators(0, 3));
+		aggregation.setInnerGroupOrder(2,
+			Arrays.asList(new OrderingExpression(Order.ASCENDING, createPath("amount"))));
+		aggregation.asElementaryOperators();
+	}
+
 	//
 	// @Test
 	// public void shouldGroupThreeSources() {
@@ -217,6 +271,69 @@ public class GroupingTest extends SopremoOperatorTestBase<Grouping> {
 		sopremoPlan.run();
 	}
 
+	@Test
+	public void shouldSpillLargeGroups() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(1, 1);
+		// forces every group with more than a few elements to disk
+		sopremoPlan.getCompilationContext().setMaterializationMemoryLimit(64);
+
+		final ObjectCreation transformation = new ObjectCreation();
+		transformation.addMapping("d", makePath(new InputSelection(0), new ArrayAccess(0), new ObjectAccess("dept")));
+		transformation.addMapping("total", createFunctionCall(CoreFunctions.SORT,
+			makePath(new InputSelection(0), new ArrayProjection(new ObjectAccess("income")))));
+
+		final Grouping aggregation = new Grouping().withResultProjection(transformation);
+		aggregation.setInputs(sopremoPlan.getInputOperator(0));
+		aggregation.setGroupingKey(0, createPath("dept"));
+
+		sopremoPlan.getOutputOperator(0).setInputs(aggregation);
+		final int[] incomes = new int[500];
+		for (int index = 0; index < incomes.length; index++) {
+			incomes[index] = index;
+			sopremoPlan.getInput(0).addObject("id", index, "dept", 1, "income", (index * 7) % incomes.length);
+		}
+		sopremoPlan.getExpectedOutput(0).
+			addObject("d", 1, "total", incomes);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldSplitHeavyHitters() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(1, 1);
+
+		final ObjectCreation transformation = new ObjectCreation();
+		transformation.addMapping("d", makePath(new InputSelection(0), new ArrayAccess(0), new ObjectAccess("dept")));
+		transformation.addMapping("total", createFunctionCall(CoreFunctions.SUM,
+			makePath(new InputSelection(0), new ArrayProjection(new ObjectAccess("income")))));
+		transformation.addMapping("count", createFunctionCall(CoreFunctions.COUNT, new InputSelection(0)));
+
+		final Grouping aggregation = new Grouping().
+			withResultProjection(transformation).
+			withSkewFactor(3).
+			withHeavyHitterThreshold(0.5);
+		aggregation.setInputs(sopremoPlan.getInputOperator(0));
+		aggregation.setGroupingKey(0, createPath("dept"));
+
+		sopremoPlan.getOutputOperator(0).setInputs(aggregation);
+		sopremoPlan.getInput(0).
+			addObject("id", 1, "dept", 1, "income", 12000).
+			addObject("id", 2, "dept", 1, "income", 13000).
+			addObject("id", 3, "dept", 2, "income", 15000).
+			addObject("id", 4, "dept", 1, "income", 10000).
+			addObject("id", 5, "dept", 1, "income", 8000).
+			addObject("id", 6, "dept", 1, "income", 5000).
+			addObject("id", 7, "dept", 1, "income", 24000).
+			addObject("id", 8, "dept", 1, "income", 3000).
+			addObject("id", 9, "dept", 3, "income", 1000);
+		sopremoPlan.getExpectedOutput(0).
+			addObject("d", 1, "total", 75000, "count", 7).
+			addObject("d", 2, "total", 15000, "count", 1).
+			addObject("d", 3, "total", 1000, "count", 1);
+
+		sopremoPlan.run();
+	}
+
 	@Test
 	public void shouldGroupWithSingleSourceWithInputSelection() {
 		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(1, 1);
@@ -28,6 +28,32 @@ public class IntersectionTest extends SopremoOperatorTestBase<Intersection> {
 		sopremoPlan.run();
 	}
 
+	@Test
+	public void shouldSupportBloomFilter() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(3, 1);
+
+		final Intersection intersection = new Intersection().withBloomFilter(true);
+		intersection.setInputs(sopremoPlan.getInputOperators(0, 3));
+		sopremoPlan.getOutputOperator(0).setInputs(intersection);
+
+		sopremoPlan.getInput(0).
+			addValue(1).
+			addValue(2).
+			addValue(3);
+		sopremoPlan.getInput(1).
+			addValue(1).
+			addValue(2).
+			addValue(4);
+		sopremoPlan.getInput(2).
+			addValue(2).
+			addValue(3).
+			addValue(5);
+		sopremoPlan.getExpectedOutput(0).
+			addValue(2);
+
+		sopremoPlan.run();
+	}
+
 	@Test
 	public void shouldSupportComplexObject() {
 		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
@@ -50,6 +76,32 @@ public class IntersectionTest extends SopremoOperatorTestBase<Intersection> {
 		sopremoPlan.run();
 	}
 
+	@Test
+	public void shouldSupportDuplicatesWithinSource() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		final Intersection intersection = new Intersection();
+		intersection.setInputs(sopremoPlan.getInputOperators(0, 2));
+		sopremoPlan.getOutputOperator(0).setInputs(intersection);
+
+		sopremoPlan.getInput(0).
+			addValue(1).
+			addValue(2).
+			addValue(1).
+			addValue(1).
+			addValue(3);
+		sopremoPlan.getInput(1).
+			addValue(2).
+			addValue(1).
+			addValue(2).
+			addValue(4);
+		sopremoPlan.getExpectedOutput(0).
+			addValue(1).
+			addValue(2);
+
+		sopremoPlan.run();
+	}
+
 	@Test
 	public void shouldSupportPrimitives() {
 		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
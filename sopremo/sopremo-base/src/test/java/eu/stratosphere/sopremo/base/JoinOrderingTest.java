@@ -0,0 +1,43 @@
+package eu.stratosphere.sopremo.base;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JoinOrderingTest {
+	@Test
+	public void shouldJoinSelectivePairFirst() {
+		final JoinOrdering<String> ordering = new JoinOrdering<String>(new double[] { 1000, 1000, 10 });
+		ordering.addEdge("a-b", 0, 1, 1.0 / 1000, -1);
+		ordering.addEdge("b-c", 1, 2, 1.0 / 10000, -1);
+
+		Assert.assertEquals(Arrays.asList("b-c", "a-b"), ordering.getOrder());
+	}
+
+	@Test
+	public void shouldPreferBroadcastJoins() {
+		// joining the two large inputs first would require to repartition both of them
+		final JoinOrdering<String> ordering = new JoinOrdering<String>(new double[] { 1000000, 10, 1000000 });
+		ordering.addEdge("a-c", 0, 2, 1.0 / 1000000, -1);
+		ordering.addEdge("a-b", 0, 1, 1.0 / 100, 1);
+
+		Assert.assertEquals(Arrays.asList("a-b", "a-c"), ordering.getOrder());
+	}
+
+	@Test
+	public void shouldOrderLargeStarJoinsGreedily() {
+		final int numInputs = JoinOrdering.MAX_EXHAUSTIVE_INPUTS + 2;
+		final double[] cardinalities = new double[numInputs];
+		Arrays.fill(cardinalities, 100);
+		cardinalities[0] = 1000000;
+		final JoinOrdering<Integer> ordering = new JoinOrdering<Integer>(cardinalities);
+		for (int index = 1; index < numInputs; index++)
+			ordering.addEdge(index, 0, index, index == 7 ? 1e-8 : 1e-6, index);
+
+		final List<Integer> order = ordering.getOrder();
+		Assert.assertEquals(numInputs - 1, order.size());
+		Assert.assertEquals(Integer.valueOf(7), order.get(0));
+	}
+}
@@ -5,10 +5,13 @@ import static eu.stratosphere.sopremo.type.JsonUtil.createPath;
 import org.junit.Test;
 
 import eu.stratosphere.sopremo.expressions.AndExpression;
+import eu.stratosphere.sopremo.expressions.ArithmeticExpression;
+import eu.stratosphere.sopremo.expressions.ArithmeticExpression.ArithmeticOperator;
 import eu.stratosphere.sopremo.expressions.ArrayCreation;
 import eu.stratosphere.sopremo.expressions.BooleanExpression;
 import eu.stratosphere.sopremo.expressions.ComparativeExpression;
 import eu.stratosphere.sopremo.expressions.ComparativeExpression.BinaryOperator;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
 import eu.stratosphere.sopremo.expressions.ElementInSetExpression;
 import eu.stratosphere.sopremo.expressions.ElementInSetExpression.Quantor;
 import eu.stratosphere.sopremo.expressions.EvaluationExpression;
@@ -128,6 +131,73 @@ public class JoinTest extends SopremoOperatorTestBase<Join> {
 		sopremoPlan.run();
 	}
 
+	@Test
+	public void shouldPerformBandJoin() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		// |$0.x - $1.x| < 5
+		final EvaluationExpression lower = new ArithmeticExpression(createPath("1", "x"),
+			ArithmeticOperator.SUBTRACTION, new ConstantExpression(5));
+		final EvaluationExpression upper = new ArithmeticExpression(createPath("1", "x"),
+			ArithmeticOperator.ADDITION, new ConstantExpression(5));
+		final AndExpression condition = new AndExpression(
+			new ComparativeExpression(createPath("0", "x"), BinaryOperator.GREATER, lower),
+			new ComparativeExpression(createPath("0", "x"), BinaryOperator.LESS, upper));
+		final Join join = new Join().withJoinCondition(condition);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("x", 1).
+			addObject("x", 10).
+			addObject("x", 20);
+		sopremoPlan.getInput(1).
+			addObject("x", 4).
+			addObject("x", 14).
+			addObject("x", 30);
+		sopremoPlan.getExpectedOutput(0).
+			addArray(JsonUtil.createObjectNode("x", 1), JsonUtil.createObjectNode("x", 4)).
+			addArray(JsonUtil.createObjectNode("x", 10), JsonUtil.createObjectNode("x", 14));
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldPerformBandJoinOnStringBounds() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		// $0.ts >= $1.start and $0.ts <= $1.end on dates that are given as strings
+		final AndExpression condition = new AndExpression(
+			new ComparativeExpression(createPath("0", "ts"), BinaryOperator.GREATER_EQUAL, createPath("1", "start")),
+			new ComparativeExpression(createPath("0", "ts"), BinaryOperator.LESS_EQUAL, createPath("1", "end")));
+		final Join join = new Join().withJoinCondition(condition);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("ts", "2013-01-05").
+			addObject("ts", "2013-02-10").
+			addObject("ts", "2013-03-01").
+			addObject("ts", 5);
+		sopremoPlan.getInput(1).
+			addObject("start", "2013-01-01", "end", "2013-01-31").
+			addObject("start", "2013-02-01", "end", "2013-02-28").
+			addObject("start", "2013-01-01", "end", "2013-12-31").
+			addObject("start", 1, "end", 10);
+		sopremoPlan.getExpectedOutput(0).
+			addArray(JsonUtil.createObjectNode("ts", "2013-01-05"),
+				JsonUtil.createObjectNode("start", "2013-01-01", "end", "2013-01-31")).
+			addArray(JsonUtil.createObjectNode("ts", "2013-01-05"),
+				JsonUtil.createObjectNode("start", "2013-01-01", "end", "2013-12-31")).
+			addArray(JsonUtil.createObjectNode("ts", "2013-02-10"),
+				JsonUtil.createObjectNode("start", "2013-02-01", "end", "2013-02-28")).
+			addArray(JsonUtil.createObjectNode("ts", "2013-02-10"),
+				JsonUtil.createObjectNode("start", "2013-01-01", "end", "2013-12-31")).
+			addArray(JsonUtil.createObjectNode("ts", "2013-03-01"),
+				JsonUtil.createObjectNode("start", "2013-01-01", "end", "2013-12-31")).
+			addArray(JsonUtil.createObjectNode("ts", 5), JsonUtil.createObjectNode("start", 1, "end", 10));
+
+		sopremoPlan.run();
+	}
+
 	@Test
 	public void shouldPerformCircularEquiJoinOnThreeInputs1() {
 		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(3, 1);
@@ -418,6 +488,40 @@ public class JoinTest extends SopremoOperatorTestBase<Join> {
 		sopremoPlan.run();
 	}
 
+	@Test
+	public void shouldPerformStarJoin() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(3, 1);
+
+		// both dimensions are broadcasted, so that all conditions are evaluated in one pass over the orders
+		final AndExpression condition = new AndExpression(
+			new ComparativeExpression(createPath("0", "customer"), BinaryOperator.EQUAL, createPath("1", "id")),
+			new ComparativeExpression(createPath("2", "id"), BinaryOperator.EQUAL, createPath("0", "product")));
+		final Join join = new Join().withJoinCondition(condition).
+			withOuterJoinSources(new InputSelection(0)).
+			withBroadcastSources(new ArrayCreation(new InputSelection(1), new InputSelection(2)));
+		join.setInputs(sopremoPlan.getInputOperators(0, 3));
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("customer", 1, "product", 10).
+			addObject("customer", 2, "product", 11).
+			addObject("customer", 3, "product", 10);
+		sopremoPlan.getInput(1).
+			addObject("id", 1, "name", "Jon Doe").
+			addObject("id", 2, "name", "Jane Doe");
+		sopremoPlan.getInput(2).
+			addObject("id", 10, "title", "book");
+		sopremoPlan.getExpectedOutput(0).
+			addArray(JsonUtil.createObjectNode("customer", 1, "product", 10),
+				JsonUtil.createObjectNode("id", 1, "name", "Jon Doe"),
+				JsonUtil.createObjectNode("id", 10, "title", "book")).
+			addArray(JsonUtil.createObjectNode("customer", 2, "product", 11),
+				JsonUtil.createObjectNode("id", 2, "name", "Jane Doe"), MissingNode.getInstance()).
+			addArray(JsonUtil.createObjectNode("customer", 3, "product", 10),
+				MissingNode.getInstance(), JsonUtil.createObjectNode("id", 10, "title", "book"));
+
+		sopremoPlan.run();
+	}
+
 	@Test
 	public void shouldPerformThetaJoin() {
 		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
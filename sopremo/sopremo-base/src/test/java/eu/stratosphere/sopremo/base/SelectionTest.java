@@ -2,6 +2,7 @@ package eu.stratosphere.sopremo.base;
 
 import static eu.stratosphere.sopremo.type.JsonUtil.createPath;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import eu.stratosphere.sopremo.expressions.AndExpression;
@@ -9,8 +10,14 @@ import eu.stratosphere.sopremo.expressions.ComparativeExpression;
 import eu.stratosphere.sopremo.expressions.ComparativeExpression.BinaryOperator;
 import eu.stratosphere.sopremo.expressions.ConstantExpression;
 import eu.stratosphere.sopremo.expressions.ObjectAccess;
+import eu.stratosphere.sopremo.expressions.ObjectCreation;
 import eu.stratosphere.sopremo.expressions.OrExpression;
 import eu.stratosphere.sopremo.expressions.UnaryExpression;
+import eu.stratosphere.sopremo.io.JsonFormat;
+import eu.stratosphere.sopremo.io.SelectionPushdown;
+import eu.stratosphere.sopremo.io.Sink;
+import eu.stratosphere.sopremo.io.Source;
+import eu.stratosphere.sopremo.operator.ElementarySopremoModule;
 import eu.stratosphere.sopremo.testing.SopremoOperatorTestBase;
 import eu.stratosphere.sopremo.testing.SopremoTestPlan;
 
@@ -65,6 +72,72 @@ public class SelectionTest extends SopremoOperatorTestBase<Selection> {
 		sopremoPlan.run();
 	}
 
+	@Test
+	public void shouldPushComparisonsIntoSource() {
+		final Source source = new Source("file:///input.json");
+		final Selection selection = new Selection().
+			withCondition(new OrExpression(
+				new ComparativeExpression(new ObjectAccess("income"), BinaryOperator.GREATER,
+					new ConstantExpression(30000)),
+				new ComparativeExpression(new ObjectAccess("mgr"), BinaryOperator.EQUAL,
+					new ConstantExpression(true)))).
+			withInputs(source);
+		final ElementarySopremoModule module =
+			ElementarySopremoModule.valueOf(new Sink("file:///output.json").withInputs(selection));
+
+		SelectionPushdown.apply(module);
+		Assert.assertEquals(selection.getCondition(), source.getFormat().getSelection());
+
+		// assembling the module again does not duplicate the pushed condition
+		SelectionPushdown.apply(module);
+		Assert.assertEquals(selection.getCondition(), source.getFormat().getSelection());
+	}
+
+	@Test
+	public void shouldNotPushIntoSharedSource() {
+		final Source source = new Source("file:///input.json");
+		final Selection selection = new Selection().
+			withCondition(new ComparativeExpression(new ObjectAccess("income"), BinaryOperator.GREATER,
+				new ConstantExpression(30000))).
+			withInputs(source);
+		final ElementarySopremoModule module = ElementarySopremoModule.valueOf(
+			new Sink("file:///output1.json").withInputs(selection),
+			new Sink("file:///output2.json").withInputs(source));
+
+		SelectionPushdown.apply(module);
+		Assert.assertNull(source.getFormat().getSelection());
+	}
+
+	@Test
+	public void shouldNotPushIntoProjectingSource() {
+		// the condition refers to the projected income, while the format would evaluate it on the raw income
+		final JsonFormat format = new JsonFormat();
+		format.setProjection(new ObjectCreation().addMapping("income", new ObjectAccess("salary")));
+		final Source source = new Source(format, "file:///input.json");
+		final Selection selection = new Selection().
+			withCondition(new ComparativeExpression(new ObjectAccess("income"), BinaryOperator.GREATER,
+				new ConstantExpression(30000))).
+			withInputs(source);
+		final ElementarySopremoModule module =
+			ElementarySopremoModule.valueOf(new Sink("file:///output.json").withInputs(selection));
+
+		SelectionPushdown.apply(module);
+		Assert.assertNull(source.getFormat().getSelection());
+	}
+
+	@Test
+	public void shouldNotPushComplexConditions() {
+		final Source source = new Source("file:///input.json");
+		final Selection selection = new Selection().
+			withCondition(new UnaryExpression(new ObjectAccess("mgr"))).
+			withInputs(source);
+		final ElementarySopremoModule module =
+			ElementarySopremoModule.valueOf(new Sink("file:///output.json").withInputs(selection));
+
+		SelectionPushdown.apply(module);
+		Assert.assertNull(source.getFormat().getSelection());
+	}
+
 	@Override
 	protected Selection createDefaultInstance(final int index) {
 		final AndExpression condition = new AndExpression(new UnaryExpression(
@@ -19,6 +19,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -30,10 +31,16 @@ import eu.stratosphere.sopremo.expressions.ArrayAccess;
 import eu.stratosphere.sopremo.expressions.EvaluationExpression;
 import eu.stratosphere.sopremo.expressions.OrderingExpression;
 import eu.stratosphere.sopremo.operator.Operator;
+import eu.stratosphere.sopremo.packages.DefaultTypeRegistry;
+import eu.stratosphere.sopremo.serialization.SopremoRecord;
+import eu.stratosphere.sopremo.serialization.SopremoRecordComparator;
+import eu.stratosphere.sopremo.serialization.SopremoRecordLayout;
 import eu.stratosphere.sopremo.testing.SopremoOperatorTestBase;
 import eu.stratosphere.sopremo.testing.SopremoTestPlan;
 import eu.stratosphere.sopremo.type.IArrayNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.JsonUtil;
 
 /**
  */
@@ -101,6 +108,77 @@ public class SortTest extends SopremoOperatorTestBase<Sort> {
 		Assert.assertEquals(expected, actual);
 	}
 
+	@Test
+	public void shouldSortRangesInParallel() {
+		final Sort sort = new Sort().
+			withOrderingExpression(new OrderingExpression(Order.DESCENDING, new ArrayAccess(1))).
+			withNumRanges(3).
+			withSampleRate(1);
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(sort);
+
+		sopremoPlan.getInput(0).
+			addArray("b", 3).
+			addArray("d", 2).
+			addArray("c", 1).
+			addArray("a", 4).
+			addArray("f", 6).
+			addArray("e", 5);
+		sopremoPlan.getExpectedOutput(0).
+			addArray("f", 6).
+			addArray("e", 5).
+			addArray("a", 4).
+			addArray("b", 3).
+			addArray("d", 2).
+			addArray("c", 1);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldWriteRangesToOrderedFiles() {
+		final Sort sort = new Sort().
+			withOrderingExpression(new OrderingExpression(Order.ASCENDING, EvaluationExpression.VALUE)).
+			withNumRanges(3).
+			withSampleRate(1);
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(sort);
+		sopremoPlan.setDegreeOfParallelism(3);
+
+		final List<IJsonNode> values = new ArrayList<IJsonNode>();
+		for (int index = 0; index < 90; index++)
+			values.add(IntNode.valueOf(index));
+		Collections.shuffle(values, new Random(42));
+		for (final IJsonNode value : values)
+			sopremoPlan.getInput(0).add(value);
+		Collections.sort(values);
+		for (final IJsonNode value : values)
+			sopremoPlan.getExpectedOutput(0).add(value);
+
+		sopremoPlan.run();
+
+		// the output files are read in the order of the tasks
+		final Iterator<IJsonNode> unsortedIterator = sopremoPlan.getActualOutput(0).unsortedIterator();
+		final List<IJsonNode> actual = new ArrayList<IJsonNode>();
+		while (unsortedIterator.hasNext())
+			actual.add(unsortedIterator.next().clone());
+		Assert.assertEquals(values, actual);
+	}
+
+	@Test
+	public void shouldRoutePartitionKeysToTheirRanges() {
+		// the partition keys are hashed like any other key of the record layout
+		final SopremoRecordLayout layout = SopremoRecordLayout.create(new ArrayAccess(0));
+		final SopremoRecordComparator comparator = new SopremoRecordComparator(layout, new DefaultTypeRegistry(),
+			new int[] { layout.getKeyIndex(new ArrayAccess(0)) }, new boolean[] { true });
+		for (int numRanges = 2; numRanges <= 16; numRanges++) {
+			final int[] partitionKeys = Sort.getPartitionKeys(numRanges);
+			for (int range = 0; range < numRanges; range++) {
+				final SopremoRecord record = new SopremoRecord(layout, new DefaultTypeRegistry());
+				record.setNode(JsonUtil.createArrayNode(partitionKeys[range], "key", "value"));
+				Assert.assertEquals(range, Sort.getTargetTask(comparator.hash(record), numRanges));
+			}
+		}
+	}
+
 	@Override
 	protected Sort createDefaultInstance(final int index) {
 		return new Sort().withOrderingExpression(new OrderingExpression(Order.ASCENDING, new ArrayAccess(index)));
@@ -0,0 +1,73 @@
+package eu.stratosphere.sopremo.base;
+
+import org.junit.Test;
+
+import eu.stratosphere.api.common.operators.Order;
+import eu.stratosphere.sopremo.expressions.ArrayAccess;
+import eu.stratosphere.sopremo.expressions.ObjectAccess;
+import eu.stratosphere.sopremo.expressions.OrderingExpression;
+import eu.stratosphere.sopremo.testing.SopremoOperatorTestBase;
+import eu.stratosphere.sopremo.testing.SopremoTestPlan;
+
+public class TopKTest extends SopremoOperatorTestBase<TopK> {
+	@Test
+	public void shouldRetainBestTuples() {
+		final TopK topK = new TopK().
+			withSortingExpression(new ObjectAccess("score")).
+			withDirection(Order.DESCENDING).
+			withLimit(2);
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(topK);
+
+		sopremoPlan.getInput(0).
+			addObject("name", "a", "score", 12).
+			addObject("name", "b", "score", 42).
+			addObject("name", "c", "score", 7).
+			addObject("name", "d", "score", 30);
+		sopremoPlan.getExpectedOutput(0).
+			addObject("name", "b", "score", 42).
+			addObject("name", "d", "score", 30);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldReturnAllTuplesIfLimitIsNotReached() {
+		final TopK topK = new TopK().withLimit(10);
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(topK);
+
+		sopremoPlan.getInput(0).
+			addValue(3).
+			addValue(1).
+			addValue(2);
+		sopremoPlan.getExpectedOutput(0).
+			addValue(1).
+			addValue(2).
+			addValue(3);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldBeUsedBySortWithLimit() {
+		final Sort sort = new Sort().
+			withOrderingExpression(new OrderingExpression(Order.ASCENDING, new ArrayAccess(1))).
+			withLimit(2);
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(sort);
+
+		sopremoPlan.getInput(0).
+			addArray("b", 3).
+			addArray("d", 2).
+			addArray("c", 1).
+			addArray("a", 4);
+		sopremoPlan.getExpectedOutput(0).
+			addArray("c", 1).
+			addArray("d", 2);
+
+		sopremoPlan.run();
+	}
+
+	@Override
+	protected TopK createDefaultInstance(final int index) {
+		return new TopK().withLimit(index + 1);
+	}
+}
@@ -2,8 +2,13 @@ package eu.stratosphere.sopremo.base;
 
 import static eu.stratosphere.sopremo.type.JsonUtil.createPath;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import eu.stratosphere.sopremo.base.join.BandJoin;
+import eu.stratosphere.sopremo.base.join.BloomFilterReduction;
+import eu.stratosphere.sopremo.base.join.BroadcastHashJoin;
+import eu.stratosphere.sopremo.base.join.SkewedEquiJoin;
 import eu.stratosphere.sopremo.expressions.ArrayCreation;
 import eu.stratosphere.sopremo.expressions.BinaryBooleanExpression;
 import eu.stratosphere.sopremo.expressions.ComparativeExpression;
@@ -95,6 +100,254 @@ public class TwoSourceJoinTest extends SopremoOperatorTestBase<TwoSourceJoin> {
 		sopremoPlan.run();
 	}
 
+	@Test
+	public void shouldPerformBandTwoSourceJoin() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		final BinaryBooleanExpression condition = new ComparativeExpression(createPath("0", "ts"),
+			BinaryOperator.GREATER_EQUAL, createPath("1", "start"));
+		final ComparativeExpression secondBound = new ComparativeExpression(createPath("1", "end"),
+			BinaryOperator.GREATER_EQUAL, createPath("0", "ts"));
+		final TwoSourceJoin join = new TwoSourceJoin().withCondition(condition).withBand(secondBound, 10);
+		Assert.assertTrue(join.getStrategy() instanceof BandJoin);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		join.setResultProjection(ObjectCreation.CONCATENATION);
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("ts", 5).
+			addObject("ts", 10).
+			addObject("ts", 25).
+			addObject("ts", 40);
+		sopremoPlan.getInput(1).
+			addObject("sid", 1, "start", 0, "end", 10).
+			addObject("sid", 2, "start", 10, "end", 30).
+			addObject("sid", 3, "start", 35, "end", 38);
+		sopremoPlan.getExpectedOutput(0).
+			addObject("ts", 5, "sid", 1, "start", 0, "end", 10).
+			addObject("ts", 10, "sid", 1, "start", 0, "end", 10).
+			addObject("ts", 10, "sid", 2, "start", 10, "end", 30).
+			addObject("ts", 25, "sid", 2, "start", 10, "end", 30);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldEstimateBandWidth() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		// without a band width, the buckets are as wide as the average interval
+		final BinaryBooleanExpression condition = new ComparativeExpression(createPath("0", "ts"),
+			BinaryOperator.GREATER_EQUAL, createPath("1", "start"));
+		final ComparativeExpression secondBound = new ComparativeExpression(createPath("1", "end"),
+			BinaryOperator.GREATER_EQUAL, createPath("0", "ts"));
+		final TwoSourceJoin join = new TwoSourceJoin().withCondition(condition).withBand(secondBound, 0);
+		Assert.assertTrue(join.getStrategy() instanceof BandJoin);
+		Assert.assertEquals(0, ((BandJoin) join.getStrategy()).getBucketWidth(), 0);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		join.setResultProjection(ObjectCreation.CONCATENATION);
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("ts", 5).
+			addObject("ts", 25).
+			addObject("ts", 100000);
+		sopremoPlan.getInput(1).
+			addObject("sid", 1, "start", 0, "end", 10).
+			addObject("sid", 2, "start", 20, "end", 30).
+			addObject("sid", 3, "start", 0, "end", 1000000);
+		sopremoPlan.getExpectedOutput(0).
+			addObject("ts", 5, "sid", 1, "start", 0, "end", 10).
+			addObject("ts", 25, "sid", 2, "start", 20, "end", 30).
+			addObject("ts", 5, "sid", 3, "start", 0, "end", 1000000).
+			addObject("ts", 25, "sid", 3, "start", 0, "end", 1000000).
+			addObject("ts", 100000, "sid", 3, "start", 0, "end", 1000000);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldJoinWideIntervalsWithoutReplication() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		// the second interval overlaps more than BandJoin.MAX_BUCKETS buckets and is joined on the cross product
+		final BinaryBooleanExpression condition = new ComparativeExpression(createPath("0", "ts"),
+			BinaryOperator.GREATER_EQUAL, createPath("1", "start"));
+		final ComparativeExpression secondBound = new ComparativeExpression(createPath("1", "end"),
+			BinaryOperator.GREATER_EQUAL, createPath("0", "ts"));
+		final TwoSourceJoin join = new TwoSourceJoin().withCondition(condition).withBand(secondBound, 1);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		join.setResultProjection(ObjectCreation.CONCATENATION);
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("ts", 2).
+			addObject("ts", 500).
+			addObject("ts", 5000);
+		sopremoPlan.getInput(1).
+			addObject("sid", 1, "start", 0, "end", 3).
+			addObject("sid", 2, "start", 0, "end", 1000);
+		sopremoPlan.getExpectedOutput(0).
+			addObject("ts", 2, "sid", 1, "start", 0, "end", 3).
+			addObject("ts", 2, "sid", 2, "start", 0, "end", 1000).
+			addObject("ts", 500, "sid", 2, "start", 0, "end", 1000);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldPerformBloomFilteredEquiTwoSourceJoin() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		// the users without visits are dropped before the shuffle
+		final BinaryBooleanExpression condition = new ComparativeExpression(createPath("0", "id"),
+			BinaryOperator.EQUAL, createPath("1", "userid"));
+		final TwoSourceJoin join = new TwoSourceJoin().withCondition(condition).withBloomFilterInput(1);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		join.setResultProjection(ObjectCreation.CONCATENATION);
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("name", "Jon Doe", "id", 1).
+			addObject("name", "Jane Doe", "id", 2).
+			addObject("name", "Max Mustermann", "id", 3).
+			addObject("name", "Erika Mustermann", "id", 4);
+		sopremoPlan.getInput(1).
+			addObject("userid", 1, "url", "code.google.com/p/jaql/").
+			addObject("userid", 4, "url", "www.cnn.com").
+			addObject("userid", 1, "url", "java.sun.com/javase/6/docs/api/");
+		sopremoPlan.getExpectedOutput(0).
+			addObject("name", "Jon Doe", "id", 1, "userid", 1, "url", "code.google.com/p/jaql/").
+			addObject("name", "Jon Doe", "id", 1, "userid", 1, "url", "java.sun.com/javase/6/docs/api/").
+			addObject("name", "Erika Mustermann", "id", 4, "userid", 4, "url", "www.cnn.com");
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldDropProbeValuesWithoutPartnerBeforeTheJoin() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		// the reduction alone emits the probe values that are shipped to the join
+		final BloomFilterReduction reduction = new BloomFilterReduction().
+			withProbeKeyExpression(createPath("id")).
+			withBuildKeyExpression(createPath("userid"));
+		reduction.setInputs(sopremoPlan.getInputOperators(0, 2));
+		sopremoPlan.getOutputOperator(0).setInputs(reduction);
+		sopremoPlan.getInput(0).
+			addObject("name", "Jon Doe", "id", 1).
+			addObject("name", "Jane Doe", "id", 2).
+			addObject("name", "Max Mustermann", "id", 3).
+			addObject("name", "Erika Mustermann", "id", 4);
+		sopremoPlan.getInput(1).
+			addObject("userid", 1, "url", "code.google.com/p/jaql/").
+			addObject("userid", 4, "url", "www.cnn.com");
+		sopremoPlan.getExpectedOutput(0).
+			addObject("name", "Jon Doe", "id", 1).
+			addObject("name", "Erika Mustermann", "id", 4);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldPerformBloomFilteredSemiTwoSourceJoinWithReversedInputs() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		final BinaryBooleanExpression condition = new ElementInSetExpression(createPath("1", "DeptName"),
+			Quantor.EXISTS_IN, createPath("0", "Name"));
+		final TwoSourceJoin join = new TwoSourceJoin().withCondition(condition).withBloomFilterInput(0);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		join.setResultProjection(ObjectCreation.CONCATENATION);
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("Name", "Sales", "Manager", "Harriet").
+			addObject("Name", "Production", "Manager", "Charles");
+		sopremoPlan.getInput(1).
+			addObject("Name", "Harry", "EmpId", 3415, "DeptName", "Finance").
+			addObject("Name", "Sally", "EmpId", 2241, "DeptName", "Sales").
+			addObject("Name", "Harriet", "EmpId", 2202, "DeptName", "Production");
+		sopremoPlan.getExpectedOutput(0).
+			addObject("Name", "Sally", "EmpId", 2241, "DeptName", "Sales").
+			addObject("Name", "Harriet", "EmpId", 2202, "DeptName", "Production");
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldPerformBroadcastAntiTwoSourceJoin() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		final BinaryBooleanExpression condition = new ElementInSetExpression(
+			createPath("0", "DeptName"), Quantor.EXISTS_NOT_IN, createPath("1", "Name"));
+		final TwoSourceJoin join = new TwoSourceJoin().withCondition(condition).withBroadcastInput(1);
+		Assert.assertTrue(join.getStrategy() instanceof BroadcastHashJoin);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		join.setResultProjection(ObjectCreation.CONCATENATION);
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("Name", "Harry", "EmpId", 3415, "DeptName", "Finance").
+			addObject("Name", "Sally", "EmpId", 2241, "DeptName", "Sales").
+			addObject("Name", "Harriet", "EmpId", 2202, "DeptName", "Production");
+		sopremoPlan.getInput(1).
+			addObject("Name", "Sales", "Manager", "Harriet").
+			addObject("Name", "Production", "Manager", "Charles");
+		sopremoPlan.getExpectedOutput(0).
+			addObject("Name", "Harry", "EmpId", 3415, "DeptName", "Finance");
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldPerformBroadcastLeftOuterTwoSourceJoin() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		// the small first input is broadcasted and the second input is preserved
+		final BinaryBooleanExpression condition = new ComparativeExpression(createPath("0", "userid"),
+			BinaryOperator.EQUAL, createPath("1", "id"));
+		final TwoSourceJoin join = new TwoSourceJoin().withCondition(condition).
+			withOuterJoinSources(new InputSelection(1)).
+			withBroadcastInput(0);
+		Assert.assertTrue(join.getStrategy() instanceof BroadcastHashJoin);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		join.setResultProjection(ObjectCreation.CONCATENATION);
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("userid", 1, "url", "code.google.com/p/jaql/").
+			addObject("userid", 2, "url", "www.cnn.com").
+			addObject("userid", 1, "url", "java.sun.com/javase/6/docs/api/");
+		sopremoPlan.getInput(1).
+			addObject("name", "Jon Doe", "id", 1).
+			addObject("name", "Jane Doe", "id", 2).
+			addObject("name", "Max Mustermann", "id", 3);
+		sopremoPlan.getExpectedOutput(0).
+			addObject("userid", 1, "url", "code.google.com/p/jaql/", "name", "Jon Doe", "id", 1).
+			addObject("userid", 1, "url", "java.sun.com/javase/6/docs/api/", "name", "Jon Doe", "id", 1).
+			addObject("userid", 2, "url", "www.cnn.com", "name", "Jane Doe", "id", 2).
+			addObject("name", "Max Mustermann", "id", 3);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldMatchNumericKeysOfDifferentTypesInBroadcastTwoSourceJoin() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		// int and long keys match as in the repartitioning equi-join
+		final BinaryBooleanExpression condition = new ComparativeExpression(createPath("0", "userid"),
+			BinaryOperator.EQUAL, createPath("1", "id"));
+		final TwoSourceJoin join = new TwoSourceJoin().withCondition(condition).withBroadcastInput(1);
+		Assert.assertTrue(join.getStrategy() instanceof BroadcastHashJoin);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		join.setResultProjection(ObjectCreation.CONCATENATION);
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(0).
+			addObject("userid", 1, "url", "www.cnn.com").
+			addObject("userid", 2, "url", "java.sun.com");
+		sopremoPlan.getInput(1).
+			addObject("name", "Jon Doe", "id", 1L).
+			addObject("name", "Jane Doe", "id", 3L);
+		sopremoPlan.getExpectedOutput(0).
+			addObject("userid", 1, "url", "www.cnn.com", "name", "Jon Doe", "id", 1L);
+
+		sopremoPlan.run();
+	}
+
 	@Test
 	public void shouldPerformEquiTwoSourceJoin() {
 		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
@@ -444,6 +697,40 @@ public class TwoSourceJoinTest extends SopremoOperatorTestBase<TwoSourceJoin> {
 		sopremoPlan.run();
 	}
 
+	@Test
+	public void shouldPerformSkewedFullOuterTwoSourceJoinWithReversedInputs() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		// with few values, each key is frequent enough to be spread over several tasks
+		final BinaryBooleanExpression condition = new ComparativeExpression(createPath("1", "id"),
+			BinaryOperator.EQUAL, createPath("0", "userid"));
+		final TwoSourceJoin join = new TwoSourceJoin().withCondition(condition).withSkewFactor(4).
+			withOuterJoinSources(new ArrayCreation(new InputSelection(0), new InputSelection(1)));
+		Assert.assertTrue(join.getStrategy() instanceof SkewedEquiJoin);
+		join.setInputs(sopremoPlan.getInputOperators(0, 2));
+		join.setResultProjection(ObjectCreation.CONCATENATION);
+		sopremoPlan.getOutputOperator(0).setInputs(join);
+		sopremoPlan.getInput(1).
+			addObject("name", "Jon Doe", "password", "asdf1234", "id", 1).
+			addObject("name", "Jane Doe", "password", "qwertyui", "id", 2).
+			addObject("name", "Max Mustermann", "password", "q1w2e3r4", "id", 3);
+		sopremoPlan.getInput(0).
+			addObject("userid", 1, "url", "code.google.com/p/jaql/").
+			addObject("userid", 2, "url", "www.cnn.com").
+			addObject("userid", 4, "url", "www.nbc.com").
+			addObject("userid", 1, "url", "java.sun.com/javase/6/docs/api/");
+		sopremoPlan.getExpectedOutput(0).
+			addObject("name", "Jon Doe", "password", "asdf1234", "id", 1, "userid", 1, "url",
+				"code.google.com/p/jaql/").
+			addObject("name", "Jon Doe", "password", "asdf1234", "id", 1, "userid", 1, "url",
+				"java.sun.com/javase/6/docs/api/").
+			addObject("name", "Jane Doe", "password", "qwertyui", "id", 2, "userid", 2, "url", "www.cnn.com").
+			addObject("name", "Max Mustermann", "password", "q1w2e3r4", "id", 3).
+			addObject("userid", 4, "url", "www.nbc.com");
+
+		sopremoPlan.run();
+	}
+
 	@Test
 	public void shouldPerformThetaTwoSourceJoin() {
 		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
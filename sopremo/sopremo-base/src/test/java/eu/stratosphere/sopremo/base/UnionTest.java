@@ -54,6 +54,33 @@ public class UnionTest extends SopremoOperatorTestBase<Union> {
 		sopremoPlan.run();
 	}
 
+	@Test
+	public void shouldSupportDuplicatesWithinSource() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
+
+		final Union union = new Union();
+		union.setInputs(sopremoPlan.getInputOperators(0, 2));
+		sopremoPlan.getOutputOperator(0).setInputs(union);
+
+		sopremoPlan.getInput(0).
+			addValue(1).
+			addValue(2).
+			addValue(1).
+			addValue(1).
+			addValue(3);
+		sopremoPlan.getInput(1).
+			addValue(2).
+			addValue(2).
+			addValue(4);
+		sopremoPlan.getExpectedOutput(0).
+			addValue(1).
+			addValue(2).
+			addValue(3).
+			addValue(4);
+
+		sopremoPlan.run();
+	}
+
 	@Test
 	public void shouldSupportPrimitives() {
 		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(2, 1);
@@ -0,0 +1,112 @@
+package eu.stratosphere.sopremo.base;
+
+import org.junit.Test;
+
+import eu.stratosphere.sopremo.base.Unique.LocalDeduplication;
+import eu.stratosphere.sopremo.testing.SopremoOperatorTestBase;
+import eu.stratosphere.sopremo.testing.SopremoTestPlan;
+
+public class UniqueTest extends SopremoOperatorTestBase<Unique> {
+	@Test
+	public void shouldRemoveDuplicates() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(1, 1);
+
+		final Unique unique = new Unique();
+		unique.setInputs(sopremoPlan.getInputOperator(0));
+		sopremoPlan.getOutputOperator(0).setInputs(unique);
+
+		sopremoPlan.getInput(0).
+			addValue(1).
+			addValue(2).
+			addValue(1).
+			addArray(1, 2).
+			addValue(3).
+			addArray(1, 2).
+			addValue(2);
+		sopremoPlan.getExpectedOutput(0).
+			addValue(1).
+			addValue(2).
+			addValue(3).
+			addArray(1, 2);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldRemoveDuplicatesBeyondLocalCapacity() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(1, 1);
+
+		// the local hash set is cleared several times, so that duplicates pass the local deduplication
+		final Unique unique = new Unique().withLocalCapacity(2);
+		unique.setInputs(sopremoPlan.getInputOperator(0));
+		sopremoPlan.getOutputOperator(0).setInputs(unique);
+
+		sopremoPlan.getInput(0).
+			addValue(1).
+			addValue(2).
+			addValue(3).
+			addValue(1).
+			addValue(2).
+			addValue(3).
+			addValue(3).
+			addValue(1);
+		sopremoPlan.getExpectedOutput(0).
+			addValue(1).
+			addValue(2).
+			addValue(3);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldRemoveDuplicatesBeyondDefaultLocalCapacity() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(1, 1);
+
+		final Unique unique = new Unique();
+		unique.setInputs(sopremoPlan.getInputOperator(0));
+		sopremoPlan.getOutputOperator(0).setInputs(unique);
+
+		// the first values are forgotten when the hash set is cleared and are then seen again
+		final int numValues = LocalDeduplication.DEFAULT_CAPACITY + 10;
+		for (int value = 0; value < numValues; value++)
+			sopremoPlan.getInput(0).addValue(value);
+		for (int value = 0; value < 10; value++)
+			sopremoPlan.getInput(0).addValue(value);
+		for (int value = 0; value < numValues; value++)
+			sopremoPlan.getExpectedOutput(0).addValue(value);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldRemoveDuplicatesWithoutLocalDeduplication() {
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(1, 1);
+
+		final Unique unique = new Unique().withLocalCapacity(0);
+		unique.setInputs(sopremoPlan.getInputOperator(0));
+		sopremoPlan.getOutputOperator(0).setInputs(unique);
+
+		sopremoPlan.getInput(0).
+			addValue(1).
+			addValue(2).
+			addValue(1).
+			addValue(1).
+			addValue(3).
+			addValue(2);
+		sopremoPlan.getExpectedOutput(0).
+			addValue(1).
+			addValue(2).
+			addValue(3);
+
+		sopremoPlan.run();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.EqualVerifyTest#createDefaultInstance(int)
+	 */
+	@Override
+	protected Unique createDefaultInstance(final int index) {
+		return new Unique().withLocalCapacity(index);
+	}
+}
@@ -0,0 +1,110 @@
+package eu.stratosphere.sopremo.base;
+
+import static eu.stratosphere.sopremo.function.FunctionUtil.createFunctionCall;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import eu.stratosphere.api.common.operators.Order;
+import eu.stratosphere.sopremo.base.window.WindowFrame;
+import eu.stratosphere.sopremo.base.window.WindowFunctionCall;
+import eu.stratosphere.sopremo.base.window.WindowFunctions;
+import eu.stratosphere.sopremo.expressions.ArrayAccess;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.expressions.ObjectAccess;
+import eu.stratosphere.sopremo.expressions.ObjectCreation;
+import eu.stratosphere.sopremo.expressions.OrderingExpression;
+import eu.stratosphere.sopremo.testing.SopremoOperatorTestBase;
+import eu.stratosphere.sopremo.testing.SopremoTestPlan;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.JsonUtil;
+
+public class WindowTest extends SopremoOperatorTestBase<Window> {
+	@Test
+	public void shouldRankWithinPartitions() {
+		final ObjectCreation projection = new ObjectCreation();
+		projection.addMapping("k", new ObjectAccess("k"));
+		projection.addMapping("v", new ObjectAccess("v"));
+		projection.addMapping("row", createFunctionCall(WindowFunctions.class, "row_number"));
+		projection.addMapping("rank", createFunctionCall(WindowFunctions.class, "rank"));
+		projection.addMapping("dense", createFunctionCall(WindowFunctions.class, "dense_rank"));
+
+		final Window window = new Window().
+			withPartitionKey(new ObjectAccess("k")).
+			withOrderingExpression(new OrderingExpression(Order.ASCENDING, new ObjectAccess("v"))).
+			withResultProjection(projection);
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(window);
+
+		sopremoPlan.getInput(0).
+			addObject("k", 1, "v", 30).
+			addObject("k", 2, "v", 5).
+			addObject("k", 1, "v", 10).
+			addObject("k", 1, "v", 10).
+			addObject("k", 2, "v", 7);
+		sopremoPlan.getExpectedOutput(0).
+			addObject("k", 1, "v", 10, "row", 1, "rank", 1, "dense", 1).
+			addObject("k", 1, "v", 10, "row", 2, "rank", 1, "dense", 1).
+			addObject("k", 1, "v", 30, "row", 3, "rank", 3, "dense", 2).
+			addObject("k", 2, "v", 5, "row", 1, "rank", 1, "dense", 1).
+			addObject("k", 2, "v", 7, "row", 2, "rank", 2, "dense", 2);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldAccessPrecedingAndFollowingRows() {
+		final ObjectCreation projection = new ObjectCreation();
+		projection.addMapping("v", new ObjectAccess("v"));
+		projection.addMapping("prev", createFunctionCall(WindowFunctions.class, "lag", new ObjectAccess("v")));
+		projection.addMapping("next", createFunctionCall(WindowFunctions.class, "lead", new ObjectAccess("v"),
+			new ConstantExpression(2), new ConstantExpression(-1)));
+		projection.addMapping("sum", createFunctionCall(WindowFunctions.class, "running_sum", new ObjectAccess("v")));
+
+		final Window window = new Window().
+			withOrderingExpression(new OrderingExpression(Order.ASCENDING, new ObjectAccess("v"))).
+			withResultProjection(projection);
+		final SopremoTestPlan sopremoPlan = new SopremoTestPlan(window);
+
+		sopremoPlan.getInput(0).
+			addObject("v", 3).
+			addObject("v", 1).
+			addObject("v", 4).
+			addObject("v", 2);
+		sopremoPlan.getExpectedOutput(0).
+			addObject("v", 1, "prev", null, "next", 3, "sum", 1).
+			addObject("v", 2, "prev", 1, "next", 4, "sum", 3).
+			addObject("v", 3, "prev", 2, "next", -1, "sum", 6).
+			addObject("v", 4, "prev", 3, "next", -1, "sum", 10);
+
+		sopremoPlan.run();
+	}
+
+	@Test
+	public void shouldEvaluateWindowFunctionsOncePerRow() {
+		final WindowFunctionCall sum = new WindowFunctionCall(new WindowFunctions.RunningSum(),
+			Arrays.<EvaluationExpression> asList(new ObjectAccess("v")));
+		final WindowFrame frame = new WindowFrame(0,
+			Arrays.asList(new OrderingExpression(Order.ASCENDING, new ObjectAccess("v"))));
+		sum.initialize(frame);
+
+		frame.add(JsonUtil.createObjectNode("v", 2));
+		frame.advance();
+		Assert.assertEquals(IntNode.valueOf(2), sum.evaluate(frame.getCurrent()));
+		// a repeated evaluation for the same row must not add the value again
+		Assert.assertEquals(IntNode.valueOf(2), sum.evaluate(frame.getCurrent()));
+		frame.removeCurrent();
+
+		frame.add(JsonUtil.createObjectNode("v", 3));
+		frame.advance();
+		Assert.assertEquals(IntNode.valueOf(5), sum.evaluate(frame.getCurrent()));
+	}
+
+	@Override
+	protected Window createDefaultInstance(final int index) {
+		return new Window().withOrderingExpression(new OrderingExpression(Order.ASCENDING, new ArrayAccess(index))).
+			withResultProjection(EvaluationExpression.VALUE);
+	}
+}
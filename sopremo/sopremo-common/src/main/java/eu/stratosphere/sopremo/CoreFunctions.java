@@ -13,6 +13,7 @@ import eu.stratosphere.core.fs.Path;
 import eu.stratosphere.sopremo.aggregation.Aggregation;
 import eu.stratosphere.sopremo.aggregation.AssociativeAggregation;
 import eu.stratosphere.sopremo.aggregation.FixedTypeAssociativeAggregation;
+import eu.stratosphere.sopremo.aggregation.NumericAggregation;
 import eu.stratosphere.sopremo.cache.ArrayCache;
 import eu.stratosphere.sopremo.cache.NodeCache;
 import eu.stratosphere.sopremo.cache.PatternCache;
@@ -34,6 +35,7 @@ import eu.stratosphere.sopremo.function.SopremoFunction3;
 import eu.stratosphere.sopremo.function.SopremoVarargFunction1;
 import eu.stratosphere.sopremo.operator.Name;
 import eu.stratosphere.sopremo.packages.BuiltinProvider;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
 import eu.stratosphere.sopremo.tokenizer.RegexTokenizer;
 import eu.stratosphere.sopremo.type.ArrayNode;
 import eu.stratosphere.sopremo.type.BooleanNode;
@@ -45,6 +47,7 @@ import eu.stratosphere.sopremo.type.IStreamNode;
 import eu.stratosphere.sopremo.type.IntNode;
 import eu.stratosphere.sopremo.type.MissingNode;
 import eu.stratosphere.sopremo.type.NullNode;
+import eu.stratosphere.sopremo.type.SpillingStreamNode;
 import eu.stratosphere.sopremo.type.TextNode;
 
 /**
@@ -65,16 +68,27 @@ public class CoreFunctions implements BuiltinProvider {
 	@Name(verb = "array_concat")
 	public static final Aggregation ARRAY_CONCAT = new FixedTypeAssociativeAggregation<CachingArrayNode<IJsonNode>>(
 		new CachingArrayNode<IJsonNode>()) {
+		// large groups are spilled to disk and returned as a stream instead of an array
+		private final transient SpillingStreamNode<IJsonNode> elements = new SpillingStreamNode<IJsonNode>();
+
+		@Override
+		public IJsonNode getFinalAggregate() {
+			if (this.elements.isSpilled())
+				return this.elements;
+			return this.elements.fillArray(this.aggregator);
+		}
+
 		@Override
 		public void initialize() {
 			this.aggregator.setSize(0);
+			this.elements.clear();
 		}
 
 		@SuppressWarnings("unchecked")
 		@Override
 		protected void aggregateInto(final CachingArrayNode<IJsonNode> aggregator, final IJsonNode array) {
-			for (final IJsonNode element : (IArrayNode<IJsonNode>) array)
-				aggregator.addClone(element);
+			for (final IJsonNode element : (IStreamNode<IJsonNode>) array)
+				this.elements.add(element);
 		}
 	};
 
@@ -83,14 +97,27 @@ public class CoreFunctions implements BuiltinProvider {
 	 * children of the given node.
 	 */
 	@Name(verb = "sum", noun = "sum")
-	public static final Aggregation SUM = new AssociativeAggregation<INumericNode>(IntNode.ZERO) {
+	public static final Aggregation SUM = new NumericAggregation(IntNode.ZERO) {
 		private final transient NodeCache nodeCache = new NodeCache();
 
 		@Override
-		protected INumericNode aggregate(final INumericNode aggregator,
-				final IJsonNode element) {
-			return (INumericNode) ArithmeticExpression.ArithmeticOperator.ADDITION.evaluate(
-				aggregator, element, this.nodeCache);
+		protected double aggregate(final double aggregator, final double element) {
+			return aggregator + element;
+		}
+
+		@Override
+		protected IJsonNode aggregate(final IJsonNode aggregator, final IJsonNode element) {
+			return ArithmeticExpression.ArithmeticOperator.ADDITION.evaluate(aggregator, element, this.nodeCache);
+		}
+
+		@Override
+		protected long aggregate(final long aggregator, final long element) {
+			return aggregator + element;
+		}
+
+		@Override
+		protected boolean isPromotable() {
+			return true;
 		}
 	};
 
@@ -132,6 +159,11 @@ public class CoreFunctions implements BuiltinProvider {
 
 			@Override
 			public IJsonNode evaluate(final IJsonNode node) {
+				if (node instanceof SpillingStreamNode) {
+					// external merge sort
+					((SpillingStreamNode<?>) node).sort();
+					return node;
+				}
 				final ArrayNode<?> arrayNode = (ArrayNode<?>) node;
 				final Object[] elements = arrayNode.getBackingArray();
 				Arrays.sort(elements, 0, arrayNode.size());
@@ -147,7 +179,12 @@ public class CoreFunctions implements BuiltinProvider {
 		ConstantExpression.MISSING));
 
 	@Name(noun = "min")
-	public static final Aggregation MIN = new AssociativeAggregation<IJsonNode>(NullNode.getInstance()) {
+	public static final Aggregation MIN = new NumericAggregation(NullNode.getInstance()) {
+		@Override
+		protected double aggregate(final double aggregator, final double element) {
+			return element < aggregator ? element : aggregator;
+		}
+
 		@Override
 		public IJsonNode aggregate(final IJsonNode aggregator, final IJsonNode node) {
 			if (aggregator == NullNode.getInstance())
@@ -156,18 +193,44 @@ public class CoreFunctions implements BuiltinProvider {
 				return node;
 			return aggregator;
 		}
+
+		@Override
+		protected long aggregate(final long aggregator, final long element) {
+			return element < aggregator ? element : aggregator;
+		}
+
+		@Override
+		protected boolean isPromotable() {
+			return false;
+		}
 	};
 
 	@Name(noun = "max")
-	public static final Aggregation MAX = new AssociativeAggregation<IJsonNode>(NullNode.getInstance()) {
+	public static final Aggregation MAX = new NumericAggregation(NullNode.getInstance()) {
+		@Override
+		protected double aggregate(final double aggregator, final double element) {
+			return aggregator < element ? element : aggregator;
+		}
+
 		@Override
 		public IJsonNode aggregate(final IJsonNode aggregator, final IJsonNode node) {
 			if (aggregator == NullNode.getInstance())
 				return node.clone();
 			else if (ComparativeExpression.BinaryOperator.LESS.evaluate(aggregator, node))
-				aggregator.copyValueFrom(node);
+				// the aggregator is only reused if it has the type of the new maximum
+				return SopremoUtil.copyInto(node, aggregator);
 			return aggregator;
 		}
+
+		@Override
+		protected long aggregate(final long aggregator, final long element) {
+			return aggregator < element ? element : aggregator;
+		}
+
+		@Override
+		protected boolean isPromotable() {
+			return false;
+		}
 	};
 
 	/**
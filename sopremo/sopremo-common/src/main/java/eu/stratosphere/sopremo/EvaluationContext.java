@@ -31,6 +31,16 @@ import eu.stratosphere.util.SopremoKryo;
 /**
  */
 public class EvaluationContext extends AbstractSopremoType {
+	/**
+	 * The name of the parameter that limits the number of bytes that a single group may occupy in main memory before
+	 * it is spilled to disk.
+	 */
+	public static final String MATERIALIZATION_MEMORY_LIMIT = "sopremo.materialization.memoryLimit";
+
+	/**
+	 * The default value of {@link #MATERIALIZATION_MEMORY_LIMIT} (32 MiB).
+	 */
+	public static final long DEFAULT_MATERIALIZATION_MEMORY_LIMIT = 32L << 20;
 
 	private String workingPath;
 
@@ -158,6 +168,18 @@ public class EvaluationContext extends AbstractSopremoType {
 		return kryo;
 	}
 
+	/**
+	 * Returns the maximum number of bytes that a materialized group may occupy in main memory before it is spilled to
+	 * disk.
+	 * 
+	 * @return the memory limit in bytes
+	 * @see #MATERIALIZATION_MEMORY_LIMIT
+	 */
+	public long getMaterializationMemoryLimit() {
+		final Number limit = this.getParameter(MATERIALIZATION_MEMORY_LIMIT, Number.class);
+		return limit == null ? DEFAULT_MATERIALIZATION_MEMORY_LIMIT : limit.longValue();
+	}
+
 	/**
 	 * Returns the nameChooserProvider.
 	 * 
@@ -215,6 +237,20 @@ public class EvaluationContext extends AbstractSopremoType {
 		this.contextParameters.put(key, value);
 	}
 
+	/**
+	 * Sets the maximum number of bytes that a materialized group may occupy in main memory before it is spilled to
+	 * disk.
+	 * 
+	 * @param memoryLimit
+	 *        the memory limit in bytes
+	 */
+	public void setMaterializationMemoryLimit(final long memoryLimit) {
+		if (memoryLimit <= 0)
+			throw new IllegalArgumentException("memoryLimit must be positive");
+
+		this.putParameter(MATERIALIZATION_MEMORY_LIMIT, memoryLimit);
+	}
+
 	/**
 	 * Sets the operatorDescription to the specified value.
 	 * 
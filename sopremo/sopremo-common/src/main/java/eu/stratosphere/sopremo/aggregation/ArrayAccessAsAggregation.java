@@ -19,6 +19,7 @@ import java.io.IOException;
 import javolution.text.TypeFormat;
 import eu.stratosphere.sopremo.type.CachingArrayNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.SpillingStreamNode;
 
 /**
  * Replaces simple {@link ArrayAccess}es in {@link SopremoReduce} and {@link SopremoCoGroup}.<br/>
@@ -34,6 +35,8 @@ public class ArrayAccessAsAggregation extends Aggregation {
 
 	private transient final CachingArrayNode<IJsonNode> arrayResult = new CachingArrayNode<IJsonNode>();
 
+	private transient final SpillingStreamNode<IJsonNode> rangeResult = new SpillingStreamNode<IJsonNode>();
+
 	public ArrayAccessAsAggregation(final int index) {
 		this(index, index, false);
 	}
@@ -63,7 +66,10 @@ public class ArrayAccessAsAggregation extends Aggregation {
 		if (this.elementsToSkip > 0)
 			this.elementsToSkip--;
 		else if (this.remainingElements > 0) {
-			this.arrayResult.addClone(element);
+			if (this.range)
+				this.rangeResult.add(element);
+			else
+				this.arrayResult.addClone(element);
 			this.remainingElements--;
 		}
 	}
@@ -100,7 +106,7 @@ public class ArrayAccessAsAggregation extends Aggregation {
 	@Override
 	public IJsonNode getFinalAggregate() {
 		if (this.range)
-			return this.arrayResult;
+			return this.rangeResult.isSpilled() ? this.rangeResult : this.rangeResult.fillArray(this.arrayResult);
 		return this.arrayResult.get(0);
 	}
 
@@ -113,5 +119,6 @@ public class ArrayAccessAsAggregation extends Aggregation {
 		this.elementsToSkip = this.startIndex;
 		this.remainingElements = this.endIndex - this.startIndex + 1;
 		this.arrayResult.clear();
+		this.rangeResult.clear();
 	}
 }
@@ -2,9 +2,18 @@ package eu.stratosphere.sopremo.aggregation;
 
 import eu.stratosphere.sopremo.type.CachingArrayNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IStreamNode;
+import eu.stratosphere.sopremo.type.SpillingStreamNode;
 
+/**
+ * Collects all elements of a group. The elements are buffered in a {@link SpillingStreamNode}, such that groups that
+ * exceed the {@link eu.stratosphere.sopremo.EvaluationContext#getMaterializationMemoryLimit() memory limit} are
+ * spilled to disk instead of exhausting the heap. Groups that fit into main memory are still returned as an array.
+ */
 public class MaterializingAggregation extends AssociativeAggregation<CachingArrayNode<IJsonNode>> {
 
+	private final transient SpillingStreamNode<IJsonNode> elements = new SpillingStreamNode<IJsonNode>();
+
 	/**
 	 * Initializes a new MaterializingAggregation.
 	 */
@@ -18,7 +27,7 @@ public class MaterializingAggregation extends AssociativeAggregation<CachingArra
 	 */
 	@Override
 	public void aggregate(final IJsonNode element) {
-		this.aggregator.addClone(element);
+		this.elements.add(element);
 	}
 
 	/*
@@ -27,7 +36,9 @@ public class MaterializingAggregation extends AssociativeAggregation<CachingArra
 	 */
 	@Override
 	public IJsonNode getFinalAggregate() {
-		return this.processNodes(this.aggregator);
+		if (this.elements.isSpilled())
+			return this.processNodes(this.elements);
+		return this.processNodes(this.elements.fillArray(this.aggregator));
 	}
 
 	/*
@@ -37,6 +48,7 @@ public class MaterializingAggregation extends AssociativeAggregation<CachingArra
 	@Override
 	public void initialize() {
 		this.aggregator.setSize(0);
+		this.elements.clear();
 	}
 
 	/*
@@ -47,11 +59,19 @@ public class MaterializingAggregation extends AssociativeAggregation<CachingArra
 	@Override
 	protected CachingArrayNode<IJsonNode> aggregate(final CachingArrayNode<IJsonNode> aggregator,
 			final IJsonNode element) {
-		this.aggregator.addClone(element);
+		this.elements.add(element);
 		return this.aggregator;
 	}
 
-	protected IJsonNode processNodes(final CachingArrayNode<IJsonNode> nodeArray) {
-		return nodeArray;
+	/**
+	 * Post-processes the collected elements. The elements are either given as an array or, if the group has been
+	 * spilled to disk, as a reiterable {@link SpillingStreamNode}.
+	 * 
+	 * @param nodes
+	 *        the collected elements
+	 * @return the final aggregate
+	 */
+	protected IJsonNode processNodes(final IStreamNode<IJsonNode> nodes) {
+		return nodes;
 	}
 }
@@ -0,0 +1,196 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.aggregation;
+
+import eu.stratosphere.sopremo.type.DoubleNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.LongNode;
+import eu.stratosphere.sopremo.type.NullNode;
+
+/**
+ * An {@link AssociativeAggregation} that keeps the aggregate in a primitive long or double as long as only
+ * {@link IntNode}s, {@link LongNode}s, and {@link DoubleNode}s are aggregated. Thus, numeric aggregations do not
+ * allocate or coerce nodes per element.<br/>
+ * The primitive representation is chosen from the types of the elements that are observed in the current group. As
+ * soon as an element of another type, e.g., a {@link eu.stratosphere.sopremo.type.DecimalNode}, is encountered, the
+ * aggregation falls back to {@link #aggregate(IJsonNode, IJsonNode)} for the rest of the group.
+ */
+public abstract class NumericAggregation extends AssociativeAggregation<IJsonNode> {
+	private transient Mode mode = Mode.EMPTY;
+
+	private transient long longAggregate;
+
+	private transient double doubleAggregate;
+
+	private final transient IntNode intResult = new IntNode();
+
+	private final transient LongNode longResult = new LongNode();
+
+	private final transient DoubleNode doubleResult = new DoubleNode();
+
+	/**
+	 * Initializes NumericAggregation with the given initial aggregate, which is either {@link NullNode} or a numeric
+	 * node.
+	 *
+	 * @param initialAggregate
+	 *        the initial aggregate
+	 */
+	public NumericAggregation(final IJsonNode initialAggregate) {
+		super(initialAggregate);
+		this.initializeMode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.aggregation.AssociativeAggregation#aggregate(eu.stratosphere.sopremo.type.IJsonNode)
+	 */
+	@Override
+	public void aggregate(final IJsonNode element) {
+		final Mode elementMode = Mode.of(element);
+		if (elementMode == this.mode) {
+			if (elementMode == Mode.DOUBLE)
+				this.doubleAggregate = this.aggregate(this.doubleAggregate, ((DoubleNode) element).getDoubleValue());
+			else if (elementMode != Mode.GENERIC)
+				this.longAggregate = this.aggregate(this.longAggregate, getLongValue(element, elementMode));
+			else
+				this.aggregator = this.aggregate(this.aggregator, element);
+			return;
+		}
+
+		if (elementMode != Mode.GENERIC)
+			if (this.mode == Mode.EMPTY) {
+				this.mode = elementMode;
+				if (elementMode == Mode.DOUBLE)
+					this.doubleAggregate = ((DoubleNode) element).getDoubleValue();
+				else
+					this.longAggregate = getLongValue(element, elementMode);
+				return;
+			} else if (this.mode != Mode.GENERIC && this.isPromotable()) {
+				this.promote(elementMode);
+				if (this.mode == Mode.DOUBLE)
+					this.doubleAggregate = this.aggregate(this.doubleAggregate, getDoubleValue(element, elementMode));
+				else
+					this.longAggregate = this.aggregate(this.longAggregate, getLongValue(element, elementMode));
+				return;
+			}
+
+		if (this.mode != Mode.GENERIC) {
+			// the generic aggregation may modify its aggregator, so we hand over a private copy
+			this.aggregator = this.mode == Mode.EMPTY ? this.initialAggregate.clone() : this.getFinalAggregate().clone();
+			this.mode = Mode.GENERIC;
+		}
+		this.aggregator = this.aggregate(this.aggregator, element);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.aggregation.AssociativeAggregation#getFinalAggregate()
+	 */
+	@Override
+	public IJsonNode getFinalAggregate() {
+		switch (this.mode) {
+		case INT:
+			this.intResult.setValue((int) this.longAggregate);
+			return this.intResult;
+		case LONG:
+			this.longResult.setValue(this.longAggregate);
+			return this.longResult;
+		case DOUBLE:
+			this.doubleResult.setValue(this.doubleAggregate);
+			return this.doubleResult;
+		default:
+			return this.aggregator;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.aggregation.AssociativeAggregation#initialize()
+	 */
+	@Override
+	public void initialize() {
+		super.initialize();
+		this.initializeMode();
+	}
+
+	/**
+	 * Aggregates two primitive doubles.
+	 */
+	protected abstract double aggregate(double aggregator, double element);
+
+	/**
+	 * Aggregates two primitive longs. The result is truncated to an int if only {@link IntNode}s have been aggregated.
+	 */
+	protected abstract long aggregate(long aggregator, long element);
+
+	/**
+	 * Returns whether elements of different primitive types are aggregated with the wider type of both, e.g., the sum
+	 * of an int and a double is a double. Otherwise, the aggregation switches to the generic aggregation when the type
+	 * of the elements changes, such that the result retains the type of the respective element.
+	 */
+	protected abstract boolean isPromotable();
+
+	private void initializeMode() {
+		// null marks an aggregation that adopts the type of the first element
+		this.mode = Mode.of(this.initialAggregate);
+		if (this.mode == Mode.DOUBLE)
+			this.doubleAggregate = ((DoubleNode) this.initialAggregate).getDoubleValue();
+		else if (this.mode != Mode.GENERIC)
+			this.longAggregate = getLongValue(this.initialAggregate, this.mode);
+		if (this.initialAggregate == NullNode.getInstance())
+			this.mode = Mode.EMPTY;
+	}
+
+	private void promote(final Mode elementMode) {
+		if (elementMode.ordinal() <= this.mode.ordinal())
+			return;
+		// an int aggregate would have overflowed before the promotion
+		if (this.mode == Mode.INT)
+			this.longAggregate = (int) this.longAggregate;
+		if (elementMode == Mode.DOUBLE)
+			this.doubleAggregate = this.longAggregate;
+		this.mode = elementMode;
+	}
+
+	private static double getDoubleValue(final IJsonNode element, final Mode elementMode) {
+		if (elementMode == Mode.DOUBLE)
+			return ((DoubleNode) element).getDoubleValue();
+		return getLongValue(element, elementMode);
+	}
+
+	private static long getLongValue(final IJsonNode element, final Mode elementMode) {
+		if (elementMode == Mode.INT)
+			return ((IntNode) element).getIntValue();
+		return ((LongNode) element).getLongValue();
+	}
+
+	/**
+	 * The representation of the aggregate, ordered by the generality of the primitive types.
+	 */
+	private static enum Mode {
+		EMPTY, INT, LONG, DOUBLE, GENERIC;
+
+		static Mode of(final IJsonNode node) {
+			if (node instanceof IntNode)
+				return INT;
+			if (node instanceof LongNode)
+				return LONG;
+			if (node instanceof DoubleNode)
+				return DOUBLE;
+			return GENERIC;
+		}
+	}
+}
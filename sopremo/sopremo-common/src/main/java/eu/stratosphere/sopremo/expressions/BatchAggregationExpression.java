@@ -42,6 +42,11 @@ public class BatchAggregationExpression extends PathSegmentExpression {
 
 	private final transient IArrayNode<IJsonNode> results = new ArrayNode<IJsonNode>();
 
+	// flattened view on the partials for the evaluation
+	private transient Aggregation[] aggregations;
+
+	private transient EvaluationExpression[] inputExpressions;
+
 	private static final ThreadLocal<Map<BatchAggregationExpression, CloneHelper>> CLONE_MAP =
 		new ThreadLocal<Map<BatchAggregationExpression, CloneHelper>>() {
 			@Override
@@ -163,19 +168,29 @@ public class BatchAggregationExpression extends PathSegmentExpression {
 
 		this.results.clear();
 
-		for (final Partial partial : this.partials)
-			partial.getAggregation().initialize();
+		final int size = this.partials.size();
+		if (this.aggregations == null || this.aggregations.length != size) {
+			this.aggregations = new Aggregation[size];
+			this.inputExpressions = new EvaluationExpression[size];
+		}
+		for (int index = 0; index < size; index++) {
+			final Partial partial = this.partials.get(index);
+			this.aggregations[index] = partial.getAggregation();
+			this.inputExpressions[index] = partial.getInputExpression();
+			this.aggregations[index].initialize();
+		}
+		// numeric aggregations keep primitive aggregates, so this loop does not allocate per element
 		for (final IJsonNode input : stream)
-			for (final Partial partial : this.partials) {
-				final IJsonNode preprocessedValue = partial.getInputExpression().evaluate(input);
+			for (int index = 0; index < size; index++) {
+				final IJsonNode preprocessedValue = this.inputExpressions[index].evaluate(input);
 //				if (preprocessedValue == MissingNode.getInstance())
 //					throw new EvaluationException(String.format("Cannot access %s for aggregation %s on %s",
 //						partial.getInputExpression(), partial, input));
-				partial.getAggregation().aggregate(preprocessedValue);
+				this.aggregations[index].aggregate(preprocessedValue);
 			}
 
-		for (int index = 0; index < this.partials.size(); index++)
-			this.results.add(this.partials.get(index).getAggregation().getFinalAggregate());
+		for (int index = 0; index < size; index++)
+			this.results.add(this.aggregations[index].getFinalAggregate());
 
 		return this.results;
 	}
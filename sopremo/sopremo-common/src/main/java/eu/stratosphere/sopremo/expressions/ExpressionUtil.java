@@ -20,9 +20,11 @@ import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.base.Predicates;
 
@@ -45,6 +47,21 @@ public class ExpressionUtil {
 		};
 	};
 
+	/**
+	 * Returns the names of the top-level fields of the input value that are accessed by the given expression. If the
+	 * expression may also access the input value as a whole or through other paths, null is returned.<br />
+	 * The returned set may contain additional fields, e.g., fields of nested values that are accessed with
+	 * {@link EvaluationExpression#VALUE} as input.
+	 * 
+	 * @param expression
+	 *        the expression to analyze
+	 * @return the accessed fields or null if all fields may be needed
+	 */
+	public static Set<String> getAccessedFields(final EvaluationExpression expression) {
+		final Set<String> fields = new HashSet<String>();
+		return collectAccessedFields(expression, fields) ? fields : null;
+	}
+
 	public static <T extends IJsonNode> T getConstant(final EvaluationExpression expression, final Class<T> type) {
 		final IJsonNode constant = expression.evaluate(MissingNode.getInstance());
 		return TypeCoercer.INSTANCE.coerce(constant, NodeCache.get(), type);
@@ -217,6 +234,30 @@ public class ExpressionUtil {
 		});
 	}
 
+	private static boolean collectAccessedFields(final EvaluationExpression expression, final Set<String> fields) {
+		if (expression instanceof ObjectAccess && isInputValue(((ObjectAccess) expression).getInputExpression())) {
+			fields.add(((ObjectAccess) expression).getField());
+			return true;
+		}
+		if (isInputValue(expression))
+			return false;
+		boolean hasChildren = false;
+		for (final EvaluationExpression child : expression) {
+			if (!collectAccessedFields(child, fields))
+				return false;
+			hasChildren = true;
+		}
+		// leaves other than constants may evaluate the input value directly, e.g., the concatenation of objects
+		return hasChildren || expression instanceof ConstantExpression;
+	}
+
+	private static boolean isInputValue(final EvaluationExpression expression) {
+		if (expression == EvaluationExpression.VALUE)
+			return true;
+		return expression instanceof InputSelection
+			&& isInputValue(((InputSelection) expression).getInputExpression());
+	}
+
 	private static void findAggregatingFunctionCalls(final EvaluationExpression expression,
 			final Map<FunctionCall, EvaluationExpression> aggregatingFunctionCalls,
 			final Map<AggregationExpression, EvaluationExpression> aggregatingExpressions,
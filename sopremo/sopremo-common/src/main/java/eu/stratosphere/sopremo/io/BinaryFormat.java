@@ -0,0 +1,498 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultClassResolver;
+
+import eu.stratosphere.api.common.io.statistics.BaseStatistics;
+import eu.stratosphere.core.fs.FSDataInputStream;
+import eu.stratosphere.core.fs.FSDataOutputStream;
+import eu.stratosphere.core.fs.FileInputSplit;
+import eu.stratosphere.core.fs.FileStatus;
+import eu.stratosphere.core.fs.FileSystem;
+import eu.stratosphere.sopremo.operator.Name;
+import eu.stratosphere.sopremo.operator.Property;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
+import eu.stratosphere.sopremo.serialization.ReusingFieldSerializer;
+import eu.stratosphere.sopremo.type.AbstractReusingSerializer;
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.BooleanNode;
+import eu.stratosphere.sopremo.type.CachingArrayNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IObjectNode;
+import eu.stratosphere.sopremo.type.MissingNode;
+import eu.stratosphere.sopremo.type.NullNode;
+import eu.stratosphere.sopremo.type.ObjectNode;
+import eu.stratosphere.sopremo.type.TextNode;
+import eu.stratosphere.sopremo.type.TypeCoercer;
+
+/**
+ * Binary format that stores the values in their Kryo serialization, so that intermediate results can be passed
+ * between jobs without generating and parsing text.<br />
+ * The values are written in blocks that start with a sync marker, which is unique for each file, so that files can be
+ * divided into several splits. Each block can be decoded on its own: the name of each type that is not built into
+ * Sopremo is written only at its first occurrence within the block, and so is the name of each object field. Later
+ * occurrences refer to the name by a small number.<br />
+ * The header of each block contains the number of values, from which the size of the records is estimated.
+ */
+@Name(noun = "binary")
+public class BinaryFormat extends SopremoFormat {
+	/**
+	 * The default number of bytes after which a block is completed.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+	private static final byte[] MAGIC = { 'S', 'O', 'P', 'B' };
+
+	private static final byte VERSION = 1;
+
+	private static final int HEADER_LENGTH = SyncBlockUtil.getHeaderLength(MAGIC);
+
+	/**
+	 * The sync marker is followed by the number of values and the length of the serialized values.
+	 */
+	private static final int BLOCK_HEADER_LENGTH = SyncBlockUtil.SYNC_LENGTH + 8;
+
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		if (this.getClass() != obj.getClass())
+			return false;
+		final BinaryFormat other = (BinaryFormat) obj;
+		return this.blockSize == other.blockSize;
+	}
+
+	/**
+	 * Returns the number of bytes after which a block is completed.
+	 *
+	 * @return the block size
+	 */
+	public int getBlockSize() {
+		return this.blockSize;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + this.blockSize;
+		return result;
+	}
+
+	/**
+	 * Sets the number of bytes after which a block is completed. Since type and field names are repeated in each
+	 * block, small blocks increase the size of the file.
+	 *
+	 * @param blockSize
+	 *        the block size to set
+	 */
+	@Property
+	@Name(noun = "blocksize")
+	public void setBlockSize(final int blockSize) {
+		if (blockSize <= 0)
+			throw new IllegalArgumentException("block size must be positive");
+
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Sets the number of bytes after which a block is completed.
+	 *
+	 * @param blockSize
+	 *        the block size to set
+	 * @return this
+	 */
+	public BinaryFormat withBlockSize(final int blockSize) {
+		this.setBlockSize(blockSize);
+		return this;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.io.SopremoFormat#getPreferredFilenameExtensions()
+	 */
+	@Override
+	protected String[] getPreferredFilenameExtensions() {
+		return new String[] { "sopremo" };
+	}
+
+	/**
+	 * Creates a Kryo instance that registers the built-in node types with fixed ids and writes all other types by
+	 * name.
+	 */
+	private static Kryo createKryo(final BlockClassResolver classResolver, final FieldDictionarySerializer dictionary) {
+		final Kryo kryo = new Kryo(classResolver, null);
+		final List<Class<?>> defaultTypes =
+			Arrays.<Class<?>> asList(BooleanNode.class, BooleanNode.UnmodifiableBoolean.class, NullNode.class,
+				MissingNode.class, TextNode.class, ArrayNode.class, CachingArrayNode.class);
+		for (final Class<?> type : defaultTypes)
+			kryo.register(type);
+		for (final Class<?> type : TypeCoercer.NUMERIC_TYPES)
+			kryo.register(type, new ReusingFieldSerializer<Object>(kryo, type));
+		kryo.register(ObjectNode.class, dictionary);
+		return kryo;
+	}
+
+	/**
+	 * Keeps the names of the written classes until the end of the block instead of the end of the current value.
+	 */
+	private static class BlockClassResolver extends DefaultClassResolver {
+		/**
+		 * Forgets the class names that have been written or read in the current block.
+		 */
+		public void startBlock() {
+			super.reset();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.esotericsoftware.kryo.util.DefaultClassResolver#reset()
+		 */
+		@Override
+		public void reset() {
+			// the names are retained until the next block starts
+		}
+	}
+
+	/**
+	 * Serializes {@link ObjectNode}s and writes each field name only at its first occurrence within a block.
+	 */
+	private static class FieldDictionarySerializer extends AbstractReusingSerializer<IObjectNode> {
+		private final Map<String, Integer> fieldIds = new HashMap<String, Integer>();
+
+		private final List<String> fieldNames = new ArrayList<String>();
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.type.ReusingSerializer#read(com.esotericsoftware.kryo.Kryo,
+		 * com.esotericsoftware.kryo.io.Input, java.lang.Object, java.lang.Class)
+		 */
+		@Override
+		public IObjectNode read(final Kryo kryo, final Input input, final IObjectNode oldInstance,
+				final Class<IObjectNode> type) {
+			final IObjectNode object = oldInstance == null ? new ObjectNode() : oldInstance;
+			final SortedSet<String> oldFieldNames = object.getFieldNames();
+
+			// the fields are written in their natural order, so stale fields can be removed while reading
+			final int size = input.readInt(true);
+			String previousName = null;
+			for (int index = 0; index < size; index++) {
+				final String fieldName = this.readFieldName(input);
+				removeFieldsBetween(oldFieldNames, previousName, fieldName);
+				object.put(fieldName, SopremoUtil.deserializeInto(kryo, input, object.get(fieldName)));
+				previousName = fieldName;
+			}
+			removeFieldsBetween(oldFieldNames, previousName, null);
+			return object;
+		}
+
+		/**
+		 * Forgets the field names that have been written or read in the current block.
+		 */
+		public void startBlock() {
+			this.fieldIds.clear();
+			this.fieldNames.clear();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.esotericsoftware.kryo.Serializer#write(com.esotericsoftware.kryo.Kryo,
+		 * com.esotericsoftware.kryo.io.Output, java.lang.Object)
+		 */
+		@Override
+		public void write(final Kryo kryo, final Output output, final IObjectNode object) {
+			output.writeInt(object.size(), true);
+			for (final Entry<String, IJsonNode> field : object) {
+				final Integer id = this.fieldIds.get(field.getKey());
+				// 0 denotes a new name, which is given the next id
+				if (id == null) {
+					output.writeInt(0, true);
+					output.writeString(field.getKey());
+					this.fieldIds.put(field.getKey(), this.fieldIds.size() + 1);
+				} else
+					output.writeInt(id, true);
+				kryo.writeClassAndObject(output, field.getValue());
+			}
+		}
+
+		private String readFieldName(final Input input) {
+			final int id = input.readInt(true);
+			if (id == 0) {
+				final String fieldName = input.readString();
+				this.fieldNames.add(fieldName);
+				return fieldName;
+			}
+			if (id > this.fieldNames.size())
+				throw new KryoException(String.format("Unknown field name id %d", id));
+			return this.fieldNames.get(id - 1);
+		}
+
+		/**
+		 * Removes the field names that lie strictly between the given bounds, where null denotes an open bound.
+		 */
+		private static void removeFieldsBetween(final SortedSet<String> fieldNames, final String lower,
+				final String upper) {
+			if (fieldNames.isEmpty())
+				return;
+			final SortedSet<String> range;
+			if (lower == null)
+				range = upper == null ? fieldNames : fieldNames.headSet(upper);
+			else
+				range = upper == null ? fieldNames.tailSet(lower) : fieldNames.subSet(lower, upper);
+			for (final Iterator<String> iterator = range.iterator(); iterator.hasNext();)
+				if (!iterator.next().equals(lower))
+					iterator.remove();
+		}
+	}
+
+	/**
+	 * Reads the blocks whose sync marker begins within a split.
+	 */
+	public static class BinaryInputFormat extends SopremoFileInputFormat {
+		/**
+		 *
+		 */
+		private static final long serialVersionUID = 4826543260213876547L;
+
+		private FSDataInputStream input;
+
+		private final byte[] blockHeader = new byte[BLOCK_HEADER_LENGTH];
+
+		private byte[] sync, data = new byte[DEFAULT_BLOCK_SIZE];
+
+		private long position, end;
+
+		/**
+		 * The position of the block from which the values are currently read.
+		 */
+		private long blockStart;
+
+		private int remainingValues;
+
+		private Kryo kryo;
+
+		private BlockClassResolver classResolver;
+
+		private FieldDictionarySerializer dictionary;
+
+		private Input blockInput;
+
+		private IJsonNode value;
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat#nextValue()
+		 */
+		@Override
+		public IJsonNode nextValue() throws IOException {
+			while (this.remainingValues == 0)
+				if (!this.nextBlock()) {
+					this.endReached();
+					return null;
+				}
+			this.remainingValues--;
+			try {
+				return this.value = SopremoUtil.deserializeInto(this.kryo, this.blockInput, this.value);
+			} catch (final KryoException e) {
+				throw new IOException(String.format("Corrupt block at position %d", this.blockStart), e);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat#getAverageRecordBytes(eu.stratosphere.core.fs
+		 * .FileSystem, java.util.ArrayList, long)
+		 */
+		@Override
+		protected float getAverageRecordBytes(final FileSystem fileSystem, final ArrayList<FileStatus> files,
+				final long fileSize) throws IOException {
+			// the headers of the first blocks are cheap to read and state the exact number of values in the block
+			long bytes = 0, numValues = 0;
+			for (final FileStatus file : files) {
+				if (file.getLen() <= HEADER_LENGTH + BLOCK_HEADER_LENGTH)
+					continue;
+				final FSDataInputStream stream = fileSystem.open(file.getPath());
+				try {
+					stream.seek(HEADER_LENGTH);
+					SyncBlockUtil.readFully(stream, this.blockHeader, 0, BLOCK_HEADER_LENGTH);
+					final ByteBuffer header = ByteBuffer.wrap(this.blockHeader, SyncBlockUtil.SYNC_LENGTH, 8);
+					numValues += header.getInt();
+					bytes += BLOCK_HEADER_LENGTH + header.getInt();
+				} finally {
+					stream.close();
+				}
+			}
+			return numValues == 0 ? BaseStatistics.AVG_RECORD_BYTES_UNKNOWN : bytes / (float) numValues;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat#open(eu.stratosphere.core.fs.FSDataInputStream
+		 * , eu.stratosphere.core.fs.FileInputSplit)
+		 */
+		@Override
+		protected void open(final FSDataInputStream stream, final FileInputSplit split) throws IOException {
+			this.input = stream;
+			this.remainingValues = 0;
+			this.end = split.getStart() + split.getLength();
+			if (this.kryo == null) {
+				this.classResolver = new BlockClassResolver();
+				this.dictionary = new FieldDictionarySerializer();
+				this.kryo = createKryo(this.classResolver, this.dictionary);
+				this.blockInput = new Input();
+			}
+
+			this.sync = SyncBlockUtil.readHeader(stream, MAGIC, VERSION, "binary", split.getPath());
+
+			// the header contains the sync marker as well
+			this.position = Math.max(split.getStart(), HEADER_LENGTH);
+			stream.seek(this.position);
+			this.position = SyncBlockUtil.seekSync(stream, this.sync, this.position, this.end);
+			if (this.position < 0)
+				this.position = this.end;
+		}
+
+		/**
+		 * Reads the next block that begins within the split.
+		 *
+		 * @return false if no further block begins within the split
+		 */
+		private boolean nextBlock() throws IOException {
+			if (this.position >= this.end || this.input.read(this.blockHeader, 0, 1) < 0)
+				return false;
+			SyncBlockUtil.readFully(this.input, this.blockHeader, 1, BLOCK_HEADER_LENGTH - 1);
+			if (!SyncBlockUtil.isSync(this.blockHeader, 0, this.sync))
+				throw new IOException(String.format("Corrupt block at position %d", this.position));
+			final ByteBuffer header = ByteBuffer.wrap(this.blockHeader, SyncBlockUtil.SYNC_LENGTH, 8);
+			final int numValues = header.getInt(), length = header.getInt();
+
+			if (this.data.length < length)
+				this.data = new byte[Math.max(length, 2 * this.data.length)];
+			SyncBlockUtil.readFully(this.input, this.data, 0, length);
+			this.blockInput.setBuffer(this.data, 0, length);
+			this.classResolver.startBlock();
+			this.dictionary.startBlock();
+
+			this.blockStart = this.position;
+			this.position += BLOCK_HEADER_LENGTH + length;
+			this.remainingValues = numValues;
+			return true;
+		}
+	}
+
+	/**
+	 * Writes the values in blocks of at least {@link BinaryFormat#getBlockSize()} bytes.
+	 */
+	public static class BinaryOutputFormat extends SopremoFileOutputFormat {
+		/**
+		 *
+		 */
+		private static final long serialVersionUID = -1490581284539213826L;
+
+		private int blockSize;
+
+		private DataOutputStream output;
+
+		private byte[] sync;
+
+		private Kryo kryo;
+
+		private BlockClassResolver classResolver;
+
+		private FieldDictionarySerializer dictionary;
+
+		private Output blockOutput;
+
+		private int numValues;
+
+		@Override
+		public void close() throws IOException {
+			if (this.numValues > 0)
+				this.writeBlock();
+			this.output.flush();
+			super.close();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileOutputFormat#writeValue(eu.stratosphere.sopremo.type.
+		 * IJsonNode)
+		 */
+		@Override
+		public void writeValue(final IJsonNode value) throws IOException {
+			this.kryo.writeClassAndObject(this.blockOutput, value);
+			this.numValues++;
+			if (this.blockOutput.position() >= this.blockSize)
+				this.writeBlock();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileOutputFormat#open(eu.stratosphere.core.fs.
+		 * FSDataOutputStream, int)
+		 */
+		@Override
+		protected void open(final FSDataOutputStream stream, final int taskNumber) throws IOException {
+			this.output = new DataOutputStream(stream);
+			if (this.kryo == null) {
+				this.classResolver = new BlockClassResolver();
+				this.dictionary = new FieldDictionarySerializer();
+				this.kryo = createKryo(this.classResolver, this.dictionary);
+				this.blockOutput = new Output(Math.min(this.blockSize, DEFAULT_BLOCK_SIZE), -1);
+			}
+			this.startBlock();
+			this.sync = SyncBlockUtil.writeHeader(this.output, MAGIC, VERSION);
+		}
+
+		private void startBlock() {
+			this.blockOutput.clear();
+			this.numValues = 0;
+			this.classResolver.startBlock();
+			this.dictionary.startBlock();
+		}
+
+		private void writeBlock() throws IOException {
+			this.output.write(this.sync);
+			this.output.writeInt(this.numValues);
+			this.output.writeInt(this.blockOutput.position());
+			this.output.write(this.blockOutput.getBuffer(), 0, this.blockOutput.position());
+			this.startBlock();
+		}
+	}
+}
@@ -0,0 +1,350 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import eu.stratosphere.core.fs.FSDataInputStream;
+import eu.stratosphere.core.fs.FSDataOutputStream;
+
+/**
+ * Splittable compression that deflates blocks of {@link #BLOCK_SIZE} uncompressed bytes independently.<br />
+ * The compressed blocks are followed by an index that contains the compressed length of each block and by a trailer
+ * with the uncompressed length of the file. Thus, the decompressed stream can seek to any position by inflating only
+ * the block that contains the position, and splits of the uncompressed content can be read in parallel.
+ */
+public class BlockCompressionCodec extends CompressionCodec {
+	/**
+	 * The number of uncompressed bytes in each block but the last.
+	 */
+	public static final int BLOCK_SIZE = 256 * 1024;
+
+	private static final byte[] MAGIC = { 'S', 'O', 'P', 'Z' };
+
+	/**
+	 * The trailer consists of the uncompressed length, the number of blocks, the block size, and the magic number.
+	 */
+	private static final int TRAILER_LENGTH = 8 + 4 + 4 + MAGIC.length;
+
+	/**
+	 * Initializes BlockCompressionCodec.
+	 */
+	public BlockCompressionCodec() {
+		super("block", "bdeflate");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.io.CompressionCodec#createInputStream(eu.stratosphere.core.fs.FSDataInputStream,
+	 * long)
+	 */
+	@Override
+	public FSDataInputStream createInputStream(final FSDataInputStream stream, final long length) throws IOException {
+		return new BlockInputStream(stream, length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.io.CompressionCodec#createOutputStream(eu.stratosphere.core.fs.FSDataOutputStream)
+	 */
+	@Override
+	public FSDataOutputStream createOutputStream(final FSDataOutputStream stream) {
+		return new BlockOutputStream(stream);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.io.CompressionCodec#getUncompressedLength(eu.stratosphere.core.fs.FSDataInputStream,
+	 * long)
+	 */
+	@Override
+	public long getUncompressedLength(final FSDataInputStream stream, final long length) throws IOException {
+		return readTrailer(stream, length).getLong();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.io.CompressionCodec#isSplittable()
+	 */
+	@Override
+	public boolean isSplittable() {
+		return true;
+	}
+
+	private static ByteBuffer readTrailer(final FSDataInputStream stream, final long length) throws IOException {
+		if (length < TRAILER_LENGTH)
+			throw new EOFException("File is too short to contain a block compression trailer");
+		final byte[] trailer = new byte[TRAILER_LENGTH];
+		stream.seek(length - TRAILER_LENGTH);
+		SyncBlockUtil.readFully(stream, trailer, 0, TRAILER_LENGTH);
+		if (!Arrays.equals(Arrays.copyOfRange(trailer, TRAILER_LENGTH - MAGIC.length, TRAILER_LENGTH), MAGIC))
+			throw new IOException("Missing block compression trailer");
+		return ByteBuffer.wrap(trailer);
+	}
+
+	/**
+	 * Inflates the block that contains the current position.
+	 */
+	private static class BlockInputStream extends FSDataInputStream {
+		private final FSDataInputStream stream;
+
+		private final long length;
+
+		private final int blockSize;
+
+		/**
+		 * The offsets of the compressed blocks with an additional entry for the end of the last block.
+		 */
+		private final long[] blockOffsets;
+
+		private final Inflater inflater = new Inflater();
+
+		private final byte[] block;
+
+		private byte[] compressedBlock = new byte[0];
+
+		private int blockIndex = -1, blockLength, blockPosition;
+
+		public BlockInputStream(final FSDataInputStream stream, final long compressedLength) throws IOException {
+			this.stream = stream;
+			final ByteBuffer trailer = readTrailer(stream, compressedLength);
+			this.length = trailer.getLong();
+			final int numBlocks = trailer.getInt();
+			this.blockSize = trailer.getInt();
+			this.block = new byte[this.blockSize];
+
+			final byte[] index = new byte[4 * numBlocks];
+			stream.seek(compressedLength - TRAILER_LENGTH - index.length);
+			SyncBlockUtil.readFully(stream, index, 0, index.length);
+			final ByteBuffer indexBuffer = ByteBuffer.wrap(index);
+			this.blockOffsets = new long[numBlocks + 1];
+			for (int blockIndex = 0; blockIndex < numBlocks; blockIndex++)
+				this.blockOffsets[blockIndex + 1] = this.blockOffsets[blockIndex] + indexBuffer.getInt();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#available()
+		 */
+		@Override
+		public int available() {
+			return this.blockLength - this.blockPosition;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			this.inflater.end();
+			this.stream.close();
+		}
+
+		/**
+		 * Returns the position in the uncompressed content.
+		 */
+		public long getPos() {
+			return this.blockIndex < 0 ? 0 : (long) this.blockIndex * this.blockSize + this.blockPosition;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#read()
+		 */
+		@Override
+		public int read() throws IOException {
+			if (this.blockPosition == this.blockLength && !this.loadBlock(this.blockIndex + 1))
+				return -1;
+			return this.block[this.blockPosition++] & 0xFF;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#read(byte[], int, int)
+		 */
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+			if (length == 0)
+				return 0;
+			if (this.blockPosition == this.blockLength && !this.loadBlock(this.blockIndex + 1))
+				return -1;
+			final int read = Math.min(length, this.blockLength - this.blockPosition);
+			System.arraycopy(this.block, this.blockPosition, buffer, offset, read);
+			this.blockPosition += read;
+			return read;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.core.fs.FSDataInputStream#seek(long)
+		 */
+		@Override
+		public void seek(final long desired) throws IOException {
+			if (desired < 0 || desired > this.length)
+				throw new EOFException(String.format("Cannot seek to %d in %d bytes", desired, this.length));
+			final int index = (int) (desired / this.blockSize);
+			if (index != this.blockIndex && !this.loadBlock(index)) {
+				// the end of the content
+				this.blockIndex = index;
+				this.blockLength = 0;
+			}
+			this.blockPosition = (int) (desired - (long) index * this.blockSize);
+		}
+
+		/**
+		 * Inflates the block with the given index.
+		 *
+		 * @return false if there is no such block
+		 */
+		private boolean loadBlock(final int index) throws IOException {
+			if (index >= this.blockOffsets.length - 1)
+				return false;
+
+			final int compressedLength = (int) (this.blockOffsets[index + 1] - this.blockOffsets[index]);
+			if (this.compressedBlock.length < compressedLength)
+				this.compressedBlock = new byte[compressedLength];
+			this.stream.seek(this.blockOffsets[index]);
+			SyncBlockUtil.readFully(this.stream, this.compressedBlock, 0, compressedLength);
+
+			this.inflater.reset();
+			this.inflater.setInput(this.compressedBlock, 0, compressedLength);
+			try {
+				this.blockLength = 0;
+				while (!this.inflater.finished() && this.blockLength < this.blockSize) {
+					final int inflated = this.inflater.inflate(this.block, this.blockLength,
+						this.blockSize - this.blockLength);
+					if (inflated == 0 && (this.inflater.needsInput() || this.inflater.needsDictionary()))
+						throw new IOException(String.format("Truncated block %d", index));
+					this.blockLength += inflated;
+				}
+			} catch (final DataFormatException e) {
+				throw new IOException(String.format("Corrupt block %d", index), e);
+			}
+			this.blockIndex = index;
+			this.blockPosition = 0;
+			return true;
+		}
+	}
+
+	/**
+	 * Deflates each block as soon as it is filled and writes the index when the stream is closed.
+	 */
+	private static class BlockOutputStream extends FSDataOutputStream {
+		private final DataOutputStream stream;
+
+		private final Deflater deflater = new Deflater();
+
+		private final byte[] block = new byte[BLOCK_SIZE], compressedBlock = new byte[BLOCK_SIZE];
+
+		private int blockLength;
+
+		private long length;
+
+		private final DataOutputStream index;
+
+		private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+
+		private int numBlocks;
+
+		private boolean closed;
+
+		public BlockOutputStream(final FSDataOutputStream stream) {
+			this.stream = new DataOutputStream(stream);
+			this.index = new DataOutputStream(this.indexBytes);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.OutputStream#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			if (this.closed)
+				return;
+			this.closed = true;
+			if (this.blockLength > 0)
+				this.writeBlock();
+			this.deflater.end();
+			this.indexBytes.writeTo(this.stream);
+			this.stream.writeLong(this.length);
+			this.stream.writeInt(this.numBlocks);
+			this.stream.writeInt(BLOCK_SIZE);
+			this.stream.write(MAGIC);
+			this.stream.close();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.OutputStream#flush()
+		 */
+		@Override
+		public void flush() throws IOException {
+			// blocks are only completed when they are full, since all but the last block need the same size
+			this.stream.flush();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.OutputStream#write(byte[], int, int)
+		 */
+		@Override
+		public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+			for (int written = 0; written < length;) {
+				final int count = Math.min(length - written, BLOCK_SIZE - this.blockLength);
+				System.arraycopy(buffer, offset + written, this.block, this.blockLength, count);
+				this.blockLength += count;
+				written += count;
+				if (this.blockLength == BLOCK_SIZE)
+					this.writeBlock();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.OutputStream#write(int)
+		 */
+		@Override
+		public void write(final int b) throws IOException {
+			this.block[this.blockLength++] = (byte) b;
+			if (this.blockLength == BLOCK_SIZE)
+				this.writeBlock();
+		}
+
+		private void writeBlock() throws IOException {
+			this.deflater.reset();
+			this.deflater.setInput(this.block, 0, this.blockLength);
+			this.deflater.finish();
+			int compressedLength = 0;
+			while (!this.deflater.finished()) {
+				final int deflated = this.deflater.deflate(this.compressedBlock);
+				this.stream.write(this.compressedBlock, 0, deflated);
+				compressedLength += deflated;
+			}
+			this.index.writeInt(compressedLength);
+			this.length += this.blockLength;
+			this.numBlocks++;
+			this.blockLength = 0;
+		}
+	}
+}
@@ -0,0 +1,538 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.BigIntegerNode;
+import eu.stratosphere.sopremo.type.BooleanNode;
+import eu.stratosphere.sopremo.type.DecimalNode;
+import eu.stratosphere.sopremo.type.DoubleNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IObjectNode;
+import eu.stratosphere.sopremo.type.IStreamNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.LongNode;
+import eu.stratosphere.sopremo.type.MissingNode;
+import eu.stratosphere.sopremo.type.NullNode;
+import eu.stratosphere.sopremo.type.ObjectNode;
+import eu.stratosphere.sopremo.type.TextNode;
+
+/**
+ * Encodes the values of one block of the {@link ColumnarFormat} column-wise.<br />
+ * The values of a block are stored in a tree of columns. The root column contains one entry per value, and each column
+ * has a child column for every field that occurs in the objects of that column. A child column contains one entry per
+ * object entry of its parent, so that missing fields are stored explicitly.<br />
+ * Each entry starts with a tag. The first primitive type that is stored in a column becomes the type of the column and
+ * all values of that type are stored without further type information. Values of other types are stored with a
+ * generic, self-describing encoding.<br />
+ * A block consists of the directory, which contains the names, types, and statistics of all columns in depth-first
+ * order, and of the data of all columns in the same order. Hence, the data of a column and all its descendants is
+ * stored consecutively and can be skipped as a whole.
+ */
+final class ColumnarBlock {
+	static final byte TAG_MISSING = 0, TAG_NULL = 1, TAG_OBJECT = 2, TAG_TYPED = 3, TAG_GENERIC = 4;
+
+	static final byte KIND_NONE = 0, KIND_BOOLEAN = 1, KIND_INT = 2, KIND_LONG = 3, KIND_DOUBLE = 4, KIND_TEXT = 5;
+
+	private static final byte GENERIC_NULL = 0, GENERIC_MISSING = 1, GENERIC_FALSE = 2, GENERIC_TRUE = 3,
+			GENERIC_INT = 4, GENERIC_LONG = 5, GENERIC_BIG_INTEGER = 6, GENERIC_DOUBLE = 7, GENERIC_DECIMAL = 8,
+			GENERIC_TEXT = 9, GENERIC_ARRAY = 10, GENERIC_OBJECT = 11;
+
+	private static final Charset UTF8 = Charset.forName("utf-8");
+
+	private ColumnarBlock() {
+	}
+
+	/**
+	 * Returns the kind of typed column that can store the given value or {@link #KIND_NONE}.
+	 */
+	static byte getKind(final IJsonNode value) {
+		final Class<? extends IJsonNode> type = value.getType();
+		if (type == IntNode.class)
+			return KIND_INT;
+		if (type == TextNode.class)
+			return KIND_TEXT;
+		if (type == LongNode.class)
+			return KIND_LONG;
+		if (type == DoubleNode.class)
+			return KIND_DOUBLE;
+		if (type == BooleanNode.class)
+			return KIND_BOOLEAN;
+		return KIND_NONE;
+	}
+
+	private static IJsonNode readGeneric(final ByteBuffer buffer) {
+		final byte type = buffer.get();
+		switch (type) {
+		case GENERIC_NULL:
+			return NullNode.getInstance();
+		case GENERIC_MISSING:
+			return MissingNode.getInstance();
+		case GENERIC_FALSE:
+			return BooleanNode.FALSE;
+		case GENERIC_TRUE:
+			return BooleanNode.TRUE;
+		case GENERIC_INT:
+			return IntNode.valueOf(buffer.getInt());
+		case GENERIC_LONG:
+			return LongNode.valueOf(buffer.getLong());
+		case GENERIC_BIG_INTEGER:
+			return BigIntegerNode.valueOf(new BigInteger(readBytes(buffer)));
+		case GENERIC_DOUBLE:
+			return DoubleNode.valueOf(buffer.getDouble());
+		case GENERIC_DECIMAL:
+			final BigInteger unscaledValue = new BigInteger(readBytes(buffer));
+			return DecimalNode.valueOf(new BigDecimal(unscaledValue, buffer.getInt()));
+		case GENERIC_TEXT:
+			return new TextNode(readText(buffer));
+		case GENERIC_ARRAY:
+			final ArrayNode<IJsonNode> array = new ArrayNode<IJsonNode>();
+			for (int index = 0, size = buffer.getInt(); index < size; index++)
+				array.add(readGeneric(buffer));
+			return array;
+		case GENERIC_OBJECT:
+			final ObjectNode object = new ObjectNode();
+			for (int index = 0, size = buffer.getInt(); index < size; index++)
+				object.put(readText(buffer), readGeneric(buffer));
+			return object;
+		default:
+			throw new IllegalStateException(String.format("Unknown generic type %d", type));
+		}
+	}
+
+	private static byte[] readBytes(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static String readText(final ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		final String text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8);
+		buffer.position(buffer.position() + length);
+		return text;
+	}
+
+	private static IJsonNode readTyped(final ByteBuffer buffer, final byte kind) {
+		switch (kind) {
+		case KIND_BOOLEAN:
+			return BooleanNode.valueOf(buffer.get() != 0);
+		case KIND_INT:
+			return IntNode.valueOf(buffer.getInt());
+		case KIND_LONG:
+			return LongNode.valueOf(buffer.getLong());
+		case KIND_DOUBLE:
+			return DoubleNode.valueOf(buffer.getDouble());
+		case KIND_TEXT:
+			return new TextNode(readText(buffer));
+		default:
+			throw new IllegalStateException(String.format("Unknown column kind %d", kind));
+		}
+	}
+
+	private static void writeGeneric(final DataOutput output, final IJsonNode value) throws IOException {
+		final Class<? extends IJsonNode> type = value.getType();
+		if (type == NullNode.class)
+			output.writeByte(GENERIC_NULL);
+		else if (type == MissingNode.class)
+			output.writeByte(GENERIC_MISSING);
+		else if (type == BooleanNode.class)
+			output.writeByte(((BooleanNode) value).getBooleanValue() ? GENERIC_TRUE : GENERIC_FALSE);
+		else if (type == IntNode.class) {
+			output.writeByte(GENERIC_INT);
+			output.writeInt(((IntNode) value).getIntValue());
+		} else if (type == LongNode.class) {
+			output.writeByte(GENERIC_LONG);
+			output.writeLong(((LongNode) value).getLongValue());
+		} else if (type == BigIntegerNode.class) {
+			output.writeByte(GENERIC_BIG_INTEGER);
+			writeBytes(output, ((BigIntegerNode) value).getBigIntegerValue().toByteArray());
+		} else if (type == DoubleNode.class) {
+			output.writeByte(GENERIC_DOUBLE);
+			output.writeDouble(((DoubleNode) value).getDoubleValue());
+		} else if (type == DecimalNode.class) {
+			output.writeByte(GENERIC_DECIMAL);
+			final BigDecimal decimal = ((DecimalNode) value).getDecimalValue();
+			writeBytes(output, decimal.unscaledValue().toByteArray());
+			output.writeInt(decimal.scale());
+		} else if (type == TextNode.class) {
+			output.writeByte(GENERIC_TEXT);
+			writeText(output, (TextNode) value);
+		} else if (value instanceof IObjectNode) {
+			output.writeByte(GENERIC_OBJECT);
+			output.writeInt(((IObjectNode) value).size());
+			for (final Entry<String, IJsonNode> field : (IObjectNode) value) {
+				writeText(output, field.getKey());
+				writeGeneric(output, field.getValue());
+			}
+		} else if (value instanceof IStreamNode<?>) {
+			// streams may only be iterated once
+			final List<IJsonNode> elements = new ArrayList<IJsonNode>();
+			for (final IJsonNode element : (IStreamNode<?>) value)
+				elements.add(element);
+			output.writeByte(GENERIC_ARRAY);
+			output.writeInt(elements.size());
+			for (final IJsonNode element : elements)
+				writeGeneric(output, element);
+		} else
+			throw new IllegalArgumentException(String.format("Cannot store values of type %s", type.getSimpleName()));
+	}
+
+	private static void writeBytes(final DataOutput output, final byte[] bytes) throws IOException {
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static void writeText(final DataOutput output, final CharSequence text) throws IOException {
+		writeBytes(output, text.toString().getBytes(UTF8));
+	}
+
+	private static void writeTyped(final DataOutput output, final byte kind, final IJsonNode value)
+			throws IOException {
+		switch (kind) {
+		case KIND_BOOLEAN:
+			output.writeByte(((BooleanNode) value).getBooleanValue() ? 1 : 0);
+			break;
+		case KIND_INT:
+			output.writeInt(((IntNode) value).getIntValue());
+			break;
+		case KIND_LONG:
+			output.writeLong(((LongNode) value).getLongValue());
+			break;
+		case KIND_DOUBLE:
+			output.writeDouble(((DoubleNode) value).getDoubleValue());
+			break;
+		case KIND_TEXT:
+			writeText(output, (TextNode) value);
+			break;
+		default:
+			throw new IllegalStateException(String.format("Unknown column kind %d", kind));
+		}
+	}
+
+	/**
+	 * Reads one column of a block and its descendants.
+	 */
+	static class ColumnReader {
+		private final String name;
+
+		private final byte kind;
+
+		private final int numEntries, nullCount, genericCount, typedCount, offset, length;
+
+		private final IJsonNode min, max;
+
+		private final List<ColumnReader> children;
+
+		private ByteBuffer data;
+
+		private ColumnReader(final ByteBuffer directory) {
+			this.name = readText(directory);
+			this.kind = directory.get();
+			this.numEntries = directory.getInt();
+			this.nullCount = directory.getInt();
+			this.genericCount = directory.getInt();
+			this.typedCount = directory.getInt();
+			if (this.typedCount > 0) {
+				this.min = readTyped(directory, this.kind);
+				this.max = readTyped(directory, this.kind);
+			} else
+				this.min = this.max = null;
+			this.offset = directory.getInt();
+			this.length = directory.getInt();
+			final int numChildren = directory.getInt();
+			if (numChildren == 0)
+				this.children = Collections.emptyList();
+			else {
+				this.children = new ArrayList<ColumnReader>(numChildren);
+				for (int index = 0; index < numChildren; index++)
+					this.children.add(new ColumnReader(directory));
+			}
+		}
+
+		/**
+		 * Reads the column tree from the given directory of a block.
+		 */
+		static ColumnReader read(final ByteBuffer directory) {
+			return new ColumnReader(directory);
+		}
+
+		/**
+		 * Returns the child column for the field with the given name or null if no object contains that field.
+		 */
+		ColumnReader getChild(final String fieldName) {
+			for (final ColumnReader child : this.children)
+				if (child.name.equals(fieldName))
+					return child;
+			return null;
+		}
+
+		List<ColumnReader> getChildren() {
+			return this.children;
+		}
+
+		/**
+		 * Returns the offset of the data of this column relative to the beginning of the data section of the block.
+		 */
+		int getDataOffset() {
+			return this.offset;
+		}
+
+		/**
+		 * Returns the end offset of the data of this column and all its descendants.
+		 */
+		int getDataEnd() {
+			if (this.children.isEmpty())
+				return this.offset + this.length;
+			return this.children.get(this.children.size() - 1).getDataEnd();
+		}
+
+		int getGenericCount() {
+			return this.genericCount;
+		}
+
+		/**
+		 * Returns the largest typed value or null if the column does not contain typed values.
+		 */
+		IJsonNode getMax() {
+			return this.max;
+		}
+
+		/**
+		 * Returns the smallest typed value or null if the column does not contain typed values.
+		 */
+		IJsonNode getMin() {
+			return this.min;
+		}
+
+		String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Returns the number of entries that are null or missing.
+		 */
+		int getNullCount() {
+			return this.nullCount;
+		}
+
+		int getNumEntries() {
+			return this.numEntries;
+		}
+
+		int getTypedCount() {
+			return this.typedCount;
+		}
+
+		/**
+		 * Prepares this column for reading with the data section of the block. Children that are not loaded are
+		 * skipped while reading objects.
+		 *
+		 * @param dataSection
+		 *        the data section, which must contain the data of this column
+		 * @param withChildren
+		 *        whether all descendants should be loaded as well
+		 */
+		void load(final byte[] dataSection, final boolean withChildren) {
+			this.data = ByteBuffer.wrap(dataSection, this.offset, this.length).slice();
+			for (final ColumnReader child : this.children)
+				if (withChildren)
+					child.load(dataSection, true);
+				else
+					child.data = null;
+		}
+
+		/**
+		 * Reads the next entry of this column.
+		 *
+		 * @return the value or null if the entry is missing
+		 */
+		IJsonNode next() {
+			final byte tag = this.data.get();
+			switch (tag) {
+			case TAG_MISSING:
+				return null;
+			case TAG_NULL:
+				return NullNode.getInstance();
+			case TAG_TYPED:
+				return readTyped(this.data, this.kind);
+			case TAG_GENERIC:
+				return readGeneric(this.data);
+			case TAG_OBJECT:
+				final ObjectNode object = new ObjectNode();
+				for (final ColumnReader child : this.children)
+					if (child.data != null) {
+						final IJsonNode value = child.next();
+						if (value != null)
+							object.put(child.name, value);
+					}
+				return object;
+			default:
+				throw new IllegalStateException(String.format("Unknown tag %d in column %s", tag, this.name));
+			}
+		}
+	}
+
+	/**
+	 * Collects the entries of one column and its descendants for the current block.
+	 */
+	static class ColumnWriter {
+		private final String name;
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		private final DataOutputStream data = new DataOutputStream(this.bytes);
+
+		private final Map<String, ColumnWriter> children = new LinkedHashMap<String, ColumnWriter>();
+
+		private byte kind = KIND_NONE;
+
+		private int numEntries, numObjects, nullCount, genericCount, typedCount;
+
+		private IJsonNode min, max;
+
+		ColumnWriter(final String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Adds the next entry.
+		 *
+		 * @param value
+		 *        the value or null if the entry is missing
+		 */
+		void add(final IJsonNode value) throws IOException {
+			this.numEntries++;
+			if (value == null) {
+				this.data.writeByte(TAG_MISSING);
+				this.nullCount++;
+			} else if (value.getType() == NullNode.class) {
+				this.data.writeByte(TAG_NULL);
+				this.nullCount++;
+			} else if (value instanceof IObjectNode)
+				this.addObject((IObjectNode) value);
+			else {
+				final byte valueKind = getKind(value);
+				if (valueKind != KIND_NONE && (this.kind == KIND_NONE || this.kind == valueKind)) {
+					this.kind = valueKind;
+					this.data.writeByte(TAG_TYPED);
+					writeTyped(this.data, valueKind, value);
+					this.updateStatistics(value);
+				} else {
+					this.data.writeByte(TAG_GENERIC);
+					writeGeneric(this.data, value);
+					this.genericCount++;
+				}
+			}
+		}
+
+		/**
+		 * Removes all entries and child columns.
+		 */
+		void clear() {
+			this.bytes.reset();
+			this.children.clear();
+			this.kind = KIND_NONE;
+			this.numEntries = this.numObjects = this.nullCount = this.genericCount = this.typedCount = 0;
+			this.min = this.max = null;
+		}
+
+		int getNumEntries() {
+			return this.numEntries;
+		}
+
+		/**
+		 * Writes the data of this column and of all descendants in depth-first order.
+		 */
+		void writeData(final OutputStream output) throws IOException {
+			this.bytes.writeTo(output);
+			for (final ColumnWriter child : this.children.values())
+				child.writeData(output);
+		}
+
+		/**
+		 * Writes the directory entries of this column and of all descendants in depth-first order.
+		 *
+		 * @param directory
+		 *        the output of the directory
+		 * @param offset
+		 *        the offset of the data of this column
+		 * @return the offset after the data of this column and all descendants
+		 */
+		int writeDirectory(final DataOutput directory, final int offset) throws IOException {
+			writeText(directory, this.name);
+			directory.writeByte(this.kind);
+			directory.writeInt(this.numEntries);
+			directory.writeInt(this.nullCount);
+			directory.writeInt(this.genericCount);
+			directory.writeInt(this.typedCount);
+			if (this.typedCount > 0) {
+				writeTyped(directory, this.kind, this.min);
+				writeTyped(directory, this.kind, this.max);
+			}
+			directory.writeInt(offset);
+			directory.writeInt(this.bytes.size());
+			directory.writeInt(this.children.size());
+
+			int childOffset = offset + this.bytes.size();
+			for (final ColumnWriter child : this.children.values())
+				childOffset = child.writeDirectory(directory, childOffset);
+			return childOffset;
+		}
+
+		private void addObject(final IObjectNode object) throws IOException {
+			this.data.writeByte(TAG_OBJECT);
+			for (final Entry<String, IJsonNode> field : object) {
+				ColumnWriter child = this.children.get(field.getKey());
+				if (child == null) {
+					this.children.put(field.getKey(), child = new ColumnWriter(field.getKey()));
+					// the field was missing in all previous objects
+					for (int index = 0; index < this.numObjects; index++)
+						child.add(null);
+				}
+				child.add(field.getValue());
+			}
+			this.numObjects++;
+			if (this.children.size() > object.size())
+				for (final ColumnWriter child : this.children.values())
+					if (child.numEntries < this.numObjects)
+						child.add(null);
+		}
+
+		private void updateStatistics(final IJsonNode value) {
+			this.typedCount++;
+			if (this.min == null || value.compareToSameType(this.min) < 0)
+				this.min = value.clone();
+			if (this.max == null || value.compareToSameType(this.max) > 0)
+				this.max = value.clone();
+		}
+	}
+}
@@ -0,0 +1,446 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import eu.stratosphere.api.common.io.statistics.BaseStatistics;
+import eu.stratosphere.core.fs.FSDataInputStream;
+import eu.stratosphere.core.fs.FSDataOutputStream;
+import eu.stratosphere.core.fs.FileInputSplit;
+import eu.stratosphere.core.fs.FileStatus;
+import eu.stratosphere.core.fs.FileSystem;
+import eu.stratosphere.sopremo.expressions.AndExpression;
+import eu.stratosphere.sopremo.expressions.ComparativeExpression;
+import eu.stratosphere.sopremo.expressions.ComparativeExpression.BinaryOperator;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.expressions.ObjectAccess;
+import eu.stratosphere.sopremo.expressions.OrExpression;
+import eu.stratosphere.sopremo.io.ColumnarBlock.ColumnReader;
+import eu.stratosphere.sopremo.io.ColumnarBlock.ColumnWriter;
+import eu.stratosphere.sopremo.operator.Name;
+import eu.stratosphere.sopremo.operator.Property;
+import eu.stratosphere.sopremo.type.BooleanNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.INumericNode;
+import eu.stratosphere.sopremo.type.TextNode;
+
+/**
+ * Binary format that stores the values column-wise in blocks, see {@link ColumnarBlock}. It is intended to pass data
+ * between jobs without generating and parsing text.<br />
+ * Each block carries the minimum, maximum, and the number of null values of each column. While reading, only the
+ * columns of the projected fields are decoded, and blocks are skipped as a whole if the statistics show that no value
+ * of the block satisfies the selection of the format.<br />
+ * Blocks start with a sync marker that is unique for each file, so that files can be divided into several splits.
+ */
+@Name(noun = "columnar")
+public class ColumnarFormat extends SopremoFormat {
+	/**
+	 * The default number of values in one block.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 16 * 1024;
+
+	private static final byte[] MAGIC = { 'S', 'O', 'P', 'C' };
+
+	private static final byte VERSION = 1;
+
+	private static final int HEADER_LENGTH = SyncBlockUtil.getHeaderLength(MAGIC);
+
+	/**
+	 * The sync marker is followed by the length of the directory and the length of the data.
+	 */
+	private static final int BLOCK_HEADER_LENGTH = SyncBlockUtil.SYNC_LENGTH + 8;
+
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		if (this.getClass() != obj.getClass())
+			return false;
+		final ColumnarFormat other = (ColumnarFormat) obj;
+		return this.blockSize == other.blockSize;
+	}
+
+	/**
+	 * Returns the number of values in one block.
+	 *
+	 * @return the block size
+	 */
+	public int getBlockSize() {
+		return this.blockSize;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + this.blockSize;
+		return result;
+	}
+
+	/**
+	 * Sets the number of values in one block. Larger blocks have less overhead but can be skipped less often.
+	 *
+	 * @param blockSize
+	 *        the block size to set
+	 */
+	@Property
+	@Name(noun = "blocksize")
+	public void setBlockSize(final int blockSize) {
+		if (blockSize <= 0)
+			throw new IllegalArgumentException("block size must be positive");
+
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Sets the number of values in one block.
+	 *
+	 * @param blockSize
+	 *        the block size to set
+	 * @return this
+	 */
+	public ColumnarFormat withBlockSize(final int blockSize) {
+		this.setBlockSize(blockSize);
+		return this;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.io.SopremoFormat#getPreferredFilenameExtensions()
+	 */
+	@Override
+	protected String[] getPreferredFilenameExtensions() {
+		return new String[] { "columnar" };
+	}
+
+	/**
+	 * Reads the blocks whose sync marker begins within a split.
+	 */
+	public static class ColumnarInputFormat extends SopremoFileInputFormat {
+		/**
+		 *
+		 */
+		private static final long serialVersionUID = 2406315826436766301L;
+
+		private FSDataInputStream input;
+
+		private final byte[] blockHeader = new byte[BLOCK_HEADER_LENGTH];
+
+		private byte[] sync;
+
+		private byte[] directory = new byte[1024], data = new byte[64 * 1024];
+
+		private long position, end;
+
+		private ColumnReader root;
+
+		private int valueIndex, numValues;
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat#nextValue()
+		 */
+		@Override
+		public IJsonNode nextValue() throws IOException {
+			while (this.valueIndex == this.numValues)
+				if (!this.nextBlock()) {
+					this.endReached();
+					return null;
+				}
+			this.valueIndex++;
+			return this.root.next();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat#getAverageRecordBytes(eu.stratosphere.core.fs
+		 * .FileSystem, java.util.ArrayList, long)
+		 */
+		@Override
+		protected float getAverageRecordBytes(final FileSystem fileSystem, final ArrayList<FileStatus> files,
+				final long fileSize) throws IOException {
+			// the first block of the first non-empty file is representative enough
+			for (final FileStatus file : files) {
+				if (file.getLen() <= HEADER_LENGTH + BLOCK_HEADER_LENGTH)
+					continue;
+				final FSDataInputStream stream = fileSystem.open(file.getPath());
+				try {
+					stream.seek(HEADER_LENGTH);
+					SyncBlockUtil.readFully(stream, this.blockHeader, 0, BLOCK_HEADER_LENGTH);
+					final ByteBuffer header = ByteBuffer.wrap(this.blockHeader, SyncBlockUtil.SYNC_LENGTH, 8);
+					final int directoryLength = header.getInt(), dataLength = header.getInt();
+					final byte[] directory = new byte[directoryLength];
+					SyncBlockUtil.readFully(stream, directory, 0, directoryLength);
+					final int numValues = ColumnReader.read(ByteBuffer.wrap(directory)).getNumEntries();
+					return (BLOCK_HEADER_LENGTH + directoryLength + dataLength) / (float) numValues;
+				} finally {
+					stream.close();
+				}
+			}
+			return BaseStatistics.AVG_RECORD_BYTES_UNKNOWN;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat#open(eu.stratosphere.core.fs.FSDataInputStream
+		 * , eu.stratosphere.core.fs.FileInputSplit)
+		 */
+		@Override
+		protected void open(final FSDataInputStream stream, final FileInputSplit split) throws IOException {
+			this.input = stream;
+			this.valueIndex = this.numValues = 0;
+			this.end = split.getStart() + split.getLength();
+
+			this.sync = SyncBlockUtil.readHeader(stream, MAGIC, VERSION, "columnar", split.getPath());
+
+			// the header contains the sync marker as well
+			this.position = Math.max(split.getStart(), HEADER_LENGTH);
+			stream.seek(this.position);
+			this.position = SyncBlockUtil.seekSync(stream, this.sync, this.position, this.end);
+			if (this.position < 0)
+				this.position = this.end;
+		}
+
+		/**
+		 * Checks whether the statistics of the current block admit values that satisfy the given condition. Only
+		 * comparisons of top-level fields with constants are considered; all other conditions may always be
+		 * satisfied.<br />
+		 * Comparisons of a null or missing value with any other constant are false, so that only the typed values of a
+		 * column need to be regarded.
+		 */
+		private boolean mayMatch(final EvaluationExpression condition) {
+			if (condition instanceof AndExpression) {
+				for (final EvaluationExpression child : condition)
+					if (!this.mayMatch(child))
+						return false;
+				return true;
+			}
+			if (condition instanceof OrExpression) {
+				for (final EvaluationExpression child : condition)
+					if (this.mayMatch(child))
+						return true;
+				return false;
+			}
+			if (!(condition instanceof ComparativeExpression))
+				return true;
+
+			final ComparativeExpression comparison = (ComparativeExpression) condition;
+			BinaryOperator operator = comparison.getBinaryOperator();
+			EvaluationExpression field = comparison.getExpr1(), constant = comparison.getExpr2();
+			if (field instanceof ConstantExpression) {
+				field = comparison.getExpr2();
+				constant = comparison.getExpr1();
+				operator = mirror(operator);
+			}
+			if (!(field instanceof ObjectAccess) || !(constant instanceof ConstantExpression) ||
+				((ObjectAccess) field).getInputExpression() != EvaluationExpression.VALUE)
+				return true;
+			final IJsonNode value = ((ConstantExpression) constant).getConstant();
+			if (!(value instanceof INumericNode || value instanceof TextNode || value instanceof BooleanNode))
+				return true;
+
+			final ColumnReader column = this.root.getChild(((ObjectAccess) field).getField());
+			if (column == null)
+				return false;
+			if (column.getGenericCount() > 0)
+				return true;
+			if (column.getTypedCount() == 0)
+				return false;
+
+			final IJsonNode min = column.getMin(), max = column.getMax();
+			if (min.getType() != value.getType() && !(min instanceof INumericNode && value instanceof INumericNode))
+				return false;
+			switch (operator) {
+			case EQUAL:
+				return !BinaryOperator.LESS.evaluate(value, min) && !BinaryOperator.GREATER.evaluate(value, max);
+			case NOT_EQUAL:
+				return !BinaryOperator.EQUAL.evaluate(min, value) || !BinaryOperator.EQUAL.evaluate(max, value);
+			case LESS:
+			case LESS_EQUAL:
+				return operator.evaluate(min, value);
+			case GREATER:
+			case GREATER_EQUAL:
+				return operator.evaluate(max, value);
+			default:
+				return true;
+			}
+		}
+
+		/**
+		 * Reads the next block that begins within the split and that may contain values satisfying the selection.
+		 *
+		 * @return false if no further block begins within the split
+		 */
+		private boolean nextBlock() throws IOException {
+			while (this.position < this.end) {
+				if (this.input.read(this.blockHeader, 0, 1) < 0)
+					return false;
+				SyncBlockUtil.readFully(this.input, this.blockHeader, 1, BLOCK_HEADER_LENGTH - 1);
+				if (!SyncBlockUtil.isSync(this.blockHeader, 0, this.sync))
+					throw new IOException(String.format("Corrupt block at position %d", this.position));
+				final ByteBuffer header = ByteBuffer.wrap(this.blockHeader, SyncBlockUtil.SYNC_LENGTH, 8);
+				final int directoryLength = header.getInt(), dataLength = header.getInt();
+
+				if (this.directory.length < directoryLength)
+					this.directory = new byte[Math.max(directoryLength, 2 * this.directory.length)];
+				SyncBlockUtil.readFully(this.input, this.directory, 0, directoryLength);
+				this.root = ColumnReader.read(ByteBuffer.wrap(this.directory, 0, directoryLength));
+
+				final long dataStart = this.position + BLOCK_HEADER_LENGTH + directoryLength;
+				this.position = dataStart + dataLength;
+				if (this.getSelection() != null && !this.mayMatch(this.getSelection())) {
+					this.input.seek(this.position);
+					continue;
+				}
+
+				this.loadColumns(dataStart, dataLength);
+				this.valueIndex = 0;
+				this.numValues = this.root.getNumEntries();
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Reads the data of the root column and of all projected fields and skips the data of the other fields.
+		 */
+		private void loadColumns(final long dataStart, final int dataLength) throws IOException {
+			if (this.data.length < dataLength)
+				this.data = new byte[Math.max(dataLength, 2 * this.data.length)];
+
+			final Set<String> projectedFields = this.getProjectedFields();
+			final List<ColumnReader> children = this.root.getChildren();
+			int loaded = this.readData(dataStart, 0, 0, children.isEmpty() ? dataLength : children.get(0)
+				.getDataOffset());
+			this.root.load(this.data, false);
+			for (final ColumnReader child : children)
+				if (projectedFields == null || projectedFields.contains(child.getName())) {
+					loaded = this.readData(dataStart, loaded, child.getDataOffset(), child.getDataEnd());
+					child.load(this.data, true);
+				}
+			if (loaded != dataLength)
+				this.input.seek(dataStart + dataLength);
+		}
+
+		/**
+		 * Reads the given range of the data section of the current block into {@link #data}.
+		 *
+		 * @return the offset in the data section, at which the stream is positioned afterwards
+		 */
+		private int readData(final long dataStart, final int streamOffset, final int start, final int end)
+				throws IOException {
+			if (streamOffset != start)
+				this.input.seek(dataStart + start);
+			SyncBlockUtil.readFully(this.input, this.data, start, end - start);
+			return end;
+		}
+
+		private static BinaryOperator mirror(final BinaryOperator operator) {
+			switch (operator) {
+			case LESS:
+				return BinaryOperator.GREATER;
+			case LESS_EQUAL:
+				return BinaryOperator.GREATER_EQUAL;
+			case GREATER:
+				return BinaryOperator.LESS;
+			case GREATER_EQUAL:
+				return BinaryOperator.LESS_EQUAL;
+			default:
+				return operator;
+			}
+		}
+	}
+
+	/**
+	 * Writes the values in blocks of {@link ColumnarFormat#getBlockSize()} values.
+	 */
+	public static class ColumnarOutputFormat extends SopremoFileOutputFormat {
+		/**
+		 *
+		 */
+		private static final long serialVersionUID = -6263936153658127541L;
+
+		private int blockSize;
+
+		private DataOutputStream output;
+
+		private byte[] sync;
+
+		private final ByteArrayOutputStream directory = new ByteArrayOutputStream();
+
+		private final DataOutputStream directoryOutput = new DataOutputStream(this.directory);
+
+		private final ColumnWriter root = new ColumnWriter("");
+
+		@Override
+		public void close() throws IOException {
+			if (this.root.getNumEntries() > 0)
+				this.writeBlock();
+			this.output.flush();
+			super.close();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileOutputFormat#writeValue(eu.stratosphere.sopremo.type.
+		 * IJsonNode)
+		 */
+		@Override
+		public void writeValue(final IJsonNode value) throws IOException {
+			this.root.add(value);
+			if (this.root.getNumEntries() >= this.blockSize)
+				this.writeBlock();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileOutputFormat#open(eu.stratosphere.core.fs.
+		 * FSDataOutputStream, int)
+		 */
+		@Override
+		protected void open(final FSDataOutputStream stream, final int taskNumber) throws IOException {
+			this.output = new DataOutputStream(stream);
+			this.root.clear();
+			this.sync = SyncBlockUtil.writeHeader(this.output, MAGIC, VERSION);
+		}
+
+		private void writeBlock() throws IOException {
+			this.directory.reset();
+			final int dataLength = this.root.writeDirectory(this.directoryOutput, 0);
+
+			this.output.write(this.sync);
+			this.output.writeInt(this.directory.size());
+			this.output.writeInt(dataLength);
+			this.directory.writeTo(this.output);
+			this.root.writeData(this.output);
+			this.root.clear();
+		}
+	}
+}
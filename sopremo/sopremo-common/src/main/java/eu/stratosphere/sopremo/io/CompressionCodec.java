@@ -0,0 +1,391 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import eu.stratosphere.core.fs.FSDataInputStream;
+import eu.stratosphere.core.fs.FSDataOutputStream;
+
+/**
+ * Compresses the files of a {@link SopremoFormat} transparently. The input formats read the uncompressed content
+ * through a seekable stream, so that they do not need to be aware of the compression.<br />
+ * Codecs are registered with {@link #register(CompressionCodec)} and selected either explicitly by name, see
+ * {@link SopremoFormat#setCompression(String)}, or by the extension of the file.
+ */
+public abstract class CompressionCodec {
+	private static final Map<String, CompressionCodec> CODECS = new ConcurrentHashMap<String, CompressionCodec>();
+
+	private static final List<CompressionCodec> CODEC_LIST = new CopyOnWriteArrayList<CompressionCodec>();
+
+	/**
+	 * Gzip compression of the JDK. Gzip files cannot be split.
+	 */
+	public static final CompressionCodec GZIP = register(new StreamCompressionCodec("gzip", "gz") {
+		@Override
+		protected InputStream decompress(final InputStream stream) throws IOException {
+			return new GZIPInputStream(stream, BUFFER_SIZE);
+		}
+
+		@Override
+		protected OutputStream compress(final OutputStream stream) throws IOException {
+			return new GZIPOutputStream(stream, BUFFER_SIZE);
+		}
+	});
+
+	/**
+	 * Zlib compression of the JDK. Deflate files cannot be split.
+	 */
+	public static final CompressionCodec DEFLATE = register(new StreamCompressionCodec("deflate", "deflate") {
+		@Override
+		protected InputStream decompress(final InputStream stream) {
+			return new InflaterInputStream(stream);
+		}
+
+		@Override
+		protected OutputStream compress(final OutputStream stream) {
+			return new DeflaterOutputStream(stream);
+		}
+	});
+
+	/**
+	 * Compresses blocks of fixed size independently, so that files can be split, see {@link BlockCompressionCodec}.
+	 */
+	public static final CompressionCodec BLOCK = register(new BlockCompressionCodec());
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String name;
+
+	private final String[] extensions;
+
+	/**
+	 * Initializes a codec with the given name and the file extensions that it handles.
+	 */
+	protected CompressionCodec(final String name, final String... extensions) {
+		this.name = name;
+		this.extensions = extensions;
+	}
+
+	/**
+	 * Wraps the given stream of a compressed file in a seekable stream of the uncompressed content.
+	 *
+	 * @param stream
+	 *        the stream of the compressed file, which is positioned at the beginning
+	 * @param length
+	 *        the length of the compressed file
+	 * @return the uncompressed stream
+	 */
+	public abstract FSDataInputStream createInputStream(FSDataInputStream stream, long length) throws IOException;
+
+	/**
+	 * Wraps the given stream in a stream that compresses all written bytes. Closing the returned stream closes the
+	 * given stream.
+	 */
+	public abstract FSDataOutputStream createOutputStream(FSDataOutputStream stream) throws IOException;
+
+	/**
+	 * Returns the file extensions without the leading dot.
+	 *
+	 * @return the extensions
+	 */
+	public String[] getExtensions() {
+		return this.extensions;
+	}
+
+	/**
+	 * Returns the name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the length of the uncompressed content of a file, which must be cheap to determine for splittable codecs.
+	 *
+	 * @param stream
+	 *        the stream of the compressed file
+	 * @param length
+	 *        the length of the compressed file
+	 * @return the uncompressed length or -1 if it is unknown
+	 */
+	@SuppressWarnings("unused")
+	public long getUncompressedLength(final FSDataInputStream stream, final long length) throws IOException {
+		return -1;
+	}
+
+	/**
+	 * Returns true if the uncompressed content may be read starting at arbitrary positions without decompressing the
+	 * preceding content. In this case, {@link #getUncompressedLength(FSDataInputStream, long)} must be known.
+	 */
+	public abstract boolean isSplittable();
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the codec with the given name.
+	 *
+	 * @throws IllegalArgumentException
+	 *         if no codec with the name has been registered
+	 */
+	public static CompressionCodec forName(final String name) {
+		final CompressionCodec codec = CODECS.get(name.toLowerCase());
+		if (codec == null)
+			throw new IllegalArgumentException(String.format("Unknown compression %s; known are %s", name,
+				CODEC_LIST));
+		return codec;
+	}
+
+	/**
+	 * Returns the codec that handles the extension of the given path or null if the path denotes an uncompressed file.
+	 */
+	public static CompressionCodec forPath(final String path) {
+		final int separator = path.lastIndexOf('.');
+		if (separator == -1 || path.indexOf('/', separator) != -1)
+			return null;
+		final String extension = path.substring(separator + 1);
+		for (final CompressionCodec codec : CODEC_LIST)
+			for (final String codecExtension : codec.extensions)
+				if (codecExtension.equalsIgnoreCase(extension))
+					return codec;
+		return null;
+	}
+
+	/**
+	 * Returns all registered codecs.
+	 */
+	public static List<CompressionCodec> getCodecs() {
+		return new ArrayList<CompressionCodec>(CODEC_LIST);
+	}
+
+	/**
+	 * Registers the given codec under its name, replacing a previously registered codec with the same name.
+	 *
+	 * @return the codec
+	 */
+	public static <C extends CompressionCodec> C register(final C codec) {
+		final CompressionCodec previous = CODECS.put(codec.getName().toLowerCase(), codec);
+		if (previous != null)
+			CODEC_LIST.remove(previous);
+		CODEC_LIST.add(codec);
+		return codec;
+	}
+
+	/**
+	 * Base class for codecs that can only decompress a file from its beginning.
+	 */
+	public abstract static class StreamCompressionCodec extends CompressionCodec {
+		/**
+		 * Initializes StreamCompressionCodec.
+		 */
+		protected StreamCompressionCodec(final String name, final String... extensions) {
+			super(name, extensions);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.io.CompressionCodec#createInputStream(eu.stratosphere.core.fs.FSDataInputStream,
+		 * long)
+		 */
+		@Override
+		public FSDataInputStream createInputStream(final FSDataInputStream stream, final long length)
+				throws IOException {
+			return new DecompressingInputStream(this, stream);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * eu.stratosphere.sopremo.io.CompressionCodec#createOutputStream(eu.stratosphere.core.fs.FSDataOutputStream)
+		 */
+		@Override
+		public FSDataOutputStream createOutputStream(final FSDataOutputStream stream) throws IOException {
+			return new WrappingOutputStream(this.compress(stream));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.io.CompressionCodec#isSplittable()
+		 */
+		@Override
+		public boolean isSplittable() {
+			return false;
+		}
+
+		/**
+		 * Wraps the given stream in a stream that compresses the written bytes.
+		 */
+		protected abstract OutputStream compress(OutputStream stream) throws IOException;
+
+		/**
+		 * Wraps the given stream in a stream that decompresses the read bytes.
+		 */
+		protected abstract InputStream decompress(InputStream stream) throws IOException;
+	}
+
+	/**
+	 * Decompresses a file sequentially. Seeking backwards restarts the decompression at the beginning of the file.
+	 */
+	private static class DecompressingInputStream extends FSDataInputStream {
+		private final StreamCompressionCodec codec;
+
+		private final FSDataInputStream compressedStream;
+
+		private InputStream stream;
+
+		private long position;
+
+		private final byte[] skipBuffer = new byte[4096];
+
+		public DecompressingInputStream(final StreamCompressionCodec codec, final FSDataInputStream compressedStream)
+				throws IOException {
+			this.codec = codec;
+			this.compressedStream = compressedStream;
+			this.stream = codec.decompress(compressedStream);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#available()
+		 */
+		@Override
+		public int available() throws IOException {
+			return this.stream.available();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			this.stream.close();
+		}
+
+		/**
+		 * Returns the position in the uncompressed content.
+		 */
+		public long getPos() {
+			return this.position;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#read()
+		 */
+		@Override
+		public int read() throws IOException {
+			final int value = this.stream.read();
+			if (value != -1)
+				this.position++;
+			return value;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#read(byte[], int, int)
+		 */
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+			final int read = this.stream.read(buffer, offset, length);
+			if (read > 0)
+				this.position += read;
+			return read;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.core.fs.FSDataInputStream#seek(long)
+		 */
+		@Override
+		public void seek(final long desired) throws IOException {
+			if (desired < this.position) {
+				this.compressedStream.seek(0);
+				this.stream = this.codec.decompress(this.compressedStream);
+				this.position = 0;
+			}
+			while (this.position < desired)
+				if (this.read(this.skipBuffer, 0, (int) Math.min(this.skipBuffer.length, desired - this.position)) < 0)
+					break;
+		}
+	}
+
+	/**
+	 * Adapts a compressing stream to {@link FSDataOutputStream}.
+	 */
+	static class WrappingOutputStream extends FSDataOutputStream {
+		private final OutputStream stream;
+
+		public WrappingOutputStream(final OutputStream stream) {
+			this.stream = stream;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.OutputStream#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			this.stream.close();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.OutputStream#flush()
+		 */
+		@Override
+		public void flush() throws IOException {
+			this.stream.flush();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.OutputStream#write(byte[], int, int)
+		 */
+		@Override
+		public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+			this.stream.write(buffer, offset, length);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.OutputStream#write(int)
+		 */
+		@Override
+		public void write(final int b) throws IOException {
+			this.stream.write(b);
+		}
+	}
+}
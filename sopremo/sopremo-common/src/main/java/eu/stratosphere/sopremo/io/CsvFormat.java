@@ -1,26 +1,19 @@
 package eu.stratosphere.sopremo.io;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
-
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import com.google.common.collect.Lists;
 
@@ -357,15 +350,21 @@ public class CsvFormat extends SopremoFormat {
 	}
 
 	/**
+	 * Decodes the bytes of a stream in large blocks up to a given limit and keeps track of the absolute position.
 	 */
 	public static class CountingReader extends Reader {
+		private static final int BUFFER_SIZE = 64 * 1024;
+
 		private long absolutePos = 0, limit = 0;
 
 		private boolean reachedLimit = false, eos = false;
 
-		private final ByteBuffer streamBuffer = ByteBuffer.allocate(100);
+		/**
+		 * Contains the bytes that have been read but not decoded yet at the beginning of the buffer.
+		 */
+		private final ByteBuffer streamBuffer = ByteBuffer.allocate(BUFFER_SIZE);
 
-		private final CharBuffer charBuffer = CharBuffer.allocate(100);
+		private final CharBuffer charBuffer = CharBuffer.allocate(BUFFER_SIZE);
 
 		private final FSDataInputStream stream;
 
@@ -376,7 +375,7 @@ public class CsvFormat extends SopremoFormat {
 		public CountingReader(final FSDataInputStream stream, final String charset, final long limit) {
 			this.stream = stream;
 			this.cs = Charset.forName(charset);
-			this.decoder = this.cs.newDecoder();
+			this.decoder = this.newDecoder();
 			this.limit = limit;
 			// mark as empty
 			this.charBuffer.limit(0);
@@ -391,6 +390,21 @@ public class CsvFormat extends SopremoFormat {
 			this.stream.close();
 		}
 
+		/**
+		 * Returns the buffer of decoded characters, which is refilled if all its characters have been consumed. The
+		 * caller consumes characters by advancing the position of the buffer.
+		 * 
+		 * @return the buffer with at least one remaining character or null at the end of the input
+		 */
+		public CharBuffer fillBuffer() throws IOException {
+			while (this.charBuffer.remaining() == 0) {
+				if (this.eos)
+					return null;
+				this.fillCharBuffer();
+			}
+			return this.charBuffer;
+		}
+
 		public void liftLimit() {
 			this.limit = Long.MAX_VALUE;
 			this.reachedLimit = this.eos = false;
@@ -406,13 +420,8 @@ public class CsvFormat extends SopremoFormat {
 		 */
 		@Override
 		public int read() throws IOException {
-			if (this.charBuffer.remaining() == 0) {
-				if (!this.eos)
-					this.fillCharBufferIfEmpty();
-				if (this.eos)
-					return -1;
-			}
-			return this.charBuffer.get();
+			final CharBuffer buffer = this.fillBuffer();
+			return buffer == null ? -1 : buffer.get();
 		}
 
 		/*
@@ -421,14 +430,14 @@ public class CsvFormat extends SopremoFormat {
 		 */
 		@Override
 		public int read(final char[] cbuf, final int off, final int len) throws IOException {
-			int toRead = len - off;
-			while (toRead > 0) {
-				this.fillCharBufferIfEmpty();
-				final int currentReadCount = Math.min(toRead, this.charBuffer.length());
-				this.charBuffer.get(cbuf, off, currentReadCount);
-				toRead -= currentReadCount;
+			int read = 0;
+			CharBuffer buffer;
+			while (read < len && (buffer = this.fillBuffer()) != null) {
+				final int currentReadCount = Math.min(len - read, buffer.remaining());
+				buffer.get(cbuf, off + read, currentReadCount);
+				read += currentReadCount;
 			}
-			return len - toRead;
+			return read == 0 && len > 0 ? -1 : read;
 		}
 
 		public void seek(final long absolutePos) throws IOException {
@@ -438,37 +447,33 @@ public class CsvFormat extends SopremoFormat {
 			this.charBuffer.limit(0);
 			this.streamBuffer.clear();
 			this.reachedLimit = this.eos = false;
-			this.decoder = this.cs.newDecoder();
+			this.decoder = this.newDecoder();
 		}
 
-		private void fillCharBufferIfEmpty() throws IOException {
-			final int maxLen = this.streamBuffer.capacity();
-			final int position = this.streamBuffer.position();
+		private CharsetDecoder newDecoder() {
+			return this.cs.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).
+				onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+
+		private void fillCharBuffer() throws IOException {
 			final byte[] array = this.streamBuffer.array();
-			final int read = this.stream.read(array, position,
-				(int) Math.min(maxLen - position, this.limit - this.absolutePos));
+			final int undecodedBytes = this.streamBuffer.position();
+			final int read = this.stream.read(array, undecodedBytes,
+				(int) Math.min(array.length - undecodedBytes, this.limit - this.absolutePos));
 			if (read <= 0) {
 				this.reachedLimit = this.eos = true;
 				return;
 			}
 			this.absolutePos += read;
-			this.streamBuffer.position(0);
-			this.streamBuffer.limit(position + read);
+			this.streamBuffer.flip();
+			this.streamBuffer.limit(undecodedBytes + read);
 			this.reachedLimit = this.limit <= this.absolutePos;
 
 			this.charBuffer.clear();
-			final CoderResult coderResult = this.decoder.decode(this.streamBuffer, this.charBuffer, this.eos);
+			this.decoder.decode(this.streamBuffer, this.charBuffer, false);
 			this.charBuffer.flip();
-			int undecodedBytes;
-			if (coderResult == CoderResult.UNDERFLOW && !this.eos &&
-				(undecodedBytes = this.streamBuffer.remaining()) > 0) {
-				System.arraycopy(array, maxLen - undecodedBytes, array, 0, undecodedBytes);
-				this.streamBuffer.limit(maxLen);
-				this.streamBuffer.position(undecodedBytes);
-				this.absolutePos -= undecodedBytes;
-				// this.charBuffer.limit(this.charBuffer.limit() - 1);
-			} else
-				this.streamBuffer.clear();
+			// keep an incomplete multibyte sequence for the next block
+			this.streamBuffer.compact();
 		}
 	}
 
@@ -481,6 +486,8 @@ public class CsvFormat extends SopremoFormat {
 		 */
 		private static final long serialVersionUID = -4999295498719746952L;
 
+		private static final int TOP_LEVEL = 0, QUOTED = 1, ESCAPED = 2, UNICODE = 3;
+
 		private char fieldDelimiter;
 
 		private Boolean quotation, header;
@@ -497,13 +504,25 @@ public class CsvFormat extends SopremoFormat {
 
 		private int numLineSamples;
 
-		private final Deque<State> state = new LinkedList<State>();
+		/**
+		 * The state of the field scanner, which is only not {@link #TOP_LEVEL} while a field has been read partially.
+		 */
+		private int state;
 
 		private CountingReader reader;
 
 		private final IObjectNode objectNode = new ObjectNode();
 
-		private final StringBuilder builder = new StringBuilder();
+		private final TextNode headerField = new TextNode();
+
+		/**
+		 * The reused node of each projected text column.
+		 */
+		private transient TextNode[] textFields;
+
+		private transient boolean[] projectedColumns;
+
+		private transient boolean emptyField;
 
 		private char unicodeChar, unicodeCount;
 
@@ -515,7 +534,6 @@ public class CsvFormat extends SopremoFormat {
 		 */
 		@Override
 		public void close() throws IOException {
-			this.revertToPreviousState();
 			this.reader.close();
 			super.close();
 		}
@@ -527,28 +545,34 @@ public class CsvFormat extends SopremoFormat {
 		@Override
 		public IJsonNode nextValue() throws IOException {
 			int lastCharacter, fieldIndex = 0;
-			boolean lastValue = false;
+			boolean lastValue = false, interrupted = false;
 			this.objectNode.clear();
+			TextNode field = null;
 			do {
-				lastCharacter = this.fillBuilderWithNextField();
+				// a field that has been interrupted by the end of the split is continued
+				if (!interrupted)
+					field = this.startField(fieldIndex);
+				interrupted = false;
+				lastCharacter = this.readField(field);
 				if (lastCharacter == -1 && !lastValue) {
 					// ignore empty line
-					if (this.builder.length() == 0 && fieldIndex == 0)
+					if (this.emptyField && fieldIndex == 0)
 						break;
 
-					lastValue = true;
+					lastValue = interrupted = true;
 					// read the remainder of the started line
 					this.reader.liftLimit();
 					lastCharacter = 0;
 					continue;
 				}
-				this.addToObject(fieldIndex++, this.builder.toString());
-				this.builder.setLength(0);
+				if (field != null)
+					this.addToObject(fieldIndex, field);
+				fieldIndex++;
 			} while (lastCharacter != '\n' && lastCharacter != -1);
 
 			if (lastCharacter == -1 || lastValue)
 				this.endReached();
-			if (this.objectNode.size() == 0)
+			if (fieldIndex == 0)
 				return null;
 			return this.objectNode;
 		}
@@ -631,7 +655,7 @@ public class CsvFormat extends SopremoFormat {
 
 		@Override
 		protected void open(final FSDataInputStream stream, final FileInputSplit split) throws IOException {
-			this.setState(State.TOP_LEVEL);
+			this.state = TOP_LEVEL;
 
 			this.reader = new CountingReader(stream, this.getEncoding(), split.getStart() + split.getLength());
 			this.usesQuotation = this.quotation == Boolean.TRUE;
@@ -652,38 +676,57 @@ public class CsvFormat extends SopremoFormat {
 				// skip header for first split, if we definitively know that there should be a header
 				this.extractKeyNames();
 
+			final Set<String> projectedFields = this.getProjectedFields();
+			this.projectedColumns = new boolean[this.keyNames.size()];
+			this.textFields = new TextNode[this.keyNames.size()];
+			for (int index = 0; index < this.projectedColumns.length; index++) {
+				this.projectedColumns[index] =
+					projectedFields == null || projectedFields.contains(this.keyNames.get(index));
+				if (index >= this.types.size() || this.types.get(index) == TextNode.class)
+					this.textFields[index] = new TextNode();
+			}
+
 			// skip to beginning of the first record
-			if (this.splitStart > 0) {
-				this.reader.seek(this.pos = this.splitStart - 1);
+			if (this.splitStart > 0)
 				if (this.usesQuotation) {
-					// TODO: how to detect if where are inside a quotation?
-					int ch;
-					for (; (ch = this.reader.read()) != -1 && ch != '\n'; this.pos++)
-						;
-					if (ch == -1)
+					// line feeds within quoted fields do not terminate a record
+					final long recordStart = CsvRecordBoundary.findRecordStart(stream, this.splitStart,
+						this.fieldDelimiter, this.keyNames.size());
+					if (recordStart >= this.splitStart + this.splitLength)
 						this.endReached();
+					else
+						this.reader.seek(this.pos = recordStart);
 				} else {
+					this.reader.seek(this.pos = this.splitStart - 1);
 					int ch;
 					for (; (ch = this.reader.read()) != -1 && ch != '\n'; this.pos++)
 						;
 					if (ch == -1)
 						this.endReached();
 				}
-			}
 		}
 
-		private void addToObject(final int fieldIndex, final String string) {
-			if (fieldIndex < this.keyNames.size()) {
-				Class<? extends IJsonNode> targetType = fieldIndex < this.types.size() ? this.types.get(fieldIndex) : TextNode.class;
-				final IJsonNode node;
-				if (targetType != TextNode.class) {
-					this.coercingRawNode.setValue(string);
-					node = TypeCoercer.INSTANCE.coerce(this.coercingRawNode, this.coercingCaches.get(fieldIndex), targetType);
-				}
-				else
-					node = TextNode.valueOf(string);
-				this.objectNode.put(this.keyNames.get(fieldIndex), node);
-			}
+		private void addToObject(final int fieldIndex, final TextNode field) {
+			final IJsonNode node;
+			if (field == this.coercingRawNode)
+				node = TypeCoercer.INSTANCE.coerce(field, this.coercingCaches.get(fieldIndex),
+					this.types.get(fieldIndex));
+			else
+				node = field;
+			this.objectNode.put(this.keyNames.get(fieldIndex), node);
+		}
+
+		/**
+		 * Returns the node that receives the next field or null if the field is not used.
+		 */
+		private TextNode startField(final int fieldIndex) {
+			if (fieldIndex >= this.projectedColumns.length || !this.projectedColumns[fieldIndex])
+				// unused columns are tokenized but not converted to nodes
+				return null;
+			final TextNode field =
+				this.textFields[fieldIndex] == null ? this.coercingRawNode : this.textFields[fieldIndex];
+			field.clear();
+			return field;
 		}
 
 		/**
@@ -693,9 +736,9 @@ public class CsvFormat extends SopremoFormat {
 			final List<String> keyNames = new ArrayList<String>();
 			int lastCharacter;
 			do {
-				lastCharacter = this.fillBuilderWithNextField();
-				keyNames.add(this.builder.toString());
-				this.builder.setLength(0);
+				this.headerField.clear();
+				lastCharacter = this.readField(this.headerField);
+				keyNames.add(this.headerField.toString());
 			} while (lastCharacter != -1 && lastCharacter != '\n');
 
 			// we were explicitly told that there is no header, so this first line is actual data
@@ -710,83 +753,85 @@ public class CsvFormat extends SopremoFormat {
 			return keyNames;
 		}
 
-		private int fillBuilderWithNextField() throws IOException {
-			int character = 0;
-			readLoop: for (; (character = this.reader.read()) != -1; this.pos++) {
-				final char ch = (char) character;
-				switch (this.getCurrentState()) {
-				case TOP_LEVEL:
-					if (ch == this.fieldDelimiter) {
-						this.builder.toString();
-						break readLoop;
-					} else if (ch == '\n') {
-						final int lastCharPos = this.builder.length() - 1;
-						if (lastCharPos >= 0 && this.builder.charAt(lastCharPos) == '\r')
-							this.builder.setLength(lastCharPos);
-						break readLoop;
-					} else if (this.usesQuotation && ch == '"')
-						this.setState(State.QUOTED);
-					else
-						this.builder.append(ch);
-					break;
-				case ESCAPED:
-					if (ch == 'u')
-						this.setState(State.UNICODE);
-					else {
-						this.builder.append(ch);
-						this.revertToPreviousState();
-					}
-					break;
-				case QUOTED:
-					switch (ch) {
-					case '"':
-						this.revertToPreviousState();
+		/**
+		 * Scans the decoded characters for the end of the current field and appends the characters of the field
+		 * in blocks to the given node.
+		 * 
+		 * @param field
+		 *        the node that receives the characters or null if the field is skipped
+		 * @return the field delimiter, the line feed, or -1 if the reader has no more characters
+		 */
+		private int readField(final TextNode field) throws IOException {
+			this.emptyField = true;
+			CharBuffer buffer;
+			while ((buffer = this.reader.fillBuffer()) != null) {
+				this.emptyField = false;
+				final char[] chars = buffer.array();
+				final int start = buffer.position(), end = buffer.limit();
+				int sliceStart = start;
+				for (int index = start; index < end; index++) {
+					final char ch = chars[index];
+					switch (this.state) {
+					case TOP_LEVEL:
+						if (ch == this.fieldDelimiter || ch == '\n') {
+							if (field != null) {
+								field.append(chars, sliceStart, index);
+								final int lastCharPos = field.length() - 1;
+								if (ch == '\n' && lastCharPos >= 0 && field.charAt(lastCharPos) == '\r')
+									field.setLength(lastCharPos);
+							}
+							buffer.position(index + 1);
+							this.pos += index + 1 - start;
+							return ch;
+						} else if (this.usesQuotation && ch == '"') {
+							if (field != null)
+								field.append(chars, sliceStart, index);
+							sliceStart = index + 1;
+							this.state = QUOTED;
+						}
 						break;
-					case '\\':
-						this.setState(State.ESCAPED);
+					case QUOTED:
+						if (ch == '"' || ch == '\\') {
+							if (field != null)
+								field.append(chars, sliceStart, index);
+							sliceStart = index + 1;
+							this.state = ch == '"' ? TOP_LEVEL : ESCAPED;
+						}
+						break;
+					case ESCAPED:
+						if (ch == 'u')
+							this.state = UNICODE;
+						else {
+							if (field != null)
+								field.append(ch);
+							this.state = QUOTED;
+						}
+						sliceStart = index + 1;
 						break;
 					default:
-						this.builder.append(ch);
-					}
-					break;
-				case UNICODE:
-					final int digit = Character.digit(ch, 16);
-					if (digit != -1)
-						this.unicodeChar = (char) (this.unicodeChar << 4 | digit);
-					else
-						throw new IOException("Cannot parse unicode character at position: " + this.pos +
-							" split start: " + this.splitStart);
-					if (++this.unicodeCount >= 4) {
-						this.builder.append(this.unicodeChar);
-						this.unicodeChar = 0;
-						this.unicodeCount = 0;
-						this.revertToPreviousState();
-						this.revertToPreviousState();
+						final int digit = Character.digit(ch, 16);
+						if (digit != -1)
+							this.unicodeChar = (char) (this.unicodeChar << 4 | digit);
+						else
+							throw new IOException("Cannot parse unicode character at position: " +
+								(this.pos + index - start) + " split start: " + this.splitStart);
+						if (++this.unicodeCount >= 4) {
+							if (field != null)
+								field.append(this.unicodeChar);
+							this.unicodeChar = 0;
+							this.unicodeCount = 0;
+							this.state = QUOTED;
+						}
+						sliceStart = index + 1;
 					}
-					break;
 				}
+				if (field != null)
+					field.append(chars, sliceStart, end);
+				buffer.position(end);
+				this.pos += end - start;
 			}
-			return character;
-		}
-
-		/**
-		 * @return
-		 */
-		private State getCurrentState() {
-			return this.state.peek();
+			return -1;
 		}
-
-		private State revertToPreviousState() {
-			return this.state.pop();
-		}
-
-		/**
-		 * @param escaped
-		 */
-		private void setState(final State newState) {
-			this.state.push(newState);
-		}
-
 	}
 
 	public static class CsvOutputFormat extends SopremoFileOutputFormat {
@@ -801,9 +846,7 @@ public class CsvFormat extends SopremoFormat {
 
 		private Boolean quotation, header;
 
-		private Writer writer;
-
-		private transient IntList escapePositions = new IntArrayList();
+		private JsonGenerator generator;
 
 		private boolean writeHeader;
 
@@ -813,7 +856,7 @@ public class CsvFormat extends SopremoFormat {
 		 */
 		@Override
 		public void close() throws IOException {
-			this.writer.close();
+			this.generator.close();
 			super.close();
 		}
 
@@ -878,33 +921,6 @@ public class CsvFormat extends SopremoFormat {
 				throw new IllegalStateException("Found empty object and cannot detect key names");
 		}
 
-		protected String escapeString(String string) {
-			this.escapePositions.clear();
-			for (int index = 0, count = string.length(); index < count; index++) {
-				final char ch = string.charAt(index);
-				if (ch == '\"' || ch == '\\')
-					this.escapePositions.add(index);
-			}
-
-			if (this.escapePositions.size() > 0) {
-				final char[] source = string.toCharArray();
-				final char[] result = new char[string.length() + this.escapePositions.size()];
-
-				int srcPos = 0;
-				for (int index = 0, size = this.escapePositions.size(); index < size; index++) {
-					final int endPos = this.escapePositions.getInt(index);
-					final int length = endPos - srcPos;
-					final int targetPos = srcPos + index;
-					System.arraycopy(source, srcPos, result, targetPos, length);
-					srcPos = endPos;
-					result[targetPos + length] = '\\';
-				}
-				System.arraycopy(source, srcPos, result, srcPos + this.escapePositions.size(), source.length - srcPos);
-				string = new String(result);
-			}
-			return string;
-		}
-
 		/*
 		 * (non-Javadoc)
 		 * @see eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileOutputFormat#open(eu.stratosphere.core.fs.
@@ -912,7 +928,7 @@ public class CsvFormat extends SopremoFormat {
 		 */
 		@Override
 		protected void open(final FSDataOutputStream stream, final int taskNumber) throws IOException {
-			this.writer = new BufferedWriter(new OutputStreamWriter(stream, this.getEncoding()));
+			this.generator = this.createGenerator(stream);
 			this.writeHeader = taskNumber == 0 && this.header == Boolean.TRUE;
 		}
 
@@ -920,13 +936,7 @@ public class CsvFormat extends SopremoFormat {
 		 * @param object
 		 */
 		private void write(final IJsonNode node) throws IOException {
-			final String string = node.toString();
-			if (this.quotation != Boolean.FALSE) {
-				this.writer.write('"');
-				this.writer.write(this.escapeString(string));
-				this.writer.write('"');
-			} else
-				this.writer.write(string);
+			this.generator.writeString(node, this.quotation != Boolean.FALSE);
 		}
 
 		private void writeArray(final IJsonNode value) throws IOException {
@@ -945,7 +955,7 @@ public class CsvFormat extends SopremoFormat {
 		 * 
 		 */
 		private void writeLineTerminator() throws IOException {
-			this.writer.write('\n');
+			this.generator.writeCharacter('\n');
 		}
 
 		/**
@@ -964,11 +974,8 @@ public class CsvFormat extends SopremoFormat {
 		 * 
 		 */
 		private void writeSeparator() throws IOException {
-			this.writer.write(this.fieldDelimiter);
+			this.generator.writeCharacter(this.fieldDelimiter);
 		}
 	}
 
-	private enum State {
-		TOP_LEVEL, QUOTED, ESCAPED, UNICODE;
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,214 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.IOException;
+
+import eu.stratosphere.core.fs.FSDataInputStream;
+
+/**
+ * Finds the beginning of the first record of a split in a csv file with quoted fields, which may contain line
+ * feeds.<br />
+ * Whether a line feed terminates a record depends on the quotation state at the split start, which is unknown. Thus,
+ * the bytes after the split start are speculatively parsed for each possible state. A state is rejected if the
+ * subsequent records do not have the expected number of fields or if the file ends within a quoted field. If the
+ * number of fields is unknown, a state is rejected if the subsequent records do not have the same number of fields.
+ * The actual state is never rejected, so the speculation is only trusted if all states that are not rejected are
+ * validated within the window and agree on the beginning of the first record. Otherwise, the quotation state is
+ * determined exactly by scanning the file from its beginning.<br />
+ * The scan reads the whole file up to the split for every split that cannot be resolved by speculation, which is
+ * quadratic in the number of such splits. It is only expected for files with very long quoted fields or records
+ * that do not fit into the window.<br />
+ * The scan works on the raw bytes, which is correct for UTF-8 and all other encodings that represent the line feed,
+ * the quotation mark, the backslash, and the field delimiter as single bytes that do not occur within other
+ * characters.
+ */
+final class CsvRecordBoundary {
+	/**
+	 * Same transitions as the quoted states of the csv parser; escaped characters include the first character of a
+	 * unicode escape sequence, the hex digits are treated as quoted characters.
+	 */
+	private static final int OUTSIDE = 0, QUOTED = 1, ESCAPED = 2;
+
+	private static final int NUM_STATES = 3;
+
+	private static final int WINDOW_SIZE = 256 * 1024;
+
+	/**
+	 * The number of complete records that must have the expected number of fields to accept a state.
+	 */
+	private static final int NUM_VALIDATED_RECORDS = 16;
+
+	private static final long NO_RECORD = Long.MAX_VALUE;
+
+	/**
+	 * Result of a speculation that neither validates nor rejects the state.
+	 */
+	private static final long UNDECIDED = -1;
+
+	/**
+	 * Result of a speculation that contradicts the state.
+	 */
+	private static final long REJECTED = -2;
+
+	private final FSDataInputStream stream;
+
+	private final byte delimiter;
+
+	private final int numFields;
+
+	private final byte[] window = new byte[WINDOW_SIZE];
+
+	private int windowLength;
+
+	private boolean windowReachesEnd;
+
+	private CsvRecordBoundary(final FSDataInputStream stream, final char delimiter, final int numFields) {
+		this.stream = stream;
+		this.delimiter = (byte) delimiter;
+		this.numFields = numFields;
+	}
+
+	/**
+	 * Returns the position of the first record that begins at or after the given position, that is, the position after
+	 * the first unquoted line feed at or after position - 1. The position of the stream is undefined afterwards.
+	 *
+	 * @param stream
+	 *        the stream of the csv file
+	 * @param position
+	 *        the start of the split, which must be positive
+	 * @param delimiter
+	 *        the field delimiter
+	 * @param numFields
+	 *        the number of fields of each record or 0 if unknown
+	 * @return the position of the record or {@link Long#MAX_VALUE} if no further record begins
+	 */
+	static long findRecordStart(final FSDataInputStream stream, final long position, final char delimiter,
+			final int numFields) throws IOException {
+		final CsvRecordBoundary boundary = new CsvRecordBoundary(stream, delimiter, numFields);
+		final long windowStart = position - 1;
+		if (delimiter < 0x80) {
+			boundary.fillWindow(windowStart);
+			// a wrong state may be validated by chance while the actual state cannot be validated within the window
+			long recordStart = REJECTED;
+			for (int state = OUTSIDE; state < NUM_STATES && recordStart != UNDECIDED; state++) {
+				final long candidate = boundary.speculate(state);
+				if (candidate == REJECTED)
+					continue;
+				if (candidate == UNDECIDED || recordStart != REJECTED && candidate != recordStart)
+					recordStart = UNDECIDED;
+				else
+					recordStart = candidate;
+			}
+			if (recordStart >= 0)
+				return recordStart == NO_RECORD ? NO_RECORD : windowStart + recordStart;
+		}
+		return boundary.scan(windowStart);
+	}
+
+	private void fillWindow(final long windowStart) throws IOException {
+		this.stream.seek(windowStart);
+		this.windowLength = 0;
+		int read;
+		while (this.windowLength < WINDOW_SIZE &&
+			(read = this.stream.read(this.window, this.windowLength, WINDOW_SIZE - this.windowLength)) != -1)
+			this.windowLength += read;
+		this.windowReachesEnd = this.windowLength < WINDOW_SIZE;
+	}
+
+	/**
+	 * Scans the file from the beginning to determine the quotation state at the given position exactly.
+	 */
+	private long scan(final long end) throws IOException {
+		this.stream.seek(0);
+		long position = 0;
+		int state = OUTSIDE;
+		int read;
+		while ((read = this.stream.read(this.window, 0, WINDOW_SIZE)) != -1)
+			for (int index = 0; index < read; index++, position++) {
+				final byte ch = this.window[index];
+				if (position >= end && state == OUTSIDE && ch == '\n')
+					return position + 1;
+				state = next(state, ch);
+			}
+		return NO_RECORD;
+	}
+
+	/**
+	 * Parses the window assuming that the first byte is read in the given state.
+	 *
+	 * @return the offset of the first record in the window, {@link #NO_RECORD} if the file ends before,
+	 *         {@link #REJECTED} if the state contradicts the window, or {@link #UNDECIDED} if the state cannot be
+	 *         validated within the window
+	 */
+	private long speculate(final int initialState) {
+		int state = initialState, index = 0;
+		for (; index < this.windowLength; index++) {
+			final byte ch = this.window[index];
+			if (state == OUTSIDE && ch == '\n')
+				break;
+			state = next(state, ch);
+		}
+		if (index == this.windowLength) {
+			if (!this.windowReachesEnd)
+				return UNDECIDED;
+			return state == OUTSIDE ? NO_RECORD : REJECTED;
+		}
+
+		final int recordStart = index + 1;
+		if (this.windowReachesEnd && recordStart == this.windowLength)
+			return NO_RECORD;
+		// without a given number of fields, all validated records need to have as many fields as the first one
+		int expectedFields = this.numFields, numRecords = 0, numFields = 1;
+		for (index = recordStart; index < this.windowLength && numRecords < NUM_VALIDATED_RECORDS; index++) {
+			final byte ch = this.window[index];
+			if (state == OUTSIDE)
+				if (ch == this.delimiter)
+					numFields++;
+				else if (ch == '\n') {
+					if (expectedFields <= 0)
+						expectedFields = numFields;
+					else if (numFields != expectedFields)
+						return REJECTED;
+					numRecords++;
+					numFields = 1;
+				}
+			state = next(state, ch);
+		}
+
+		// the last record of the file may lack the line feed
+		if (index == this.windowLength && this.windowReachesEnd && index > recordStart &&
+			this.window[index - 1] != '\n') {
+			if (state != OUTSIDE || expectedFields > 0 && numFields != expectedFields)
+				return REJECTED;
+			numRecords++;
+		}
+		// a single record of unknown length does not validate anything
+		if (this.numFields <= 0 && numRecords < 2)
+			return UNDECIDED;
+		return numRecords > 0 ? recordStart : UNDECIDED;
+	}
+
+	private static int next(final int state, final byte ch) {
+		switch (state) {
+		case OUTSIDE:
+			return ch == '"' ? QUOTED : OUTSIDE;
+		case QUOTED:
+			return ch == '"' ? OUTSIDE : ch == '\\' ? ESCAPED : QUOTED;
+		default:
+			return QUOTED;
+		}
+	}
+}
@@ -16,7 +16,6 @@ package eu.stratosphere.sopremo.io;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 
 import eu.stratosphere.api.common.io.statistics.BaseStatistics;
@@ -134,6 +133,8 @@ public class JsonFormat extends SopremoFormat {
 			try {
 				this.parser = new JsonParser(new InputStreamReader(stream, this.getEncoding()));
 				this.parser.setWrappingArraySkipping(true);
+				this.parser.setNodeReuse(true);
+				this.parser.setProjectedFields(this.getProjectedFields());
 
 				if (this.parser.checkEnd())
 					this.endReached();
@@ -180,7 +181,7 @@ public class JsonFormat extends SopremoFormat {
 		 */
 		@Override
 		protected void open(final FSDataOutputStream stream, final int taskNumber) throws IOException {
-			this.generator = new JsonGenerator(new OutputStreamWriter(stream, this.getEncoding()));
+			this.generator = this.createGenerator(stream);
 			this.generator.writeStartArray();
 		}
 	}
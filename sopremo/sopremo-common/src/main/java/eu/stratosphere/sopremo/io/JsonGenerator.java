@@ -1,123 +1,421 @@
 package eu.stratosphere.sopremo.io;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.IdentityHashMap;
 import java.util.Map;
 
+import eu.stratosphere.sopremo.type.BooleanNode;
 import eu.stratosphere.sopremo.type.IArrayNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
 import eu.stratosphere.sopremo.type.IObjectNode;
 import eu.stratosphere.sopremo.type.IStreamNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.LongNode;
 import eu.stratosphere.sopremo.type.NullNode;
 import eu.stratosphere.sopremo.type.TextNode;
 
 /**
- * Writes the string-representation of {@link IJsonNode}s to a specified sink.
+ * Writes the string-representation of {@link IJsonNode}s to a specified sink.<br />
+ * The generator encodes the representation directly as UTF-8 into a reused byte buffer, which is written to the sink
+ * when it is full. Text, integer, and boolean nodes are written without creating intermediate strings.
  */
 public class JsonGenerator {
+	private static final int BUFFER_SIZE = 64 * 1024;
 
-	BufferedWriter writer;
+	/**
+	 * The maximum number of bytes of an encoded and escaped character or surrogate pair.
+	 */
+	private static final int MAX_CHAR_BYTES = 6;
+
+	private static final Charset UTF8 = Charset.forName("utf-8");
+
+	private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd',
+		'e', 'f' };
+
+	private static final int NO_ESCAPING = 0, QUOTE_ESCAPING = 1, JSON_ESCAPING = 2;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private int position;
 
-	boolean isFirst = true;
+	private final OutputStream stream;
+
+	/**
+	 * The writer that receives the decoded buffer if the generator has been initialized with a writer.
+	 */
+	private final Writer writer;
+
+	private boolean isFirst = true, lineDelimited;
+
+	/**
+	 * High surrogate that has been appended through {@link #charSink} but not been encoded yet.
+	 */
+	private char pendingSurrogate;
+
+	/**
+	 * Encodes the characters of nodes without a specific {@link JsonTypeWriter}.
+	 */
+	private final Appendable charSink = new Appendable() {
+		@Override
+		public Appendable append(final char c) throws IOException {
+			JsonGenerator.this.writeChar(c);
+			return this;
+		}
+
+		@Override
+		public Appendable append(final CharSequence csq) throws IOException {
+			return this.append(csq, 0, csq.length());
+		}
+
+		@Override
+		public Appendable append(final CharSequence csq, final int start, final int end) throws IOException {
+			for (int index = start; index < end; index++)
+				JsonGenerator.this.writeChar(csq.charAt(index));
+			return this;
+		}
+	};
 
 	/**
 	 * Initializes a JsonGenerator which uses the given {@link File} as a sink.
-	 * 
+	 *
 	 * @param file
 	 *        the file that should be used as a sink
 	 * @throws IOException
 	 */
 	public JsonGenerator(final File file) throws IOException {
-		this.writer = new BufferedWriter(new FileWriter(file));
+		this(new FileOutputStream(file));
 	}
 
 	/**
 	 * Initializes a JsonGenerator which uses the given {@link OutputStream} as
-	 * a sink.
-	 * 
+	 * a sink. The representations are encoded in UTF-8.
+	 *
 	 * @param stream
 	 *        the stream that should be used as a sink
 	 */
 	public JsonGenerator(final OutputStream stream) {
-		this.writer = new BufferedWriter(new OutputStreamWriter(stream));
+		this.stream = stream;
+		this.writer = null;
 	}
 
 	/**
 	 * Initializes a JsonGenerator which uses the given {@link Writer} as a
-	 * sink.
-	 * 
+	 * sink. This sink is slower than an {@link OutputStream} since the buffer is decoded again.
+	 *
 	 * @param writer
 	 *        the writer that should be used as a sink
 	 */
 	public JsonGenerator(final Writer writer) {
-		this.writer = new BufferedWriter(writer);
+		this.stream = null;
+		this.writer = writer;
 	}
 
 	/**
 	 * Closes the connection to the specified sink.
-	 * 
+	 *
 	 * @throws IOException
 	 */
 	public void close() throws IOException {
-		this.writer.close();
+		this.flushBuffer();
+		if (this.stream != null)
+			this.stream.close();
+		else
+			this.writer.close();
 	}
 
 	/**
 	 * Delegetes the flush operation to the underlying writer
-	 * 
+	 *
 	 * @throws IOException
 	 */
 	public void flush() throws IOException {
-		this.writer.flush();
+		this.flushBuffer();
+		if (this.stream != null)
+			this.stream.flush();
+		else
+			this.writer.flush();
+	}
+
+	/**
+	 * Returns true if each value is written on a separate line without enclosing array.
+	 *
+	 * @return true if the values are newline-delimited
+	 */
+	public boolean isLineDelimited() {
+		return this.lineDelimited;
+	}
+
+	/**
+	 * Sets whether each value is written on a separate line without enclosing array, as the {@link JsonLinesFormat}
+	 * expects. In this mode, {@link #writeStartArray()} and {@link #writeEndArray()} should not be used.
+	 *
+	 * @param lineDelimited
+	 *        true if the values should be newline-delimited
+	 */
+	public void setLineDelimited(final boolean lineDelimited) {
+		this.lineDelimited = lineDelimited;
+	}
+
+	/**
+	 * Writes the given character to the specified sink.
+	 *
+	 * @param ch
+	 *        the character
+	 * @throws IOException
+	 */
+	public void writeCharacter(final char ch) throws IOException {
+		this.writeChar(ch);
 	}
 
 	/**
 	 * Writes the end-array-token to the specified sink. The token is specified
 	 * in {@link JsonToken#END_ARRAY}.
-	 * 
+	 *
 	 * @throws IOException
 	 */
 	public void writeEndArray() throws IOException {
-		JsonToken.END_ARRAY.write(this.writer);
-		this.writer.flush();
-
+		this.writeAscii(']');
+		this.flush();
 	}
 
 	/**
 	 * Writes the start-array-token to the specified sink. The token is
 	 * specified in {@link JsonToken#START_ARRAY}.
-	 * 
+	 *
 	 * @throws IOException
 	 */
 	public void writeStartArray() throws IOException {
-		JsonToken.START_ARRAY.write(this.writer);
-		this.writer.flush();
+		this.writeAscii('[');
+	}
+
+	/**
+	 * Writes the string-representation of the given {@link IJsonNode} as {@link IJsonNode#toString()} returns it. If
+	 * the representation is quoted, it is enclosed in quotation marks, and quotation marks and backslashes within the
+	 * representation are escaped with a backslash.
+	 *
+	 * @param node
+	 *        the node that should be written to the sink
+	 * @param quoted
+	 *        true if the representation should be quoted
+	 * @throws IOException
+	 */
+	public void writeString(final IJsonNode node, final boolean quoted) throws IOException {
+		if (quoted)
+			this.writeAscii('"');
+		if (node instanceof TextNode) {
+			final TextNode text = (TextNode) node;
+			this.writeChars(text, 0, text.length(), quoted ? QUOTE_ESCAPING : NO_ESCAPING);
+		} else if (node instanceof IntNode)
+			this.writeLong(((IntNode) node).getIntValue());
+		else if (node instanceof LongNode)
+			this.writeLong(((LongNode) node).getLongValue());
+		else if (quoted) {
+			// escaping needs the complete representation
+			final String string = node.toString();
+			this.writeChars(string, 0, string.length(), QUOTE_ESCAPING);
+		} else
+			this.writeGeneric(node);
+		if (quoted)
+			this.writeAscii('"');
 	}
 
 	/**
 	 * Writes the given {@link IJsonNode} to the specified sink. The
-	 * string-representations of multiple invocations are separated by a comma.
-	 * 
+	 * string-representations of multiple invocations are separated by a comma or by a line feed if the generator is
+	 * {@link #isLineDelimited() line-delimited}.
+	 *
 	 * @param iJsonNode
 	 *        the node that should be written to the sink
 	 * @throws IOException
 	 */
 	public void writeTree(final IJsonNode iJsonNode) throws IOException {
 		if (iJsonNode != null) {
-			if (!this.isFirst)
-				this.writer.write(",\n");
-			final JsonTypeWriter<IJsonNode> typeWriter = JsonTypeWriterPool.getJsonTypeWriterFor(iJsonNode);
-			typeWriter.write(iJsonNode, this.writer);
+			if (!this.isFirst && !this.lineDelimited) {
+				this.writeAscii(',');
+				this.writeAscii('\n');
+			}
+			JsonTypeWriterPool.getJsonTypeWriterFor(iJsonNode).write(iJsonNode, this);
+			if (this.lineDelimited)
+				this.writeAscii('\n');
 			this.isFirst = false;
 		}
 	}
 
+	private void ensureCapacity(final int length) throws IOException {
+		if (this.position + length > BUFFER_SIZE)
+			this.flushBuffer();
+	}
+
+	/**
+	 * Writes the buffer to the sink. The buffer contains only complete characters, so that it can be decoded on its
+	 * own.
+	 */
+	private void flushBuffer() throws IOException {
+		if (this.position == 0)
+			return;
+		if (this.stream != null)
+			this.stream.write(this.buffer, 0, this.position);
+		else
+			this.writer.write(new String(this.buffer, 0, this.position, UTF8));
+		this.position = 0;
+	}
+
+	private void writeAscii(final char ch) throws IOException {
+		if (this.position == BUFFER_SIZE)
+			this.flushBuffer();
+		this.buffer[this.position++] = (byte) ch;
+	}
+
+	private void writeAscii(final String string) throws IOException {
+		this.ensureCapacity(string.length());
+		for (int index = 0, length = string.length(); index < length; index++)
+			this.buffer[this.position++] = (byte) string.charAt(index);
+	}
+
+	/**
+	 * Encodes a single character, keeping a high surrogate until its low surrogate is written.
+	 */
+	private void writeChar(final char ch) throws IOException {
+		this.ensureCapacity(MAX_CHAR_BYTES);
+		if (this.pendingSurrogate != 0) {
+			final char highSurrogate = this.pendingSurrogate;
+			this.pendingSurrogate = 0;
+			if (Character.isLowSurrogate(ch)) {
+				this.encodeCodePoint(Character.toCodePoint(highSurrogate, ch));
+				return;
+			}
+			this.buffer[this.position++] = '?';
+		}
+		if (Character.isHighSurrogate(ch))
+			this.pendingSurrogate = ch;
+		else
+			this.encodeChar(ch, NO_ESCAPING);
+	}
+
+	/**
+	 * Encodes the given characters in UTF-8 and escapes them according to the escaping mode. Unpaired surrogates are
+	 * replaced by a question mark.
+	 */
+	private void writeChars(final CharSequence chars, final int start, final int end, final int escaping)
+			throws IOException {
+		for (int index = start; index < end; index++) {
+			this.ensureCapacity(MAX_CHAR_BYTES);
+			final char ch = chars.charAt(index);
+			if (Character.isHighSurrogate(ch) && index + 1 < end && Character.isLowSurrogate(chars.charAt(index + 1)))
+				this.encodeCodePoint(Character.toCodePoint(ch, chars.charAt(++index)));
+			else
+				this.encodeChar(ch, escaping);
+		}
+	}
+
+	/**
+	 * Encodes a character that is not part of a surrogate pair; the buffer must have room for
+	 * {@link #MAX_CHAR_BYTES}.
+	 */
+	private void encodeChar(final char ch, final int escaping) {
+		final byte[] buffer = this.buffer;
+		if (ch >= 0x20 && ch < 0x80) {
+			if (escaping != NO_ESCAPING && (ch == '"' || ch == '\\'))
+				buffer[this.position++] = '\\';
+			buffer[this.position++] = (byte) ch;
+		} else if (ch < 0x20) {
+			if (escaping == JSON_ESCAPING)
+				this.writeControlCharacter(ch);
+			else
+				buffer[this.position++] = (byte) ch;
+		} else if (ch < 0x800) {
+			buffer[this.position++] = (byte) (0xc0 | ch >> 6);
+			buffer[this.position++] = (byte) (0x80 | ch & 0x3f);
+		} else if (ch < Character.MIN_SURROGATE || ch > Character.MAX_SURROGATE)
+			this.encodeCodePoint(ch);
+		else
+			buffer[this.position++] = '?';
+	}
+
+	/**
+	 * Encodes a code point of at least three bytes.
+	 */
+	private void encodeCodePoint(final int codePoint) {
+		final byte[] buffer = this.buffer;
+		if (codePoint < 0x10000)
+			buffer[this.position++] = (byte) (0xe0 | codePoint >> 12);
+		else {
+			buffer[this.position++] = (byte) (0xf0 | codePoint >> 18);
+			buffer[this.position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+		}
+		buffer[this.position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+		buffer[this.position++] = (byte) (0x80 | codePoint & 0x3f);
+	}
+
+	private void writeControlCharacter(final char ch) {
+		final byte[] buffer = this.buffer;
+		buffer[this.position++] = '\\';
+		switch (ch) {
+		case '\b':
+			buffer[this.position++] = 'b';
+			break;
+		case '\f':
+			buffer[this.position++] = 'f';
+			break;
+		case '\n':
+			buffer[this.position++] = 'n';
+			break;
+		case '\r':
+			buffer[this.position++] = 'r';
+			break;
+		case '\t':
+			buffer[this.position++] = 't';
+			break;
+		default:
+			buffer[this.position++] = 'u';
+			buffer[this.position++] = '0';
+			buffer[this.position++] = '0';
+			buffer[this.position++] = HEX_DIGITS[ch >> 4];
+			buffer[this.position++] = HEX_DIGITS[ch & 0xf];
+		}
+	}
+
+	private void writeGeneric(final IJsonNode node) throws IOException {
+		node.appendAsString(this.charSink);
+		if (this.pendingSurrogate != 0) {
+			this.pendingSurrogate = 0;
+			this.writeAscii('?');
+		}
+	}
+
+	private void writeLong(final long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			this.writeAscii(String.valueOf(Long.MIN_VALUE));
+			return;
+		}
+
+		// sign and at most 19 digits
+		this.ensureCapacity(20);
+		long remaining = value;
+		if (remaining < 0) {
+			this.buffer[this.position++] = '-';
+			remaining = -remaining;
+		}
+		int digits = 1;
+		for (long rest = remaining; rest >= 10; rest /= 10)
+			digits++;
+		final int end = this.position + digits;
+		for (int index = end - 1; index >= this.position; index--, remaining /= 10)
+			this.buffer[index] = (byte) ('0' + remaining % 10);
+		this.position = end;
+	}
+
+	private void writeQuoted(final CharSequence text) throws IOException {
+		this.writeAscii('"');
+		this.writeChars(text, 0, text.length(), JSON_ESCAPING);
+		this.writeAscii('"');
+	}
+
 	/**
 	 * This class implements the JSON-Serialization for {@link ArrayNode}s
 	 */
@@ -126,27 +424,40 @@ public class JsonGenerator {
 		private static ArrayNodeTypeWriter Instance = new ArrayNodeTypeWriter();
 
 		@Override
-		public void write(final IStreamNode<?> node, final Writer writer) throws IOException {
-			writer.append('[');
+		public void write(final IStreamNode<?> node, final JsonGenerator generator) throws IOException {
+			generator.writeAscii('[');
 
 			boolean first = true;
 			for (final IJsonNode elem : node) {
 				if (first)
 					first = false;
 				else
-					writer.append(',');
+					generator.writeAscii(',');
 
-				JsonTypeWriterPool.getJsonTypeWriterFor(elem).write(elem, writer);
+				JsonTypeWriterPool.getJsonTypeWriterFor(elem).write(elem, generator);
 			}
 
-			writer.append(']');
+			generator.writeAscii(']');
+		}
+	}
+
+	/**
+	 * This class implements the JSON-Serialization for {@link BooleanNode}s.
+	 */
+	private static class BooleanNodeTypeWriter implements JsonTypeWriter<BooleanNode> {
+
+		private static BooleanNodeTypeWriter Instance = new BooleanNodeTypeWriter();
+
+		@Override
+		public void write(final BooleanNode node, final JsonGenerator generator) throws IOException {
+			generator.writeAscii(node.getBooleanValue() ? "true" : "false");
 		}
 	}
 
 	/**
 	 * This class implements the JSON-Serialization for all IJsonNodes without
 	 * an explicit TypeWriter
-	 * 
+	 *
 	 * @param <T>
 	 */
 	private static class GenericNodeTypeWriter<T extends IJsonNode> implements JsonTypeWriter<IJsonNode> {
@@ -154,29 +465,44 @@ public class JsonGenerator {
 		private static GenericNodeTypeWriter<IJsonNode> Instance = new GenericNodeTypeWriter<IJsonNode>();
 
 		@Override
-		public void write(final IJsonNode node, final Writer writer) throws IOException {
-			node.appendAsString(writer);
+		public void write(final IJsonNode node, final JsonGenerator generator) throws IOException {
+			generator.writeGeneric(node);
+		}
+	}
+
+	/**
+	 * This class implements the JSON-Serialization for {@link IntNode}s and {@link LongNode}s.
+	 */
+	private static class IntegerNodeTypeWriter implements JsonTypeWriter<IJsonNode> {
+
+		private static IntegerNodeTypeWriter Instance = new IntegerNodeTypeWriter();
+
+		@Override
+		public void write(final IJsonNode node, final JsonGenerator generator) throws IOException {
+			generator.writeLong(node instanceof IntNode ? ((IntNode) node).getIntValue() :
+				((LongNode) node).getLongValue());
 		}
 	}
 
 	/**
 	 * This interface describes the general behavior of JsonTypeWriters.
-	 * 
+	 *
 	 * @param <T>
 	 *        A JsonTypeWriter should only be used with types implementing
 	 *        IJsonNode
 	 */
 	private static interface JsonTypeWriter<T extends IJsonNode> {
 		/**
-		 * This method takes a IJsonNode and a writer and let's the writer write the node in a type-specific way.
-		 * 
+		 * This method takes a IJsonNode and a generator and let's the generator write the node in a type-specific
+		 * way.
+		 *
 		 * @param node
 		 *        The node you want to write.
-		 * @param writer
-		 *        The writer you want to write in.
+		 * @param generator
+		 *        The generator you want to write in.
 		 * @throws IOException
 		 */
-		public void write(T node, Writer writer) throws IOException;
+		public void write(T node, JsonGenerator generator) throws IOException;
 	}
 
 	/**
@@ -189,12 +515,15 @@ public class JsonGenerator {
 		private static Map<Class<? extends IJsonNode>, JsonTypeWriter<IJsonNode>> writerMap;
 
 		static {
-			writerMap = new IdentityHashMap<Class<? extends IJsonNode>, JsonGenerator.JsonTypeWriter<IJsonNode>>(4);
+			writerMap = new IdentityHashMap<Class<? extends IJsonNode>, JsonGenerator.JsonTypeWriter<IJsonNode>>(8);
 			writerMap.put(TextNode.class, (JsonTypeWriter) TextNodeTypeWriter.Instance);
 			writerMap.put(IObjectNode.class, (JsonTypeWriter) ObjectNodeTypeWriter.Instance);
 			writerMap.put(IStreamNode.class, (JsonTypeWriter) ArrayNodeTypeWriter.Instance);
 			writerMap.put(IArrayNode.class, (JsonTypeWriter) ArrayNodeTypeWriter.Instance);
 			writerMap.put(NullNode.class, (JsonTypeWriter) NullNodeTypeWriter.Instance);
+			writerMap.put(IntNode.class, IntegerNodeTypeWriter.Instance);
+			writerMap.put(LongNode.class, IntegerNodeTypeWriter.Instance);
+			writerMap.put(BooleanNode.class, (JsonTypeWriter) BooleanNodeTypeWriter.Instance);
 		}
 
 		/**
@@ -220,8 +549,8 @@ public class JsonGenerator {
 		private static NullNodeTypeWriter Instance = new NullNodeTypeWriter();
 
 		@Override
-		public void write(final NullNode node, final Writer writer) throws IOException {
-			writer.append("null");
+		public void write(final NullNode node, final JsonGenerator generator) throws IOException {
+			generator.writeAscii("null");
 		}
 	}
 
@@ -233,21 +562,22 @@ public class JsonGenerator {
 		private static ObjectNodeTypeWriter Instance = new ObjectNodeTypeWriter();
 
 		@Override
-		public void write(final IObjectNode node, final Writer writer) throws IOException {
-			writer.append('{');
+		public void write(final IObjectNode node, final JsonGenerator generator) throws IOException {
+			generator.writeAscii('{');
 
 			boolean first = true;
 			for (final Map.Entry<String, IJsonNode> en : node) {
 				if (first)
 					first = false;
 				else
-					writer.append(',');
+					generator.writeAscii(',');
 
-				writer.append('\"').append(en.getKey()).append("\":");
-				JsonTypeWriterPool.getJsonTypeWriterFor(en.getValue()).write(en.getValue(), writer);
+				generator.writeQuoted(en.getKey());
+				generator.writeAscii(':');
+				JsonTypeWriterPool.getJsonTypeWriterFor(en.getValue()).write(en.getValue(), generator);
 			}
 
-			writer.append('}');
+			generator.writeAscii('}');
 		}
 	}
 
@@ -259,17 +589,8 @@ public class JsonGenerator {
 		private static TextNodeTypeWriter Instance = new TextNodeTypeWriter();
 
 		@Override
-		public void write(final TextNode node, final Writer writer) throws IOException {
-			writer.append('\"');
-			final CharSequence textValue = node;
-			for (int index = 0, count = textValue.length(); index < count; index++) {
-				final char ch = textValue.charAt(index);
-				if (ch == '"')
-					writer.append("\\\"");
-				else
-					writer.append(ch);
-			}
-			writer.append('\"');
+		public void write(final TextNode node, final JsonGenerator generator) throws IOException {
+			generator.writeQuoted(node);
 		}
 	}
 }
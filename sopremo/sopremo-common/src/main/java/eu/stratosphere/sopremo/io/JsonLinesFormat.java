@@ -0,0 +1,255 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import eu.stratosphere.api.common.io.statistics.BaseStatistics;
+import eu.stratosphere.core.fs.FSDataInputStream;
+import eu.stratosphere.core.fs.FSDataOutputStream;
+import eu.stratosphere.core.fs.FileInputSplit;
+import eu.stratosphere.core.fs.FileStatus;
+import eu.stratosphere.core.fs.FileSystem;
+import eu.stratosphere.runtime.fs.LineReader;
+import eu.stratosphere.sopremo.operator.Name;
+import eu.stratosphere.sopremo.type.IJsonNode;
+
+/**
+ * Format for newline-delimited json files, in which each line contains one json value.<br />
+ * In contrast to the {@link JsonFormat}, a file is divided into several splits that are read in parallel. Each split
+ * starts with the first line that begins within the split and ends with the last line that begins within the split.
+ * Since line feeds are detected on the bytes of the file, the encoding must represent line feeds as a single byte, as
+ * UTF-8 and all ASCII-based encodings do.
+ */
+@Name(noun = { "jsonl", "ndjson" })
+public class JsonLinesFormat extends SopremoFormat {
+	/**
+	 * The default number of sample lines to consider when calculating the average record size.
+	 */
+	public static final int DEFAULT_NUM_SAMPLES = 10;
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.io.SopremoFormat#getPreferredFilenameExtensions()
+	 */
+	@Override
+	protected String[] getPreferredFilenameExtensions() {
+		return new String[] { "jsonl", "ndjson" };
+	}
+
+	/**
+	 * Reads the values of the lines that begin within a split.
+	 */
+	public static class JsonLinesInputFormat extends SopremoFileInputFormat {
+		/**
+		 *
+		 */
+		private static final long serialVersionUID = -2867186208386283395L;
+
+		private static final int BUFFER_SIZE = 64 * 1024;
+
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		private int bufferPosition, bufferLimit;
+
+		private byte[] line = new byte[1024];
+
+		private int lineLength;
+
+		private long position, end;
+
+		private FSDataInputStream input;
+
+		private Charset charset;
+
+		private JsonParser parser;
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat#nextValue()
+		 */
+		@Override
+		public IJsonNode nextValue() throws IOException {
+			while (this.readLine()) {
+				this.parser.setInput(new String(this.line, 0, this.lineLength, this.charset));
+				// skip blank lines
+				if (!this.parser.checkEnd())
+					return this.parser.readValueAsTree();
+			}
+			this.endReached();
+			return null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat#getAverageRecordBytes(eu.stratosphere.core.fs
+		 * .FileSystem, java.util.ArrayList, long)
+		 */
+		@Override
+		protected float getAverageRecordBytes(final FileSystem fileSystem, final ArrayList<FileStatus> files,
+				final long fileSize) throws IOException {
+			if (fileSize == 0)
+				return BaseStatistics.AVG_RECORD_BYTES_UNKNOWN;
+
+			// sample the lines at equidistant offsets over all files
+			final int numSamples = Math.max(2, Math.min(DEFAULT_NUM_SAMPLES, (int) (fileSize / 1024)));
+			final long stepSize = fileSize / numSamples;
+			long bytes = 0, offset = 0;
+			int samplesTaken = 0, fileIndex = 0;
+			for (int sampleIndex = 0; sampleIndex < numSamples && fileIndex < files.size(); sampleIndex++) {
+				final FileStatus file = files.get(fileIndex);
+				final FSDataInputStream stream = fileSystem.open(file.getPath());
+				try {
+					final LineReader lineReader = new LineReader(stream, offset, file.getLen() - offset, 1024);
+					// a line that does not start at the beginning of the file is most likely incomplete
+					byte[] line = lineReader.readLine();
+					if (offset > 0 && line != null)
+						line = lineReader.readLine();
+					lineReader.close();
+					if (line != null && line.length > 0) {
+						bytes += line.length + 1;
+						samplesTaken++;
+					}
+				} finally {
+					stream.close();
+				}
+
+				// skip to the next file, if necessary
+				offset += stepSize;
+				for (; fileIndex < files.size() && offset >= files.get(fileIndex).getLen(); fileIndex++)
+					offset -= files.get(fileIndex).getLen();
+			}
+
+			return samplesTaken == 0 ? BaseStatistics.AVG_RECORD_BYTES_UNKNOWN : bytes / (float) samplesTaken;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat#open(eu.stratosphere.core.fs.FSDataInputStream
+		 * , eu.stratosphere.core.fs.FileInputSplit)
+		 */
+		@Override
+		protected void open(final FSDataInputStream stream, final FileInputSplit split) throws IOException {
+			this.input = stream;
+			this.charset = Charset.forName(this.getEncoding());
+			this.parser = new JsonParser("");
+			this.parser.setNodeReuse(true);
+			this.parser.setProjectedFields(this.getProjectedFields());
+			this.bufferPosition = this.bufferLimit = 0;
+			this.end = split.getStart() + split.getLength();
+			// the line that contains the split start belongs to the previous split unless it starts exactly there
+			this.position = split.getStart();
+			if (this.position > 0) {
+				this.input.seek(--this.position);
+				this.readLine();
+			}
+		}
+
+		/**
+		 * Fills the buffer with the next bytes of the stream.
+		 *
+		 * @return false if the end of the stream has been reached
+		 */
+		private boolean fillBuffer() throws IOException {
+			final int read = this.input.read(this.buffer, 0, this.buffer.length);
+			this.bufferPosition = 0;
+			this.bufferLimit = Math.max(read, 0);
+			return read > 0;
+		}
+
+		/**
+		 * Reads the next line that begins before the end of the split into {@link #line} without the line feed.
+		 *
+		 * @return false if no further line begins within the split
+		 */
+		private boolean readLine() throws IOException {
+			if (this.position >= this.end)
+				return false;
+
+			this.lineLength = 0;
+			while (true) {
+				if (this.bufferPosition == this.bufferLimit && !this.fillBuffer())
+					return this.lineLength > 0;
+
+				int index = this.bufferPosition;
+				while (index < this.bufferLimit && this.buffer[index] != '\n')
+					index++;
+				final int length = index - this.bufferPosition;
+				if (this.lineLength + length > this.line.length)
+					this.line = Arrays.copyOf(this.line, Math.max(2 * this.line.length, this.lineLength + length));
+				System.arraycopy(this.buffer, this.bufferPosition, this.line, this.lineLength, length);
+				this.lineLength += length;
+				this.position += length;
+
+				if (index < this.bufferLimit) {
+					// skip the line feed
+					this.bufferPosition = index + 1;
+					this.position++;
+					return true;
+				}
+				this.bufferPosition = index;
+			}
+		}
+	}
+
+	/**
+	 * Writes each value on a separate line with a line-delimited {@link JsonGenerator}.
+	 */
+	public static class JsonLinesOutputFormat extends SopremoFileOutputFormat {
+		/**
+		 *
+		 */
+		private static final long serialVersionUID = 6410383407468627035L;
+
+		private transient JsonGenerator generator;
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileOutputFormat#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			this.generator.close();
+			super.close();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see
+		 * eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileOutputFormat#writeValue(eu.stratosphere.sopremo.type.
+		 * IJsonNode)
+		 */
+		@Override
+		public void writeValue(final IJsonNode value) throws IOException {
+			this.generator.writeTree(value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileOutputFormat#open(eu.stratosphere.core.fs.
+		 * FSDataOutputStream, int)
+		 */
+		@Override
+		protected void open(final FSDataOutputStream stream, final int taskNumber) throws IOException {
+			this.generator = this.createGenerator(stream);
+			this.generator.setLineDelimited(true);
+		}
+	}
+}
@@ -1,23 +1,19 @@
 package eu.stratosphere.sopremo.io;
 
-import it.unimi.dsi.fastutil.chars.Char2ObjectMap;
-import it.unimi.dsi.fastutil.chars.Char2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.chars.CharArrayList;
-import it.unimi.dsi.fastutil.chars.CharList;
-
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import eu.stratosphere.core.fs.FSDataInputStream;
 import eu.stratosphere.sopremo.type.ArrayNode;
@@ -27,28 +23,36 @@ import eu.stratosphere.sopremo.type.DecimalNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
 import eu.stratosphere.sopremo.type.IntNode;
 import eu.stratosphere.sopremo.type.LongNode;
-import eu.stratosphere.sopremo.type.MissingNode;
 import eu.stratosphere.sopremo.type.NullNode;
 import eu.stratosphere.sopremo.type.ObjectNode;
 import eu.stratosphere.sopremo.type.TextNode;
 
+/**
+ * Parses json values into {@link IJsonNode}s.<br />
+ * The input is read in blocks into a character buffer that the parser scans directly. Integral numbers with at most
+ * {@value #MAX_FAST_DIGITS} digits are accumulated into an int or long, while only larger or fractional numbers are
+ * converted with {@link BigInteger} or {@link BigDecimal}. Recurring object keys are shared between the parsed values.
+ * Additionally, the parser may fill the nodes of the previously returned value instead of creating new nodes (see
+ * {@link #setNodeReuse(boolean)}) and skip unused fields of the returned objects (see
+ * {@link #setProjectedFields(Set)}).
+ */
 public class JsonParser {
+	private static final int BUFFER_SIZE = 8 * 1024;
 
-	private final BufferedReader reader;
+	private static final int MAX_FAST_DIGITS = 18;
 
-	private boolean reachedEnd;
+	private static final int KEY_CACHE_SIZE = 256;
 
-	private int currentCounter;
+	private static final int EOF = -1;
 
-	private boolean skipWrappingArray;
+	private static final char ELEMENT_SEPARATOR = ',', KEY_VALUE_SEPARATOR = ':', QUOTE = '"', ESCAPE = '\\';
 
-	private boolean skippedArray;
+	private static final char ARRAY_START = '[', ARRAY_END = ']', OBJECT_START = '{', OBJECT_END = '}';
 
-	private static char ELEMENT_SEPARATOR = ',';
+	private static final String ROOT = "root element", OBJECT = "json object", ARRAY = "json array",
+			STRING = "string value", BOOLEAN = "boolean value", NUMBER = "numerical value", NULL = "null value";
 
-	private static char ARRAY_START = '[', ARRAY_END = ']';
-
-	private static int STEP_SIZE = 1;
+	private static final String EXPECTED_VALUE = "one of ['{', '[', 't', 'f', 'n', '-' , 0-9, '\"']";
 
 	private static String JSON_URL = "www.json.org";
 
@@ -58,7 +62,44 @@ public class JsonParser {
 		"Invalid json format at position %s (visit " + JSON_URL
 		+ " for a detailed specification).\nCurrent Token: %s.\nExpected \"%s\", but was \"%s\".";
 
-	private static String ERROR_IO = ERROR_BASE + "Couldn't access input or mark the input for reset at position %s";
+	private static String ERROR_IO = ERROR_BASE + "Couldn't access input at position %s";
+
+	private Reader reader;
+
+	private char[] buffer;
+
+	private int bufferPosition, bufferLimit;
+
+	/**
+	 * The number of characters in all previously filled buffers.
+	 */
+	private int bufferOffset;
+
+	private int eofReads;
+
+	private boolean opened;
+
+	private boolean reachedEnd;
+
+	private boolean skipWrappingArray;
+
+	private boolean skippedArray;
+
+	private boolean nodeReuse;
+
+	private IJsonNode lastValue;
+
+	private char[] text = new char[64];
+
+	private int textLength;
+
+	private final String[] keyCache = new String[KEY_CACHE_SIZE];
+
+	private final List<Map<String, IJsonNode>> reusableFields = new ArrayList<Map<String, IJsonNode>>();
+
+	private int objectDepth;
+
+	private Set<String> projectedFields;
 
 	public JsonParser(final FSDataInputStream stream) {
 		this(new InputStreamReader(stream, Charset.forName("utf-8")));
@@ -72,16 +113,17 @@ public class JsonParser {
 	 * Constructors
 	 */
 	public JsonParser(final Reader inputStreamReader) {
-		this.reader = new BufferedReader(inputStreamReader);
-		this.initialize();
+		this.reader = inputStreamReader;
+		this.buffer = new char[BUFFER_SIZE];
 	}
 
 	public JsonParser(final String value) {
-		this(new BufferedReader(new StringReader(value)));
+		this.buffer = value.toCharArray();
+		this.bufferLimit = this.buffer.length;
 	}
 
 	public JsonParser(final URL url) throws IOException {
-		this(new BufferedReader(new InputStreamReader(url.openStream())));
+		this(new InputStreamReader(url.openStream()));
 	}
 
 	/**
@@ -90,37 +132,19 @@ public class JsonParser {
 	 * @return either the whole input is already parsed or not
 	 */
 	public boolean checkEnd() throws JsonParseException {
-		if (this.currentCounter == 0 && !this.reachedEnd)
+		if (!this.opened)
 			this.open();
 		return this.reachedEnd;
 	}
 
-	private void open() throws JsonParseException {
-		this.skippedArray = false;
-		this.markReader();
-		int currentChar = this.readIgnoreWhitespace();
-		if (currentChar == -1) {
-			this.reachedEnd = true;
-			return;
-		}
-		if (this.skipWrappingArray)
-			if (currentChar == ARRAY_START) {
-				this.markReader();
-				this.skippedArray = true;
-				currentChar = this.readIgnoreWhitespace();
-				if (currentChar == ARRAY_END)
-					this.reachedEnd = true;
-			}
-		this.resetReader();
-	}
-
 	/**
 	 * Closes the stream to the input of this parser.
 	 * 
 	 * @throws IOException
 	 */
 	public void close() throws IOException {
-		this.reader.close();
+		if (this.reader != null)
+			this.reader.close();
 	}
 
 	/**
@@ -129,7 +153,25 @@ public class JsonParser {
 	 * @return the number of characters
 	 */
 	public int getNumberOfParsedChars() {
-		return this.currentCounter - 1;
+		return this.bufferOffset + this.bufferPosition + this.eofReads - 1;
+	}
+
+	/**
+	 * Returns the fields of the returned objects that are parsed or null if all fields are parsed.
+	 * 
+	 * @return the projected fields
+	 */
+	public Set<String> getProjectedFields() {
+		return this.projectedFields;
+	}
+
+	/**
+	 * Returns whether the nodes of the previously returned value are reused.
+	 * 
+	 * @return true if nodes are reused
+	 */
+	public boolean isNodeReuse() {
+		return this.nodeReuse;
 	}
 
 	/*
@@ -137,8 +179,7 @@ public class JsonParser {
 	 */
 	/**
 	 * Parses the next possible element contained in the input and creates a corresponding {@link IJsonNode}. To specify
-	 * multiple elements in one input they must be separated with ','. After reaching the end of the input, each
-	 * subsequent call to this method will return a {@link MissingNode}.
+	 * multiple elements in one input they must be wrapped in an array and the wrapping array skipping must be enabled.
 	 * 
 	 * @return the parsed element as an {@link IJsonNode}
 	 * @throws JsonParseException
@@ -146,513 +187,578 @@ public class JsonParser {
 	 *         reason of failure consult {@link JsonParseException#getMessage()}.
 	 */
 	public IJsonNode readValueAsTree() throws JsonParseException {
-		if (this.currentCounter == 0 && !this.reachedEnd)
+		if (!this.opened)
 			this.open();
-		int currentChar = this.readIgnoreWhitespace();
-		final IJsonNode result = this.parseElement(currentChar);
+		this.objectDepth = 0;
+		final int startChar = this.readIgnoreWhitespace();
+		final IJsonNode result = startChar == OBJECT_START ?
+			this.parseObject(this.lastValue, this.projectedFields) :
+			this.parseValue(ROOT, startChar, this.lastValue);
 		if (this.skippedArray) {
-			if (this.expect(this.readIgnoreWhitespace(), ELEMENT_SEPARATOR, ARRAY_END) == ARRAY_END)
+			if (this.expect(ROOT, this.readIgnoreWhitespace(), ELEMENT_SEPARATOR, ARRAY_END) == ARRAY_END)
 				this.reachedEnd = true;
 		} else {
-			this.expect(this.readIgnoreWhitespace(), -1);
+			this.expect(ROOT, this.readIgnoreWhitespace(), EOF);
 			this.reachedEnd = true;
 		}
+		if (this.nodeReuse)
+			this.lastValue = result;
 		return result;
 	}
 
-	private int expect(int currentChar, int... possibleChars) throws JsonParseException {
-		for (int possibleChar : possibleChars)
-			if (currentChar == possibleChar)
-				return possibleChar;
-		StringBuilder builder = new StringBuilder();
-		for (int possibleChar : possibleChars)
-			builder.append('\'').append((char) possibleChar).append("\', ");
-		builder.setLength(builder.length() - 2);
-		throw this.getParseException(this.getRoot().getName(), builder.toString(),
-			String.valueOf((char) currentChar));
+	/**
+	 * Replaces the input of this parser with the given value, such that one parser can be used for many small inputs.
+	 * A previously given stream is not closed. All settings of the parser are retained.
+	 * 
+	 * @param value
+	 *        the new input
+	 */
+	public void setInput(final String value) {
+		final int length = value.length();
+		if (this.buffer.length < length)
+			this.buffer = new char[Math.max(length, 2 * this.buffer.length)];
+		value.getChars(0, length, this.buffer, 0);
+		this.reader = null;
+		this.bufferPosition = this.bufferOffset = this.eofReads = 0;
+		this.bufferLimit = length;
+		this.opened = this.reachedEnd = false;
+	}
+
+	/**
+	 * Sets whether the nodes of the previously returned value are filled with the next value. Reusing nodes avoids
+	 * most allocations when parsing many values with a similar structure but overwrites the previous value. Thus, the
+	 * caller must not retain any references to previously returned values.
+	 * 
+	 * @param nodeReuse
+	 *        true if nodes should be reused
+	 */
+	public void setNodeReuse(final boolean nodeReuse) {
+		this.nodeReuse = nodeReuse;
+		if (!nodeReuse)
+			this.lastValue = null;
+	}
+
+	/**
+	 * Sets the fields of the returned objects that should be parsed. All other fields are skipped without creating
+	 * nodes and are only checked for balanced brackets and quotes. Nested objects are always parsed completely.
+	 * 
+	 * @param projectedFields
+	 *        the fields to parse or null if all fields should be parsed
+	 */
+	public void setProjectedFields(final Set<String> projectedFields) {
+		this.projectedFields = projectedFields;
 	}
 
 	public void setWrappingArraySkipping(final boolean skipWrappingArray) {
 		this.skipWrappingArray = skipWrappingArray;
 	}
 
-	private JsonParseException getIOException() {
-		return new JsonParseException(String.format(JsonParser.ERROR_IO, this.getNumberOfParsedChars()));
+	private void appendText(final char character) {
+		if (this.textLength == this.text.length)
+			this.growText(1);
+		this.text[this.textLength++] = character;
 	}
 
-	private JsonParseException getParseException(final String currentToken, final String expectedValue,
-			final String currentValue) {
-		return new JsonParseException(String.format(JsonParser.ERROR_INVALID_JSON, this.getNumberOfParsedChars() + 1,
-			currentToken, expectedValue, currentValue));
+	private void appendText(final char[] characters, final int start, final int length) {
+		if (this.textLength + length > this.text.length)
+			this.growText(length);
+		System.arraycopy(characters, start, this.text, this.textLength, length);
+		this.textLength += length;
 	}
 
-	private STATE getRoot() {
-		return STATE.ROOT;
+	private static String describe(final int character) {
+		return character == EOF ? "eof" : String.valueOf((char) character);
 	}
 
-	private void initialize() {
-		STATE.initializeTransitions();
-		this.currentCounter = 0;
-		this.reachedEnd = false;
+	private int expect(final String currentToken, final int currentChar, final int... possibleChars)
+			throws JsonParseException {
+		for (final int possibleChar : possibleChars)
+			if (currentChar == possibleChar)
+				return possibleChar;
+		final StringBuilder builder = new StringBuilder();
+		for (final int possibleChar : possibleChars)
+			builder.append('\'').append(describe(possibleChar)).append("\', ");
+		builder.setLength(builder.length() - 2);
+		throw this.getParseException(currentToken, builder.toString(), describe(currentChar));
 	}
 
-	/*
-	 * private
-	 */
-	private void markReader() throws JsonParseException {
-		try {
-			this.reader.mark(JsonParser.STEP_SIZE);
-		} catch (final IOException e) {
-			throw this.getIOException();
+	private void expectLiteral(final String currentToken, final String remainingChars) throws JsonParseException {
+		for (int index = 0; index < remainingChars.length(); index++) {
+			final int currentChar = this.read();
+			if (currentChar != remainingChars.charAt(index))
+				throw this.getParseException(currentToken, String.valueOf(remainingChars.charAt(index)),
+					describe(currentChar));
 		}
 	}
 
-	private IJsonNode parseElement(final int currentChar) throws JsonParseException {
-		final STATE nextState = this.getRoot().nextState((char) currentChar);
-		if (nextState == null)
-			throw this.getParseException(this.getRoot().getName(), "one of ['{', '[', 't', 'f', 'n', 0-9, '\"', '-']",
-				String.valueOf((char) currentChar));
-		return nextState.createJsonNode((char) currentChar, this);
-	}
+	/**
+	 * Reads the next block of the input into the buffer.
+	 * 
+	 * @return false if the end of the input has been reached
+	 */
+	private boolean fillBuffer() throws JsonParseException {
+		if (this.reader == null)
+			return false;
 
-	private int read() throws JsonParseException {
-		int character;
+		final int read;
 		try {
-			character = this.reader.read();
+			read = this.reader.read(this.buffer, 0, this.buffer.length);
 		} catch (final IOException e) {
 			throw this.getIOException();
 		}
-		this.currentCounter++;
-		return character;
+		this.bufferOffset += this.bufferLimit;
+		this.bufferPosition = 0;
+		this.bufferLimit = Math.max(read, 0);
+		return read > 0;
 	}
 
-	private int readIgnoreWhitespace() throws JsonParseException {
-		int nextChar = this.read();
-		while (Character.isWhitespace((char) nextChar) && nextChar != -1)
-			nextChar = this.read();
-		return nextChar;
+	private JsonParseException getIOException() {
+		return new JsonParseException(String.format(JsonParser.ERROR_IO, this.getNumberOfParsedChars()));
 	}
 
-	private void resetReader() throws JsonParseException {
-		try {
-			this.reader.reset();
-		} catch (final IOException e) {
-			throw this.getIOException();
-		}
-		this.currentCounter = this.currentCounter - JsonParser.STEP_SIZE;
+	private JsonParseException getParseException(final String currentToken, final String expectedValue,
+			final String currentValue) {
+		return new JsonParseException(String.format(JsonParser.ERROR_INVALID_JSON, this.getNumberOfParsedChars() + 1,
+			currentToken, expectedValue, currentValue));
 	}
 
-	private enum STATE {
-		OBJECT {
-			private final char charToFinishObject = '}';
-
-			private final char keyValueSeparator = ':';
+	private Map<String, IJsonNode> getReusableFields() {
+		if (this.objectDepth == this.reusableFields.size())
+			this.reusableFields.add(new HashMap<String, IJsonNode>());
+		final Map<String, IJsonNode> fields = this.reusableFields.get(this.objectDepth);
+		fields.clear();
+		return fields;
+	}
 
-			private final char elementSeparator = ',';
+	private void growText(final int minIncrement) {
+		final char[] newText = new char[Math.max(2 * this.text.length, this.text.length + minIncrement)];
+		System.arraycopy(this.text, 0, newText, 0, this.textLength);
+		this.text = newText;
+	}
 
-			@Override
-			public IJsonNode createJsonNode(final char startChar, final JsonParser parser) throws JsonParseException {
+	private static boolean isDigit(final int character) {
+		return '0' <= character && character <= '9';
+	}
 
-				boolean currentInputIsAKey = true;
-				final ObjectNode result = new ObjectNode();
-				final StringBuffer currentKey = new StringBuffer();
-				int nextChar;
+	private static boolean isNumberChar(final int character) {
+		switch (character) {
+		case '-':
+		case '+':
+		case '.':
+		case 'e':
+		case 'E':
+			return true;
+		default:
+			return isDigit(character);
+		}
+	}
 
-				while ((nextChar = parser.readIgnoreWhitespace()) != this.charToFinishObject) {
-					if (this.handleSpecialChar(nextChar, currentInputIsAKey, parser))
-						continue;
-					currentInputIsAKey = this.handleElement(nextChar, currentKey, parser, currentInputIsAKey,
-						result);
-				}
-				if (!currentInputIsAKey)
-					throw parser.getParseException(this.getName(), "json value expected",
-						String.valueOf(this.charToFinishObject));
-				return result;
+	private void open() throws JsonParseException {
+		this.opened = true;
+		this.skippedArray = false;
+		final int firstChar = this.peekIgnoreWhitespace();
+		if (firstChar == EOF) {
+			this.read();
+			this.reachedEnd = true;
+			return;
+		}
+		if (this.skipWrappingArray && firstChar == ARRAY_START) {
+			this.bufferPosition++;
+			this.skippedArray = true;
+			if (this.peekIgnoreWhitespace() == ARRAY_END) {
+				this.bufferPosition++;
+				this.reachedEnd = true;
 			}
+		}
+	}
 
-			@Override
-			protected String getName() {
-				return "json object";
-			}
+	@SuppressWarnings("unchecked")
+	private IJsonNode parseArray(final IJsonNode reuse) throws JsonParseException {
+		final ArrayNode<IJsonNode> array =
+			reuse instanceof ArrayNode ? (ArrayNode<IJsonNode>) reuse : new ArrayNode<IJsonNode>();
+		final int previousSize = array == reuse ? array.size() : 0;
+		int size = 0;
 
-			@Override
-			protected void initialize() {
-				this.transitions.put('{', STATE.OBJECT);
-				this.transitions.put('[', STATE.ARRAY);
-				this.transitions.put('t', STATE.BOOLEAN);
-				this.transitions.put('f', STATE.BOOLEAN);
-				this.transitions.put('n', STATE.NULL);
-				this.transitions.put('-', STATE.NUMBER);
-				this.transitions.put('0', STATE.NUMBER);
-				this.transitions.put('1', STATE.NUMBER);
-				this.transitions.put('2', STATE.NUMBER);
-				this.transitions.put('3', STATE.NUMBER);
-				this.transitions.put('4', STATE.NUMBER);
-				this.transitions.put('5', STATE.NUMBER);
-				this.transitions.put('6', STATE.NUMBER);
-				this.transitions.put('7', STATE.NUMBER);
-				this.transitions.put('8', STATE.NUMBER);
-				this.transitions.put('9', STATE.NUMBER);
-				this.transitions.put('"', STATE.STRING);
-			}
+		int currentChar = this.readIgnoreWhitespace();
+		if (currentChar != ARRAY_END)
+			while (true) {
+				if (size < previousSize)
+					array.set(size, this.parseValue(ARRAY, currentChar, array.get(size)));
+				else
+					array.add(this.parseValue(ARRAY, currentChar, null));
+				size++;
 
-			private boolean handleElement(final int nextChar, final StringBuffer currentKey, final JsonParser parser,
-					final boolean currentInputIsAKey,
-					final ObjectNode result) throws JsonParseException {
-				final STATE state = this.nextState((char) nextChar);
-				if (state == null)
-					throw parser.getParseException(this.getName(),
-						"one of ['{', '[', 't', 'f', 'n', '-' , 0-9, '\"']", String.valueOf((char) nextChar));
-				final IJsonNode element = state.createJsonNode((char) nextChar,
-					parser);
-				if (currentInputIsAKey) {
-					if (!(element instanceof TextNode))
-						throw parser.getParseException(this.getName(), "key must be a string", element
-							.getType().toString());
-					currentKey.append((TextNode) element);
-					return false;
-				}
-				result.put(currentKey.toString(), element);
-				currentKey.delete(0, currentKey.length());
-				return true;
+				currentChar = this.readIgnoreWhitespace();
+				if (currentChar == ARRAY_END)
+					break;
+				this.expect(ARRAY, currentChar, ELEMENT_SEPARATOR);
+				currentChar = this.readIgnoreWhitespace();
 			}
 
-			private boolean handleSpecialChar(final int character, final boolean keyNext, final JsonParser parser)
-					throws JsonParseException {
-				if (character == -1)
-					throw parser.getParseException(this.getName(),
-						String.valueOf(this.charToFinishObject),
-						"eof");
-				if ((char) character == this.elementSeparator)
-					return true;
-				if ((char) character == this.keyValueSeparator) {
-					if (keyNext)
-						throw parser.getParseException(this.getName(), "key expected",
-							String.valueOf(this.keyValueSeparator));
-					return true;
-				}
-				return false;
-			}
-		},
-		ARRAY {
-			private final char charToFinishArray = ']';
-
-			private final char arrayElementSeparator = ',';
-
-			@Override
-			public IJsonNode createJsonNode(final char startChar, final JsonParser parser) throws JsonParseException {
-
-				final List<IJsonNode> result = new ArrayList<IJsonNode>();
-				boolean valueExpected = false;
-				int nextChar;
-
-				while ((nextChar = parser.readIgnoreWhitespace()) != this.charToFinishArray) {
-					if (this.handleSpecialChar(nextChar, parser, valueExpected, result.size())) {
-						valueExpected = true;
-						continue;
-					}
-					this.handleElement(nextChar, result, parser);
-					valueExpected = false;
-				}
-				if (valueExpected)
-					throw parser.getParseException(this.getName(), "json value",
-						String.valueOf(this.charToFinishArray));
-				return ArrayNode.valueOf(result.iterator());
-			}
+		for (int index = previousSize - 1; index >= size; index--)
+			array.remove(index);
+		return array;
+	}
 
-			@Override
-			protected String getName() {
-				return "json array";
-			}
+	/**
+	 * Returns the key that has just been read into {@link #text}. Recurring keys share the same string.
+	 */
+	private String parseKey() {
+		int hash = 0;
+		for (int index = 0; index < this.textLength; index++)
+			hash = 31 * hash + this.text[index];
+		final int cacheIndex = (hash ^ hash >>> 16) & KEY_CACHE_SIZE - 1;
+
+		final String cachedKey = this.keyCache[cacheIndex];
+		if (cachedKey != null && cachedKey.length() == this.textLength) {
+			int index = 0;
+			while (index < this.textLength && cachedKey.charAt(index) == this.text[index])
+				index++;
+			if (index == this.textLength)
+				return cachedKey;
+		}
+		return this.keyCache[cacheIndex] = new String(this.text, 0, this.textLength);
+	}
 
-			@Override
-			protected void initialize() {
-				this.transitions.put('{', STATE.OBJECT);
-				this.transitions.put('[', STATE.ARRAY);
-				this.transitions.put('t', STATE.BOOLEAN);
-				this.transitions.put('f', STATE.BOOLEAN);
-				this.transitions.put('n', STATE.NULL);
-				this.transitions.put('-', STATE.NUMBER);
-				this.transitions.put('0', STATE.NUMBER);
-				this.transitions.put('1', STATE.NUMBER);
-				this.transitions.put('2', STATE.NUMBER);
-				this.transitions.put('3', STATE.NUMBER);
-				this.transitions.put('4', STATE.NUMBER);
-				this.transitions.put('5', STATE.NUMBER);
-				this.transitions.put('6', STATE.NUMBER);
-				this.transitions.put('7', STATE.NUMBER);
-				this.transitions.put('8', STATE.NUMBER);
-				this.transitions.put('9', STATE.NUMBER);
-				this.transitions.put('"', STATE.STRING);
+	private IJsonNode parseNumber(final char startChar, final IJsonNode reuse) throws JsonParseException {
+		this.textLength = 0;
+		this.appendText(startChar);
+		final boolean negative = startChar == '-';
+		long value = negative ? 0 : startChar - '0';
+		int integerDigits = negative ? 0 : 1, fractionDigits = 0, exponentDigits = 0;
+		boolean integral = true, valid;
+
+		int currentChar;
+		while (isDigit(currentChar = this.peek())) {
+			value = 10 * value + currentChar - '0';
+			integerDigits++;
+			this.skipNumberChar(currentChar);
+		}
+		if (currentChar == '.') {
+			integral = false;
+			this.skipNumberChar(currentChar);
+			while (isDigit(currentChar = this.peek())) {
+				fractionDigits++;
+				this.skipNumberChar(currentChar);
 			}
-
-			private void handleElement(final int nextChar, final List<IJsonNode> result, final JsonParser parser)
-					throws JsonParseException {
-				final STATE state = this.nextState((char) nextChar);
-				if (state == null)
-					throw parser.getParseException(this.getName(),
-						"one of ['{', '[', 't', 'f', 'n', '-' , 0-9, '\"']", String.valueOf((char) nextChar));
-				final IJsonNode element = state.createJsonNode((char) nextChar,
-					parser);
-				result.add(element);
+			valid = fractionDigits > 0;
+		} else
+			valid = integerDigits > 0;
+		if (currentChar == 'e' || currentChar == 'E') {
+			integral = false;
+			this.skipNumberChar(currentChar);
+			if ((currentChar = this.peek()) == '-' || currentChar == '+')
+				this.skipNumberChar(currentChar);
+			while (isDigit(currentChar = this.peek())) {
+				exponentDigits++;
+				this.skipNumberChar(currentChar);
 			}
+			valid &= exponentDigits > 0;
+		}
+		// characters that may occur in numbers must not follow directly
+		while (isNumberChar(currentChar = this.peek())) {
+			valid = false;
+			this.skipNumberChar(currentChar);
+		}
+		if (!valid)
+			throw this.getParseException(NUMBER, "a numerical value", new String(this.text, 0, this.textLength));
+
+		if (integral && integerDigits <= MAX_FAST_DIGITS)
+			return this.toIntegralNode(negative ? -value : value, reuse);
+
+		final String number = new String(this.text, 0, this.textLength);
+		if (integral)
+			return this.toIntegralNode(new BigInteger(number), reuse);
+		final BigDecimal decimal = new BigDecimal(number);
+		if (decimal.scale() == 0)
+			return this.toIntegralNode(decimal.unscaledValue(), reuse);
+		if (reuse instanceof DecimalNode) {
+			((DecimalNode) reuse).setValue(decimal);
+			return reuse;
+		}
+		return DecimalNode.valueOf(decimal);
+	}
 
-			private boolean handleSpecialChar(final int nextChar, final JsonParser parser, final boolean valueExpected,
-					final int currentResultSize) throws JsonParseException {
-				if (nextChar == -1)
-					throw parser.getParseException(this.getName(),
-						String.valueOf(this.charToFinishArray),
-						"eof");
-				if ((char) nextChar == this.arrayElementSeparator) {
-					if (currentResultSize == 0 || valueExpected)
-						throw parser.getParseException(this.getName(), "json value",
-							String.valueOf(this.arrayElementSeparator));
-					return true;
-				}
-				return false;
-			}
-		},
-		STRING {
-			private final char charToFinishString = '"';
-
-			@Override
-			public IJsonNode createJsonNode(final char startChar, final JsonParser parser) throws JsonParseException {
-				final StringBuffer buffer = new StringBuffer();
-
-				for (char nextChar = (char) parser.read(); nextChar != this.charToFinishString; nextChar =
-					(char) parser.read())
-					if (nextChar == '\\')
-						buffer.append(this.unescape(parser));
-					else
-						buffer.append(nextChar);
-				return TextNode.valueOf(buffer.toString());
-			}
+	/**
+	 * Parses the remainder of an object. Fields that are not contained in the given set are skipped.
+	 * 
+	 * @param reuse
+	 *        the node that may be filled with the object or null
+	 * @param fields
+	 *        the fields to parse or null if all fields should be parsed
+	 * @return the parsed object
+	 */
+	private IJsonNode parseObject(final IJsonNode reuse, final Set<String> fields) throws JsonParseException {
+		final ObjectNode object;
+		Map<String, IJsonNode> reusableFields = null;
+		if (reuse instanceof ObjectNode) {
+			object = (ObjectNode) reuse;
+			reusableFields = this.getReusableFields();
+			for (final Entry<String, IJsonNode> field : object)
+				reusableFields.put(field.getKey(), field.getValue());
+			object.clear();
+		} else
+			object = new ObjectNode();
+		this.objectDepth++;
 
-			@Override
-			protected String getName() {
-				return "string value";
-			}
+		int currentChar = this.readIgnoreWhitespace();
+		if (currentChar != OBJECT_END)
+			while (true) {
+				if (currentChar != QUOTE)
+					throw this.getParseException(OBJECT, "key must be a string", describe(currentChar));
+				this.readText();
+				final String key = this.parseKey();
+				this.expect(OBJECT, this.readIgnoreWhitespace(), KEY_VALUE_SEPARATOR);
+				if (fields == null || fields.contains(key))
+					object.put(key, this.parseValue(OBJECT, this.readIgnoreWhitespace(),
+						reusableFields == null ? null : reusableFields.remove(key)));
+				else
+					this.skipValue(this.readIgnoreWhitespace());
 
-			private char unescape(final JsonParser parser) throws JsonParseException {
-				final char escapeChar = (char) parser.read();
-				switch (escapeChar) {
-				case '"':
-				case '\\':
-				case '/':
-					return escapeChar;
-
-				case 'b':
-					return '\b';
-				case 'f':
-					return '\f';
-				case 'n':
-					return '\n';
-				case 'r':
-					return '\r';
-				case 't':
-					return '\t';
-
-				case 'u':
-					final char[] hexCode =
-					{ (char) parser.read(), (char) parser.read(), (char) parser.read(), (char) parser.read(), };
-					return (char) Integer.parseInt(String.valueOf(hexCode), 16);
-
-				default:
-					throw parser.getParseException(this.getName(),
-						"a valid escape sequence \\(\" | \\ | / | b | f | n | r | t | uXXXX)",
-						String.valueOf("\\" + escapeChar));
-				}
+				currentChar = this.readIgnoreWhitespace();
+				if (currentChar == OBJECT_END)
+					break;
+				this.expect(OBJECT, currentChar, ELEMENT_SEPARATOR);
+				currentChar = this.readIgnoreWhitespace();
 			}
-		},
-		BOOLEAN {
-			private final char expectedCharTrue = 't';
 
-			private final char[] trueChars = new char[] { 'r', 'u', 'e' };
-
-			private final char expectedCharFalse = 'f';
-
-			private final char[] falseChars = new char[] { 'a', 'l', 's', 'e' };
-
-			@Override
-			public IJsonNode createJsonNode(final char startChar, final JsonParser parser) throws JsonParseException {
-				final char[] expectedContentWithoutFirstChar;
-				IJsonNode result;
-				if (startChar == this.expectedCharTrue) {
-					expectedContentWithoutFirstChar = this.trueChars;
-					result = BooleanNode.TRUE;
-				} else if (startChar == this.expectedCharFalse) {
-					expectedContentWithoutFirstChar = this.falseChars;
-					result = BooleanNode.FALSE;
-				} else
-					throw parser.getParseException(this.getName(), "one of [" + this.expectedCharTrue + ", "
-						+ this.expectedCharFalse + "]", String.valueOf(startChar));
+		this.objectDepth--;
+		if (reusableFields != null)
+			reusableFields.clear();
+		return object;
+	}
 
-				STATE.compareWithReaderContent(expectedContentWithoutFirstChar, parser, this);
-				return result;
+	private IJsonNode parseString(final IJsonNode reuse) throws JsonParseException {
+		this.readText();
+		final TextNode text = reuse instanceof TextNode ? (TextNode) reuse : new TextNode();
+		text.setValue(this.text, 0, this.textLength);
+		return text;
+	}
 
-			}
+	/**
+	 * Parses the value that starts with the given character.
+	 * 
+	 * @param currentToken
+	 *        the name of the enclosing token
+	 * @param startChar
+	 *        the first character of the value
+	 * @param reuse
+	 *        the node that may be filled with the value or null
+	 * @return the parsed value
+	 */
+	private IJsonNode parseValue(final String currentToken, final int startChar, final IJsonNode reuse)
+			throws JsonParseException {
+		switch (startChar) {
+		case OBJECT_START:
+			return this.parseObject(reuse, null);
+		case ARRAY_START:
+			return this.parseArray(reuse);
+		case QUOTE:
+			return this.parseString(reuse);
+		case 't':
+			this.expectLiteral(BOOLEAN, "rue");
+			return BooleanNode.TRUE;
+		case 'f':
+			this.expectLiteral(BOOLEAN, "alse");
+			return BooleanNode.FALSE;
+		case 'n':
+			this.expectLiteral(NULL, "ull");
+			return NullNode.getInstance();
+		case '-':
+		case '0':
+		case '1':
+		case '2':
+		case '3':
+		case '4':
+		case '5':
+		case '6':
+		case '7':
+		case '8':
+		case '9':
+			return this.parseNumber((char) startChar, reuse);
+		default:
+			throw this.getParseException(currentToken, EXPECTED_VALUE, describe(startChar));
+		}
+	}
 
-			@Override
-			protected String getName() {
-				return "boolean value";
-			}
-		},
-		NUMBER {
-			private final CharList allowedCharactersInNumbers = new CharArrayList(Arrays.asList('-', '0', '1', '2',
-				'3', '4', '5', '6', '7', '8', '9', '.', 'e', 'E', '+'));
-
-			private final String numberRegex = "^[-]?[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?$";
-
-			@Override
-			public IJsonNode createJsonNode(final char startChar, final JsonParser parser) throws JsonParseException {
-				final StringBuffer buffer = new StringBuffer().append(startChar);
-				char nextChar;
-				parser.markReader();
-
-				while (this.allowedCharactersInNumbers.contains(nextChar = (char) parser.read())) {
-					parser.markReader();
-					buffer.append(nextChar);
-				}
-				parser.resetReader();
+	private int peek() throws JsonParseException {
+		if (this.bufferPosition == this.bufferLimit && !this.fillBuffer())
+			return EOF;
+		return this.buffer[this.bufferPosition];
+	}
 
-				final IJsonNode number = this.parseNumber(buffer.toString());
-				if (number == null)
-					throw parser.getParseException(this.getName(), "a numerical value", buffer.toString());
-				return number;
-			}
+	private int peekIgnoreWhitespace() throws JsonParseException {
+		while (true) {
+			if (this.bufferPosition == this.bufferLimit && !this.fillBuffer())
+				return EOF;
+			final char currentChar = this.buffer[this.bufferPosition];
+			if (!Character.isWhitespace(currentChar))
+				return currentChar;
+			this.bufferPosition++;
+		}
+	}
 
-			@Override
-			protected String getName() {
-				return "numerical value";
-			}
+	private int read() throws JsonParseException {
+		if (this.bufferPosition == this.bufferLimit && !this.fillBuffer()) {
+			this.eofReads++;
+			return EOF;
+		}
+		return this.buffer[this.bufferPosition++];
+	}
 
-			private IJsonNode parseNumber(final String value) {
-				if (value.matches(this.numberRegex)) {
-					final BigDecimal bigDec = new BigDecimal(value);
-					if (bigDec.scale() == 0) {
-						final BigInteger bigInt = bigDec.unscaledValue();
-						if (bigInt.bitLength() <= 31)
-							return IntNode.valueOf(bigInt.intValue());
-						if (bigInt.bitLength() <= 63)
-							return LongNode.valueOf(bigInt.longValue());
-						return BigIntegerNode.valueOf(bigInt);
-					}
-					return DecimalNode.valueOf(bigDec);
-				}
-				return null;
-			}
-		},
-		NULL {
-			private final char expectedStartChar = 'n';
-
-			private final char[] nullWithoutFirstChar = { 'u', 'l', 'l' };
-
-			@Override
-			public IJsonNode createJsonNode(final char startChar, final JsonParser parser) throws JsonParseException {
-				if (startChar != this.expectedStartChar)
-					throw parser.getParseException(this.getName(), String.valueOf(this.expectedStartChar),
-						String.valueOf(startChar));
-				STATE.compareWithReaderContent(this.nullWithoutFirstChar, parser, this);
-				return NullNode.getInstance();
-			}
+	private int readIgnoreWhitespace() throws JsonParseException {
+		final int currentChar = this.peekIgnoreWhitespace();
+		if (currentChar == EOF)
+			this.eofReads++;
+		else
+			this.bufferPosition++;
+		return currentChar;
+	}
 
-			@Override
-			protected String getName() {
-				return "null value";
-			}
-		},
-		ROOT {
-			@Override
-			public IJsonNode createJsonNode(final char startChar,
-					final JsonParser parser)
-					throws JsonParseException {
-				return MissingNode.getInstance();
+	/**
+	 * Reads the remaining characters of a string into {@link #text} and consumes the closing quote.
+	 */
+	private void readText() throws JsonParseException {
+		this.textLength = 0;
+		while (true) {
+			if (this.bufferPosition == this.bufferLimit && !this.fillBuffer()) {
+				this.eofReads++;
+				throw this.getParseException(STRING, String.valueOf(QUOTE), "eof");
 			}
 
-			@Override
-			protected String getName() {
-				return "root element";
+			// copy all characters up to the next quote or escape character at once
+			final int start = this.bufferPosition;
+			int index = start;
+			while (index < this.bufferLimit && this.buffer[index] != QUOTE && this.buffer[index] != ESCAPE)
+				index++;
+			this.appendText(this.buffer, start, index - start);
+			this.bufferPosition = index;
+
+			if (index < this.bufferLimit) {
+				this.bufferPosition++;
+				if (this.buffer[index] == QUOTE)
+					return;
+				this.appendText(this.unescape());
 			}
+		}
+	}
 
-			@Override
-			protected void initialize() {
-				this.transitions.put('{', STATE.OBJECT);
-				this.transitions.put('[', STATE.ARRAY);
-				this.transitions.put('t', STATE.BOOLEAN);
-				this.transitions.put('f', STATE.BOOLEAN);
-				this.transitions.put('n', STATE.NULL);
-				this.transitions.put('-', STATE.NUMBER);
-				this.transitions.put('0', STATE.NUMBER);
-				this.transitions.put('1', STATE.NUMBER);
-				this.transitions.put('2', STATE.NUMBER);
-				this.transitions.put('3', STATE.NUMBER);
-				this.transitions.put('4', STATE.NUMBER);
-				this.transitions.put('5', STATE.NUMBER);
-				this.transitions.put('6', STATE.NUMBER);
-				this.transitions.put('7', STATE.NUMBER);
-				this.transitions.put('8', STATE.NUMBER);
-				this.transitions.put('9', STATE.NUMBER);
-				this.transitions.put('"', STATE.STRING);
+	/**
+	 * Skips the remaining characters of a string including the closing quote.
+	 */
+	private void skipString() throws JsonParseException {
+		while (true) {
+			if (this.bufferPosition == this.bufferLimit && !this.fillBuffer()) {
+				this.eofReads++;
+				throw this.getParseException(STRING, String.valueOf(QUOTE), "eof");
 			}
-		};
-
-		protected Char2ObjectMap<STATE> transitions;
-
-		private STATE() {
-			this.transitions = new Char2ObjectOpenHashMap<STATE>();
+			final char currentChar = this.buffer[this.bufferPosition++];
+			if (currentChar == QUOTE)
+				return;
+			if (currentChar == ESCAPE)
+				this.read();
 		}
+	}
 
-		/**
-		 * Creates an {@link IJsonNode} that corresponds with this state.
-		 * 
-		 * @param startChar
-		 *        the character that is responsible for entering this state.
-		 * @param parser
-		 *        the {@link JsonParser} that holds the input data
-		 * @return the created {@link IJsonNode}
-		 * @throws JsonParseException
-		 *         Should something went wrong during the parsing process, this exception will be thrown. To find out
-		 *         the reason of failure consult {@link JsonParseException#getMessage()}.
-		 */
-		public abstract IJsonNode createJsonNode(char startChar,
-				JsonParser parser) throws JsonParseException;
-
-		/**
-		 * Determines the transition that is associated with the given character and returns the resulting state or
-		 * 'null' if no such transition exists.
-		 * 
-		 * @param character
-		 *        the character that should be used to determine the transition
-		 * @return the resulting state
-		 */
-		public STATE nextState(final char character) {
-			if (this.transitions.containsKey(character))
-				return this.transitions.get(character);
-			return null;
+	/**
+	 * Skips the value that starts with the given character without creating nodes.
+	 */
+	private void skipValue(final int startChar) throws JsonParseException {
+		switch (startChar) {
+		case QUOTE:
+			this.skipString();
+			break;
+		case OBJECT_START:
+		case ARRAY_START:
+			for (int depth = 1; depth > 0;) {
+				final int currentChar = this.read();
+				switch (currentChar) {
+				case EOF:
+					throw this.getParseException(startChar == OBJECT_START ? OBJECT : ARRAY,
+						String.valueOf(startChar == OBJECT_START ? OBJECT_END : ARRAY_END), "eof");
+				case QUOTE:
+					this.skipString();
+					break;
+				case OBJECT_START:
+				case ARRAY_START:
+					depth++;
+					break;
+				case OBJECT_END:
+				case ARRAY_END:
+					depth--;
+					break;
+				}
+			}
+			break;
+		default:
+			// literals and numbers are short, so they are simply parsed
+			this.parseValue(OBJECT, startChar, null);
 		}
+	}
 
-		protected abstract String getName();
+	private void skipNumberChar(final int currentChar) {
+		this.appendText((char) currentChar);
+		this.bufferPosition++;
+	}
 
-		protected void initialize() {
+	private IJsonNode toIntegralNode(final BigInteger value, final IJsonNode reuse) {
+		if (value.bitLength() <= 63)
+			return this.toIntegralNode(value.longValue(), reuse);
+		if (reuse instanceof BigIntegerNode) {
+			((BigIntegerNode) reuse).setValue(value);
+			return reuse;
 		}
+		return BigIntegerNode.valueOf(value);
+	}
 
-		/**
-		 * Initializes the transitions between the different states.
-		 */
-		public static void initializeTransitions() {
-			for (final STATE state : STATE.values())
-				state.initialize();
+	private IJsonNode toIntegralNode(final long value, final IJsonNode reuse) {
+		if (Integer.MIN_VALUE <= value && value <= Integer.MAX_VALUE) {
+			if (reuse instanceof IntNode) {
+				((IntNode) reuse).setValue((int) value);
+				return reuse;
+			}
+			return IntNode.valueOf((int) value);
+		}
+		if (reuse instanceof LongNode) {
+			((LongNode) reuse).setValue(value);
+			return reuse;
 		}
+		return LongNode.valueOf(value);
+	}
 
-		private static boolean compareWithReaderContent(final char[] expected,
-				final JsonParser parser, final STATE currentState) throws JsonParseException {
-			for (final char c : expected) {
-				final char currentChar = (char) parser.read();
-				if (c != currentChar)
-					throw parser.getParseException(currentState.getName(), String.valueOf(c),
-						String.valueOf(currentChar));
+	private char unescape() throws JsonParseException {
+		final int escapeChar = this.read();
+		switch (escapeChar) {
+		case '"':
+		case '\\':
+		case '/':
+			return (char) escapeChar;
+
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+
+		case 'u':
+			int code = 0;
+			for (int index = 0; index < 4; index++) {
+				final int hexChar = this.read();
+				final int digit = hexChar == EOF ? -1 : Character.digit((char) hexChar, 16);
+				if (digit == -1)
+					throw this.getParseException(STRING, "a hexadecimal digit", describe(hexChar));
+				code = 16 * code + digit;
 			}
-			return true;
+			return (char) code;
+
+		default:
+			throw this.getParseException(STRING,
+				"a valid escape sequence \\(\" | \\ | / | b | f | n | r | t | uXXXX)", "\\" + describe(escapeChar));
 		}
 	}
 }
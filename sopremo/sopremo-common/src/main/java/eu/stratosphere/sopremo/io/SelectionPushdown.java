@@ -0,0 +1,105 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import eu.stratosphere.sopremo.expressions.AndExpression;
+import eu.stratosphere.sopremo.expressions.BooleanExpression;
+import eu.stratosphere.sopremo.expressions.ComparativeExpression;
+import eu.stratosphere.sopremo.expressions.ElementInSetExpression;
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.expressions.ExpressionUtil;
+import eu.stratosphere.sopremo.expressions.OrExpression;
+import eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat;
+import eu.stratosphere.sopremo.operator.ElementaryOperator;
+import eu.stratosphere.sopremo.operator.ElementarySopremoModule;
+import eu.stratosphere.sopremo.operator.JsonStream;
+import eu.stratosphere.sopremo.operator.Operator;
+import eu.stratosphere.sopremo.operator.SelectingOperator;
+
+/**
+ * Pushes the conditions of {@link SelectingOperator}s into the formats of the {@link Source}s that directly precede
+ * them. The format evaluates the condition on each value right after parsing and drops rejected values before they
+ * are projected, serialized, and shipped to the selection.<br />
+ * Only conjunctions and disjunctions of {@link ComparativeExpression}s and {@link ElementInSetExpression}s on
+ * top-level fields are pushed, so that formats only need to parse these fields to evaluate the condition. The
+ * selection itself remains in the plan and evaluates the condition a second time on the few remaining values.<br />
+ * Formats evaluate the selection on the parsed value before the projection. Since the condition refers to the
+ * projected value, it is only pushed into sources without projection.
+ */
+public class SelectionPushdown {
+	/**
+	 * Pushes all applicable selections of the given module into the formats of their sources.
+	 * 
+	 * @param module
+	 *        the module to rewrite
+	 */
+	public static void apply(final ElementarySopremoModule module) {
+		for (final ElementaryOperator<?> operator : module.getReachableNodes()) {
+			if (!(operator instanceof SelectingOperator))
+				continue;
+
+			final Operator<?> input = operator.getInput(0).getSource().getOperator();
+			final EvaluationExpression condition = ((SelectingOperator) operator).getCondition();
+			if (input instanceof Source && isPushable((Source) input) && isPushable(condition) &&
+				getNumberOfConsumers(module, input) == 1)
+				pushSelection((Source) input, (BooleanExpression) condition);
+		}
+	}
+
+	/**
+	 * Returns true if the condition only consists of simple comparisons on top-level fields.
+	 * 
+	 * @param condition
+	 *        the condition to check
+	 * @return true if the condition may be evaluated by the format
+	 */
+	public static boolean isPushable(final EvaluationExpression condition) {
+		if (condition instanceof AndExpression || condition instanceof OrExpression) {
+			for (final EvaluationExpression child : condition)
+				if (!isPushable(child))
+					return false;
+			return true;
+		}
+		return (condition instanceof ComparativeExpression || condition instanceof ElementInSetExpression) &&
+			ExpressionUtil.getAccessedFields(condition) != null;
+	}
+
+	private static int getNumberOfConsumers(final ElementarySopremoModule module, final Operator<?> operator) {
+		int consumers = 0;
+		for (final ElementaryOperator<?> node : module.getReachableNodes())
+			for (final JsonStream input : node.getInputs())
+				if (input.getSource().getOperator() == operator)
+					consumers++;
+		return consumers;
+	}
+
+	private static boolean isPushable(final Source source) {
+		return !source.isAdhoc() &&
+			SopremoFileInputFormat.class.isAssignableFrom(source.getFormat().getInputFormat()) &&
+			source.getFormat().getProjection().equals(EvaluationExpression.VALUE);
+	}
+
+	private static void pushSelection(final Source source, final BooleanExpression condition) {
+		final BooleanExpression selection = source.getFormat().getSelection();
+		// the module may be assembled several times
+		if (condition.equals(selection) || selection instanceof AndExpression &&
+			((AndExpression) selection).getExpressions().contains(condition))
+			return;
+
+		final SopremoFormat format = source.getFormat().clone();
+		format.setSelection(selection == null ? condition : new AndExpression(selection, condition));
+		source.setFormat(format);
+	}
+}
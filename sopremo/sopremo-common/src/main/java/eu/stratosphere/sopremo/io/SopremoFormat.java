@@ -15,11 +15,14 @@
 package eu.stratosphere.sopremo.io;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import com.google.common.reflect.TypeToken;
 
@@ -30,6 +33,7 @@ import eu.stratosphere.api.common.io.OutputFormat;
 import eu.stratosphere.api.common.io.statistics.BaseStatistics;
 import eu.stratosphere.api.common.operators.GenericDataSource;
 import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.core.fs.BlockLocation;
 import eu.stratosphere.core.fs.FSDataInputStream;
 import eu.stratosphere.core.fs.FSDataOutputStream;
 import eu.stratosphere.core.fs.FileInputSplit;
@@ -39,12 +43,15 @@ import eu.stratosphere.core.fs.Path;
 import eu.stratosphere.core.io.InputSplit;
 import eu.stratosphere.sopremo.EvaluationContext;
 import eu.stratosphere.sopremo.SopremoEnvironment;
+import eu.stratosphere.sopremo.expressions.BooleanExpression;
 import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+import eu.stratosphere.sopremo.expressions.ExpressionUtil;
 import eu.stratosphere.sopremo.operator.ConfigurableSopremoType;
 import eu.stratosphere.sopremo.operator.Name;
 import eu.stratosphere.sopremo.operator.Property;
 import eu.stratosphere.sopremo.pact.SopremoUtil;
 import eu.stratosphere.sopremo.serialization.SopremoRecord;
+import eu.stratosphere.sopremo.type.BooleanNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
 
 /**
@@ -64,6 +71,10 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 
 	private EvaluationExpression projection = EvaluationExpression.VALUE;
 
+	private BooleanExpression selection;
+
+	private String compression;
+
 	/*
 	 * (non-Javadoc)
 	 * @see eu.stratosphere.sopremo.ISopremoType#appendAsString(java.lang.Appendable)
@@ -75,16 +86,18 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 
 	/**
 	 * Checks if the path specifies a file and whether the ending corresponds to one entry of
-	 * {@link #getPreferredFilenameExtensions()}.
+	 * {@link #getPreferredFilenameExtensions()}. The extension of a {@link CompressionCodec} is ignored.
 	 */
 	public boolean canHandleFormat(final URI uri) {
 		final String[] preferredFilenameExtensions = this.getPreferredFilenameExtensions();
 		if (preferredFilenameExtensions.length == 0)
 			return false;
 
-		final String uriPath = uri.toString();
+		String uriPath = uri.toString();
 		if (uriPath == null)
 			return false;
+		if (CompressionCodec.forPath(uriPath) != null)
+			uriPath = uriPath.substring(0, uriPath.lastIndexOf("."));
 		final int separator = uriPath.lastIndexOf(".");
 		if (separator == -1)
 			return false;
@@ -142,7 +155,17 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 		if (this.getClass() != obj.getClass())
 			return false;
 		final SopremoFormat other = (SopremoFormat) obj;
-		return this.encoding.equals(other.encoding);
+		return this.encoding.equals(other.encoding) &&
+			(this.compression == null ? other.compression == null : this.compression.equals(other.compression));
+	}
+
+	/**
+	 * Returns the name of the {@link CompressionCodec}.
+	 * 
+	 * @return the compression or null if the compression is determined by the extension of the files
+	 */
+	public String getCompression() {
+		return this.compression;
 	}
 
 	/**
@@ -203,14 +226,38 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 		return this.projection;
 	}
 
+	/**
+	 * Returns the selection.
+	 * 
+	 * @return the selection or null if all values are read
+	 */
+	public BooleanExpression getSelection() {
+		return this.selection;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + this.encoding.hashCode();
+		result = prime * result + (this.compression == null ? 0 : this.compression.hashCode());
 		return result;
 	}
 
+	/**
+	 * Sets the compression to the codec with the given name, see {@link CompressionCodec#getCodecs()}. Input files are
+	 * decompressed and output files are compressed with this codec regardless of their extension.
+	 * 
+	 * @param compression
+	 *        the name of the codec or null if the compression is determined by the extension of the files
+	 */
+	@Property
+	@Name(noun = "compression")
+	public void setCompression(final String compression) {
+		// validate and standardize name
+		this.compression = compression == null ? null : CompressionCodec.forName(compression).getName();
+	}
+
 	/**
 	 * Sets the encoding to the specified value.
 	 * 
@@ -242,6 +289,29 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 		this.projection = projection;
 	}
 
+	/**
+	 * Sets the selection to the specified value. Input formats only emit the values that satisfy the selection and
+	 * evaluate it before the projection is applied. Usually, the selection is not set directly but pushed from a
+	 * subsequent filter into the source, see {@link SelectionPushdown}.
+	 * 
+	 * @param selection
+	 *        the selection to set or null if all values should be read
+	 */
+	public void setSelection(final BooleanExpression selection) {
+		this.selection = selection;
+	}
+
+	/**
+	 * Sets the compression to the codec with the given name.
+	 * 
+	 * @param compression
+	 *        the name of the codec or null if the compression is determined by the extension of the files
+	 */
+	public SopremoFormat withCompression(final String compression) {
+		this.setCompression(compression);
+		return this;
+	}
+
 	/**
 	 * Sets the encoding to the specified value.
 	 * 
@@ -343,12 +413,79 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 
 		private EvaluationExpression projection;
 
+		private BooleanExpression selection;
+
+		private String compression;
+
+		private transient Set<String> projectedFields;
+
 		@Override
 		public void configure(final Configuration parameters) {
 			super.configure(parameters);
 
 			SopremoEnvironment.getInstance().load(parameters);
 			SopremoUtil.configureWithTransferredState(this, SopremoFileInputFormat.class, parameters);
+			this.projectedFields = ExpressionUtil.getAccessedFields(this.projection);
+			// the fields of the selection have to be parsed as well
+			if (this.projectedFields != null && this.selection != null) {
+				final Set<String> selectedFields = ExpressionUtil.getAccessedFields(this.selection);
+				if (selectedFields == null)
+					this.projectedFields = null;
+				else
+					this.projectedFields.addAll(selectedFields);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.api.common.io.FileInputFormat#createInputSplits(int)
+		 */
+		@Override
+		public FileInputSplit[] createInputSplits(final int minNumSplits) throws IOException {
+			final ArrayList<FileStatus> files = this.getFileStati();
+			if (!this.isCompressed(files))
+				return super.createInputSplits(minNumSplits);
+
+			// splits of compressed files denote ranges of the uncompressed content
+			final FileSystem fs = this.filePath.getFileSystem();
+			final long[] lengths = new long[files.size()];
+			long totalLength = 0;
+			for (int index = 0; index < lengths.length; index++) {
+				final FileStatus file = files.get(index);
+				final CompressionCodec codec = this.getCompressionCodec(file.getPath());
+				if (codec == null)
+					lengths[index] = file.getLen();
+				else if (codec.isSplittable()) {
+					final FSDataInputStream stream = fs.open(file.getPath());
+					try {
+						lengths[index] = codec.getUncompressedLength(stream, file.getLen());
+					} finally {
+						stream.close();
+					}
+				} else
+					lengths[index] = -1;
+				totalLength += Math.max(0, lengths[index]);
+			}
+
+			final List<FileInputSplit> splits = new ArrayList<FileInputSplit>();
+			for (int index = 0; index < lengths.length; index++) {
+				final FileStatus file = files.get(index);
+				final BlockLocation[] blocks = fs.getFileBlockLocations(file, 0, file.getLen());
+				final String[] hosts = blocks.length > 0 ? blocks[0].getHosts() : new String[0];
+				if (lengths[index] < 0) {
+					splits.add(new FileInputSplit(splits.size(), file.getPath(), 0, file.getLen(), hosts));
+					continue;
+				}
+
+				final int numSplits = totalLength == 0 ? 1 :
+					(int) Math.max(1, Math.ceil((double) minNumSplits * lengths[index] / totalLength));
+				for (int splitIndex = 0; splitIndex < numSplits; splitIndex++) {
+					final long start = lengths[index] * splitIndex / numSplits;
+					final long end = lengths[index] * (splitIndex + 1) / numSplits;
+					splits.add(new FileInputSplit(splits.size(), file.getPath(), start, end - start, hosts));
+				}
+			}
+			return splits.toArray(new FileInputSplit[splits.size()]);
 		}
 
 		@Override
@@ -372,21 +509,27 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 			for (final FileStatus s : files)
 				len += s.getLen();
 
+			// the size of the records cannot be sampled from the compressed bytes
+			if (this.isCompressed(files))
+				return new FileBaseStatistics(latestModTime, len, BaseStatistics.AVG_RECORD_BYTES_UNKNOWN);
 			return new FileBaseStatistics(latestModTime, len,
 				this.getAverageRecordBytes(FileSystem.get(this.filePath.toUri()), files, len));
 		}
 
 		@Override
 		public boolean nextRecord(final SopremoRecord record) throws IOException {
-			if (!this.end) {
+			while (!this.end) {
 				final IJsonNode value = this.nextValue();
-				if (value != null) {
-					if (SopremoUtil.DEBUG && SopremoUtil.LOG.isTraceEnabled())
-						SopremoUtil.LOG.trace(String.format("%s input %s",
-							SopremoEnvironment.getInstance().getEvaluationContext().getOperatorDescription(), value));
-					record.setNode(this.projection.evaluate(value));
-					return true;
-				}
+				if (value == null)
+					break;
+				if (SopremoUtil.DEBUG && SopremoUtil.LOG.isTraceEnabled())
+					SopremoUtil.LOG.trace(String.format("%s input %s",
+						SopremoEnvironment.getInstance().getEvaluationContext().getOperatorDescription(), value));
+				// skip rejected values before they are projected and serialized
+				if (this.selection != null && this.selection.evaluate(value) != BooleanNode.TRUE)
+					continue;
+				record.setNode(this.projection.evaluate(value));
+				return true;
 			}
 
 			return false;
@@ -398,10 +541,24 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 		 */
 		@Override
 		public void open(final FileInputSplit split) throws IOException {
-			super.open(split);
 			this.end = false;
+			final CompressionCodec codec = this.getCompressionCodec(split.getPath());
+			if (codec == null) {
+				super.open(split);
+				this.open(this.stream, split);
+				return;
+			}
 
-			this.open(this.stream, split);
+			// the implementations read the uncompressed content, to which the split refers if the codec is splittable
+			final FileSystem fs = split.getPath().getFileSystem();
+			final long length = fs.getFileStatus(split.getPath()).getLen();
+			this.stream = codec.createInputStream(fs.open(split.getPath()), length);
+			final FileInputSplit uncompressedSplit = codec.isSplittable() ? split :
+				new FileInputSplit(split.getSplitNumber(), split.getPath(), 0, Long.MAX_VALUE, new String[0]);
+			this.splitStart = uncompressedSplit.getStart();
+			this.splitLength = uncompressedSplit.getLength();
+			this.stream.seek(this.splitStart);
+			this.open(this.stream, uncompressedSplit);
 		}
 
 		@Override
@@ -413,6 +570,19 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 			this.end = true;
 		}
 
+		/**
+		 * Returns the codec with which the given file is compressed. Unless the compression is set explicitly, it is
+		 * determined by the extension of the file or, for files in a directory, by the extension of the directory.
+		 * 
+		 * @return the codec or null if the file is not compressed
+		 */
+		protected CompressionCodec getCompressionCodec(final Path file) {
+			if (this.compression != null)
+				return CompressionCodec.forName(this.compression);
+			final CompressionCodec codec = CompressionCodec.forPath(file.toString());
+			return codec != null ? codec : CompressionCodec.forPath(this.filePath.toString());
+		}
+
 		@SuppressWarnings("unused")
 		protected float getAverageRecordBytes(final FileSystem fileSystem, final ArrayList<FileStatus> files,
 				final long fileSize) throws IOException {
@@ -456,6 +626,34 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 			return files;
 		}
 
+		/**
+		 * Returns the top-level fields that are used by the projection or the selection or null if they may need the
+		 * whole value. Formats may skip all other fields of an object while parsing, since the selection and the
+		 * projection are applied to each value before it is emitted.
+		 * 
+		 * @return the used fields or null
+		 */
+		protected Set<String> getProjectedFields() {
+			return this.projectedFields;
+		}
+
+		/**
+		 * Returns the selection that is applied to each value or null if all values are emitted. Formats may use the
+		 * selection to skip larger parts of the input, for which they can determine that no value satisfies it.
+		 * 
+		 * @return the selection or null
+		 */
+		protected BooleanExpression getSelection() {
+			return this.selection;
+		}
+
+		private boolean isCompressed(final List<FileStatus> files) {
+			for (final FileStatus file : files)
+				if (this.getCompressionCodec(file.getPath()) != null)
+					return true;
+			return false;
+		}
+
 		protected abstract void open(FSDataInputStream stream, FileInputSplit split) throws IOException;
 	}
 
@@ -471,6 +669,26 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 
 		private String encoding;
 
+		private String compression;
+
+		private transient String outputPath;
+
+		private transient FSDataOutputStream compressedStream;
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.api.common.io.FileOutputFormat#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			// completes the compressed file before the underlying stream is closed
+			if (this.compressedStream != null) {
+				this.compressedStream.close();
+				this.compressedStream = null;
+			}
+			super.close();
+		}
+
 		/*
 		 * (non-Javadoc)
 		 * @see
@@ -483,6 +701,7 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 			SopremoEnvironment.getInstance().load(parameters);
 			this.context = SopremoEnvironment.getInstance().getEvaluationContext();
 			SopremoUtil.configureWithTransferredState(this, SopremoFileInputFormat.class, parameters);
+			this.outputPath = parameters.getString(FILE_PARAMETER_KEY, null);
 		}
 
 		/*
@@ -493,7 +712,15 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 		public void open(final int taskNumber) throws IOException {
 			super.open(taskNumber);
 
-			this.open(this.stream, taskNumber);
+			CompressionCodec codec = null;
+			if (this.compression != null)
+				codec = CompressionCodec.forName(this.compression);
+			else if (this.outputPath != null)
+				codec = CompressionCodec.forPath(this.outputPath);
+			if (codec == null)
+				this.open(this.stream, taskNumber);
+			else
+				this.open(this.compressedStream = codec.createOutputStream(this.stream), taskNumber);
 		}
 
 		/*
@@ -526,6 +753,20 @@ public abstract class SopremoFormat extends ConfigurableSopremoType {
 			return this.encoding;
 		}
 
+		/**
+		 * Creates a generator that writes to the given stream in the encoding of this format. UTF-8 is encoded
+		 * directly by the generator, all other encodings through a writer.
+		 * 
+		 * @param stream
+		 *        the stream of the file
+		 * @return the generator
+		 */
+		protected JsonGenerator createGenerator(final FSDataOutputStream stream) throws IOException {
+			if (Charset.forName(this.encoding).name().equals("UTF-8"))
+				return new JsonGenerator(stream);
+			return new JsonGenerator(new OutputStreamWriter(stream, this.encoding));
+		}
+
 		/**
 		 * @param stream
 		 * @param taskNumber
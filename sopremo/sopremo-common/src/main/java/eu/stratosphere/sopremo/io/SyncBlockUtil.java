@@ -0,0 +1,136 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import eu.stratosphere.core.fs.FSDataInputStream;
+import eu.stratosphere.core.fs.Path;
+
+/**
+ * Helper methods for binary files that consist of blocks, which start with a sync marker.<br />
+ * The file header consists of a magic number, a version byte, and the randomly generated sync marker of the file. A
+ * split of such a file contains all blocks whose sync marker begins within the split.
+ */
+final class SyncBlockUtil {
+	/**
+	 * The number of bytes of a sync marker.
+	 */
+	static final int SYNC_LENGTH = 16;
+
+	private SyncBlockUtil() {
+	}
+
+	/**
+	 * Returns the number of bytes of the file header for the given magic number.
+	 */
+	static int getHeaderLength(final byte[] magic) {
+		return magic.length + 1 + SYNC_LENGTH;
+	}
+
+	/**
+	 * Reads the file header from the beginning of the stream and returns the sync marker of the file.
+	 *
+	 * @throws IOException
+	 *         if the header does not match the given magic number and version
+	 */
+	static byte[] readHeader(final FSDataInputStream stream, final byte[] magic, final byte version,
+			final String formatName, final Path path) throws IOException {
+		final byte[] header = new byte[getHeaderLength(magic)];
+		stream.seek(0);
+		readFully(stream, header, 0, header.length);
+		if (!Arrays.equals(Arrays.copyOf(header, magic.length), magic) || header[magic.length] != version)
+			throw new IOException(String.format("%s is not a %s file of version %d", path, formatName, version));
+		return Arrays.copyOfRange(header, magic.length + 1, header.length);
+	}
+
+	/**
+	 * Reads exactly the given number of bytes.
+	 *
+	 * @throws EOFException
+	 *         if the stream ends before
+	 */
+	static void readFully(final InputStream stream, final byte[] buffer, final int offset, final int length)
+			throws IOException {
+		for (int read = 0; read < length;) {
+			final int count = stream.read(buffer, offset + read, length - read);
+			if (count < 0)
+				throw new EOFException();
+			read += count;
+		}
+	}
+
+	/**
+	 * Positions the stream at the first sync marker that begins within [position, end). The stream must be positioned
+	 * at the given position.
+	 *
+	 * @return the position of the sync marker or -1 if no sync marker begins within the range
+	 */
+	static long seekSync(final FSDataInputStream stream, final byte[] sync, final long position, final long end)
+			throws IOException {
+		final byte[] window = new byte[64 * 1024];
+		long windowStart = position;
+		int filled = 0;
+		while (windowStart < end) {
+			final int read = stream.read(window, filled, window.length - filled);
+			if (read < 0)
+				return -1;
+			filled += read;
+
+			for (int index = 0; index + SYNC_LENGTH <= filled; index++) {
+				if (windowStart + index >= end)
+					return -1;
+				if (isSync(window, index, sync)) {
+					stream.seek(windowStart + index);
+					return windowStart + index;
+				}
+			}
+
+			// keep the bytes that may belong to a sync marker spanning two windows
+			final int kept = Math.min(filled, SYNC_LENGTH - 1);
+			System.arraycopy(window, filled - kept, window, 0, kept);
+			windowStart += filled - kept;
+			filled = kept;
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes the file header with a new sync marker and returns the sync marker.
+	 */
+	static byte[] writeHeader(final DataOutput output, final byte[] magic, final byte version) throws IOException {
+		final byte[] sync = new byte[SYNC_LENGTH];
+		new Random().nextBytes(sync);
+		output.write(magic);
+		output.writeByte(version);
+		output.write(sync);
+		return sync;
+	}
+
+	/**
+	 * Checks whether the sync marker appears in the buffer at the given offset.
+	 */
+	static boolean isSync(final byte[] buffer, final int offset, final byte[] sync) {
+		for (int index = 0; index < SYNC_LENGTH; index++)
+			if (buffer[offset + index] != sync[index])
+				return false;
+		return true;
+	}
+}
@@ -0,0 +1,30 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.operator;
+
+import eu.stratosphere.sopremo.expressions.EvaluationExpression;
+
+/**
+ * An {@link Operator} with one input that emits exactly those input values, for which its condition evaluates to
+ * true.
+ */
+public interface SelectingOperator {
+	/**
+	 * Returns the condition that the emitted values satisfy.
+	 * 
+	 * @return the condition
+	 */
+	public EvaluationExpression getCondition();
+}
@@ -12,6 +12,7 @@ import eu.stratosphere.api.common.operators.GenericDataSink;
 import eu.stratosphere.sopremo.AbstractSopremoType;
 import eu.stratosphere.sopremo.EvaluationContext;
 import eu.stratosphere.sopremo.SopremoEnvironment;
+import eu.stratosphere.sopremo.io.SelectionPushdown;
 import eu.stratosphere.sopremo.io.Sink;
 import eu.stratosphere.sopremo.packages.DefaultTypeRegistry;
 import eu.stratosphere.sopremo.packages.ITypeRegistry;
@@ -77,6 +78,7 @@ public class SopremoPlan extends AbstractSopremoType implements Serializable {
 	 */
 	public Collection<eu.stratosphere.api.common.operators.Operator> assemblePact() {
 		final ElementarySopremoModule elementaryModule = this.module.asElementary();
+		SelectionPushdown.apply(elementaryModule);
 		this.layout = SopremoRecordLayout.create(elementaryModule.getSchema().getKeyExpressions());
 		SopremoEnvironment.getInstance().setLayout(this.layout);
 		return elementaryModule.assemblePact();
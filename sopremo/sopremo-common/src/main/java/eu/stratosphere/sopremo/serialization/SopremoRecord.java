@@ -54,6 +54,7 @@ import eu.stratosphere.sopremo.type.MissingNode;
 import eu.stratosphere.sopremo.type.NullNode;
 import eu.stratosphere.sopremo.type.ObjectNode;
 import eu.stratosphere.sopremo.type.ReusingSerializer;
+import eu.stratosphere.sopremo.type.SpillingStreamNode;
 import eu.stratosphere.sopremo.type.TextNode;
 import eu.stratosphere.sopremo.type.TypeCoercer;
 
@@ -67,25 +68,51 @@ public class SopremoRecord extends AbstractSopremoType implements ISopremoType {
 	 */
 	private static final int MISSING = -1;
 
+	private static final OutputStream DISCARDING_STREAM = new OutputStream() {
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+		};
+
+		@Override
+		public void write(final int b) {
+		}
+	};
+
 	private final ByteArrayList binaryRepresentation = new ByteArrayList();
 
 	private final transient Input input = new Input();
 
+	/**
+	 * The stream that receives the serialized bytes instead of the binary representation while a node with spilled
+	 * elements is serialized or null if the bytes are buffered.
+	 */
+	private transient OutputStream streamTarget;
+
+	private transient int streamedBytes;
+
 	private final transient Output output = new Output(new OutputStream() {
 		@Override
 		public void write(final byte[] b) throws IOException {
-			SopremoRecord.this.binaryRepresentation.addElements(SopremoRecord.this.binaryRepresentation.size(), b);
+			this.write(b, 0, b.length);
 		};
 
 		@Override
 		public void write(final byte[] b, final int off, final int len) throws IOException {
-			SopremoRecord.this.binaryRepresentation.addElements(SopremoRecord.this.binaryRepresentation.size(), b, off,
-				len);
+			if (SopremoRecord.this.streamTarget != null) {
+				SopremoRecord.this.streamTarget.write(b, off, len);
+				SopremoRecord.this.streamedBytes += len;
+			} else
+				SopremoRecord.this.binaryRepresentation.addElements(SopremoRecord.this.binaryRepresentation.size(), b,
+					off, len);
 		};
 
 		@Override
 		public void write(final int b) throws IOException {
-			SopremoRecord.this.binaryRepresentation.add((byte) b);
+			if (SopremoRecord.this.streamTarget != null) {
+				SopremoRecord.this.streamTarget.write(b);
+				SopremoRecord.this.streamedBytes++;
+			} else
+				SopremoRecord.this.binaryRepresentation.add((byte) b);
 		}
 	});
 
@@ -127,6 +154,8 @@ public class SopremoRecord extends AbstractSopremoType implements ISopremoType {
 			this.kryo.registerAlias(IArrayNode.class, CachingArrayNode.class);
 			this.kryo.registerAlias(ArrayNode.class, CachingArrayNode.class);
 			this.kryo.registerAlias(BooleanNode.UnmodifiableBoolean.class, BooleanNode.class);
+			// spilled groups are written in the array format and thus materialized by the receiving task
+			this.kryo.registerAlias(SpillingStreamNode.class, CachingArrayNode.class);
 
 			for (final Class<?> type : TypeCoercer.NUMERIC_TYPES)
 				this.kryo.register(type, new ReusingFieldSerializer<Object>(this.kryo, type));
@@ -263,31 +292,28 @@ public class SopremoRecord extends AbstractSopremoType implements ISopremoType {
 
 	void write(final DataOutputView out) throws IOException {
 		if (this.node != null) {
-			this.binaryRepresentation.clear();
-			Arrays.fill(this.offsets, MISSING);
-			this.currentExpressionIndex.addLast(this.layout.getExpressionIndex());
-			this.kryo.writeClassAndObject(this.output, this.node);
-			this.currentExpressionIndex.removeLast();
-
-			final EvaluationExpression[] calculatedKeyExpressions = this.layout.getCalculatedKeyExpressions();
-			if (calculatedKeyExpressions.length > 0) {
-				this.currentExpressionIndex.addLast(null);
-				for (int index = 0; index < calculatedKeyExpressions.length; index++) {
-					this.offsets[index + this.layout.getNumDirectDataKeys()] = this.position();
-					final IJsonNode calculatedValue = calculatedKeyExpressions[index].evaluate(this.node);
-					this.kryo.writeClassAndObject(this.output, calculatedValue);
-				}
-				this.currentExpressionIndex.removeLast();
+			this.serializeNode(true);
+			if (this.streamTarget != null) {
+				// the offsets and the size have been counted, so that the spilled elements can be streamed directly
+				this.writeOffsets(out);
+				out.writeInt(this.position());
+				this.streamNode(new OutputStream() {
+					@Override
+					public void write(final byte[] b, final int off, final int len) throws IOException {
+						out.write(b, off, len);
+					}
+
+					@Override
+					public void write(final int b) throws IOException {
+						out.write(b);
+					}
+				}, true);
+				return;
 			}
-			this.output.flush();
 		} else if (SopremoUtil.DEBUG && this.binaryRepresentation.size() == 0)
 			throw new IllegalStateException("Attempt to write zero length binary representation");
 
-		for (int index = 0; index < this.offsets.length; index++) {
-			if (SopremoUtil.DEBUG && this.offsets[index] == 0)
-				throw new IllegalStateException();
-			out.writeInt(this.offsets[index]);
-		}
+		this.writeOffsets(out);
 		final int size = this.binaryRepresentation.size();
 		if (SopremoUtil.DEBUG && size <= 0)
 			throw new IllegalStateException("Attempt to write zero length binary representation");
@@ -298,6 +324,71 @@ public class SopremoRecord extends AbstractSopremoType implements ISopremoType {
 //		System.err.println("write " + this.offsets.length + " + " + size + " " + this.binaryRepresentation);
 	}
 
+	private void writeOffsets(final DataOutputView out) throws IOException {
+		for (int index = 0; index < this.offsets.length; index++) {
+			if (SopremoUtil.DEBUG && this.offsets[index] == 0)
+				throw new IllegalStateException();
+			out.writeInt(this.offsets[index]);
+		}
+	}
+
+	/**
+	 * Serializes the node into the binary representation. As soon as a spilled {@link SpillingStreamNode} is
+	 * encountered, the remaining bytes are only counted and the binary representation is cleared. In that case, the
+	 * stream target is set afterwards and the node has to be {@link #streamNode(OutputStream, boolean) streamed} into
+	 * the actual output.
+	 *
+	 * @param withKeys
+	 *        true if the offsets and calculated keys of the layout should be written
+	 */
+	private void serializeNode(final boolean withKeys) {
+		this.binaryRepresentation.clear();
+		this.streamedBytes = 0;
+		if (withKeys) {
+			Arrays.fill(this.offsets, MISSING);
+			this.currentExpressionIndex.addLast(this.layout.getExpressionIndex());
+		} else
+			this.currentExpressionIndex.addLast(null);
+		this.kryo.writeClassAndObject(this.output, this.node);
+		this.currentExpressionIndex.removeLast();
+
+		final EvaluationExpression[] calculatedKeyExpressions = this.layout.getCalculatedKeyExpressions();
+		if (withKeys && calculatedKeyExpressions.length > 0) {
+			this.currentExpressionIndex.addLast(null);
+			for (int index = 0; index < calculatedKeyExpressions.length; index++) {
+				this.offsets[index + this.layout.getNumDirectDataKeys()] = this.position();
+				final IJsonNode calculatedValue = calculatedKeyExpressions[index].evaluate(this.node);
+				this.kryo.writeClassAndObject(this.output, calculatedValue);
+			}
+			this.currentExpressionIndex.removeLast();
+		}
+		this.output.flush();
+	}
+
+	/**
+	 * Switches from buffering to counting the serialized bytes, such that spilled elements are not copied into main
+	 * memory.
+	 */
+	private void startCounting() {
+		this.streamedBytes = this.binaryRepresentation.size();
+		this.binaryRepresentation.clear();
+		this.streamTarget = DISCARDING_STREAM;
+	}
+
+	/**
+	 * Serializes the node a second time directly into the given stream after its size has been counted with
+	 * {@link #serializeNode(boolean)}.
+	 */
+	private void streamNode(final OutputStream stream, final boolean withKeys) {
+		this.streamTarget = stream;
+		try {
+			this.serializeNode(withKeys);
+		} finally {
+			this.streamTarget = null;
+			this.streamedBytes = 0;
+		}
+	}
+
 	private int getKeyOffset(final int expressionIndex) {
 		if (expressionIndex == SopremoRecordLayout.VALUE_INDEX)
 			return 0;
@@ -305,7 +396,23 @@ public class SopremoRecord extends AbstractSopremoType implements ISopremoType {
 	}
 
 	private int position() {
-		return this.binaryRepresentation.size() + this.output.position();
+		return this.binaryRepresentation.size() + this.streamedBytes + this.output.position();
+	}
+
+	private void writeElements(final Kryo kryo, final Output output, final ExpressionIndex expressionIndex,
+			final int size, final Iterable<IJsonNode> elements) {
+		output.writeInt(size, true);
+
+		int index = 0;
+		for (final IJsonNode element : elements) {
+			final ExpressionIndex subIndex = expressionIndex == null ? null : expressionIndex.subIndex(index++);
+			final int keyIndex;
+			if (subIndex != null && (keyIndex = subIndex.getKeyIndex()) != -1)
+				this.offsets[keyIndex] = this.position();
+			this.currentExpressionIndex.addLast(subIndex);
+			kryo.writeClassAndObject(output, element);
+			this.currentExpressionIndex.removeLast();
+		}
 	}
 
 	public static class SopremoRecordKryoSerializer<Node extends IJsonNode> extends AbstractReusingSerializer<SopremoRecord> {
@@ -355,42 +462,59 @@ public class SopremoRecord extends AbstractSopremoType implements ISopremoType {
 		@Override
 		public void write(final Kryo kryo, final Output output, final SopremoRecord object) {
 			if (object.binaryRepresentation.isEmpty()) {
-				object.currentExpressionIndex.addLast(null);
-				object.kryo.writeClassAndObject(object.output, object.node);
-				object.currentExpressionIndex.removeLast();
-				object.output.flush();
+				object.serializeNode(false);
+				if (object.streamTarget != null) {
+					output.writeInt(object.position(), true);
+					object.streamNode(output, false);
+					return;
+				}
 			}
 			output.writeInt(object.binaryRepresentation.size(), true);
 			output.writeBytes(object.binaryRepresentation.elements(), 0, object.binaryRepresentation.size());
 		}
 	}
 
-	private class CachingArraySerializer extends CachingArrayNode.ArraySerializer {
+	/**
+	 * Writes arrays and {@link SpillingStreamNode}s in the array format. Both are read as {@link CachingArrayNode}s.
+	 */
+	private class CachingArraySerializer extends AbstractReusingSerializer<IJsonNode> {
+		private final CachingArrayNode.ArraySerializer arraySerializer = new CachingArrayNode.ArraySerializer();
+
 		/*
 		 * (non-Javadoc)
-		 * @see eu.stratosphere.sopremo.type.AbstractArrayNode.ArraySerializer#write(com.esotericsoftware.kryo.Kryo,
-		 * com.esotericsoftware.kryo.io.Output, eu.stratosphere.sopremo.type.ArrayNode)
+		 * @see eu.stratosphere.sopremo.type.ReusingSerializer#read(com.esotericsoftware.kryo.Kryo,
+		 * com.esotericsoftware.kryo.io.Input, java.lang.Object, java.lang.Class)
 		 */
+		@SuppressWarnings({ "unchecked", "rawtypes" })
 		@Override
-		public void write(Kryo kryo, Output output, ArrayNode<IJsonNode> array) {
+		public IJsonNode read(Kryo kryo, Input input, IJsonNode oldInstance, Class<IJsonNode> type) {
+			return this.arraySerializer.read(kryo, input, (ArrayNode<IJsonNode>) oldInstance, (Class) type);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.esotericsoftware.kryo.Serializer#write(com.esotericsoftware.kryo.Kryo,
+		 * com.esotericsoftware.kryo.io.Output, java.lang.Object)
+		 */
+		@SuppressWarnings("unchecked")
+		@Override
+		public void write(Kryo kryo, Output output, IJsonNode node) {
 			ExpressionIndex expressionIndex = SopremoRecord.this.currentExpressionIndex.getLast();
-			if (expressionIndex == null) {
-				super.write(kryo, output, array);
+			if (node instanceof SpillingStreamNode) {
+				final SpillingStreamNode<IJsonNode> stream = (SpillingStreamNode<IJsonNode>) node;
+				if (stream.isSpilled() && SopremoRecord.this.streamTarget == null)
+					SopremoRecord.this.startCounting();
+				SopremoRecord.this.writeElements(kryo, output, expressionIndex, stream.size(), stream);
 				return;
 			}
 
-			final int size = array.size();
-			output.writeInt(size, true);
-
-			for (int index = 0; index < size; index++) {
-				final ExpressionIndex subIndex = expressionIndex.subIndex(index);
-				final int keyIndex;
-				if (subIndex != null && (keyIndex = subIndex.getKeyIndex()) != -1)
-					SopremoRecord.this.offsets[keyIndex] = SopremoRecord.this.position();
-				SopremoRecord.this.currentExpressionIndex.addLast(subIndex);
-				kryo.writeClassAndObject(output, array.get(index));
-				SopremoRecord.this.currentExpressionIndex.removeLast();
+			final ArrayNode<IJsonNode> array = (ArrayNode<IJsonNode>) node;
+			if (expressionIndex == null) {
+				this.arraySerializer.write(kryo, output, array);
+				return;
 			}
+
+			SopremoRecord.this.writeElements(kryo, output, expressionIndex, array.size(), array);
 		}
 	}
 
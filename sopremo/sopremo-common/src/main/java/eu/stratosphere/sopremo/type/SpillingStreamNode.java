@@ -0,0 +1,557 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.type;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import eu.stratosphere.sopremo.EvaluationContext;
+import eu.stratosphere.sopremo.EvaluationException;
+import eu.stratosphere.sopremo.SopremoEnvironment;
+import eu.stratosphere.util.AbstractIterator;
+
+/**
+ * A reiterable {@link IStreamNode} that keeps its elements in serialized form and spills them to a local temporary
+ * file as soon as the serialized elements exceed a given memory limit.<br/>
+ * In contrast to {@link CachingArrayNode}, the number of materialized elements is only bounded by the local disk and
+ * the elements do not put any pressure on the garbage collector while they are buffered. The elements may be
+ * iterated arbitrarily often and can be sorted with an external merge sort.<br/>
+ * Iterators over spilled elements hold an open file until they are exhausted or the stream is {@link #clear()
+ * cleared}. When a stream is emitted as part of a {@link eu.stratosphere.sopremo.serialization.SopremoRecord}, it is
+ * written in the format of an array and thus materialized as an array by the receiving task. The spilled elements are
+ * streamed from disk into the output of the sending task without being buffered in the record.
+ */
+@DefaultSerializer(SpillingStreamNode.SpillingStreamNodeSerializer.class)
+public class SpillingStreamNode<T extends IJsonNode> extends AbstractJsonNode implements IStreamNode<T> {
+	private static final int INITIAL_BUFFER_SIZE = 4096, READ_BUFFER_SIZE = 64 << 10;
+
+	private final long memoryLimit;
+
+	private transient long effectiveMemoryLimit;
+
+	private final transient Output buffer = new Output(INITIAL_BUFFER_SIZE, -1);
+
+	private transient int bufferedElements, size;
+
+	private final transient List<Run> runs = new ArrayList<Run>();
+
+	private transient File spillFile;
+
+	private transient Output spillOutput;
+
+	private final transient List<Input> openInputs = new ArrayList<Input>();
+
+	private transient boolean sorted = true;
+
+	/**
+	 * Initializes SpillingStreamNode with the {@link EvaluationContext#getMaterializationMemoryLimit() memory limit}
+	 * of the current {@link EvaluationContext}. The limit is looked up again whenever the node is {@link #clear()
+	 * cleared}, such that long-living instances pick up the limit of the task in which they are eventually used.
+	 */
+	public SpillingStreamNode() {
+		this.memoryLimit = 0;
+		this.effectiveMemoryLimit = this.lookupMemoryLimit();
+	}
+
+	/**
+	 * Initializes SpillingStreamNode with the given memory limit.
+	 *
+	 * @param memoryLimit
+	 *        the maximum number of bytes that are buffered in main memory
+	 */
+	public SpillingStreamNode(final long memoryLimit) {
+		if (memoryLimit <= 0)
+			throw new IllegalArgumentException("memoryLimit must be positive");
+		this.memoryLimit = this.effectiveMemoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Appends a copy of the given node to this stream. Subsequent changes to the node are not reflected in this
+	 * stream.
+	 *
+	 * @param node
+	 *        the node to append
+	 * @return this
+	 */
+	public SpillingStreamNode<T> add(final T node) {
+		this.getKryo().writeClassAndObject(this.buffer, node);
+		this.bufferedElements++;
+		this.size++;
+		this.sorted = this.size <= 1;
+		if (this.buffer.position() > this.effectiveMemoryLimit)
+			this.spill();
+		return this;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.type.AbstractJsonNode#appendAsString(java.lang.Appendable)
+	 */
+	@Override
+	public void appendAsString(final Appendable appendable) throws IOException {
+		// printing should only be done during debugging
+		appendable.append('[');
+		final Iterator<T> iterator = this.iterator();
+		for (int index = 0; iterator.hasNext() && index < 100; index++) {
+			if (index > 0)
+				appendable.append(", ");
+			iterator.next().appendAsString(appendable);
+		}
+		if (this.size > 100)
+			appendable.append(", ...");
+		appendable.append(']');
+	}
+
+	/**
+	 * Removes all elements and deletes the spill file. Iterators over spilled elements that have not been exhausted
+	 * are closed, too.
+	 */
+	@Override
+	public void clear() {
+		this.buffer.clear();
+		this.bufferedElements = this.size = 0;
+		this.sorted = true;
+		this.runs.clear();
+		this.closeSpillFile();
+		this.effectiveMemoryLimit = this.lookupMemoryLimit();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.type.AbstractJsonNode#compareToSameType(eu.stratosphere.sopremo.type.IJsonNode)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public int compareToSameType(final IJsonNode other) {
+		final Iterator<T> iterator1 = this.iterator();
+		final Iterator<IJsonNode> iterator2 = ((IStreamNode<IJsonNode>) other).iterator();
+		while (iterator1.hasNext() && iterator2.hasNext()) {
+			final int comparison = iterator1.next().compareTo(iterator2.next());
+			if (comparison != 0)
+				return comparison;
+		}
+		if (iterator1.hasNext())
+			return 1;
+		return iterator2.hasNext() ? -1 : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.type.IJsonNode#copyValueFrom(eu.stratosphere.sopremo.type.IJsonNode)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void copyValueFrom(final IJsonNode otherNode) {
+		this.checkForSameType(otherNode);
+		if (otherNode == this)
+			return;
+		this.clear();
+		for (final IJsonNode element : (IStreamNode<?>) otherNode)
+			this.add((T) element);
+	}
+
+	/**
+	 * Copies all elements into the given array. The array is cleared beforehand and its nodes are reused if possible.
+	 * This method should only be used if the stream has not been {@link #isSpilled() spilled}.
+	 *
+	 * @param array
+	 *        the array that should receive the elements
+	 * @return the array
+	 */
+	public CachingArrayNode<T> fillArray(final CachingArrayNode<T> array) {
+		array.setSize(0);
+		for (final T element : this)
+			array.addClone(element);
+		return array;
+	}
+
+	/**
+	 * Returns the maximum number of bytes that are buffered in main memory.
+	 *
+	 * @return the memory limit
+	 */
+	public long getMemoryLimit() {
+		return this.effectiveMemoryLimit;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.type.IJsonNode#getType()
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public Class<IStreamNode<T>> getType() {
+		return (Class) IStreamNode.class;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.type.AbstractJsonNode#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return 43;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.sopremo.type.IStreamNode#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Returns true if at least some elements have been written to disk.
+	 *
+	 * @return true if the elements no longer fit into main memory
+	 */
+	public boolean isSpilled() {
+		return !this.runs.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		if (!this.isSpilled())
+			return this.bufferIterator();
+
+		if (this.sorted) {
+			final List<Iterator<T>> iterators = new ArrayList<Iterator<T>>();
+			for (final Run run : this.runs)
+				iterators.add(this.runIterator(run));
+			iterators.add(this.bufferIterator());
+			return new MergingIterator<T>(iterators);
+		}
+
+		return new AbstractIterator<T>() {
+			private int runIndex = 0;
+
+			private Iterator<T> currentIterator = this.nextIterator();
+
+			@Override
+			protected T loadNext() {
+				while (!this.currentIterator.hasNext()) {
+					if (this.runIndex > SpillingStreamNode.this.runs.size())
+						return this.noMoreElements();
+					this.currentIterator = this.nextIterator();
+				}
+				return this.currentIterator.next();
+			}
+
+			private Iterator<T> nextIterator() {
+				final List<Run> runs = SpillingStreamNode.this.runs;
+				if (this.runIndex < runs.size())
+					return SpillingStreamNode.this.runIterator(runs.get(this.runIndex++));
+				this.runIndex++;
+				return SpillingStreamNode.this.bufferIterator();
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of elements in this stream.
+	 *
+	 * @return the number of elements
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Sorts the elements of this stream according to their natural order. If the stream has been spilled, each run
+	 * on disk is sorted individually and the runs are merged lazily during the iteration.
+	 */
+	public void sort() {
+		if (this.sorted)
+			return;
+
+		if (this.isSpilled()) {
+			final File unsortedFile = this.spillFile;
+			final List<Run> unsortedRuns = new ArrayList<Run>(this.runs);
+			this.closeInputs();
+			this.spillOutput.close();
+			this.spillFile = null;
+			this.spillOutput = null;
+			this.runs.clear();
+			try {
+				for (final Run run : unsortedRuns)
+					this.writeSortedRun(this.runIterator(run, unsortedFile), run.count);
+			} finally {
+				unsortedFile.delete();
+			}
+		}
+
+		final List<T> elements = this.readAll(this.bufferIterator(), this.bufferedElements);
+		Collections.sort(elements);
+		this.buffer.clear();
+		for (final T element : elements)
+			this.getKryo().writeClassAndObject(this.buffer, element);
+		this.sorted = true;
+	}
+
+	private Iterator<T> bufferIterator() {
+		return this.readIterator(new Input(this.buffer.getBuffer(), 0, this.buffer.position()), this.bufferedElements,
+			false);
+	}
+
+	private void closeInputs() {
+		for (final Input input : this.openInputs)
+			input.close();
+		this.openInputs.clear();
+	}
+
+	private void closeSpillFile() {
+		this.closeInputs();
+		if (this.spillOutput != null) {
+			this.spillOutput.close();
+			this.spillOutput = null;
+		}
+		if (this.spillFile != null) {
+			this.spillFile.delete();
+			this.spillFile = null;
+		}
+	}
+
+	private Kryo getKryo() {
+		return SopremoEnvironment.getInstance().getEvaluationContext().getKryo();
+	}
+
+	private Output getSpillOutput() throws IOException {
+		if (this.spillOutput == null) {
+			this.spillFile = File.createTempFile("sopremo-spill", ".tmp");
+			this.spillFile.deleteOnExit();
+			this.spillOutput = new Output(new FileOutputStream(this.spillFile), READ_BUFFER_SIZE);
+		}
+		return this.spillOutput;
+	}
+
+	private long lookupMemoryLimit() {
+		if (this.memoryLimit > 0)
+			return this.memoryLimit;
+		return SopremoEnvironment.getInstance().getEvaluationContext().getMaterializationMemoryLimit();
+	}
+
+	private List<T> readAll(final Iterator<T> iterator, final int count) {
+		final List<T> elements = new ArrayList<T>(count);
+		while (iterator.hasNext())
+			elements.add(iterator.next());
+		return elements;
+	}
+
+	private Iterator<T> readIterator(final Input input, final int count, final boolean closeInput) {
+		final Kryo kryo = this.getKryo();
+		return new AbstractIterator<T>() {
+			private int remaining = count;
+
+			@SuppressWarnings("unchecked")
+			@Override
+			protected T loadNext() {
+				if (this.remaining == 0) {
+					if (closeInput && SpillingStreamNode.this.openInputs.remove(input))
+						input.close();
+					return this.noMoreElements();
+				}
+				this.remaining--;
+				return (T) kryo.readClassAndObject(input);
+			}
+		};
+	}
+
+	private Iterator<T> runIterator(final Run run) {
+		return this.runIterator(run, this.spillFile);
+	}
+
+	private Iterator<T> runIterator(final Run run, final File file) {
+		try {
+			final FileInputStream stream = new FileInputStream(file);
+			stream.getChannel().position(run.offset);
+			final Input input = new Input(stream, READ_BUFFER_SIZE);
+			this.openInputs.add(input);
+			return this.readIterator(input, run.count, true);
+		} catch (final IOException e) {
+			throw new EvaluationException("Cannot read spilled elements", e);
+		}
+	}
+
+	private void spill() {
+		// runs are only sorted on demand, so that the serialized bytes can be moved to disk without deserialization
+		this.writeRun(this.buffer.getBuffer(), this.buffer.position(), this.bufferedElements);
+		this.buffer.clear();
+		this.bufferedElements = 0;
+	}
+
+	private void writeRun(final byte[] bytes, final int length, final int count) {
+		try {
+			final Output output = this.getSpillOutput();
+			this.runs.add(new Run(output.total(), count));
+			output.writeBytes(bytes, 0, length);
+			output.flush();
+		} catch (final IOException e) {
+			throw new EvaluationException("Cannot spill elements", e);
+		}
+	}
+
+	private void writeSortedRun(final Iterator<T> elements, final int count) {
+		final List<T> sortedElements = this.readAll(elements, count);
+		Collections.sort(sortedElements);
+		try {
+			final Output output = this.getSpillOutput();
+			this.runs.add(new Run(output.total(), count));
+			final Kryo kryo = this.getKryo();
+			for (final T element : sortedElements)
+				kryo.writeClassAndObject(output, element);
+			output.flush();
+		} catch (final IOException e) {
+			throw new EvaluationException("Cannot spill elements", e);
+		}
+	}
+
+	private static class MergingIterator<T extends IJsonNode> extends AbstractIterator<T> {
+		private final PriorityQueue<Cursor<T>> cursors = new PriorityQueue<Cursor<T>>();
+
+		public MergingIterator(final List<Iterator<T>> iterators) {
+			for (final Iterator<T> iterator : iterators)
+				if (iterator.hasNext())
+					this.cursors.add(new Cursor<T>(iterator));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.util.AbstractIterator#loadNext()
+		 */
+		@Override
+		protected T loadNext() {
+			final Cursor<T> cursor = this.cursors.poll();
+			if (cursor == null)
+				return this.noMoreElements();
+			final T head = cursor.head;
+			if (cursor.iterator.hasNext()) {
+				cursor.head = cursor.iterator.next();
+				this.cursors.add(cursor);
+			}
+			return head;
+		}
+	}
+
+	private static class Cursor<T extends IJsonNode> implements Comparable<Cursor<T>> {
+		private final Iterator<T> iterator;
+
+		private T head;
+
+		public Cursor(final Iterator<T> iterator) {
+			this.iterator = iterator;
+			this.head = iterator.next();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(final Cursor<T> o) {
+			return this.head.compareTo(o.head);
+		}
+	}
+
+	private static class Run {
+		private final long offset;
+
+		private final int count;
+
+		public Run(final long offset, final int count) {
+			this.offset = offset;
+			this.count = count;
+		}
+	}
+
+	public static class SpillingStreamNodeSerializer extends AbstractReusingSerializer<SpillingStreamNode<IJsonNode>> {
+		/*
+		 * (non-Javadoc)
+		 * @see com.esotericsoftware.kryo.Serializer#copy(com.esotericsoftware.kryo.Kryo, java.lang.Object)
+		 */
+		@Override
+		public SpillingStreamNode<IJsonNode> copy(final Kryo kryo, final SpillingStreamNode<IJsonNode> original) {
+			final SpillingStreamNode<IJsonNode> copy = original.memoryLimit > 0 ?
+				new SpillingStreamNode<IJsonNode>(original.memoryLimit) : new SpillingStreamNode<IJsonNode>();
+			copy.copyValueFrom(original);
+			return copy;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.esotericsoftware.kryo.Serializer#read(com.esotericsoftware.kryo.Kryo,
+		 * com.esotericsoftware.kryo.io.Input, java.lang.Class)
+		 */
+		@Override
+		public SpillingStreamNode<IJsonNode> read(final Kryo kryo, final Input input,
+				final Class<SpillingStreamNode<IJsonNode>> type) {
+			final long memoryLimit = input.readLong();
+			final SpillingStreamNode<IJsonNode> node = memoryLimit > 0 ?
+				new SpillingStreamNode<IJsonNode>(memoryLimit) : new SpillingStreamNode<IJsonNode>();
+			for (int index = input.readInt(); index > 0; index--)
+				node.add((IJsonNode) kryo.readClassAndObject(input));
+			return node;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.type.ReusingSerializer#read(com.esotericsoftware.kryo.Kryo,
+		 * com.esotericsoftware.kryo.io.Input, java.lang.Object, java.lang.Class)
+		 */
+		@Override
+		public SpillingStreamNode<IJsonNode> read(final Kryo kryo, final Input input,
+				final SpillingStreamNode<IJsonNode> oldInstance, final Class<SpillingStreamNode<IJsonNode>> type) {
+			if (oldInstance == null)
+				return this.read(kryo, input, type);
+
+			// the memory limit of the existing instance is kept
+			input.readLong();
+			oldInstance.clear();
+			for (int index = input.readInt(); index > 0; index--)
+				oldInstance.add((IJsonNode) kryo.readClassAndObject(input));
+			return oldInstance;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.esotericsoftware.kryo.Serializer#write(com.esotericsoftware.kryo.Kryo,
+		 * com.esotericsoftware.kryo.io.Output, java.lang.Object)
+		 */
+		@Override
+		public void write(final Kryo kryo, final Output output, final SpillingStreamNode<IJsonNode> object) {
+			output.writeLong(object.memoryLimit);
+			output.writeInt(object.size);
+			for (final IJsonNode element : object)
+				kryo.writeClassAndObject(output, element);
+		}
+	}
+}
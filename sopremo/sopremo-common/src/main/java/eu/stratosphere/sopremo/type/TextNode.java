@@ -87,6 +87,14 @@ public class TextNode extends AbstractJsonNode implements IPrimitiveNode,
 		return this;
 	}
 
+	/**
+	 * Appends the characters of the given array between start (inclusive) and end (exclusive).
+	 */
+	public Appendable append(final char[] text, final int start, final int end) {
+		this.value.addElements(this.value.size(), text, start, end - start);
+		return this;
+	}
+
 	/**
 	 * @param number
 	 */
@@ -239,6 +247,11 @@ public class TextNode extends AbstractJsonNode implements IPrimitiveNode,
 			this.value.add(text.charAt(index));
 	}
 	
+	public void setValue(final char[] text, final int start, final int end) {
+		this.value.size(end - start);
+		System.arraycopy(text, start, this.value.elements(), 0, end - start);
+	}
+
 	public void setValue(final String text, final int start, final int end) {
 		this.value.size(end - start);
 		text.getChars(start, end, this.value.elements(), 0);
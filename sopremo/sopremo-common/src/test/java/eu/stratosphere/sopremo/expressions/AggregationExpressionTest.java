@@ -2,14 +2,20 @@ package eu.stratosphere.sopremo.expressions;
 
 import static eu.stratosphere.sopremo.type.JsonUtil.createArrayNode;
 
+import java.math.BigDecimal;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import eu.stratosphere.sopremo.CoreFunctions;
 import eu.stratosphere.sopremo.aggregation.Aggregation;
+import eu.stratosphere.sopremo.type.DecimalNode;
+import eu.stratosphere.sopremo.type.DoubleNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
 import eu.stratosphere.sopremo.type.INumericNode;
 import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.LongNode;
+import eu.stratosphere.sopremo.type.TextNode;
 
 public class AggregationExpressionTest extends EvaluableExpressionTest<AggregationExpression> {
 	@Test
@@ -19,6 +25,34 @@ public class AggregationExpressionTest extends EvaluableExpressionTest<Aggregati
 		Assert.assertEquals(IntNode.valueOf(4), result);
 	}
 
+	@Test
+	public void shouldPromoteSumToWiderType() {
+		Assert.assertEquals(IntNode.valueOf(6),
+			new AggregationExpression(CoreFunctions.SUM).evaluate(createArrayNode(1, 2, 3)));
+		Assert.assertEquals(LongNode.valueOf(Integer.MAX_VALUE + 3L),
+			new AggregationExpression(CoreFunctions.SUM).evaluate(createArrayNode(1, 2L, Integer.MAX_VALUE)));
+		Assert.assertEquals(DoubleNode.valueOf(4.5),
+			new AggregationExpression(CoreFunctions.SUM).evaluate(createArrayNode(1, 2L, 1.5)));
+	}
+
+	@Test
+	public void shouldFallBackToGenericAggregation() {
+		Assert.assertEquals(DecimalNode.valueOf(new BigDecimal("3.5")),
+			new AggregationExpression(CoreFunctions.SUM).evaluate(createArrayNode(1, new BigDecimal("1.5"), 1)));
+		Assert.assertEquals(IntNode.valueOf(1),
+			new AggregationExpression(CoreFunctions.MIN).evaluate(createArrayNode(2, 1, 3L)));
+		Assert.assertEquals(TextNode.valueOf("b"),
+			new AggregationExpression(CoreFunctions.MAX).evaluate(createArrayNode("a", "b")));
+	}
+
+	@Test
+	public void shouldKeepTypeOfMaximum() {
+		Assert.assertEquals(LongNode.valueOf(Integer.MAX_VALUE + 1L),
+			new AggregationExpression(CoreFunctions.MAX).evaluate(createArrayNode(1, Integer.MAX_VALUE + 1L, 2)));
+		Assert.assertEquals(DoubleNode.valueOf(2.5),
+			new AggregationExpression(CoreFunctions.MAX).evaluate(createArrayNode(1, 2.5, 2L)));
+	}
+
 	@Test
 	public void testFunctionAndExpression() {
 		final Aggregation func = CoreFunctions.SUM;
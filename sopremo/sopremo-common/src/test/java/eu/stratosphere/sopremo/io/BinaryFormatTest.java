@@ -0,0 +1,121 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import eu.stratosphere.api.common.io.FileInputFormat;
+import eu.stratosphere.api.common.io.statistics.BaseStatistics;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.core.fs.FileInputSplit;
+import eu.stratosphere.sopremo.SopremoEnvironment;
+import eu.stratosphere.sopremo.io.BinaryFormat.BinaryInputFormat;
+import eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
+import eu.stratosphere.sopremo.serialization.SopremoRecord;
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.BigIntegerNode;
+import eu.stratosphere.sopremo.type.BooleanNode;
+import eu.stratosphere.sopremo.type.DecimalNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IObjectNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.JsonUtil;
+import eu.stratosphere.sopremo.type.NullNode;
+import eu.stratosphere.sopremo.type.TextNode;
+
+/**
+ * Tests {@link BinaryFormat}.
+ */
+public class BinaryFormatTest extends OutputFormatTest {
+	@Test
+	public void shouldReadWrittenValues() throws IOException {
+		final IJsonNode[] values = {
+			JsonUtil.createObjectNode("id", 1, "name", "a", "address",
+				JsonUtil.createObjectNode("city", "Berlin", "zip", 10115)),
+			JsonUtil.createObjectNode("id", 2, "score", 0.5, "tags",
+				new ArrayNode<IJsonNode>(IntNode.valueOf(1), TextNode.valueOf("two"), NullNode.getInstance())),
+			// fewer fields than the previous value
+			JsonUtil.createObjectNode("name", NullNode.getInstance()),
+			IntNode.valueOf(4),
+			new ArrayNode<IJsonNode>(BooleanNode.TRUE, JsonUtil.createObjectNode("nested", true)),
+			JsonUtil.createObjectNode("big", BigIntegerNode.valueOf(new BigInteger("123456789012345678901234567890")),
+				"decimal", DecimalNode.valueOf(new BigDecimal("-1.25E-7"))),
+			JsonUtil.createObjectNode(),
+			TextNode.valueOf("\u00fcnic\u00f6de") };
+
+		writeAndRead(new BinaryFormat(), values);
+		writeAndRead(new BinaryFormat().withBlockSize(1), values);
+	}
+
+	@Test
+	public void shouldReadEachBlockOnceFromSeveralSplits() throws IOException {
+		final BinaryInputFormat inputFormat = this.openIds(1000, 256);
+
+		final FileInputSplit[] splits = inputFormat.createInputSplits(7);
+		Assert.assertTrue("several splits expected", splits.length > 1);
+		final List<Integer> ids = new ArrayList<Integer>();
+		final SopremoRecord record = new SopremoRecord();
+		for (final FileInputSplit split : splits) {
+			inputFormat.open(split);
+			while (!inputFormat.reachedEnd())
+				if (inputFormat.nextRecord(record))
+					ids.add(((IntNode) ((IObjectNode) record.getNode()).get("id")).getIntValue());
+			inputFormat.close();
+		}
+
+		Collections.sort(ids);
+		Assert.assertEquals(1000, ids.size());
+		for (int index = 0; index < 1000; index++)
+			Assert.assertEquals(index, ids.get(index).intValue());
+	}
+
+	@Test
+	public void shouldEstimateNumberOfRecords() throws IOException {
+		final BinaryInputFormat inputFormat = this.openIds(1000, 256);
+
+		final BaseStatistics statistics = inputFormat.getStatistics(null);
+		Assert.assertNotNull(statistics);
+		Assert.assertEquals(1000, statistics.getNumberOfRecords(), 100);
+	}
+
+	private BinaryInputFormat openIds(final int numValues, final int blockSize) throws IOException {
+		final File file = File.createTempFile("binaryFormatTest", ".sopremo");
+		file.delete();
+		file.deleteOnExit();
+		final IJsonNode[] values = new IJsonNode[numValues];
+		for (int index = 0; index < numValues; index++)
+			values[index] = JsonUtil.createObjectNode("id", index, "text", String.format("value %d", index));
+		writeToFile(file, new BinaryFormat().withBlockSize(blockSize), values);
+
+		final Configuration config = new Configuration();
+		SopremoEnvironment.getInstance().save(config);
+		SopremoUtil.transferFieldsToConfiguration(new BinaryFormat(), SopremoFormat.class, config,
+			BinaryInputFormat.class, SopremoFileInputFormat.class);
+		config.setString(FileInputFormat.FILE_PARAMETER_KEY, file.toURI().toString());
+		final BinaryInputFormat inputFormat = new BinaryInputFormat();
+		inputFormat.configure(config);
+		return inputFormat;
+	}
+}
@@ -0,0 +1,243 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import eu.stratosphere.api.common.io.FileInputFormat;
+import eu.stratosphere.api.common.io.FormatUtil;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.core.fs.FSDataInputStream;
+import eu.stratosphere.core.fs.FileInputSplit;
+import eu.stratosphere.sopremo.SopremoEnvironment;
+import eu.stratosphere.sopremo.expressions.ComparativeExpression;
+import eu.stratosphere.sopremo.expressions.ComparativeExpression.BinaryOperator;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.ObjectAccess;
+import eu.stratosphere.sopremo.expressions.ObjectCreation;
+import eu.stratosphere.sopremo.io.ColumnarFormat.ColumnarInputFormat;
+import eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
+import eu.stratosphere.sopremo.serialization.SopremoRecord;
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.BigIntegerNode;
+import eu.stratosphere.sopremo.type.DecimalNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IObjectNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.JsonUtil;
+import eu.stratosphere.sopremo.type.NullNode;
+import eu.stratosphere.sopremo.type.TextNode;
+
+/**
+ * Tests {@link ColumnarFormat}.
+ */
+public class ColumnarFormatTest extends OutputFormatTest {
+	@Test
+	public void shouldReadWrittenValues() throws IOException {
+		final IJsonNode[] values = {
+			JsonUtil.createObjectNode("id", 1, "name", "a", "address",
+				JsonUtil.createObjectNode("city", "Berlin", "zip", 10115)),
+			JsonUtil.createObjectNode("id", 2, "score", 0.5, "tags",
+				new ArrayNode<IJsonNode>(IntNode.valueOf(1), TextNode.valueOf("two"), NullNode.getInstance())),
+			JsonUtil.createObjectNode("id", "three", "name", NullNode.getInstance(), "address", "unknown"),
+			IntNode.valueOf(4),
+			new ArrayNode<IJsonNode>(NullNode.getInstance(), JsonUtil.createObjectNode("nested", true)),
+			JsonUtil.createObjectNode("big", BigIntegerNode.valueOf(new BigInteger("123456789012345678901234567890")),
+				"decimal", DecimalNode.valueOf(new BigDecimal("-1.25E-7"))),
+			JsonUtil.createObjectNode(),
+			TextNode.valueOf("\u00fcnic\u00f6de") };
+
+		writeAndRead(new ColumnarFormat().withBlockSize(3), values);
+	}
+
+	@Test
+	public void shouldReadEachBlockOnceFromSeveralSplits() throws IOException {
+		final File file = this.writeIds(1000, 10);
+
+		final Configuration config = new Configuration();
+		SopremoEnvironment.getInstance().save(config);
+		SopremoUtil.transferFieldsToConfiguration(new ColumnarFormat(), SopremoFormat.class, config,
+			ColumnarInputFormat.class, SopremoFileInputFormat.class);
+		config.setString(FileInputFormat.FILE_PARAMETER_KEY, file.toURI().toString());
+		final ColumnarInputFormat inputFormat = new ColumnarInputFormat();
+		inputFormat.configure(config);
+
+		final FileInputSplit[] splits = inputFormat.createInputSplits(7);
+		Assert.assertTrue("several splits expected", splits.length > 1);
+		final List<Integer> ids = new ArrayList<Integer>();
+		final SopremoRecord record = new SopremoRecord();
+		for (final FileInputSplit split : splits) {
+			inputFormat.open(split);
+			while (!inputFormat.reachedEnd())
+				if (inputFormat.nextRecord(record))
+					ids.add(((IntNode) ((IObjectNode) record.getNode()).get("id")).getIntValue());
+			inputFormat.close();
+		}
+
+		Collections.sort(ids);
+		Assert.assertEquals(1000, ids.size());
+		for (int index = 0; index < 1000; index++)
+			Assert.assertEquals(index, ids.get(index).intValue());
+	}
+
+	@Test
+	public void shouldOnlyReadSelectedValues() throws IOException {
+		final File file = this.writeIds(1000, 10);
+
+		final List<IJsonNode> values = new ArrayList<IJsonNode>();
+		final long selectedBytes = readIds(file, 990, true, values);
+		final List<IJsonNode> expected = new ArrayList<IJsonNode>();
+		for (int index = 991; index < 1000; index++)
+			expected.add(JsonUtil.createObjectNode("id", index));
+		Assert.assertEquals(expected, values);
+
+		// all block headers and directories are read in any case
+		final long skippedBytes = readIds(file, 1000, true, new ArrayList<IJsonNode>());
+		final long projectedBytes = readIds(file, -1, true, new ArrayList<IJsonNode>());
+		final long allBytes = readIds(file, -1, false, new ArrayList<IJsonNode>());
+		// only the last of the 100 blocks contains ids above 990
+		Assert.assertTrue("the selected block is not read", selectedBytes > skippedBytes);
+		Assert.assertTrue(String.format("more than one block read: %d of %d bytes", selectedBytes - skippedBytes,
+			projectedBytes - skippedBytes), 50 * (selectedBytes - skippedBytes) < projectedBytes - skippedBytes);
+		// the text column is never read if it is not projected
+		Assert.assertTrue("the text column is read", projectedBytes < allBytes);
+	}
+
+	/**
+	 * Reads the values with an id above the given minimum and returns the number of bytes that have been read.
+	 */
+	private static long readIds(final File file, final int minimumId, final boolean projectId,
+			final List<IJsonNode> values) throws IOException {
+		final ColumnarFormat format = new ColumnarFormat();
+		format.setSelection(new ComparativeExpression(new ConstantExpression(minimumId), BinaryOperator.LESS,
+			new ObjectAccess("id")));
+		if (projectId)
+			format.setProjection(new ObjectCreation().addMapping("id", new ObjectAccess("id")));
+		final Configuration config = new Configuration();
+		SopremoEnvironment.getInstance().save(config);
+		SopremoUtil.transferFieldsToConfiguration(format, SopremoFormat.class, config,
+			ColumnarInputFormat.class, SopremoFileInputFormat.class);
+		final CountingColumnarInputFormat inputFormat =
+			FormatUtil.openInput(CountingColumnarInputFormat.class, file.toURI().toString(), config);
+
+		final SopremoRecord record = new SopremoRecord();
+		while (!inputFormat.reachedEnd())
+			if (inputFormat.nextRecord(record))
+				values.add(record.getNode().clone());
+		inputFormat.close();
+		return inputFormat.getStream().getReadBytes();
+	}
+
+	private File writeIds(final int numValues, final int blockSize) throws IOException {
+		final File file = File.createTempFile("columnarFormatTest", ".columnar");
+		file.delete();
+		file.deleteOnExit();
+		final IJsonNode[] values = new IJsonNode[numValues];
+		for (int index = 0; index < numValues; index++)
+			values[index] = JsonUtil.createObjectNode("id", index, "text", String.format("value %d", index));
+		writeToFile(file, new ColumnarFormat().withBlockSize(blockSize), values);
+		return file;
+	}
+
+	/**
+	 * Counts the bytes that the {@link ColumnarInputFormat} actually reads from the file.
+	 */
+	public static class CountingColumnarInputFormat extends ColumnarInputFormat {
+		private static final long serialVersionUID = -3620491238547115382L;
+
+		private transient CountingInputStream stream;
+
+		public CountingInputStream getStream() {
+			return this.stream;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.sopremo.io.ColumnarFormat.ColumnarInputFormat#open(eu.stratosphere.core.fs.
+		 * FSDataInputStream, eu.stratosphere.core.fs.FileInputSplit)
+		 */
+		@Override
+		protected void open(final FSDataInputStream stream, final FileInputSplit split) throws IOException {
+			this.stream = new CountingInputStream(stream);
+			super.open(this.stream, split);
+		}
+	}
+
+	private static class CountingInputStream extends FSDataInputStream {
+		private final FSDataInputStream stream;
+
+		private long readBytes;
+
+		public CountingInputStream(final FSDataInputStream stream) {
+			this.stream = stream;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			this.stream.close();
+		}
+
+		public long getReadBytes() {
+			return this.readBytes;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#read()
+		 */
+		@Override
+		public int read() throws IOException {
+			final int value = this.stream.read();
+			if (value != -1)
+				this.readBytes++;
+			return value;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.InputStream#read(byte[], int, int)
+		 */
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+			final int read = this.stream.read(buffer, offset, length);
+			if (read > 0)
+				this.readBytes += read;
+			return read;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.core.fs.FSDataInputStream#seek(long)
+		 */
+		@Override
+		public void seek(final long desired) throws IOException {
+			this.stream.seek(desired);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import eu.stratosphere.api.common.io.FileInputFormat;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.core.fs.FileInputSplit;
+import eu.stratosphere.sopremo.SopremoEnvironment;
+import eu.stratosphere.sopremo.io.JsonLinesFormat.JsonLinesInputFormat;
+import eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
+import eu.stratosphere.sopremo.serialization.SopremoRecord;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IObjectNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.JsonUtil;
+
+/**
+ * Tests {@link CompressionCodec} and the compression of {@link SopremoFormat}s.
+ */
+public class CompressionCodecTest extends OutputFormatTest {
+	private static final int NUM_LINES = 20000;
+
+	@Test
+	public void shouldReadWrittenValues() throws IOException {
+		final IJsonNode[] values = new IJsonNode[1000];
+		for (int index = 0; index < values.length; index++)
+			values[index] = JsonUtil.createObjectNode("id", index, "text", String.format("value %d", index));
+
+		for (final CompressionCodec codec : CompressionCodec.getCodecs())
+			writeAndRead(new JsonFormat().withCompression(codec.getName()), values);
+	}
+
+	@Test
+	public void shouldReadEachLineOnceFromSplitsOfBlockCompressedFile() throws IOException {
+		final FileInputSplit[] splits = this.readLines(CompressionCodec.BLOCK);
+		Assert.assertTrue("several splits expected", splits.length > 1);
+	}
+
+	@Test
+	public void shouldReadGzipFileAsOneSplit() throws IOException {
+		final FileInputSplit[] splits = this.readLines(CompressionCodec.GZIP);
+		Assert.assertEquals(1, splits.length);
+	}
+
+	@Test
+	public void shouldIgnoreCompressionExtension() {
+		Assert.assertTrue(new JsonLinesFormat().canHandleFormat(URI.create("file:/tmp/input.jsonl.gz")));
+		Assert.assertTrue(new JsonFormat().canHandleFormat(URI.create("file:/tmp/input.json.bdeflate")));
+		Assert.assertFalse(new JsonFormat().canHandleFormat(URI.create("file:/tmp/input.csv.gz")));
+	}
+
+	/**
+	 * Writes json lines compressed with the given codec and reads them from several splits, of which the codec is
+	 * inferred from the extension of the file.
+	 *
+	 * @return the splits
+	 */
+	private FileInputSplit[] readLines(final CompressionCodec codec) throws IOException {
+		final File file = File.createTempFile("compressionCodecTest", ".jsonl." + codec.getExtensions()[0]);
+		file.deleteOnExit();
+		final OutputStreamWriter jsonWriter = new OutputStreamWriter(codec.createOutputStream(
+			new CompressionCodec.WrappingOutputStream(new FileOutputStream(file))), "utf-8");
+		for (int index = 0; index < NUM_LINES; index++)
+			jsonWriter.write(String.format("{\"id\": %d, \"text\": \"line, with [brackets]\"}\n", index));
+		jsonWriter.close();
+
+		final Configuration config = new Configuration();
+		SopremoEnvironment.getInstance().save(config);
+		SopremoUtil.transferFieldsToConfiguration(new JsonLinesFormat(), SopremoFormat.class, config,
+			JsonLinesInputFormat.class, SopremoFileInputFormat.class);
+		config.setString(FileInputFormat.FILE_PARAMETER_KEY, file.toURI().toString());
+		final JsonLinesInputFormat inputFormat = new JsonLinesInputFormat();
+		inputFormat.configure(config);
+
+		final FileInputSplit[] splits = inputFormat.createInputSplits(7);
+		final List<Integer> ids = new ArrayList<Integer>();
+		final SopremoRecord record = new SopremoRecord();
+		for (final FileInputSplit split : splits) {
+			inputFormat.open(split);
+			while (!inputFormat.reachedEnd())
+				if (inputFormat.nextRecord(record))
+					ids.add(((IntNode) ((IObjectNode) record.getNode()).get("id")).getIntValue());
+			inputFormat.close();
+		}
+
+		Collections.sort(ids);
+		Assert.assertEquals(NUM_LINES, ids.size());
+		for (int index = 0; index < NUM_LINES; index++)
+			Assert.assertEquals(index, ids.get(index).intValue());
+		return splits;
+	}
+}
@@ -1,16 +1,32 @@
 package eu.stratosphere.sopremo.io;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import eu.stratosphere.api.common.io.FileInputFormat;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.core.fs.FileInputSplit;
+import eu.stratosphere.sopremo.SopremoEnvironment;
+import eu.stratosphere.sopremo.expressions.ObjectAccess;
+import eu.stratosphere.sopremo.expressions.ObjectCreation;
+import eu.stratosphere.sopremo.io.CsvFormat.CsvInputFormat;
+import eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
+import eu.stratosphere.sopremo.serialization.SopremoRecord;
 import eu.stratosphere.sopremo.type.CoercionException;
 import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IObjectNode;
 import eu.stratosphere.sopremo.type.IntNode;
 import eu.stratosphere.sopremo.type.JsonUtil;
 import eu.stratosphere.sopremo.type.ObjectNode;
@@ -147,6 +163,150 @@ public class CsvInputFormatTest extends InputFormatTest {
 		Assert.assertEquals(expected, actual);
 	}
 
+	/**
+	 * Tests if columns that are not used by the projection are skipped.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void shouldParseProjectedColumns() throws IOException {
+		final File source = new File(this.getResource("CsvInputFormat/restaurant_short.csv"));
+
+		final CsvFormat format = new CsvFormat();
+		format.setFieldDelimiter(",");
+		format.setProjection(new ObjectCreation().addMapping("id", new ObjectAccess("id")).
+			addMapping("city", new ObjectAccess("city")));
+		final Collection<IJsonNode> actual = readFromFile(source, format);
+
+		final List<ObjectNode> expected = Arrays.asList(
+			JsonUtil.createObjectNode("id", "1", "city", "los angeles"),
+			JsonUtil.createObjectNode("id", "2", "city", "los,angeles"),
+			JsonUtil.createObjectNode("id", "3", "city", "los\nangeles"));
+		Assert.assertEquals(expected, actual);
+	}
+
+	/**
+	 * Tests if fields that span several blocks of decoded characters are parsed correctly.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void shouldParseFieldsAcrossBufferBoundaries() throws IOException {
+		final int numRecords = 5000;
+		final File file = File.createTempFile("csvInputFormatTest", ".csv");
+		file.deleteOnExit();
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+		writer.write("id,text,amount\r\n");
+		final List<IJsonNode> expected = new ArrayList<IJsonNode>();
+		for (int index = 0; index < numRecords; index++) {
+			writer.write(String.format("%d,\"\u20ac %d \\\"\\u00fc\\\"\",%d\r\n", index, index, index * 3));
+			expected.add(JsonUtil.createObjectNode("id", index, "text",
+				String.format("\u20ac %d \"\u00fc\"", index), "amount", String.valueOf(index * 3)));
+		}
+		writer.close();
+
+		final CsvFormat format = new CsvFormat().withFieldDelimiter(",").withQuotation(true);
+		format.setTypes(IntNode.class, TextNode.class);
+		final Collection<IJsonNode> actual = readFromFile(file, format);
+		Assert.assertEquals(expected, actual);
+	}
+
+	/**
+	 * Tests if each record is read exactly once from several splits although quoted fields contain line feeds.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void shouldReadQuotedLineFeedsFromSeveralSplits() throws IOException {
+		final int numRecords = 20000;
+		final File file = File.createTempFile("csvInputFormatTest", ".csv");
+		file.deleteOnExit();
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+		writer.write("id,text\n");
+		for (int index = 0; index < numRecords; index++)
+			writer.write(String.format("%d,\"line %d, \\\"quoted\\\"\nnext\"\n", index, index));
+		writer.close();
+
+		final Configuration config = new Configuration();
+		SopremoEnvironment.getInstance().save(config);
+		SopremoUtil.transferFieldsToConfiguration(new CsvFormat().withFieldDelimiter(",").withQuotation(true),
+			SopremoFormat.class, config, CsvInputFormat.class, SopremoFileInputFormat.class);
+		config.setString(FileInputFormat.FILE_PARAMETER_KEY, file.toURI().toString());
+		final CsvInputFormat inputFormat = new CsvInputFormat();
+		inputFormat.configure(config);
+
+		final FileInputSplit[] splits = inputFormat.createInputSplits(7);
+		Assert.assertTrue("several splits expected", splits.length > 1);
+		final List<Integer> ids = new ArrayList<Integer>();
+		final SopremoRecord record = new SopremoRecord();
+		for (final FileInputSplit split : splits) {
+			inputFormat.open(split);
+			while (!inputFormat.reachedEnd())
+				if (inputFormat.nextRecord(record)) {
+					final IObjectNode object = (IObjectNode) record.getNode();
+					final int id = Integer.parseInt(object.get("id").toString());
+					Assert.assertEquals(TextNode.valueOf(String.format("line %d, \"quoted\"\nnext", id)),
+						object.get("text"));
+					ids.add(id);
+				}
+			inputFormat.close();
+		}
+
+		Collections.sort(ids);
+		Assert.assertEquals(numRecords, ids.size());
+		for (int index = 0; index < numRecords; index++)
+			Assert.assertEquals(index, ids.get(index).intValue());
+	}
+
+	/**
+	 * Tests if each record is read exactly once from several splits although a quoted field spans several splits and
+	 * consists of lines that look like records.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void shouldReadLongQuotedFieldsFromSeveralSplits() throws IOException {
+		final StringBuilder longText = new StringBuilder();
+		for (int index = 0; index < 100000; index++)
+			longText.append("fake,record\n");
+		final File file = File.createTempFile("csvInputFormatTest", ".csv");
+		file.deleteOnExit();
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+		writer.write("id,text\n");
+		writer.write("0,short\n");
+		writer.write(String.format("1,\"%s\"\n", longText));
+		writer.write("2,short\n");
+		writer.close();
+
+		final Configuration config = new Configuration();
+		SopremoEnvironment.getInstance().save(config);
+		SopremoUtil.transferFieldsToConfiguration(new CsvFormat().withFieldDelimiter(",").withQuotation(true),
+			SopremoFormat.class, config, CsvInputFormat.class, SopremoFileInputFormat.class);
+		config.setString(FileInputFormat.FILE_PARAMETER_KEY, file.toURI().toString());
+		final CsvInputFormat inputFormat = new CsvInputFormat();
+		inputFormat.configure(config);
+
+		final FileInputSplit[] splits = inputFormat.createInputSplits(7);
+		Assert.assertTrue("several splits expected", splits.length > 1);
+		final List<Integer> ids = new ArrayList<Integer>();
+		final SopremoRecord record = new SopremoRecord();
+		for (final FileInputSplit split : splits) {
+			inputFormat.open(split);
+			while (!inputFormat.reachedEnd())
+				if (inputFormat.nextRecord(record)) {
+					final IObjectNode object = (IObjectNode) record.getNode();
+					final int id = Integer.parseInt(object.get("id").toString());
+					Assert.assertEquals(TextNode.valueOf(id == 1 ? longText.toString() : "short"),
+						object.get("text"));
+					ids.add(id);
+				}
+			inputFormat.close();
+		}
+
+		Collections.sort(ids);
+		Assert.assertEquals(Arrays.asList(0, 1, 2), ids);
+	}
+
 	private String getResource(final String name) throws IOException {
 		return JsonInputFormatTest.class.getClassLoader().getResources(name)
 			.nextElement().getFile();
@@ -1,20 +1,30 @@
 package eu.stratosphere.sopremo.io;
 
+import java.io.File;
 import java.io.IOException;
 
 import org.junit.Assert;
 import org.junit.Test;
 
-import eu.stratosphere.sopremo.io.CsvFormat.CsvOutputFormat;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
 import eu.stratosphere.sopremo.type.IJsonNode;
 import eu.stratosphere.sopremo.type.JsonUtil;
+import eu.stratosphere.sopremo.type.TextNode;
 
 public class CsvOutputFormatTest extends OutputFormatTest {
 
 	@Test
-	public void shouldEscapeProperly() {
-		final String escapedString = new CsvOutputFormat().escapeString("\"Unesc\\unesc\"end\"");
-		Assert.assertEquals("\\\"Unesc\\\\unesc\\\"end\\\"", escapedString);
+	public void shouldEscapeProperly() throws IOException {
+		final File file = File.createTempFile("csvTest.csv", null);
+		file.delete();
+
+		writeToFile(file, new CsvFormat(), TextNode.valueOf("\"Unesc\\unesc\"end\""));
+		final String written = Files.toString(file, Charsets.UTF_8);
+		file.delete();
+
+		Assert.assertEquals("\"\\\"Unesc\\\\unesc\\\"end\\\"\"\n", written);
 	}
 
 	/**
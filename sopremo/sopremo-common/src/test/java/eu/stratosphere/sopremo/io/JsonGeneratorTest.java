@@ -12,6 +12,7 @@ import eu.stratosphere.sopremo.type.ArrayNode;
 import eu.stratosphere.sopremo.type.BooleanNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
 import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.JsonUtil;
 import eu.stratosphere.sopremo.type.MissingNode;
 import eu.stratosphere.sopremo.type.NullNode;
 import eu.stratosphere.sopremo.type.ObjectNode;
@@ -43,6 +44,18 @@ public class JsonGeneratorTest {
 		}
 	}
 
+	@Test
+	public void shouldWriteParsableValues() throws IOException {
+		final IJsonNode[] values = {
+			JsonUtil.createObjectNode("id", -17, "text", "quote \" backslash \\ line\nfeed \u00fc\u20ac\ud83d\ude00"),
+			JsonUtil.createObjectNode("key \"quoted\"", true, "nested",
+				new ArrayNode<IJsonNode>(IntNode.valueOf(Integer.MIN_VALUE), NullNode.getInstance())),
+			TextNode.valueOf("tab\tcontrol\u0001") };
+
+		OutputFormatTest.writeAndRead(new JsonFormat(), values);
+		OutputFormatTest.writeAndRead(new JsonLinesFormat(), values);
+	}
+
 	@Test
 	public void testGeneration() {
 		try {
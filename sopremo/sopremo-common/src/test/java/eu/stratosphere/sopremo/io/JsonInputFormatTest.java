@@ -4,6 +4,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -11,13 +14,20 @@ import org.junit.Test;
 import eu.stratosphere.api.common.io.FormatUtil;
 import eu.stratosphere.configuration.Configuration;
 import eu.stratosphere.sopremo.SopremoEnvironment;
+import eu.stratosphere.sopremo.expressions.ComparativeExpression;
+import eu.stratosphere.sopremo.expressions.ComparativeExpression.BinaryOperator;
+import eu.stratosphere.sopremo.expressions.ConstantExpression;
+import eu.stratosphere.sopremo.expressions.ObjectAccess;
+import eu.stratosphere.sopremo.expressions.ObjectCreation;
 import eu.stratosphere.sopremo.io.JsonFormat.JsonInputFormat;
 import eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat;
 import eu.stratosphere.sopremo.pact.SopremoUtil;
 import eu.stratosphere.sopremo.serialization.SopremoRecord;
 import eu.stratosphere.sopremo.type.IArrayNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
 import eu.stratosphere.sopremo.type.IObjectNode;
 import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.JsonUtil;
 
 /**
  * Tests {@link JsonInputFormat}.
@@ -116,6 +126,48 @@ public class JsonInputFormatTest {
 		Assert.assertEquals(22, count);
 	}
 
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void shouldSkipUnprojectedFields() throws IOException {
+		final File file = File.createTempFile("jsonInputFormatTest", null);
+		file.deleteOnExit();
+		final OutputStreamWriter jsonWriter = new OutputStreamWriter(new FileOutputStream(file));
+		jsonWriter.write("[{\"id\": 1, \"payload\": {\"text\": \"}]\\\"\", \"values\": [[1], {}]}}, " +
+			"{\"payload\": \"{\", \"id\": 2}]");
+		jsonWriter.close();
+
+		final JsonFormat format = new JsonFormat();
+		format.setProjection(new ObjectCreation().addMapping("id", new ObjectAccess("id")));
+		final Collection<IJsonNode> values = InputFormatTest.readFromFile(file, format);
+
+		Assert.assertEquals(Arrays.asList(JsonUtil.createObjectNode("id", 1), JsonUtil.createObjectNode("id", 2)),
+			new ArrayList<IJsonNode>(values));
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void shouldSkipRejectedValues() throws IOException {
+		final File file = File.createTempFile("jsonInputFormatTest", null);
+		file.deleteOnExit();
+		final OutputStreamWriter jsonWriter = new OutputStreamWriter(new FileOutputStream(file));
+		jsonWriter.write("[{\"id\": 1, \"name\": \"a\"}, {\"id\": 2, \"name\": \"b\"}, {\"id\": 3, \"name\": \"c\"}]");
+		jsonWriter.close();
+
+		final JsonFormat format = new JsonFormat();
+		format.setSelection(new ComparativeExpression(new ObjectAccess("id"), BinaryOperator.GREATER,
+			new ConstantExpression(1)));
+		format.setProjection(new ObjectCreation().addMapping("name", new ObjectAccess("name")));
+		final Collection<IJsonNode> values = InputFormatTest.readFromFile(file, format);
+
+		Assert.assertEquals(
+			Arrays.asList(JsonUtil.createObjectNode("name", "b"), JsonUtil.createObjectNode("name", "c")),
+			new ArrayList<IJsonNode>(values));
+	}
+
 	private String getResource(final String name) throws IOException {
 		return JsonInputFormatTest.class.getClassLoader().getResources(name)
 			.nextElement().getFile();
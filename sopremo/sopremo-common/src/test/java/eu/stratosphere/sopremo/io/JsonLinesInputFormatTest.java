@@ -0,0 +1,88 @@
+package eu.stratosphere.sopremo.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import eu.stratosphere.api.common.io.FileInputFormat;
+import eu.stratosphere.configuration.Configuration;
+import eu.stratosphere.core.fs.FileInputSplit;
+import eu.stratosphere.sopremo.SopremoEnvironment;
+import eu.stratosphere.sopremo.io.JsonLinesFormat.JsonLinesInputFormat;
+import eu.stratosphere.sopremo.io.SopremoFormat.SopremoFileInputFormat;
+import eu.stratosphere.sopremo.pact.SopremoUtil;
+import eu.stratosphere.sopremo.serialization.SopremoRecord;
+import eu.stratosphere.sopremo.type.IObjectNode;
+import eu.stratosphere.sopremo.type.IntNode;
+
+/**
+ * Tests {@link JsonLinesInputFormat}.
+ */
+public class JsonLinesInputFormatTest {
+	@Test
+	public void shouldEstimateRecordSize() throws IOException {
+		final File file = File.createTempFile("jsonLinesInputFormatTest", ".jsonl");
+		file.deleteOnExit();
+		final OutputStreamWriter jsonWriter = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+		// each line has 20 bytes including the line feed
+		for (int index = 0; index < 1000; index++)
+			jsonWriter.write(String.format("{\"id\": %011d}\n", index));
+		jsonWriter.close();
+
+		final Configuration config = new Configuration();
+		SopremoEnvironment.getInstance().save(config);
+		SopremoUtil.transferFieldsToConfiguration(new JsonLinesFormat(), SopremoFormat.class, config,
+			JsonLinesInputFormat.class, SopremoFileInputFormat.class);
+		config.setString(FileInputFormat.FILE_PARAMETER_KEY, file.toURI().toString());
+		final JsonLinesInputFormat inputFormat = new JsonLinesInputFormat();
+		inputFormat.configure(config);
+
+		final FileInputFormat.FileBaseStatistics statistics = inputFormat.getStatistics(null);
+		Assert.assertEquals(file.length(), statistics.getTotalInputSize());
+		Assert.assertEquals(20, statistics.getAverageRecordWidth(), 0.001);
+	}
+
+	@Test
+	public void shouldReadEachLineOnceFromSeveralSplits() throws IOException {
+		final File file = File.createTempFile("jsonLinesInputFormatTest", ".jsonl");
+		file.deleteOnExit();
+		final OutputStreamWriter jsonWriter = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+		for (int index = 0; index < 100; index++)
+			jsonWriter.write(String.format("{\"id\": %d, \"text\": \"line, with [brackets]\"}\n", index));
+		// blank lines are skipped
+		jsonWriter.write("\n");
+		jsonWriter.close();
+
+		final Configuration config = new Configuration();
+		SopremoEnvironment.getInstance().save(config);
+		SopremoUtil.transferFieldsToConfiguration(new JsonLinesFormat(), SopremoFormat.class, config,
+			JsonLinesInputFormat.class, SopremoFileInputFormat.class);
+		config.setString(FileInputFormat.FILE_PARAMETER_KEY, file.toURI().toString());
+		final JsonLinesInputFormat inputFormat = new JsonLinesInputFormat();
+		inputFormat.configure(config);
+
+		final FileInputSplit[] splits = inputFormat.createInputSplits(7);
+		Assert.assertTrue("several splits expected", splits.length > 1);
+		final List<Integer> ids = new ArrayList<Integer>();
+		final SopremoRecord record = new SopremoRecord();
+		for (final FileInputSplit split : splits) {
+			inputFormat.open(split);
+			while (!inputFormat.reachedEnd())
+				if (inputFormat.nextRecord(record))
+					ids.add(((IntNode) ((IObjectNode) record.getNode()).get("id")).getIntValue());
+			inputFormat.close();
+		}
+
+		Collections.sort(ids);
+		Assert.assertEquals(100, ids.size());
+		for (int index = 0; index < 100; index++)
+			Assert.assertEquals(index, ids.get(index).intValue());
+	}
+}
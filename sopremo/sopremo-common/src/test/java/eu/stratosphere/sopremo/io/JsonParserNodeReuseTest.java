@@ -0,0 +1,64 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.sopremo.io;
+
+import java.math.BigDecimal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.DecimalNode;
+import eu.stratosphere.sopremo.type.IJsonNode;
+import eu.stratosphere.sopremo.type.IObjectNode;
+import eu.stratosphere.sopremo.type.IntNode;
+import eu.stratosphere.sopremo.type.ObjectNode;
+import eu.stratosphere.sopremo.type.TextNode;
+
+/**
+ * Tests {@link JsonParser#setNodeReuse(boolean)}.
+ */
+public class JsonParserNodeReuseTest {
+	@Test
+	public void shouldCreateNewNodesWithoutReuse() throws JsonParseException {
+		final JsonParser parser = new JsonParser("[{\"id\": 1}, {\"id\": 2}]");
+		parser.setWrappingArraySkipping(true);
+
+		final IJsonNode first = parser.readValueAsTree();
+		final IJsonNode second = parser.readValueAsTree();
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals(new ObjectNode().put("id", IntNode.valueOf(1)), first);
+		Assert.assertEquals(new ObjectNode().put("id", IntNode.valueOf(2)), second);
+	}
+
+	@Test
+	public void shouldFillPreviousValue() throws JsonParseException {
+		final JsonParser parser = new JsonParser("");
+		parser.setNodeReuse(true);
+
+		parser.setInput("{\"id\": 1, \"name\": \"a\", \"tags\": [1, 2, 3], \"score\": 1}");
+		final IJsonNode first = parser.readValueAsTree();
+		final IJsonNode firstName = ((IObjectNode) first).get("name");
+
+		parser.setInput("{\"id\": 2, \"name\": \"b\", \"tags\": [4], \"score\": 0.5}");
+		final IJsonNode second = parser.readValueAsTree();
+		Assert.assertSame(first, second);
+		Assert.assertSame(firstName, ((IObjectNode) second).get("name"));
+		Assert.assertEquals(new ObjectNode().put("id", IntNode.valueOf(2)).put("name", TextNode.valueOf("b"))
+			.put("tags", new ArrayNode<IJsonNode>().add(IntNode.valueOf(4)))
+			.put("score", DecimalNode.valueOf(BigDecimal.valueOf(0.5))), second);
+		Assert.assertTrue(parser.checkEnd());
+	}
+}
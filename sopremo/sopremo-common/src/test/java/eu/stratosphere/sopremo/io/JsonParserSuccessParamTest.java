@@ -89,7 +89,7 @@ public class JsonParserSuccessParamTest {
 			/* [15] */{ "\"thisIs\\\"AEscape\\\"Sequence\"", create(TextNode.valueOf("thisIs\"AEscape\"Sequence")),
 				27 },
 			/* [16] */{ "   {   \"42\" :  42 , \"1337\" :   []  }",
-				create(new ObjectNode().put("42", IntNode.valueOf(42)).put("1337", new ArrayNode<IJsonNode>())), 39 },
+				create(new ObjectNode().put("42", IntNode.valueOf(42)).put("1337", new ArrayNode<IJsonNode>())), 36 },
 			/* [17] */{ "{ \"object\" : { \"key\" : [] } }",
 				create(new ObjectNode().put("object", new ObjectNode().put("key", new ArrayNode<IJsonNode>()))), 29 },
 			/* [18] */{ "", create(), 0 },
@@ -28,9 +28,13 @@ import eu.stratosphere.sopremo.cache.NodeCache;
 import eu.stratosphere.sopremo.expressions.ArrayAccess;
 import eu.stratosphere.sopremo.expressions.ObjectAccess;
 import eu.stratosphere.sopremo.packages.DefaultTypeRegistry;
+import eu.stratosphere.sopremo.type.ArrayNode;
+import eu.stratosphere.sopremo.type.IArrayNode;
 import eu.stratosphere.sopremo.type.IJsonNode;
 import eu.stratosphere.sopremo.type.IntNode;
 import eu.stratosphere.sopremo.type.JsonUtil;
+import eu.stratosphere.sopremo.type.ObjectNode;
+import eu.stratosphere.sopremo.type.SpillingStreamNode;
 
 /**
  */
@@ -66,6 +70,37 @@ public class SopremoRecordTest extends EqualCloneTest<SopremoRecord> {
 		Assert.assertNotSame(node, sopremoRecord2.getOrParseNode());
 	}
 
+	@Test
+	public void testSpilledStreamSerialization() throws IOException {
+		final SpillingStreamNode<IJsonNode> stream = new SpillingStreamNode<IJsonNode>(64);
+		final IArrayNode<IJsonNode> expected = new ArrayNode<IJsonNode>();
+		for (int index = 0; index < 1000; index++) {
+			stream.add(IntNode.valueOf(index));
+			expected.add(IntNode.valueOf(index));
+		}
+		Assert.assertTrue(stream.isSpilled());
+
+		final SopremoRecord sopremoRecord2 = this.serializeAndDeserialize(new ObjectNode().put("values", stream),
+			SopremoRecordLayout.create());
+		Assert.assertEquals(new ObjectNode().put("values", expected), sopremoRecord2.getOrParseNode());
+	}
+
+	@Test
+	public void testSpilledStreamKeyOffsets() throws IOException {
+		final SpillingStreamNode<IJsonNode> stream = new SpillingStreamNode<IJsonNode>(64);
+		for (int index = 0; index < 1000; index++)
+			stream.add(IntNode.valueOf(index));
+		final SopremoRecordLayout layout = SopremoRecordLayout.create(new ObjectAccess("z"));
+
+		// the key follows the streamed elements and its offset is only known after they have been counted
+		final IJsonNode node = new ObjectNode().put("values", stream).put("z", IntNode.valueOf(42));
+		final SopremoRecord sopremoRecord2 = this.serializeAndDeserialize(node, layout);
+		Assert.assertEquals(new IntNode(42),
+			sopremoRecord2.getKey(layout.getKeyIndex(new ObjectAccess("z")), new NodeCache()));
+		final IArrayNode<?> values = ((ObjectNode) sopremoRecord2.getOrParseNode()).get("values");
+		Assert.assertEquals(1000, values.size());
+	}
+
 	@Test
 	public void testPrimitiveSerialization() throws IOException {
 		final IJsonNode node = new IntNode(42);
@@ -0,0 +1,102 @@
+package eu.stratosphere.sopremo.type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpillingStreamNodeTest {
+
+	@Test
+	public void shouldKeepSmallStreamsInMemory() {
+		final SpillingStreamNode<IJsonNode> node = new SpillingStreamNode<IJsonNode>(1 << 20);
+		for (int index = 0; index < 10; index++)
+			node.add(IntNode.valueOf(index));
+
+		Assert.assertFalse(node.isSpilled());
+		Assert.assertEquals(10, node.size());
+		Assert.assertEquals(this.createExpected(0, 10), this.toList(node));
+	}
+
+	@Test
+	public void shouldAllowMultiplePassesOverSpilledStreams() {
+		final SpillingStreamNode<IJsonNode> node = new SpillingStreamNode<IJsonNode>(64);
+		for (int index = 0; index < 1000; index++)
+			node.add(IntNode.valueOf(index));
+
+		Assert.assertTrue(node.isSpilled());
+		Assert.assertEquals(this.createExpected(0, 1000), this.toList(node));
+		Assert.assertEquals(this.createExpected(0, 1000), this.toList(node));
+	}
+
+	@Test
+	public void shouldSortSpilledStreams() {
+		final SpillingStreamNode<IJsonNode> node = new SpillingStreamNode<IJsonNode>(64);
+		final List<IJsonNode> values = this.createExpected(0, 1000);
+		Collections.shuffle(values, new Random(42));
+		for (final IJsonNode value : values)
+			node.add(value);
+
+		node.sort();
+		Assert.assertTrue(node.isSpilled());
+		Assert.assertEquals(this.createExpected(0, 1000), this.toList(node));
+	}
+
+	@Test
+	public void shouldBeEmptyAfterClear() {
+		final SpillingStreamNode<IJsonNode> node = new SpillingStreamNode<IJsonNode>(64);
+		for (int index = 0; index < 1000; index++)
+			node.add(IntNode.valueOf(index));
+		node.clear();
+
+		Assert.assertTrue(node.isEmpty());
+		Assert.assertFalse(node.isSpilled());
+		Assert.assertFalse(node.iterator().hasNext());
+	}
+
+	@Test
+	public void shouldCompareElementwise() {
+		final SpillingStreamNode<IJsonNode> node1 = new SpillingStreamNode<IJsonNode>(64);
+		final SpillingStreamNode<IJsonNode> node2 = new SpillingStreamNode<IJsonNode>(1 << 20);
+		for (int index = 0; index < 1000; index++) {
+			node1.add(IntNode.valueOf(index));
+			node2.add(IntNode.valueOf(index));
+		}
+
+		Assert.assertEquals(0, node1.compareTo(node2));
+		Assert.assertEquals(node1, node2);
+		node2.add(IntNode.valueOf(0));
+		Assert.assertTrue(node1.compareTo(node2) < 0);
+		Assert.assertTrue(node2.compareTo(node1) > 0);
+	}
+
+	@Test
+	public void shouldBeReusableAfterAbandonedIteration() {
+		final SpillingStreamNode<IJsonNode> node = new SpillingStreamNode<IJsonNode>(64);
+		for (int index = 0; index < 1000; index++)
+			node.add(IntNode.valueOf(index));
+		node.iterator().next();
+		node.clear();
+
+		for (int index = 0; index < 1000; index++)
+			node.add(IntNode.valueOf(index));
+		Assert.assertEquals(this.createExpected(0, 1000), this.toList(node));
+	}
+
+	private List<IJsonNode> createExpected(final int start, final int end) {
+		final List<IJsonNode> expected = new ArrayList<IJsonNode>();
+		for (int index = start; index < end; index++)
+			expected.add(IntNode.valueOf(index));
+		return expected;
+	}
+
+	private List<IJsonNode> toList(final IStreamNode<IJsonNode> node) {
+		final List<IJsonNode> list = new ArrayList<IJsonNode>();
+		for (final IJsonNode element : node)
+			list.add(element);
+		return list;
+	}
+}
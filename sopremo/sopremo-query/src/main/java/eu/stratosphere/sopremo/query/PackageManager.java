@@ -24,8 +24,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+import eu.stratosphere.sopremo.io.BinaryFormat;
+import eu.stratosphere.sopremo.io.ColumnarFormat;
 import eu.stratosphere.sopremo.io.CsvFormat;
 import eu.stratosphere.sopremo.io.JsonFormat;
+import eu.stratosphere.sopremo.io.JsonLinesFormat;
 import eu.stratosphere.sopremo.io.Sink;
 import eu.stratosphere.sopremo.io.SopremoFormat;
 import eu.stratosphere.sopremo.io.Source;
@@ -75,8 +78,11 @@ public class PackageManager implements ParsingScope {
 		final AdditionalInfoResolver formatResolver = new AdditionalInfoResolver.Format(this.fileFormatRegistries);
 		final IConfObjectRegistry<SopremoFormat> defaultFormatRegistry = new DefaultConfObjectRegistry<SopremoFormat>(
 			nameChooserProvider.getFormatNameChooser(), nameChooserProvider.getPropertyNameChooser());
+		defaultFormatRegistry.put(BinaryFormat.class, formatResolver);
+		defaultFormatRegistry.put(ColumnarFormat.class, formatResolver);
 		defaultFormatRegistry.put(CsvFormat.class, formatResolver);
 		defaultFormatRegistry.put(JsonFormat.class, formatResolver);
+		defaultFormatRegistry.put(JsonLinesFormat.class, formatResolver);
 		this.fileFormatRegistries.addLast(defaultFormatRegistry);
 	}
 